@@ -1,11 +1,198 @@
-
 package za.co.rubhub.config;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.ThreadPoolExecutor;
 
 @Configuration
 @EnableScheduling
 public class SchedulerConfig {
-    // Scheduling is enabled here
-}
\ No newline at end of file
+
+    // The default scheduler has a single thread, so one slow job delays every other one
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler() {
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(4);
+        scheduler.setThreadNamePrefix("scheduled-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        return scheduler;
+    }
+
+    // MVC async work: StreamingResponseBody exports and statements write on these threads. Declaring
+    // any executor bean turns off Boot's default one, and without a bean of this name MVC falls back
+    // to a new thread per request. A full pool fails the request rather than queueing without bound
+    @Bean(name = "applicationTaskExecutor")
+    public ThreadPoolTaskExecutor applicationTaskExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(8);
+        executor.setMaxPoolSize(32);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("mvc-async-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    // Analytics pre-warming: at most two ranges generate at once, and a full queue drops the
+    // submission since that range is still served from cache and comes round on the next tick
+    @Bean
+    public ThreadPoolTaskExecutor analyticsPrewarmExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(4);
+        executor.setThreadNamePrefix("analytics-prewarm-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+
+    // Analytics cache refreshes: coalesced per range, so a small pool and a queue of one slot per
+    // cached range are enough. A full queue keeps serving the stale entry
+    @Bean
+    public ThreadPoolTaskExecutor analyticsRefreshExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(16);
+        executor.setThreadNamePrefix("analytics-refresh-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+
+    // Chat push: drains per-connection buffers into SSE streams. A rejected drain closes the
+    // connection and the client resumes from its last event id, so the queue stays bounded
+    @Bean
+    public ThreadPoolTaskExecutor chatStreamExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(8);
+        executor.setQueueCapacity(1000);
+        executor.setThreadNamePrefix("chat-stream-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+
+    // Ops console push: small, since a console that falls behind is resynced with one snapshot
+    @Bean
+    public ThreadPoolTaskExecutor opsStreamExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(500);
+        executor.setThreadNamePrefix("ops-stream-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+
+    // PayFast calls: the pool is PayFastClient's in-flight window, and its HTTP connection pool is
+    // sized to match. A full queue fails the call straight away rather than backing up payouts
+    @Bean
+    public ThreadPoolTaskExecutor payfastClientExecutor(
+            @Value("${payfast.client.max-in-flight:8}") int maxInFlight,
+            @Value("${payfast.client.queue-capacity:1000}") int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(maxInFlight);
+        executor.setMaxPoolSize(maxInFlight);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("payfast-client-");
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+    // PayFast ITN drains, one per thread; PayFastItnProcessor never starts more than the pool has
+    // threads, so the queue only absorbs a drain handed over while its thread is still finishing
+    @Bean
+    public ThreadPoolTaskExecutor payfastItnExecutor(@Value("${payfast.itn.workers:2}") int workers) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(Math.max(1, workers));
+        executor.setMaxPoolSize(Math.max(1, workers));
+        executor.setQueueCapacity(Math.max(1, workers));
+        executor.setThreadNamePrefix("payfast-itn-");
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(10);
+        return executor;
+    }
+
+    // Security alert lanes, one pool per SecurityAlertBus.Lane so a panic alert never queues behind
+    // lower-priority work. Panic threads run at top priority and are started up front; a full panic
+    // lane runs the event on the publisher, a full lower lane drops it for the handler's sweep
+    @Bean
+    public ThreadPoolTaskExecutor alertPanicExecutor() {
+        ThreadPoolTaskExecutor executor = alertLaneExecutor("alert-panic-", 4, 200);
+        executor.setThreadPriority(Thread.MAX_PRIORITY);
+        executor.setPrestartAllCoreThreads(true);
+        return executor;
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor alertUrgentExecutor() {
+        return alertLaneExecutor("alert-urgent-", 2, 500);
+    }
+
+    @Bean
+    public ThreadPoolTaskExecutor alertRoutineExecutor() {
+        return alertLaneExecutor("alert-routine-", 2, 1000);
+    }
+
+    // Payout partitions: four therapists are paid in parallel, leaving the rest of the connection
+    // pool to the app. A full queue runs the partition on the submitting thread, which slows the
+    // fan-out down instead of dropping a therapist
+    @Bean
+    public ThreadPoolTaskExecutor payoutExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(4);
+        executor.setMaxPoolSize(4);
+        executor.setQueueCapacity(200);
+        executor.setThreadNamePrefix("payout-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(60);
+        return executor;
+    }
+
+    // Batch geofence classification: one thread per core, since the work is in-memory point tests.
+    // A full queue runs the slice on the request's own thread, which throttles that batch instead
+    // of failing it, and keeps large batches off the common ForkJoin pool
+    @Bean
+    public ThreadPoolTaskExecutor geofenceClassifyExecutor() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(cores);
+        executor.setMaxPoolSize(cores);
+        executor.setQueueCapacity(64);
+        executor.setThreadNamePrefix("geofence-classify-");
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        return executor;
+    }
+
+    private static ThreadPoolTaskExecutor alertLaneExecutor(String prefix, int threads, int queueCapacity) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix(prefix);
+        executor.setDaemon(true);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(5);
+        return executor;
+    }
+}
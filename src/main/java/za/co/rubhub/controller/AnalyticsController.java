@@ -3,19 +3,25 @@ package za.co.rubhub.controller;
 
 import za.co.rubhub.model.AnalyticsData;
 import za.co.rubhub.service.impl.AnalyticsService;
+import za.co.rubhub.service.impl.BookingRollupService;
 // import za.co.rubhub.service.AnalyticsService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.Map;
 
 @RestController
 @RequestMapping("/api/analytics")
 @CrossOrigin(origins = "*") // Adjust based on your frontend URL
+@RequiredArgsConstructor
 public class AnalyticsController {
     
-    private AnalyticsService analyticsService;
+    private final AnalyticsService analyticsService;
+    private final BookingRollupService bookingRollupService;
     
     @GetMapping("/dashboard")
     public ResponseEntity<AnalyticsData> getDashboardData(
@@ -97,6 +103,25 @@ public class AnalyticsController {
         }
     }
     
+    @PostMapping("/rollups/rebuild")
+    public ResponseEntity<Map<String, Object>> rebuildRollups(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to) {
+        if (to.isBefore(from)) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            int rows = bookingRollupService.rebuildRange(from, to);
+            Map<String, Object> result = new HashMap<>();
+            result.put("from", from.toString());
+            result.put("to", to.toString());
+            result.put("rows", rows);
+            return ResponseEntity.ok(result);
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
     @DeleteMapping("/cleanup")
     public ResponseEntity<Void> cleanupOldAnalyticsData() {
         try {
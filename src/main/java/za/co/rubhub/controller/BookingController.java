@@ -1,14 +1,20 @@
 package za.co.rubhub.controller;
 
+import za.co.rubhub.dto.CursorPage;
 import za.co.rubhub.model.Booking;
 import za.co.rubhub.model.BookingStatus;
+import za.co.rubhub.repositories.projection.BookingExportRow;
 import za.co.rubhub.service.BookingService;
+import za.co.rubhub.util.JsonStreams;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
@@ -23,35 +29,63 @@ public class BookingController {
     @Autowired
     private BookingService bookingService;
 
-    // GET - Get all bookings
-    @GetMapping
-    public ResponseEntity<List<Booking>> getAllBookings(
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // GET - Get every matching booking, streamed as a JSON array a page at a time; /page is the paged successor
+    @Deprecated
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getAllBookings(
             @RequestParam(required = false) BookingStatus status,
             @RequestParam(required = false) String customerId,
             @RequestParam(required = false) String therapistId) {
+        Long customer;
+        Long therapist;
         try {
-            List<Booking> bookings;
-            
-            if (status != null && customerId != null) {
-                bookings = bookingService.findCustomerBookingsByStatus(customerId, status);
-            } else if (status != null && therapistId != null) {
-                bookings = bookingService.findTherapistBookingsByStatus(therapistId, status);
-            } else if (status != null) {
-                bookings = bookingService.findByStatus(status);
-            } else if (customerId != null) {
-                bookings = bookingService.findByCustomerId(customerId);
-            } else if (therapistId != null) {
-                bookings = bookingService.findByTherapistId(therapistId);
-            } else {
-                bookings = bookingService.findAll();
-            }
-            
-            return ResponseEntity.ok(bookings);
+            customer = customerId != null ? Long.valueOf(customerId) : null;
+            therapist = therapistId != null ? Long.valueOf(therapistId) : null;
+        } catch (NumberFormatException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = JsonStreams.<Booking>array(objectMapper,
+                sink -> bookingService.forEachBooking(status, customer, therapist, sink));
+        return ResponseEntity.ok()
+                .headers(PageLinks.deprecatedList("/api/bookings/page"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    // GET - Keyset-paginated bookings; pass nextCursor back as cursor for the following page
+    @GetMapping("/page")
+    public ResponseEntity<CursorPage<Booking>> getBookingPage(
+            @RequestParam(required = false) BookingStatus status,
+            @RequestParam(required = false) Long customerId,
+            @RequestParam(required = false) Long therapistId,
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        try {
+            CursorPage<Booking> page = bookingService.findPage(status, customerId, therapistId,
+                    "time".equalsIgnoreCase(sort), cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    // GET - Stream every matching booking as a JSON array, written row by row from a database cursor
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportBookings(
+            @RequestParam(required = false) BookingStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        StreamingResponseBody body = JsonStreams.<BookingExportRow>array(objectMapper,
+                sink -> bookingService.exportBookings(status, from, to, sink));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
     // GET - Get active bookings
     @GetMapping("/active")
     public ResponseEntity<List<Booking>> getActiveBookings() {
@@ -234,6 +268,8 @@ public class BookingController {
         try {
             Booking booking = bookingService.updatePaymentStatus(id, paymentStatus, transactionId);
             return ResponseEntity.ok(booking);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body("Error updating payment status: " + e.getMessage());
@@ -289,7 +325,7 @@ public class BookingController {
                 long count = bookingService.getBookingCountByTherapist(therapistId);
                 return ResponseEntity.ok().body("{\"totalBookings\": " + count + "}");
             } else {
-                long total = bookingService.findAll().size();
+                long total = bookingService.countAll();
                 long pending = bookingService.getBookingCountByStatus(BookingStatus.PENDING);
                 long completed = bookingService.getBookingCountByStatus(BookingStatus.COMPLETED);
                 
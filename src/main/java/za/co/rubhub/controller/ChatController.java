@@ -1,11 +1,16 @@
 package za.co.rubhub.controller;
 
+import za.co.rubhub.dto.ChatMessageView;
+import za.co.rubhub.dto.CursorPage;
 import za.co.rubhub.model.Chat;
 import za.co.rubhub.model.ChatMessage;
 import za.co.rubhub.service.ChatService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.util.List;
 
 @RestController
@@ -32,13 +37,43 @@ public class ChatController {
     }
 
     @PostMapping("/{chatId}/messages")
-    public ResponseEntity<ChatMessage> sendMessage(@PathVariable String chatId, @RequestBody ChatMessage message) {
-        return ResponseEntity.ok(chatService.sendMessage(message));
+    public ResponseEntity<ChatMessageView> sendMessage(@PathVariable Long chatId, @RequestBody ChatMessage message) {
+        try {
+            return ResponseEntity.ok(ChatMessageView.from(chatService.sendMessage(chatId, message), chatId));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (IllegalStateException e) {
+            // Write-behind backlog is full; the client should retry shortly
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
     }
 
+    // Server-sent events for the chat; reconnecting clients send Last-Event-ID (or ?after=) to resume
+    @GetMapping(value = "/{chatId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamMessages(@PathVariable Long chatId,
+                                     @RequestHeader(value = "Last-Event-ID", required = false) Long lastEventId,
+                                     @RequestParam(required = false) Long after) {
+        return chatService.streamMessages(chatId, lastEventId != null ? lastEventId : after);
+    }
+
+    // Newest page by default; pass nextCursor back as "before" to scroll up, or a last seen id as "after"
     @GetMapping("/{chatId}/messages")
-    public ResponseEntity<List<ChatMessage>> getChatMessages(@PathVariable String chatId) {
-        return ResponseEntity.ok(chatService.getChatMessages(chatId));
+    public ResponseEntity<CursorPage<ChatMessageView>> getChatMessages(@PathVariable Long chatId,
+                                                                       @RequestParam(required = false) Long before,
+                                                                       @RequestParam(required = false) Long after,
+                                                                       @RequestParam(defaultValue = "50") int limit) {
+        return ResponseEntity.ok(chatService.getChatMessages(chatId, before, after, limit));
+    }
+
+    @PostMapping("/{chatId}/read")
+    public ResponseEntity<Void> markRead(@PathVariable Long chatId, @RequestParam Long userId) {
+        chatService.markRead(chatId, userId);
+        return ResponseEntity.ok().build();
+    }
+
+    @GetMapping("/{chatId}/unread")
+    public ResponseEntity<Long> getUnreadCount(@PathVariable Long chatId, @RequestParam Long userId) {
+        return ResponseEntity.ok(chatService.getUnreadCount(chatId, userId));
     }
 
     @PutMapping("/{id}/deactivate")
@@ -1,17 +1,35 @@
 package za.co.rubhub.controller;
 
+import za.co.rubhub.dto.LocationPoint;
+import za.co.rubhub.dto.ZoneClassification;
 import za.co.rubhub.model.Geofence;
 import za.co.rubhub.service.GeofenceService;
+import za.co.rubhub.util.JsonStreams;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/geofences")
 @RequiredArgsConstructor
 public class GeofenceController {
+    private static final int MAX_BATCH_POINTS = 100000;
+
     private final GeofenceService geofenceService;
+    private final ObjectMapper objectMapper;
 
     @PostMapping
     public ResponseEntity<Geofence> createGeofence(@RequestBody Geofence geofence) {
@@ -40,6 +58,15 @@ public class GeofenceController {
         return ResponseEntity.ok(geofenceService.updateGeofence(id, geofence));
     }
 
+    @DeleteMapping("/{id}")
+    public ResponseEntity<Void> deleteGeofence(@PathVariable Long id) {
+        if (!geofenceService.getGeofenceById(id).isPresent()) {
+            return ResponseEntity.notFound().build();
+        }
+        geofenceService.deleteGeofence(id);
+        return ResponseEntity.noContent().build();
+    }
+
 
     @GetMapping("/check-location")
     public ResponseEntity<List<Geofence>> checkLocation(
@@ -47,4 +74,42 @@ public class GeofenceController {
             @RequestParam Double lng) {
         return ResponseEntity.ok(geofenceService.checkLocation(lat, lng));
     }
-}
\ No newline at end of file
+
+    // Bulk variant of check-location: results are streamed back as a JSON array while later chunks classify.
+    // The body is read point by point and reading stops as soon as it holds more than MAX_BATCH_POINTS
+    @PostMapping(value = "/check-locations", consumes = MediaType.APPLICATION_JSON_VALUE,
+            produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> checkLocations(InputStream requestBody) throws IOException {
+        List<LocationPoint> points;
+        try {
+            points = readPoints(requestBody, MAX_BATCH_POINTS + 1);
+        } catch (JsonProcessingException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        if (points.size() > MAX_BATCH_POINTS) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE).build();
+        }
+
+        StreamingResponseBody body = JsonStreams.<ZoneClassification>array(objectMapper,
+                sink -> geofenceService.classifyLocations(points, chunk -> chunk.forEach(sink)));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    // At most limit points from a JSON array, without reading the rest of the body
+    private List<LocationPoint> readPoints(InputStream in, int limit) throws IOException {
+        List<LocationPoint> points = new ArrayList<>();
+        try (JsonParser parser = objectMapper.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_ARRAY) {
+                throw new JsonParseException(parser, "Expected a JSON array of points");
+            }
+            JsonToken token;
+            while (points.size() < limit && (token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token == null) {
+                    throw new JsonParseException(parser, "Unterminated array of points");
+                }
+                points.add(objectMapper.readValue(parser, LocationPoint.class));
+            }
+        }
+        return points;
+    }
+}
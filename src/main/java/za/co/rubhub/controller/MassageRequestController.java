@@ -1,13 +1,21 @@
 package za.co.rubhub.controller;
 
+import za.co.rubhub.dto.CursorPage;
 import za.co.rubhub.model.MassageRequest;
+import za.co.rubhub.repositories.projection.MassageRequestExportRow;
+import za.co.rubhub.service.DispatchQueue;
 import za.co.rubhub.service.MassageRequestService;
+import za.co.rubhub.util.GeoUtils;
+import za.co.rubhub.util.JsonStreams;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
@@ -27,35 +35,61 @@ public class MassageRequestController {
     @Autowired
     private MassageRequestService massageRequestService;
 
-    // GET - Get all massage requests
-    @GetMapping
-    public ResponseEntity<List<MassageRequest>> getAllMassageRequests(
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // GET - Get every matching massage request, streamed as a JSON array a page at a time; /page is the paged successor
+    @Deprecated
+    @GetMapping(produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getAllMassageRequests(
             @RequestParam(required = false) String status,
             @RequestParam(required = false) Long customerId,
             @RequestParam(required = false) Long therapistId) {
+        MassageRequest.Status requestStatus;
         try {
-            List<MassageRequest> requests;
-            
-            if (status != null && customerId != null) {
-                requests = massageRequestService.findCustomerRequestsByStatus(customerId, status);
-            } else if (status != null && therapistId != null) {
-                requests = massageRequestService.findTherapistRequestsByStatus(therapistId, status);
-            } else if (status != null) {
-                requests = massageRequestService.findByStatus(status);
-            } else if (customerId != null) {
-                requests = massageRequestService.findByCustomerId(customerId);
-            } else if (therapistId != null) {
-                requests = massageRequestService.findByTherapistId(therapistId);
-            } else {
-                requests = massageRequestService.findAll();
-            }
-            
-            return ResponseEntity.ok(requests);
+            requestStatus = status != null ? MassageRequest.Status.valueOf(status.toUpperCase()) : null;
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+        StreamingResponseBody body = JsonStreams.<MassageRequest>array(objectMapper,
+                sink -> massageRequestService.forEachMassageRequest(requestStatus, customerId, therapistId, sink));
+        return ResponseEntity.ok()
+                .headers(PageLinks.deprecatedList("/api/massage-requests/page"))
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(body);
+    }
+
+    // GET - Keyset-paginated massage requests; pass nextCursor back as cursor for the following page
+    @GetMapping("/page")
+    public ResponseEntity<CursorPage<MassageRequest>> getMassageRequestPage(
+            @RequestParam(required = false) MassageRequest.Status status,
+            @RequestParam(required = false) Long clientId,
+            @RequestParam(required = false) Long therapistId,
+            @RequestParam(defaultValue = "id") String sort,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int limit) {
+        try {
+            CursorPage<MassageRequest> page = massageRequestService.findPage(status, clientId, therapistId,
+                    "time".equalsIgnoreCase(sort), cursor, limit);
+            return ResponseEntity.ok(page);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
         }
     }
 
+    // GET - Stream every matching request as a JSON array, written row by row from a database cursor
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_JSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportMassageRequests(
+            @RequestParam(required = false) MassageRequest.Status status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        StreamingResponseBody body = JsonStreams.<MassageRequestExportRow>array(objectMapper,
+                sink -> massageRequestService.exportRequests(status, from, to, sink));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
     // GET - Get active massage requests
     @GetMapping("/active")
     public ResponseEntity<List<MassageRequest>> getActiveMassageRequests() {
@@ -78,6 +112,39 @@ public class MassageRequestController {
         }
     }
 
+    // GET - Open jobs for the therapist app, nearest first; answered from memory
+    @GetMapping("/dispatch")
+    public ResponseEntity<List<DispatchQueue.Job>> getOpenJobs(
+            @RequestParam(required = false) Double latitude,
+            @RequestParam(required = false) Double longitude,
+            @RequestParam(defaultValue = "20000") double radius,
+            @RequestParam(defaultValue = "50") int limit) {
+        if ((latitude == null) != (longitude == null)
+                || (latitude != null && !GeoUtils.isValidCoordinate(latitude, longitude))) {
+            return ResponseEntity.badRequest().build();
+        }
+        return ResponseEntity.ok(massageRequestService.findOpenJobs(latitude, longitude, radius, limit));
+    }
+
+    // GET - Request ids currently offered to a therapist by the matcher
+    @GetMapping("/offers")
+    public ResponseEntity<List<Long>> getOffers(@RequestParam Long therapistId) {
+        return ResponseEntity.ok(massageRequestService.findOffersForTherapist(therapistId));
+    }
+
+    // POST - Accept a matcher offer; 409 if the offer expired or another therapist won
+    @PostMapping("/{id}/offers/accept")
+    public ResponseEntity<?> acceptOffer(@PathVariable Long id, @RequestParam Long therapistId) {
+        try {
+            return ResponseEntity.ok(massageRequestService.acceptOffer(id, therapistId));
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                .body("Error accepting offer: " + e.getMessage());
+        }
+    }
+
     // GET - Get massage request by ID
     @GetMapping("/{id}")
     public ResponseEntity<MassageRequest> getMassageRequestById(@PathVariable Long id) {
@@ -242,6 +309,8 @@ public class MassageRequestController {
         try {
             MassageRequest request = massageRequestService.assignTherapist(id, therapistId);
             return ResponseEntity.ok(request);
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body("Error assigning therapist: " + e.getMessage());
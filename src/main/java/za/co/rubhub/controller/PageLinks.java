@@ -0,0 +1,16 @@
+package za.co.rubhub.controller;
+
+import org.springframework.http.HttpHeaders;
+
+// Headers for the old list endpoints, which still stream every match but point clients at their paged successor
+final class PageLinks {
+
+    private PageLinks() {}
+
+    static HttpHeaders deprecatedList(String pagePath) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set("Deprecation", "true");
+        headers.set(HttpHeaders.LINK, "<" + pagePath + ">; rel=\"successor-version\"");
+        return headers;
+    }
+}
@@ -1,14 +1,26 @@
 package za.co.rubhub.controller;
 
+import za.co.rubhub.dto.StatementLine;
 import za.co.rubhub.model.Payment;
+import za.co.rubhub.service.PayFastItnReceiver;
 import za.co.rubhub.service.PaymentService;
+import za.co.rubhub.service.StatementService;
+import za.co.rubhub.util.JsonStreams;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 @RestController
 @RequestMapping("/api/payments")
@@ -18,6 +30,15 @@ public class PaymentController {
     @Autowired
     private PaymentService paymentService;
 
+    @Autowired
+    private StatementService statementService;
+
+    @Autowired
+    private PayFastItnReceiver payFastItnReceiver;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
     // GET - Get all payments
     @GetMapping
     public ResponseEntity<List<Payment>> getAllPayments() {
@@ -149,18 +170,7 @@ public class PaymentController {
         }
     }
 
-    // PATCH - Process payment success
-    @PatchMapping("/{transactionId}/success")
-    public ResponseEntity<?> processPaymentSuccess(@PathVariable String transactionId, 
-                                                  @RequestParam String providerTransactionId) {
-        try {
-            Payment payment = paymentService.processPaymentSuccess(transactionId, providerTransactionId);
-            return ResponseEntity.ok(payment);
-        } catch (Exception e) {
-            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
-                .body("Error processing payment success: " + e.getMessage());
-        }
-    }
+    // Payments complete only through the signed PayFast ITN at /payfast/itn, since completing one credits SUSPENSE
 
     // PATCH - Process payment failure
     @PatchMapping("/{transactionId}/failure")
@@ -210,6 +220,72 @@ public class PaymentController {
         }
     }
 
+    // POST - PayFast ITN; recorded and acknowledged here, applied to the payment asynchronously
+    @PostMapping(value = "/payfast/itn", consumes = MediaType.APPLICATION_FORM_URLENCODED_VALUE)
+    public ResponseEntity<Void> receivePayFastItn(@RequestParam Map<String, String> fields) {
+        try {
+            PayFastItnReceiver.Outcome outcome = payFastItnReceiver.receive(fields);
+            return outcome == PayFastItnReceiver.Outcome.REJECTED
+                    ? ResponseEntity.badRequest().build()
+                    : ResponseEntity.ok().build();
+        } catch (Exception e) {
+            // Not recorded; PayFast resends until it gets a 200
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    // GET - Get a ledger account's balance, now or at a given instant
+    @GetMapping("/accounts/{accountId}/balance")
+    public ResponseEntity<BigDecimal> getAccountBalance(
+            @PathVariable Long accountId,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime at) {
+        try {
+            return ResponseEntity.ok(statementService.balanceAt(accountId, at != null ? at : LocalDateTime.now()));
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    // GET - Stream a ledger account's statement for [from, to) as JSON
+    @GetMapping("/accounts/{accountId}/statement")
+    public ResponseEntity<StreamingResponseBody> getAccountStatement(
+            @PathVariable Long accountId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        LocalDateTime end = to != null ? to : LocalDateTime.now();
+        StreamingResponseBody body = JsonStreams.body(objectMapper, generator -> {
+            generator.writeStartObject();
+            generator.writeNumberField("accountId", accountId);
+            generator.writeObjectField("from", from);
+            generator.writeObjectField("to", end);
+            Consumer<StatementLine> lines = JsonStreams.rows(generator);
+            statementService.streamStatement(accountId, from, end, new StatementService.StatementSink() {
+                @Override
+                public void opening(BigDecimal balance) {
+                    JsonStreams.unchecked(() -> {
+                        generator.writeNumberField("openingBalance", balance);
+                        generator.writeArrayFieldStart("lines");
+                    });
+                }
+
+                @Override
+                public void line(StatementLine line) {
+                    lines.accept(line);
+                }
+
+                @Override
+                public void closing(BigDecimal balance) {
+                    JsonStreams.unchecked(() -> {
+                        generator.writeEndArray();
+                        generator.writeNumberField("closingBalance", balance);
+                    });
+                }
+            });
+            generator.writeEndObject();
+        });
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
     // DELETE - Delete payment
     @DeleteMapping("/{id}")
     public ResponseEntity<?> deletePayment(@PathVariable String id) {
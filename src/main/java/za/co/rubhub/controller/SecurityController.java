@@ -1,11 +1,14 @@
 // SecurityController.java
 package za.co.rubhub.controller;
 
+import za.co.rubhub.dto.SecurityAlertView;
 import za.co.rubhub.model.*;
 import za.co.rubhub.service.SecurityService;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.List;
 import java.util.Map;
@@ -20,9 +23,9 @@ public class SecurityController {
     
     // Security Alerts Endpoints
     @GetMapping("/alerts")
-    public ResponseEntity<List<SecurityAlert>> getActiveAlerts() {
+    public ResponseEntity<List<SecurityAlertView>> getActiveAlerts() {
         try {
-            List<SecurityAlert> alerts = securityService.getActiveAlerts();
+            List<SecurityAlertView> alerts = securityService.getActiveAlerts();
             return ResponseEntity.ok(alerts);
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
@@ -30,15 +33,21 @@ public class SecurityController {
     }
     
     @GetMapping("/alerts/flashing")
-    public ResponseEntity<List<SecurityAlert>> getFlashingAlerts() {
+    public ResponseEntity<List<SecurityAlertView>> getFlashingAlerts() {
         try {
-            List<SecurityAlert> alerts = securityService.getFlashingAlerts();
+            List<SecurityAlertView> alerts = securityService.getFlashingAlerts();
             return ResponseEntity.ok(alerts);
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
     }
     
+    // Live board for the ops console: a "snapshot" event, then an "alert" event per change
+    @GetMapping(value = "/alerts/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAlerts() {
+        return securityService.streamAlerts();
+    }
+    
     @PostMapping("/alerts")
     public ResponseEntity<SecurityAlert> createAlert(@RequestBody SecurityAlert alert) {
         try {
@@ -49,6 +58,15 @@ public class SecurityController {
         }
     }
     
+    @GetMapping("/alerts/{id}/incident")
+    public ResponseEntity<List<SecurityAlert>> getIncidentAlerts(@PathVariable Long id) {
+        try {
+            return ResponseEntity.ok(securityService.getIncidentAlerts(id));
+        } catch (Exception e) {
+            return ResponseEntity.internalServerError().build();
+        }
+    }
+    
     @PutMapping("/alerts/{id}/status")
     public ResponseEntity<SecurityAlert> updateAlertStatus(
             @PathVariable Long id,
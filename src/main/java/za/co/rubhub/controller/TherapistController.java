@@ -2,13 +2,19 @@ package za.co.rubhub.controller;
 
 import za.co.rubhub.model.Therapist;
 import za.co.rubhub.service.TherapistService;
+import za.co.rubhub.service.TherapistSlotGrid;
+import za.co.rubhub.util.GeoUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindingResult;
 import org.springframework.web.bind.annotation.*;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
 import java.util.List;
 import java.util.Optional;
 
@@ -101,6 +107,60 @@ public class TherapistController {
         }
     }
 
+    // GET - Get the k nearest available therapists
+    @GetMapping("/nearest")
+    public ResponseEntity<List<Therapist>> getNearestTherapists(
+            @RequestParam double longitude,
+            @RequestParam double latitude,
+            @RequestParam(defaultValue = "5") int limit,
+            @RequestParam(defaultValue = "10000") double maxDistance) {
+        if (!GeoUtils.isValidCoordinate(latitude, longitude)
+                || Double.isNaN(maxDistance) || Double.isInfinite(maxDistance) || maxDistance <= 0) {
+            return ResponseEntity.badRequest().build();
+        }
+        try {
+            List<Therapist> therapists = therapistService.findNearestAvailable(latitude, longitude, limit, maxDistance);
+            return ResponseEntity.ok(therapists);
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    // GET - Bookable start times for one therapist over the next 14 days
+    @GetMapping("/{id}/slots")
+    public ResponseEntity<List<LocalDateTime>> getAvailableSlots(
+            @PathVariable Long id,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(defaultValue = "14") int days,
+            @RequestParam(required = false) Long serviceTypeId,
+            @RequestParam(required = false) Integer durationMinutes) {
+        try {
+            return ResponseEntity.ok(therapistService.findAvailableSlots(id, from, days, serviceTypeId, durationMinutes));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
+    // GET - Therapists in a city free on a day, optionally for a session starting at a given time
+    @GetMapping("/slots")
+    public ResponseEntity<List<TherapistSlotGrid.TherapistSlots>> getAvailableSlotsInCity(
+            @RequestParam String city,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date,
+            @RequestParam(required = false) @DateTimeFormat(pattern = "HH:mm") LocalTime time,
+            @RequestParam(required = false) Long serviceTypeId,
+            @RequestParam(required = false) Integer durationMinutes) {
+        try {
+            return ResponseEntity.ok(
+                therapistService.findAvailableSlotsInCity(city, date, time, serviceTypeId, durationMinutes));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
+    }
+
     // POST - Create new therapist
     @PostMapping
     public ResponseEntity<?> createTherapist(@javax.validation.Valid @RequestBody Therapist therapist, BindingResult result) {
@@ -371,14 +431,17 @@ public class TherapistController {
                                                    @RequestParam Double latitude,
                                                    @RequestParam Double longitude) {
         try {
+            if (latitude < -90 || latitude > 90 || longitude < -180 || longitude > 180) {
+                return ResponseEntity.badRequest().body("Invalid latitude/longitude");
+            }
+
             Optional<Therapist> therapistOpt = therapistService.findById(id);
             if (!therapistOpt.isPresent()) {
                 return ResponseEntity.notFound().build();
             }
             
-            // This would require updating the User entity's location
-            // You might need a separate endpoint or modify your model
-            return ResponseEntity.ok("Location update endpoint - implement based on your location model");
+            Therapist updatedTherapist = therapistService.updateLocation(id, latitude, longitude);
+            return ResponseEntity.ok(updatedTherapist);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                 .body("Error updating location: " + e.getMessage());
@@ -0,0 +1,122 @@
+package za.co.rubhub.dto;
+
+import za.co.rubhub.model.ChatMessage;
+
+import java.time.LocalDateTime;
+
+// What chat clients receive for a message; avoids serialising the lazy chat association
+public class ChatMessageView {
+    private Long id;
+    private Long chatId;
+    private String content;
+    private Long senderId;
+    private String senderRole;
+    private String messageType;
+    private String metadata;
+    private Boolean isRead;
+    private LocalDateTime sentAt;
+
+    public ChatMessageView() {
+    }
+
+    public static ChatMessageView from(ChatMessage message, Long chatId) {
+        ChatMessageView view = new ChatMessageView();
+        view.id = message.getId();
+        view.chatId = chatId;
+        view.content = message.getContent();
+        view.senderId = message.getSenderId();
+        view.senderRole = message.getSenderRole();
+        view.messageType = message.getMessageType();
+        view.metadata = message.getMetadata();
+        view.isRead = message.getIsRead();
+        view.sentAt = message.getSentAt();
+        return view;
+    }
+
+    // Views are shared between threads, so a read receipt produces a copy rather than a mutation
+    public ChatMessageView markedRead() {
+        ChatMessageView copy = new ChatMessageView();
+        copy.id = id;
+        copy.chatId = chatId;
+        copy.content = content;
+        copy.senderId = senderId;
+        copy.senderRole = senderRole;
+        copy.messageType = messageType;
+        copy.metadata = metadata;
+        copy.isRead = true;
+        copy.sentAt = sentAt;
+        return copy;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public void setId(Long id) {
+        this.id = id;
+    }
+
+    public Long getChatId() {
+        return chatId;
+    }
+
+    public void setChatId(Long chatId) {
+        this.chatId = chatId;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public void setContent(String content) {
+        this.content = content;
+    }
+
+    public Long getSenderId() {
+        return senderId;
+    }
+
+    public void setSenderId(Long senderId) {
+        this.senderId = senderId;
+    }
+
+    public String getSenderRole() {
+        return senderRole;
+    }
+
+    public void setSenderRole(String senderRole) {
+        this.senderRole = senderRole;
+    }
+
+    public String getMessageType() {
+        return messageType;
+    }
+
+    public void setMessageType(String messageType) {
+        this.messageType = messageType;
+    }
+
+    public String getMetadata() {
+        return metadata;
+    }
+
+    public void setMetadata(String metadata) {
+        this.metadata = metadata;
+    }
+
+    public Boolean getIsRead() {
+        return isRead;
+    }
+
+    public void setIsRead(Boolean isRead) {
+        this.isRead = isRead;
+    }
+
+    public LocalDateTime getSentAt() {
+        return sentAt;
+    }
+
+    public void setSentAt(LocalDateTime sentAt) {
+        this.sentAt = sentAt;
+    }
+}
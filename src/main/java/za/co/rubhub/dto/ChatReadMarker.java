@@ -0,0 +1,34 @@
+package za.co.rubhub.dto;
+
+import java.time.LocalDateTime;
+
+// A user reading a chat: messages from others with ids up to upToId become read
+public class ChatReadMarker {
+    private final Long chatId;
+    private final Long userId;
+    private final long upToId;
+    private final LocalDateTime readAt;
+
+    public ChatReadMarker(Long chatId, Long userId, long upToId, LocalDateTime readAt) {
+        this.chatId = chatId;
+        this.userId = userId;
+        this.upToId = upToId;
+        this.readAt = readAt;
+    }
+
+    public Long getChatId() {
+        return chatId;
+    }
+
+    public Long getUserId() {
+        return userId;
+    }
+
+    public long getUpToId() {
+        return upToId;
+    }
+
+    public LocalDateTime getReadAt() {
+        return readAt;
+    }
+}
@@ -0,0 +1,74 @@
+package za.co.rubhub.dto;
+
+import za.co.rubhub.model.Transaction;
+
+import java.math.BigDecimal;
+
+// One balanced journal line: amount leaves one account and arrives in another
+public class LedgerEntry {
+
+    private final Long fromAccountId;
+    private final Long toAccountId;
+    private final BigDecimal amount;
+    private final Transaction.TransactionType type;
+    private final String description;
+    private final String reference;
+    private final Long bookingId;
+    // Journal transaction_id for a line that must never be posted twice; its unique key refuses a repeat
+    private final String lineId;
+
+    public LedgerEntry(Long fromAccountId, Long toAccountId, BigDecimal amount, Transaction.TransactionType type,
+                       String description, String reference, Long bookingId) {
+        this(fromAccountId, toAccountId, amount, type, description, reference, bookingId, null);
+    }
+
+    public LedgerEntry(Long fromAccountId, Long toAccountId, BigDecimal amount, Transaction.TransactionType type,
+                       String description, String reference, Long bookingId, String lineId) {
+        this.fromAccountId = fromAccountId;
+        this.toAccountId = toAccountId;
+        this.amount = amount;
+        this.type = type;
+        this.description = description;
+        this.reference = reference;
+        this.bookingId = bookingId;
+        this.lineId = lineId;
+    }
+
+    public static LedgerEntry transfer(Long fromAccountId, Long toAccountId, BigDecimal amount,
+                                       String description, String reference) {
+        return new LedgerEntry(fromAccountId, toAccountId, amount, Transaction.TransactionType.TRANSFER,
+                description, reference, null);
+    }
+
+    public Long getFromAccountId() {
+        return fromAccountId;
+    }
+
+    public Long getToAccountId() {
+        return toAccountId;
+    }
+
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public Transaction.TransactionType getType() {
+        return type;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    public Long getBookingId() {
+        return bookingId;
+    }
+
+    public String getLineId() {
+        return lineId;
+    }
+}
@@ -0,0 +1,40 @@
+package za.co.rubhub.dto;
+
+public class LocationPoint {
+    private String id;
+    private Double lat;
+    private Double lng;
+
+    public LocationPoint() {
+    }
+
+    public LocationPoint(String id, Double lat, Double lng) {
+        this.id = id;
+        this.lat = lat;
+        this.lng = lng;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Double getLat() {
+        return lat;
+    }
+
+    public void setLat(Double lat) {
+        this.lat = lat;
+    }
+
+    public Double getLng() {
+        return lng;
+    }
+
+    public void setLng(Double lng) {
+        this.lng = lng;
+    }
+}
@@ -0,0 +1,65 @@
+package za.co.rubhub.dto;
+
+import za.co.rubhub.model.SecurityAlert;
+
+import java.time.LocalDateTime;
+
+// A stored change to a security alert, as carried by SecurityAlertBus
+public class SecurityAlertEvent {
+
+    public enum Kind { RAISED, UPDATED }
+
+    private final Kind kind;
+    private final Long alertId;
+    private final SecurityAlert.AlertType alertType;
+    private final SecurityAlert.AlertStatus status;
+    private final int priority;
+    private final boolean flashing;
+    private final LocalDateTime occurredAt;
+
+    public SecurityAlertEvent(Kind kind, Long alertId, SecurityAlert.AlertType alertType,
+                              SecurityAlert.AlertStatus status, int priority, boolean flashing,
+                              LocalDateTime occurredAt) {
+        this.kind = kind;
+        this.alertId = alertId;
+        this.alertType = alertType;
+        this.status = status;
+        this.priority = priority;
+        this.flashing = flashing;
+        this.occurredAt = occurredAt;
+    }
+
+    public static SecurityAlertEvent of(Kind kind, SecurityAlert alert) {
+        return new SecurityAlertEvent(kind, alert.getId(), alert.getType(), alert.getStatus(),
+                alert.getPriority() != null ? alert.getPriority() : 1,
+                Boolean.TRUE.equals(alert.getIsFlashing()), LocalDateTime.now());
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Long getAlertId() {
+        return alertId;
+    }
+
+    public SecurityAlert.AlertType getAlertType() {
+        return alertType;
+    }
+
+    public SecurityAlert.AlertStatus getStatus() {
+        return status;
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public boolean isFlashing() {
+        return flashing;
+    }
+
+    public LocalDateTime getOccurredAt() {
+        return occurredAt;
+    }
+}
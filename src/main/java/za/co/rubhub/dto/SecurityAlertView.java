@@ -0,0 +1,404 @@
+package za.co.rubhub.dto;
+
+import za.co.rubhub.model.Booking;
+import za.co.rubhub.model.BookingStatus;
+import za.co.rubhub.model.Location;
+import za.co.rubhub.model.SecurityAlert;
+import za.co.rubhub.model.User;
+import org.hibernate.Hibernate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What the ops console shows for an alert; built once on write and shared by
+ * every console. Carries the same fields the alert entity was serialised
+ * with. The user and booking are reduced to summaries, since the board
+ * outlives the session they were loaded in.
+ */
+public class SecurityAlertView {
+    private Long id;
+    private SecurityAlert.AlertType type;
+    private SecurityAlert.AlertStatus status;
+    private Integer priority;
+    private Boolean isFlashing;
+    private LocalDateTime timestamp;
+    private UserSummary user;
+    private BookingSummary request;
+    private Location location;
+    private SecurityAlert.NotificationStatus notifications;
+    private SecurityAlert.SecurityCompany securityCompany;
+    private String description;
+    private String severityLevel;
+    private String incidentCategory;
+    private Boolean streamAvailable;
+    private String recordingUrl;
+    private LocalDateTime recordingStartedAt;
+    private LocalDateTime recordingEndedAt;
+    private Long recordingDuration;
+    private List<SecurityAlert.ActionTaken> actionsTaken;
+    private Boolean isFalseAlarm;
+    private String falseAlarmReason;
+    private Long incidentId;
+    private LocalDateTime acknowledgedAt;
+    private String acknowledgedBy;
+    private LocalDateTime escalatedAt;
+    private String escalatedTo;
+    private Boolean followUpRequired;
+    private String followUpNotes;
+    private LocalDateTime resolvedAt;
+    private String resolutionNotes;
+    private String resolvedBy;
+    private Integer resolutionTimeMinutes;
+    private Integer responseTimeMinutes;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+
+    public SecurityAlertView() {
+    }
+
+    public static SecurityAlertView from(SecurityAlert alert) {
+        SecurityAlertView view = new SecurityAlertView();
+        view.id = alert.getId();
+        view.type = alert.getType();
+        view.status = alert.getStatus();
+        view.priority = alert.getPriority();
+        view.isFlashing = alert.getIsFlashing();
+        view.timestamp = alert.getTimestamp();
+        view.user = UserSummary.from(alert.getUser());
+        view.request = BookingSummary.from(alert.getRequest());
+        view.location = copyOf(alert.getLocation());
+        view.notifications = copyOf(alert.getNotifications());
+        view.securityCompany = copyOf(alert.getSecurityCompany());
+        view.description = alert.getDescription();
+        view.severityLevel = alert.getSeverityLevel();
+        view.incidentCategory = alert.getIncidentCategory();
+        view.streamAvailable = alert.getStreamAvailable();
+        view.recordingUrl = alert.getRecordingUrl();
+        view.recordingStartedAt = alert.getRecordingStartedAt();
+        view.recordingEndedAt = alert.getRecordingEndedAt();
+        view.recordingDuration = alert.getRecordingDuration();
+        view.actionsTaken = copyOf(alert.getActionsTaken());
+        view.isFalseAlarm = alert.getIsFalseAlarm();
+        view.falseAlarmReason = alert.getFalseAlarmReason();
+        view.incidentId = alert.getIncidentId();
+        view.acknowledgedAt = alert.getAcknowledgedAt();
+        view.acknowledgedBy = alert.getAcknowledgedBy();
+        view.escalatedAt = alert.getEscalatedAt();
+        view.escalatedTo = alert.getEscalatedTo();
+        view.followUpRequired = alert.getFollowUpRequired();
+        view.followUpNotes = alert.getFollowUpNotes();
+        view.resolvedAt = alert.getResolvedAt();
+        view.resolutionNotes = alert.getResolutionNotes();
+        view.resolvedBy = alert.getResolvedBy();
+        view.resolutionTimeMinutes = alert.getResolutionTimeMinutes();
+        view.responseTimeMinutes = alert.getResponseTimeMinutes();
+        view.createdAt = alert.getCreatedAt();
+        view.updatedAt = alert.getUpdatedAt();
+        return view;
+    }
+
+    private static Location copyOf(Location location) {
+        if (location == null) {
+            return null;
+        }
+        Location copy = new Location(location.getAddress(), location.getCity(),
+                location.getProvince(), location.getPostalCode());
+        copy.setLatitude(location.getLatitude());
+        copy.setLongitude(location.getLongitude());
+        return copy;
+    }
+
+    private static SecurityAlert.NotificationStatus copyOf(SecurityAlert.NotificationStatus notifications) {
+        if (notifications == null) {
+            return null;
+        }
+        return new SecurityAlert.NotificationStatus(notifications.getEmergencyContacts(),
+                notifications.getSecurityCompany(), notifications.getSaps(), notifications.getSapsNotifiedAt(),
+                notifications.getSapsReference(), notifications.getEmergencyContactsCount(),
+                notifications.getEmergencyContactsNotifiedAt(), notifications.getSecurityCompanyNotifiedAt(),
+                notifications.getAdminNotified(), notifications.getAdminNotifiedAt(),
+                notifications.getCustomerNotified(), notifications.getCustomerNotifiedAt(),
+                notifications.getTherapistNotified(), notifications.getTherapistNotifiedAt());
+    }
+
+    private static SecurityAlert.SecurityCompany copyOf(SecurityAlert.SecurityCompany company) {
+        if (company == null) {
+            return null;
+        }
+        return new SecurityAlert.SecurityCompany(company.getName(), company.getContact(), company.getEmail(),
+                company.getResponseTime(), company.getAddress(), company.getPhone(), company.getLicenseNumber(),
+                company.getContactPerson());
+    }
+
+    // An element collection that was never loaded is left out rather than loaded outside its session
+    private static List<SecurityAlert.ActionTaken> copyOf(List<SecurityAlert.ActionTaken> actions) {
+        if (actions == null || !Hibernate.isInitialized(actions)) {
+            return null;
+        }
+        List<SecurityAlert.ActionTaken> copies = new ArrayList<>(actions.size());
+        for (SecurityAlert.ActionTaken action : actions) {
+            copies.add(new SecurityAlert.ActionTaken(action.getAction(), action.getTimestamp(),
+                    action.getPerformedBy(), action.getNotes(), action.getDurationMinutes(),
+                    action.getOutcome(), action.getPriority()));
+        }
+        return copies;
+    }
+
+    public Long getId() {
+        return id;
+    }
+
+    public SecurityAlert.AlertType getType() {
+        return type;
+    }
+
+    public SecurityAlert.AlertStatus getStatus() {
+        return status;
+    }
+
+    public Integer getPriority() {
+        return priority;
+    }
+
+    public Boolean getIsFlashing() {
+        return isFlashing;
+    }
+
+    public LocalDateTime getTimestamp() {
+        return timestamp;
+    }
+
+    public UserSummary getUser() {
+        return user;
+    }
+
+    public BookingSummary getRequest() {
+        return request;
+    }
+
+    public Location getLocation() {
+        return location;
+    }
+
+    public SecurityAlert.NotificationStatus getNotifications() {
+        return notifications;
+    }
+
+    public SecurityAlert.SecurityCompany getSecurityCompany() {
+        return securityCompany;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getSeverityLevel() {
+        return severityLevel;
+    }
+
+    public String getIncidentCategory() {
+        return incidentCategory;
+    }
+
+    public Boolean getStreamAvailable() {
+        return streamAvailable;
+    }
+
+    public String getRecordingUrl() {
+        return recordingUrl;
+    }
+
+    public LocalDateTime getRecordingStartedAt() {
+        return recordingStartedAt;
+    }
+
+    public LocalDateTime getRecordingEndedAt() {
+        return recordingEndedAt;
+    }
+
+    public Long getRecordingDuration() {
+        return recordingDuration;
+    }
+
+    public List<SecurityAlert.ActionTaken> getActionsTaken() {
+        return actionsTaken;
+    }
+
+    public Boolean getIsFalseAlarm() {
+        return isFalseAlarm;
+    }
+
+    public String getFalseAlarmReason() {
+        return falseAlarmReason;
+    }
+
+    public Long getIncidentId() {
+        return incidentId;
+    }
+
+    public LocalDateTime getAcknowledgedAt() {
+        return acknowledgedAt;
+    }
+
+    public String getAcknowledgedBy() {
+        return acknowledgedBy;
+    }
+
+    public LocalDateTime getEscalatedAt() {
+        return escalatedAt;
+    }
+
+    public String getEscalatedTo() {
+        return escalatedTo;
+    }
+
+    public Boolean getFollowUpRequired() {
+        return followUpRequired;
+    }
+
+    public String getFollowUpNotes() {
+        return followUpNotes;
+    }
+
+    public LocalDateTime getResolvedAt() {
+        return resolvedAt;
+    }
+
+    public String getResolutionNotes() {
+        return resolutionNotes;
+    }
+
+    public String getResolvedBy() {
+        return resolvedBy;
+    }
+
+    public Integer getResolutionTimeMinutes() {
+        return resolutionTimeMinutes;
+    }
+
+    public Integer getResponseTimeMinutes() {
+        return responseTimeMinutes;
+    }
+
+    public LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public LocalDateTime getUpdatedAt() {
+        return updatedAt;
+    }
+
+    // The alert's user; only the id when the association was not loaded with the alert
+    public static class UserSummary {
+        private Long id;
+        private String firstName;
+        private String lastName;
+        private String email;
+        private String phone;
+        private User.UserType userType;
+
+        static UserSummary from(User user) {
+            if (user == null) {
+                return null;
+            }
+            UserSummary summary = new UserSummary();
+            summary.id = user.getId();
+            if (Hibernate.isInitialized(user)) {
+                summary.firstName = user.getFirstName();
+                summary.lastName = user.getLastName();
+                summary.email = user.getEmail();
+                summary.phone = user.getPhone();
+                summary.userType = user.getUserType();
+            }
+            return summary;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getFirstName() {
+            return firstName;
+        }
+
+        public String getLastName() {
+            return lastName;
+        }
+
+        public String getEmail() {
+            return email;
+        }
+
+        public String getPhone() {
+            return phone;
+        }
+
+        public User.UserType getUserType() {
+            return userType;
+        }
+    }
+
+    // The booking the alert was raised on; only the id when it was not loaded with the alert
+    public static class BookingSummary {
+        private Long id;
+        private String bookingReference;
+        private LocalDateTime bookingDate;
+        private Integer durationMinutes;
+        private BookingStatus status;
+        private String address;
+        private String customerName;
+        private String customerPhone;
+
+        static BookingSummary from(Booking booking) {
+            if (booking == null) {
+                return null;
+            }
+            BookingSummary summary = new BookingSummary();
+            summary.id = booking.getId();
+            if (Hibernate.isInitialized(booking)) {
+                summary.bookingReference = booking.getBookingReference();
+                summary.bookingDate = booking.getBookingDate();
+                summary.durationMinutes = booking.getDurationMinutes();
+                summary.status = booking.getStatus();
+                summary.address = booking.getAddress();
+                summary.customerName = booking.getCustomerName();
+                summary.customerPhone = booking.getCustomerPhone();
+            }
+            return summary;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public String getBookingReference() {
+            return bookingReference;
+        }
+
+        public LocalDateTime getBookingDate() {
+            return bookingDate;
+        }
+
+        public Integer getDurationMinutes() {
+            return durationMinutes;
+        }
+
+        public BookingStatus getStatus() {
+            return status;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public String getCustomerName() {
+            return customerName;
+        }
+
+        public String getCustomerPhone() {
+            return customerPhone;
+        }
+    }
+}
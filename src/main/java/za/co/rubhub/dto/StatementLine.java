@@ -0,0 +1,65 @@
+package za.co.rubhub.dto;
+
+import za.co.rubhub.model.Transaction;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// One line of an account statement: a signed movement and the balance straight after it
+public class StatementLine {
+
+    private final String transactionId;
+    private final LocalDateTime transactionDate;
+    private final Transaction.TransactionType type;
+    private final String description;
+    private final String reference;
+    private final String counterpartyAccountId;
+    private final BigDecimal amount;
+    private final BigDecimal balance;
+
+    public StatementLine(String transactionId, LocalDateTime transactionDate, Transaction.TransactionType type,
+                         String description, String reference, String counterpartyAccountId,
+                         BigDecimal amount, BigDecimal balance) {
+        this.transactionId = transactionId;
+        this.transactionDate = transactionDate;
+        this.type = type;
+        this.description = description;
+        this.reference = reference;
+        this.counterpartyAccountId = counterpartyAccountId;
+        this.amount = amount;
+        this.balance = balance;
+    }
+
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    public LocalDateTime getTransactionDate() {
+        return transactionDate;
+    }
+
+    public Transaction.TransactionType getType() {
+        return type;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getReference() {
+        return reference;
+    }
+
+    public String getCounterpartyAccountId() {
+        return counterpartyAccountId;
+    }
+
+    // Positive for money in, negative for money out
+    public BigDecimal getAmount() {
+        return amount;
+    }
+
+    public BigDecimal getBalance() {
+        return balance;
+    }
+}
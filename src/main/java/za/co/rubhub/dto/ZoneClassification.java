@@ -0,0 +1,32 @@
+package za.co.rubhub.dto;
+
+import java.util.Set;
+
+public class ZoneClassification {
+    private String id;
+    private Set<String> zoneTypes;
+
+    public ZoneClassification() {
+    }
+
+    public ZoneClassification(String id, Set<String> zoneTypes) {
+        this.id = id;
+        this.zoneTypes = zoneTypes;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Set<String> getZoneTypes() {
+        return zoneTypes;
+    }
+
+    public void setZoneTypes(Set<String> zoneTypes) {
+        this.zoneTypes = zoneTypes;
+    }
+}
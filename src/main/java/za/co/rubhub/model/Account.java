@@ -6,7 +6,9 @@ import java.time.LocalDateTime;
 import za.co.rubhub.model.*;
 
 @Entity
-@Table(name = "accounts")
+@Table(name = "accounts",
+       uniqueConstraints = @UniqueConstraint(name = "uk_account_shard", columnNames = {"shard_of", "shard_index"}),
+       indexes = @Index(name = "idx_account_shard_of", columnList = "shard_of"))
 public class Account {
     
     @Id
@@ -29,12 +31,25 @@ public class Account {
     @Column(name = "routing_number", length = 20)
     private String routingNumber;
     
+    // Cached total of the account's journal entries; LedgerService moves it with atomic deltas
     @Column(name = "balance", precision = 19, scale = 4)
     private BigDecimal balance = BigDecimal.ZERO;
     
+    // Bumped by every ledger delta too, so an entity saved from a stale read fails instead of losing it
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private Long version = 0L;
+    
     @Column(name = "is_active")
     private Boolean isActive = true;
     
+    // Set on the extra rows a hot house account is spread over; the logical balance is the primary plus its shards
+    @Column(name = "shard_of")
+    private Long shardOf;
+    
+    @Column(name = "shard_index")
+    private Integer shardIndex;
+    
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
     
@@ -103,9 +118,18 @@ public class Account {
     public BigDecimal getBalance() { return balance; }
     public void setBalance(BigDecimal balance) { this.balance = balance; }
     
+    public Long getVersion() { return version; }
+    public void setVersion(Long version) { this.version = version; }
+    
     public Boolean getIsActive() { return isActive; }
     public void setIsActive(Boolean isActive) { this.isActive = isActive; }
     
+    public Long getShardOf() { return shardOf; }
+    public void setShardOf(Long shardOf) { this.shardOf = shardOf; }
+    
+    public Integer getShardIndex() { return shardIndex; }
+    public void setShardIndex(Integer shardIndex) { this.shardIndex = shardIndex; }
+    
     public LocalDateTime getCreatedAt() { return createdAt; }
     public void setCreatedAt(LocalDateTime createdAt) { this.createdAt = createdAt; }
     
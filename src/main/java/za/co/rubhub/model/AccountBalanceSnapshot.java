@@ -0,0 +1,74 @@
+package za.co.rubhub.model;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// An account's balance at the end of a day on which it moved, with that day's ledger totals.
+// Days without movement have no row; the latest earlier row still holds
+@Entity
+@Table(name = "account_balance_snapshots",
+       uniqueConstraints = @UniqueConstraint(
+           name = "uk_account_balance_snapshot",
+           columnNames = {"account_id", "snapshot_date"}))
+public class AccountBalanceSnapshot {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "account_id", nullable = false)
+    private Long accountId;
+    
+    @Column(name = "snapshot_date", nullable = false)
+    private LocalDate snapshotDate;
+    
+    @Column(name = "closing_balance", precision = 19, scale = 4, nullable = false)
+    private BigDecimal closingBalance = BigDecimal.ZERO;
+    
+    @Column(name = "credits", precision = 19, scale = 4, nullable = false)
+    private BigDecimal credits = BigDecimal.ZERO;
+    
+    @Column(name = "debits", precision = 19, scale = 4, nullable = false)
+    private BigDecimal debits = BigDecimal.ZERO;
+    
+    @Column(name = "entry_count", nullable = false)
+    private Long entryCount = 0L;
+    
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+    
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        this.updatedAt = LocalDateTime.now();
+    }
+    
+    public AccountBalanceSnapshot() {}
+    
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public Long getAccountId() { return accountId; }
+    public void setAccountId(Long accountId) { this.accountId = accountId; }
+    
+    public LocalDate getSnapshotDate() { return snapshotDate; }
+    public void setSnapshotDate(LocalDate snapshotDate) { this.snapshotDate = snapshotDate; }
+    
+    public BigDecimal getClosingBalance() { return closingBalance; }
+    public void setClosingBalance(BigDecimal closingBalance) { this.closingBalance = closingBalance; }
+    
+    public BigDecimal getCredits() { return credits; }
+    public void setCredits(BigDecimal credits) { this.credits = credits; }
+    
+    public BigDecimal getDebits() { return debits; }
+    public void setDebits(BigDecimal debits) { this.debits = debits; }
+    
+    public Long getEntryCount() { return entryCount; }
+    public void setEntryCount(Long entryCount) { this.entryCount = entryCount; }
+    
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -4,11 +4,18 @@ import javax.persistence.*;
 import javax.validation.constraints.*;
 import java.time.LocalDateTime;
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 @Entity
-@Table(name = "bookings")
+@Table(name = "bookings",
+       indexes = {
+           @Index(name = "idx_bookings_booking_date_id", columnList = "booking_date, id"),
+           @Index(name = "idx_bookings_payout", columnList = "payout_processed, completed_at, therapist_id")
+       })
 public class Booking {
     
+    public static final BigDecimal RUBHUB_FEE_RATE = new BigDecimal("0.12");
+    
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
@@ -97,6 +104,22 @@ public class Booking {
     @Column(name = "cancellation_reason", length = 200)
     private String cancellationReason;
     
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+    
+    // Set once the booking has been counted in booking_daily_rollups. Only the rollup's own
+    // UPDATE queries change it, so saving a stale entity can never clear it and count the booking twice
+    @Column(name = "analytics_rolled_up", updatable = false)
+    private Boolean analyticsRolledUp = false;
+    
+    // Set in the same transaction that records the booking's therapist payout, by PayoutEngine's guarded
+    // UPDATE only; a stale entity save must not clear it and pay the booking a second time
+    @Column(name = "payout_processed", updatable = false)
+    private Boolean payoutProcessed = false;
+    
+    @Column(name = "payout_date", updatable = false)
+    private LocalDateTime payoutDate;
+    
     @Column(name = "created_at", nullable = false, updatable = false)
     private LocalDateTime createdAt;
     
@@ -183,9 +206,14 @@ public class Booking {
     public void completeBooking() {
         this.status = BookingStatus.COMPLETED;
         this.paymentStatus = "PAID";
+        this.completedAt = LocalDateTime.now();
         this.updatedAt = LocalDateTime.now();
     }
     
+    public boolean isCompletedAndPaid() {
+        return this.status == BookingStatus.COMPLETED && "PAID".equalsIgnoreCase(this.paymentStatus);
+    }
+    
     public boolean isPending() {
         return "PENDING".equals(this.status);
     }
@@ -276,13 +304,15 @@ public class Booking {
     public void setUser(User customer) { this.customer = customer; }
 
     public BigDecimal getTherapistEarnings() {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException("Unimplemented method 'getTherapistEarnings'");
+        return totalAmount != null ? totalAmount.subtract(rubhubFeeOn(totalAmount)) : BigDecimal.ZERO;
     }
 
     public BigDecimal getRubhubServiceFee() {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException("Unimplemented method 'getRubhubServiceFee'");
+        return totalAmount != null ? rubhubFeeOn(totalAmount) : BigDecimal.ZERO;
+    }
+    
+    public static BigDecimal rubhubFeeOn(BigDecimal amount) {
+        return amount.multiply(RUBHUB_FEE_RATE).setScale(2, RoundingMode.HALF_UP);
     }
 
     public Object getScheduledTime() {
@@ -315,20 +345,21 @@ public class Booking {
         throw new UnsupportedOperationException("Unimplemented method 'setPreparationTime'");
     }
 
-    public void setPayoutProcessed(boolean b) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException("Unimplemented method 'setPayoutProcessed'");
-    }
+    public Boolean getPayoutProcessed() { return payoutProcessed; }
+    public void setPayoutProcessed(Boolean payoutProcessed) { this.payoutProcessed = payoutProcessed; }
+    
+    public LocalDateTime getPayoutDate() { return payoutDate; }
+    public void setPayoutDate(LocalDateTime payoutDate) { this.payoutDate = payoutDate; }
 
     public void calculateTotals() {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException("Unimplemented method 'calculateTotals'");
+        calculateTotal();
     }
 
-	public Object getCompletedAt() {
-		// TODO Auto-generated method stub
-		throw new UnsupportedOperationException("Unimplemented method 'getCompletedAt'");
-	}
+    public LocalDateTime getCompletedAt() { return completedAt; }
+    public void setCompletedAt(LocalDateTime completedAt) { this.completedAt = completedAt; }
+    
+    public Boolean getAnalyticsRolledUp() { return analyticsRolledUp; }
+    public void setAnalyticsRolledUp(Boolean analyticsRolledUp) { this.analyticsRolledUp = analyticsRolledUp; }
 
     public void setActualStartTime(LocalDateTime now) {
         // TODO Auto-generated method stub
@@ -0,0 +1,83 @@
+package za.co.rubhub.model;
+
+import javax.persistence.*;
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// One row per day x therapist x service type, summing completed and paid bookings.
+// A therapist or service id of 0 means the booking had none.
+@Entity
+@Table(name = "booking_daily_rollups",
+       uniqueConstraints = @UniqueConstraint(
+           name = "uk_booking_daily_rollup",
+           columnNames = {"rollup_date", "therapist_id", "service_type_id"}),
+       indexes = @Index(name = "idx_booking_daily_rollup_date", columnList = "rollup_date"))
+public class BookingDailyRollup {
+    
+    public static final long NONE = 0L;
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "rollup_date", nullable = false)
+    private LocalDate rollupDate;
+    
+    @Column(name = "therapist_id", nullable = false)
+    private Long therapistId;
+    
+    @Column(name = "service_type_id", nullable = false)
+    private Long serviceTypeId;
+    
+    @Column(name = "booking_count", nullable = false)
+    private Long bookingCount = 0L;
+    
+    @Column(name = "revenue", precision = 19, scale = 2, nullable = false)
+    private BigDecimal revenue = BigDecimal.ZERO;
+    
+    @Column(name = "rating_total", nullable = false)
+    private Long ratingTotal = 0L;
+    
+    @Column(name = "rating_count", nullable = false)
+    private Long ratingCount = 0L;
+    
+    @Column(name = "updated_at", nullable = false)
+    private LocalDateTime updatedAt;
+    
+    @PrePersist
+    @PreUpdate
+    protected void onSave() {
+        this.updatedAt = LocalDateTime.now();
+    }
+    
+    public BookingDailyRollup() {}
+    
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    
+    public LocalDate getRollupDate() { return rollupDate; }
+    public void setRollupDate(LocalDate rollupDate) { this.rollupDate = rollupDate; }
+    
+    public Long getTherapistId() { return therapistId; }
+    public void setTherapistId(Long therapistId) { this.therapistId = therapistId; }
+    
+    public Long getServiceTypeId() { return serviceTypeId; }
+    public void setServiceTypeId(Long serviceTypeId) { this.serviceTypeId = serviceTypeId; }
+    
+    public Long getBookingCount() { return bookingCount; }
+    public void setBookingCount(Long bookingCount) { this.bookingCount = bookingCount; }
+    
+    public BigDecimal getRevenue() { return revenue; }
+    public void setRevenue(BigDecimal revenue) { this.revenue = revenue; }
+    
+    public Long getRatingTotal() { return ratingTotal; }
+    public void setRatingTotal(Long ratingTotal) { this.ratingTotal = ratingTotal; }
+    
+    public Long getRatingCount() { return ratingCount; }
+    public void setRatingCount(Long ratingCount) { this.ratingCount = ratingCount; }
+    
+    public LocalDateTime getUpdatedAt() { return updatedAt; }
+    public void setUpdatedAt(LocalDateTime updatedAt) { this.updatedAt = updatedAt; }
+}
@@ -6,7 +6,8 @@ import java.time.LocalDateTime;
 import java.math.BigDecimal;
 
 @Entity
-@Table(name = "massage_requests")
+@Table(name = "massage_requests",
+       indexes = @Index(name = "idx_massage_requests_preferred_time_id", columnList = "preferred_date_time, id"))
 public class MassageRequest {
     
     @Id
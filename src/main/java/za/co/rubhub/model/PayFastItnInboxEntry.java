@@ -0,0 +1,62 @@
+package za.co.rubhub.model;
+
+import javax.persistence.*;
+import lombok.*;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// One PayFast ITN as received; a notification PayFast resends lands on the same (pf_payment_id, payment_status) row
+@Entity
+@Table(name = "payfast_itn_inbox",
+       uniqueConstraints = @UniqueConstraint(name = "uk_payfast_itn", columnNames = {"pf_payment_id", "payment_status"}),
+       indexes = @Index(name = "idx_payfast_itn_status", columnList = "status, id"))
+@Getter
+@Setter
+@ToString(exclude = "payload")
+@NoArgsConstructor
+public class PayFastItnInboxEntry {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "pf_payment_id", nullable = false, length = 100)
+    private String pfPaymentId;
+    
+    // Our Payment.transactionId
+    @Column(name = "m_payment_id", nullable = false, length = 100)
+    private String mPaymentId;
+    
+    @Column(name = "payment_status", nullable = false, length = 20)
+    private String paymentStatus;
+    
+    @Column(name = "amount_gross", precision = 12, scale = 2)
+    private BigDecimal amountGross;
+    
+    // Every posted field as JSON, for audit and replay
+    @Column(name = "payload", columnDefinition = "TEXT")
+    private String payload;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private InboxStatus status = InboxStatus.RECEIVED;
+    
+    @Column(name = "attempts", nullable = false)
+    private Integer attempts = 0;
+    
+    @Column(name = "received_at", nullable = false)
+    private LocalDateTime receivedAt;
+    
+    @Column(name = "claimed_at")
+    private LocalDateTime claimedAt;
+    
+    @Column(name = "processed_at")
+    private LocalDateTime processedAt;
+    
+    @Column(name = "failure_reason", length = 500)
+    private String failureReason;
+    
+    public enum InboxStatus {
+        RECEIVED, PROCESSING, APPLIED, IGNORED, FAILED
+    }
+}
@@ -0,0 +1,59 @@
+package za.co.rubhub.model;
+
+import javax.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.UpdateTimestamp;
+import java.time.LocalDateTime;
+
+// One payout window. A run left RUNNING was interrupted and is resumed on the next start
+@Entity
+@Table(name = "payout_runs",
+       uniqueConstraints = @UniqueConstraint(name = "uk_payout_run_period", columnNames = {"period_start", "period_end"}),
+       indexes = @Index(name = "idx_payout_run_status", columnList = "status"))
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+public class PayoutRun {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "period_start", nullable = false)
+    private LocalDateTime periodStart;
+    
+    @Column(name = "period_end", nullable = false)
+    private LocalDateTime periodEnd;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private RunStatus status = RunStatus.RUNNING;
+    
+    @Column(name = "started_at")
+    private LocalDateTime startedAt;
+    
+    @Column(name = "finished_at")
+    private LocalDateTime finishedAt;
+    
+    @Column(name = "attempts")
+    private Integer attempts = 0;
+    
+    @CreationTimestamp
+    @Column(name = "created_at", updatable = false)
+    private LocalDateTime createdAt;
+    
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    public PayoutRun(LocalDateTime periodStart, LocalDateTime periodEnd) {
+        this.periodStart = periodStart;
+        this.periodEnd = periodEnd;
+    }
+    
+    public enum RunStatus {
+        RUNNING, COMPLETED, FAILED
+    }
+}
@@ -0,0 +1,68 @@
+package za.co.rubhub.model;
+
+import javax.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.UpdateTimestamp;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Checkpoint for one therapist within a payout run; totals grow by one committed chunk at a time
+@Entity
+@Table(name = "payout_run_partitions",
+       uniqueConstraints = @UniqueConstraint(name = "uk_payout_partition", columnNames = {"run_id", "therapist_id"}),
+       indexes = @Index(name = "idx_payout_partition_run_status", columnList = "run_id, status"))
+@Getter
+@Setter
+@ToString
+@NoArgsConstructor
+public class PayoutRunPartition {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "run_id", nullable = false)
+    private Long runId;
+    
+    @Column(name = "therapist_id", nullable = false)
+    private Long therapistId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 20)
+    private PartitionStatus status = PartitionStatus.PENDING;
+    
+    // Highest booking id committed so far
+    @Column(name = "last_booking_id")
+    private Long lastBookingId = 0L;
+    
+    @Column(name = "chunks_committed")
+    private Integer chunksCommitted = 0;
+    
+    @Column(name = "bookings_paid")
+    private Integer bookingsPaid = 0;
+    
+    @Column(name = "booking_amount", precision = 12, scale = 2)
+    private BigDecimal bookingAmount = BigDecimal.ZERO;
+    
+    @Column(name = "therapist_amount", precision = 12, scale = 2)
+    private BigDecimal therapistAmount = BigDecimal.ZERO;
+    
+    @Column(name = "rubhub_fees", precision = 12, scale = 2)
+    private BigDecimal rubhubFees = BigDecimal.ZERO;
+    
+    @Column(name = "failure_reason", length = 500)
+    private String failureReason;
+    
+    @UpdateTimestamp
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    public PayoutRunPartition(Long runId, Long therapistId) {
+        this.runId = runId;
+        this.therapistId = therapistId;
+    }
+    
+    public enum PartitionStatus {
+        PENDING, DONE, FAILED
+    }
+}
@@ -137,6 +137,10 @@ public class SecurityAlert {
     @Column(name = "response_time_minutes")
     private Integer responseTimeMinutes;
     
+    // Set on alerts clustered as duplicates: the id of the first alert of their incident
+    @Column(name = "incident_id")
+    private Long incidentId;
+    
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
@@ -192,7 +196,8 @@ public class SecurityAlert {
     @Builder
     public static class NotificationStatus {
         
-        @Column(name = "emergency_contacts_notified")
+        // Owned by SecurityAlertNotifier's conditional UPDATE; an entity save of a stale copy must not undo the claim
+        @Column(name = "emergency_contacts_notified", updatable = false)
         @Builder.Default
         private Boolean emergencyContacts = false;
         
@@ -214,7 +219,7 @@ public class SecurityAlert {
         @Builder.Default
         private Integer emergencyContactsCount = 0;
         
-        @Column(name = "emergency_contacts_notified_at")
+        @Column(name = "emergency_contacts_notified_at", updatable = false)
         private LocalDateTime emergencyContactsNotifiedAt;
         
         @Column(name = "security_company_notified_at")
@@ -400,7 +405,8 @@ public class SecurityAlert {
         @Index(name = "idx_security_alert_suburb", columnList = "suburb"),
         @Index(name = "idx_security_alert_created_at", columnList = "created_at"),
         @Index(name = "idx_security_alert_status_timestamp", columnList = "status, timestamp"),
-        @Index(name = "idx_security_alert_priority_status", columnList = "priority, status")
+        @Index(name = "idx_security_alert_priority_status", columnList = "priority, status"),
+        @Index(name = "idx_security_alert_incident_id", columnList = "incident_id")
     })
     static class SecurityAlertTableIndices {}
 }
\ No newline at end of file
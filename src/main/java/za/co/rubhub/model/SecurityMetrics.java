@@ -3,6 +3,7 @@ package za.co.rubhub.model;
 import javax.persistence.*;
 import lombok.*;
 import za.co.rubhub.model.*;
+import org.hibernate.annotations.ColumnTransformer;
 import org.hibernate.annotations.CreationTimestamp;
 import java.time.LocalDateTime;
 
@@ -61,14 +62,33 @@ public class SecurityMetrics {
     @Builder.Default
     private Double averageResolutionTime = 0.0;
     
+    // Percentiles in minutes, from a streaming sketch with 1% relative error
+    @Column(name = "response_time_p50")
+    private Double responseTimeP50;
+    
+    @Column(name = "response_time_p90")
+    private Double responseTimeP90;
+    
+    @Column(name = "response_time_p99")
+    private Double responseTimeP99;
+    
+    @Column(name = "resolution_time_p50")
+    private Double resolutionTimeP50;
+    
+    @Column(name = "resolution_time_p90")
+    private Double resolutionTimeP90;
+    
     @Column(name = "response_time_by_alert_type", columnDefinition = "jsonb")
+    @ColumnTransformer(write = "CAST(? AS jsonb)")
     private String responseTimeByAlertType; // JSON: {"PANIC_BUTTON": 15.5, "LOCATION_ANOMALY": 8.2}
     
     // Geographic Distribution
     @Column(name = "alerts_by_area", columnDefinition = "jsonb")
+    @ColumnTransformer(write = "CAST(? AS jsonb)")
     private String alertsByArea; // JSON: {"Sandton": 5, "Pretoria": 3}
     
     @Column(name = "alerts_by_city", columnDefinition = "jsonb")
+    @ColumnTransformer(write = "CAST(? AS jsonb)")
     private String alertsByCity; // JSON: {"Johannesburg": 10, "Cape Town": 5}
     
     // Success Metrics
@@ -103,10 +123,12 @@ public class SecurityMetrics {
     
     // Alert Type Distribution
     @Column(name = "alerts_by_type", columnDefinition = "jsonb")
+    @ColumnTransformer(write = "CAST(? AS jsonb)")
     private String alertsByType; // JSON: {"PANIC_BUTTON": 20, "LOCATION_ANOMALY": 15}
     
     // Priority Distribution
     @Column(name = "alerts_by_priority", columnDefinition = "jsonb")
+    @ColumnTransformer(write = "CAST(? AS jsonb)")
     private String alertsByPriority; // JSON: {"1": 5, "2": 10, "3": 8, "4": 4, "5": 3}
     
     // Time-based Metrics
@@ -121,6 +143,7 @@ public class SecurityMetrics {
     
     // User Metrics
     @Column(name = "alerts_by_user_type", columnDefinition = "jsonb")
+    @ColumnTransformer(write = "CAST(? AS jsonb)")
     private String alertsByUserType; // JSON: {"CUSTOMER": 25, "THERAPIST": 15}
     
     @Column(name = "repeat_alert_users")
@@ -3,7 +3,6 @@ package za.co.rubhub.model;
 import javax.persistence.*;
 import java.math.BigDecimal;
 import java.time.DayOfWeek;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.util.ArrayList;
@@ -66,6 +65,12 @@ public class Therapist {
     @Column(name = "travel_radius")
     private Integer travelRadius; // in kilometers
     
+    @Column(name = "current_latitude")
+    private Double currentLatitude;
+    
+    @Column(name = "current_longitude")
+    private Double currentLongitude;
+    
     @Column(name = "has_vehicle")
     private Boolean hasVehicle = false;
     
@@ -363,6 +368,22 @@ public class Therapist {
         this.travelRadius = travelRadius; 
     }
     
+    public Double getCurrentLatitude() { 
+        return currentLatitude; 
+    }
+    
+    public void setCurrentLatitude(Double currentLatitude) { 
+        this.currentLatitude = currentLatitude; 
+    }
+    
+    public Double getCurrentLongitude() { 
+        return currentLongitude; 
+    }
+    
+    public void setCurrentLongitude(Double currentLongitude) { 
+        this.currentLongitude = currentLongitude; 
+    }
+    
     public Boolean getHasVehicle() { 
         return hasVehicle; 
     }
@@ -583,6 +604,11 @@ public class Therapist {
 
     // Add this method to your Therapist.java model
 public boolean isAvailableForBooking() {
+    return isBookable() && isWorkingAt(LocalDateTime.now());
+}
+
+// The checks that do not depend on when the booking is for
+public boolean isBookable() {
     // Check basic availability
     if (!Boolean.TRUE.equals(this.isAvailable)) {
         return false;
@@ -598,32 +624,6 @@ public boolean isAvailableForBooking() {
         return false;
     }
     
-    // Check if therapist has working hours set
-    if (this.availableFrom == null || this.availableTo == null) {
-        return false;
-    }
-    
-    // Check if within working hours
-    LocalTime now = LocalTime.now();
-    try {
-        LocalTime start = LocalTime.parse(this.availableFrom);
-        LocalTime end = LocalTime.parse(this.availableTo);
-        
-        if (now.isBefore(start) || now.isAfter(end)) {
-            return false;
-        }
-    } catch (Exception e) {
-        // If time parsing fails, assume available
-    }
-    
-    // Check if today is a working day
-    if (this.workingDays != null && !this.workingDays.isEmpty()) {
-        String today = DayOfWeek.from(LocalDate.now()).toString().substring(0, 3);
-        if (!this.workingDays.contains(today)) {
-            return false;
-        }
-    }
-    
     // Check background check status
     if (!"APPROVED".equals(this.backgroundCheckStatus)) {
         return false;
@@ -640,7 +640,54 @@ public boolean isAvailableForBooking() {
         return false;
     }
     
-    // All checks passed
+    return true;
+}
+
+public boolean isWorkingAt(LocalDateTime at) {
+    return isWithinWorkingHours(this.availableFrom, this.availableTo, this.workingDays, at);
+}
+
+// Static so in-memory therapist snapshots apply the same rule without holding the entity
+public static boolean isWithinWorkingHours(String availableFrom, String availableTo, String workingDays,
+                                           LocalDateTime at) {
+    // Check if therapist has working hours set
+    if (availableFrom == null || availableTo == null) {
+        return false;
+    }
+    
+    // Check if within working hours
+    LocalTime time = at.toLocalTime();
+    LocalDateTime shiftDay = at;
+    try {
+        LocalTime start = LocalTime.parse(availableFrom);
+        LocalTime end = LocalTime.parse(availableTo);
+        
+        if (end.isAfter(start)) {
+            if (time.isBefore(start) || time.isAfter(end)) {
+                return false;
+            }
+        } else {
+            // Hours that run past midnight, e.g. 18:00 to 02:00
+            if (time.isBefore(start) && time.isAfter(end)) {
+                return false;
+            }
+            // The early-morning part belongs to the shift that started the day before
+            if (time.isBefore(start)) {
+                shiftDay = at.minusDays(1);
+            }
+        }
+    } catch (Exception e) {
+        // If time parsing fails, assume available
+    }
+    
+    // Check if the shift falls on a working day; stored as e.g. "Mon,Tue,Wed"
+    if (workingDays != null && !workingDays.isEmpty()) {
+        String day = DayOfWeek.from(shiftDay).toString().substring(0, 3);
+        if (!workingDays.toUpperCase().contains(day)) {
+            return false;
+        }
+    }
+    
     return true;
 }
 
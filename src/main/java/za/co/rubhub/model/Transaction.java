@@ -14,7 +14,10 @@ import java.time.LocalDateTime;
 import java.util.UUID;
 
 @Entity
-@Table(name = "transactions")
+@Table(name = "transactions", indexes = {
+    @Index(name = "idx_transaction_from_account_date", columnList = "from_account_id, transaction_date"),
+    @Index(name = "idx_transaction_to_account_date", columnList = "to_account_id, transaction_date")
+})
 @Getter
 @Setter
 @ToString
@@ -0,0 +1,48 @@
+package za.co.rubhub.repositories;
+
+import za.co.rubhub.model.AccountBalanceSnapshot;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface AccountBalanceSnapshotRepository extends JpaRepository<AccountBalanceSnapshot, Long> {
+    
+    // The closing balance a "balance at" query starts from
+    Optional<AccountBalanceSnapshot> findFirstByAccountIdAndSnapshotDateLessThanOrderBySnapshotDateDesc(Long accountId,
+                                                                                                     LocalDate before);
+    
+    // Each account's latest snapshot before a day
+    @Query("SELECT s FROM AccountBalanceSnapshot s WHERE s.accountId IN :accountIds AND s.snapshotDate = " +
+           "(SELECT MAX(p.snapshotDate) FROM AccountBalanceSnapshot p " +
+           "WHERE p.accountId = s.accountId AND p.snapshotDate < :day)")
+    List<AccountBalanceSnapshot> findLatestBefore(@Param("accountIds") Collection<Long> accountIds,
+                                                  @Param("day") LocalDate day);
+    
+    @Query("SELECT MAX(s.snapshotDate) FROM AccountBalanceSnapshot s")
+    LocalDate findLatestSnapshotDate();
+    
+    // Re-snapshotting a day overwrites it, so the job can safely repeat
+    @Modifying
+    @Query(value = "INSERT INTO account_balance_snapshots " +
+                   "(account_id, snapshot_date, closing_balance, credits, debits, entry_count, updated_at) " +
+                   "VALUES (:accountId, :day, :closingBalance, :credits, :debits, :entries, CURRENT_TIMESTAMP) " +
+                   "ON CONFLICT (account_id, snapshot_date) DO UPDATE SET " +
+                   "closing_balance = EXCLUDED.closing_balance, credits = EXCLUDED.credits, " +
+                   "debits = EXCLUDED.debits, entry_count = EXCLUDED.entry_count, updated_at = CURRENT_TIMESTAMP",
+           nativeQuery = true)
+    int upsert(@Param("accountId") Long accountId,
+               @Param("day") LocalDate day,
+               @Param("closingBalance") BigDecimal closingBalance,
+               @Param("credits") BigDecimal credits,
+               @Param("debits") BigDecimal debits,
+               @Param("entries") long entries);
+}
@@ -1,23 +1,48 @@
 package za.co.rubhub.repositories;
 
 import za.co.rubhub.model.Account;
+import za.co.rubhub.repositories.projection.AccountBalanceRow;
+import za.co.rubhub.repositories.projection.LedgerAccountRef;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
 
 @Repository
-public interface AccountRepository extends JpaRepository<Account, UUID> {
+public interface AccountRepository extends JpaRepository<Account, Long> {
     
-    Optional<Account>  findById(Long id);
-    Optional<Account> findByUserIdAndAccountType(String userId, String accountType);
+    Optional<Account> findByUserIdAndAccountType(Long userId, String accountType);
+    
+    // A therapist's account of a type, through the therapist's user
+    @Query("SELECT a FROM Account a, Therapist t WHERE t.id = :therapistId AND a.user = t.user " +
+           "AND a.accountType = :accountType AND a.isActive = true")
+    List<Account> findTherapistAccounts(@Param("therapistId") Long therapistId,
+                                        @Param("accountType") String accountType);
     
     List<Account> findByAccountType(String accountType);
     
+    // The primary row of a house account, not one of its shards
+    Optional<Account> findFirstByAccountTypeAndShardOfIsNullOrderByIdAsc(String accountType);
+    
+    List<Account> findByShardOfOrderByShardIndexAsc(Long shardOf);
+    
+    // Logical balance of a sharded house account
+    @Query("SELECT COALESCE(SUM(a.balance), 0) FROM Account a WHERE a.id = :primaryId OR a.shardOf = :primaryId")
+    BigDecimal sumShardedBalance(@Param("primaryId") Long primaryId);
+    
+    // A house account's primary and shard rows, richest first
+    @Query("SELECT a.id AS id, a.balance AS balance FROM Account a " +
+           "WHERE a.id = :primaryId OR a.shardOf = :primaryId ORDER BY a.balance DESC")
+    List<AccountBalanceRow> findHouseAccountBalances(@Param("primaryId") Long primaryId);
+    
     Optional<Account> findByAccountNumber(String accountNumber);
     
     @Query("SELECT a FROM Account a WHERE a.userId = :userId AND a.isActive = true")
@@ -65,6 +90,26 @@ public interface AccountRepository extends JpaRepository<Account, UUID> {
     @Query("SELECT a FROM Account a WHERE a.isActive = true AND a.verificationStatus != 'VERIFIED'")
     List<Account> findActiveUnverifiedAccounts();
     
+    @Query("SELECT a.id AS id, a.user.id AS userId, a.accountType AS accountType, a.shardOf AS shardOf " +
+           "FROM Account a WHERE a.id IN :ids")
+    List<LedgerAccountRef> findLedgerRefs(@Param("ids") Collection<Long> ids);
+    
+    // Moves the cached balance by a net delta in place; returns 0 if it would overdraw the account
+    @Modifying
+    @Query("UPDATE Account a SET a.balance = a.balance + :delta, a.version = a.version + 1, " +
+           "a.updatedAt = :now WHERE a.id = :accountId AND a.balance + :delta >= 0")
+    int applyDelta(@Param("accountId") Long accountId,
+                   @Param("delta") BigDecimal delta,
+                   @Param("now") LocalDateTime now);
+    
+    // Counterparty accounts stand for money outside the platform, so their balance has no floor
+    @Modifying
+    @Query("UPDATE Account a SET a.balance = a.balance + :delta, a.version = a.version + 1, " +
+           "a.updatedAt = :now WHERE a.id = :accountId")
+    int applyCounterpartyDelta(@Param("accountId") Long accountId,
+                               @Param("delta") BigDecimal delta,
+                               @Param("now") LocalDateTime now);
+    
     @Query("UPDATE Account a SET a.balance = a.balance + :amount WHERE a.id = :accountId")
     int addToBalance(@Param("accountId") UUID accountId, @Param("amount") Double amount);
     
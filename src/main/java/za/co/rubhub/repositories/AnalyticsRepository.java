@@ -19,6 +19,9 @@ public interface AnalyticsRepository extends JpaRepository<AnalyticsData, Long>
             @Param("timeRange") String timeRange, 
             @Param("generatedAt") LocalDateTime generatedAt);
     
+    // Latest stored snapshot for a range; the warm-start tier behind AnalyticsCache
+    Optional<AnalyticsData> findFirstByTimeRangeOrderByGeneratedAtDesc(String timeRange);
+    
     List<AnalyticsData> findByGeneratedAtBetween(LocalDateTime start, LocalDateTime end);
     
     void deleteByGeneratedAtBefore(LocalDateTime date);
@@ -0,0 +1,81 @@
+package za.co.rubhub.repositories;
+
+import za.co.rubhub.model.BookingDailyRollup;
+import za.co.rubhub.repositories.projection.DailyTotals;
+import za.co.rubhub.repositories.projection.PeriodComparison;
+import za.co.rubhub.repositories.projection.ServiceTypeTotals;
+import za.co.rubhub.repositories.projection.TherapistTotals;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface BookingDailyRollupRepository extends JpaRepository<BookingDailyRollup, Long> {
+    
+    List<BookingDailyRollup> findByRollupDateBetween(LocalDate startDate, LocalDate endDate);
+    
+    // Adds one booking to its day x therapist x service row, creating the row on first use
+    @Modifying
+    @Query(value = "INSERT INTO booking_daily_rollups " +
+                   "(rollup_date, therapist_id, service_type_id, booking_count, revenue, rating_total, rating_count, updated_at) " +
+                   "VALUES (:rollupDate, :therapistId, :serviceTypeId, 1, :revenue, :rating, :ratingCount, CURRENT_TIMESTAMP) " +
+                   "ON CONFLICT (rollup_date, therapist_id, service_type_id) DO UPDATE SET " +
+                   "booking_count = booking_daily_rollups.booking_count + 1, " +
+                   "revenue = booking_daily_rollups.revenue + EXCLUDED.revenue, " +
+                   "rating_total = booking_daily_rollups.rating_total + EXCLUDED.rating_total, " +
+                   "rating_count = booking_daily_rollups.rating_count + EXCLUDED.rating_count, " +
+                   "updated_at = CURRENT_TIMESTAMP", nativeQuery = true)
+    int addBooking(@Param("rollupDate") LocalDate rollupDate,
+                   @Param("therapistId") Long therapistId,
+                   @Param("serviceTypeId") Long serviceTypeId,
+                   @Param("revenue") BigDecimal revenue,
+                   @Param("rating") long rating,
+                   @Param("ratingCount") long ratingCount);
+    
+    @Query("SELECT r.rollupDate AS day, SUM(r.bookingCount) AS bookings, SUM(r.revenue) AS revenue " +
+           "FROM BookingDailyRollup r " +
+           "WHERE r.rollupDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY r.rollupDate ORDER BY r.rollupDate")
+    List<DailyTotals> sumByDay(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+    
+    @Query("SELECT r.therapistId AS therapistId, SUM(r.bookingCount) AS bookings, SUM(r.revenue) AS revenue, " +
+           "SUM(r.ratingTotal) AS ratingTotal, SUM(r.ratingCount) AS ratingCount " +
+           "FROM BookingDailyRollup r " +
+           "WHERE r.rollupDate BETWEEN :startDate AND :endDate AND r.therapistId <> 0 " +
+           "GROUP BY r.therapistId ORDER BY SUM(r.revenue) DESC")
+    List<TherapistTotals> sumByTherapist(@Param("startDate") LocalDate startDate,
+                                         @Param("endDate") LocalDate endDate,
+                                         Pageable pageable);
+    
+    @Query("SELECT r.serviceTypeId AS serviceTypeId, SUM(r.bookingCount) AS bookings, SUM(r.revenue) AS revenue, " +
+           "SUM(r.ratingTotal) AS ratingTotal, SUM(r.ratingCount) AS ratingCount " +
+           "FROM BookingDailyRollup r " +
+           "WHERE r.rollupDate BETWEEN :startDate AND :endDate " +
+           "GROUP BY r.serviceTypeId ORDER BY SUM(r.revenue) DESC")
+    List<ServiceTypeTotals> sumByServiceType(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+    
+    // Current and previous period totals in a single scan of the rollup rows
+    @Query("SELECT " +
+           "COALESCE(SUM(CASE WHEN r.rollupDate BETWEEN :currentStart AND :currentEnd THEN r.bookingCount ELSE 0 END), 0) AS currentBookings, " +
+           "COALESCE(SUM(CASE WHEN r.rollupDate BETWEEN :currentStart AND :currentEnd THEN r.revenue ELSE 0 END), 0) AS currentRevenue, " +
+           "COALESCE(SUM(CASE WHEN r.rollupDate BETWEEN :previousStart AND :previousEnd THEN r.bookingCount ELSE 0 END), 0) AS previousBookings, " +
+           "COALESCE(SUM(CASE WHEN r.rollupDate BETWEEN :previousStart AND :previousEnd THEN r.revenue ELSE 0 END), 0) AS previousRevenue " +
+           "FROM BookingDailyRollup r " +
+           "WHERE r.rollupDate BETWEEN :previousStart AND :previousEnd " +
+           "OR r.rollupDate BETWEEN :currentStart AND :currentEnd")
+    PeriodComparison comparePeriods(@Param("currentStart") LocalDate currentStart,
+                                    @Param("currentEnd") LocalDate currentEnd,
+                                    @Param("previousStart") LocalDate previousStart,
+                                    @Param("previousEnd") LocalDate previousEnd);
+    
+    @Modifying
+    @Query("DELETE FROM BookingDailyRollup r WHERE r.rollupDate BETWEEN :startDate AND :endDate")
+    int deleteByRollupDateBetween(@Param("startDate") LocalDate startDate, @Param("endDate") LocalDate endDate);
+}
@@ -2,21 +2,55 @@ package za.co.rubhub.repositories;
 
 import za.co.rubhub.model.Booking;
 import za.co.rubhub.model.BookingStatus;
+import za.co.rubhub.model.Payment;
+import za.co.rubhub.repositories.projection.BookingAggregateRow;
+import za.co.rubhub.repositories.projection.BookingExportRow;
+import za.co.rubhub.repositories.projection.BusyInterval;
+import za.co.rubhub.repositories.projection.PayoutBookingRow;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import javax.persistence.LockModeType;
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface BookingRepository extends JpaRepository<Booking, Long> {
 
      Optional<Booking> findById(Long id);
     
-     List<Booking>  findCompletedPaidBookingsInDateRange(LocalDateTime start,LocalDateTime end);
+    // Bookings aggregated in the database, one row per day x therapist x service x rating.
+    // The day falls back to the booking date for bookings completed before completedAt was recorded.
+    @Query("SELECT CAST(COALESCE(b.completedAt, b.bookingDate) AS date) AS day, t.id AS therapistId, s.id AS serviceTypeId, " +
+           "b.rating AS rating, COUNT(b) AS bookings, COALESCE(SUM(b.totalAmount), 0) AS revenue " +
+           "FROM Booking b LEFT JOIN b.therapist t LEFT JOIN b.serviceType s " +
+           "WHERE b.id IN :bookingIds " +
+           "GROUP BY CAST(COALESCE(b.completedAt, b.bookingDate) AS date), t.id, s.id, b.rating")
+    List<BookingAggregateRow> aggregateBookings(@Param("bookingIds") Collection<Long> bookingIds);
+    
+    // Row-locks the completed and paid bookings in the window until the caller commits
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT b.id FROM Booking b WHERE b.status = :status AND UPPER(b.paymentStatus) = 'PAID' " +
+           "AND COALESCE(b.completedAt, b.bookingDate) >= :start AND COALESCE(b.completedAt, b.bookingDate) < :end " +
+           "ORDER BY b.id ASC")
+    List<Long> lockCompletedPaidIdsBetween(@Param("status") BookingStatus status,
+                                           @Param("start") LocalDateTime start,
+                                           @Param("end") LocalDateTime end);
+    
     // Find bookings by status and payout processed flag
     List<Booking> findByStatusAndPayoutProcessed(BookingStatus status, Boolean payoutProcessed);
     
@@ -27,6 +61,33 @@ public interface BookingRepository extends JpaRepository<Booking, Long> {
     List<Booking> findCompletedBookingsForPayout(@Param("startDate") LocalDateTime startDate, 
                                                 @Param("endDate") LocalDateTime endDate);
     
+    // Therapists with unpaid-out completed bookings in a payout window whose customer payment completed;
+    // each one is a payout partition
+    @Query("SELECT DISTINCT b.therapist.id FROM Booking b WHERE b.status = :status " +
+           "AND (b.payoutProcessed = false OR b.payoutProcessed IS NULL) " +
+           "AND b.completedAt >= :start AND b.completedAt < :end " +
+           "AND EXISTS (SELECT p.id FROM Payment p WHERE p.booking = b AND p.status = :paymentStatus)")
+    List<Long> findTherapistIdsDueForPayout(@Param("status") BookingStatus status,
+                                            @Param("paymentStatus") Payment.PaymentStatus paymentStatus,
+                                            @Param("start") LocalDateTime start,
+                                            @Param("end") LocalDateTime end);
+    
+    // Next chunk of a therapist's unpaid-out bookings in id order, read as scalars; a booking whose customer
+    // payment never completed put no money into SUSPENSE and is not paid out
+    @Query("SELECT b.id AS id, b.therapist.id AS therapistId, b.totalAmount AS totalAmount " +
+           "FROM Booking b WHERE b.therapist.id = :therapistId AND b.status = :status " +
+           "AND (b.payoutProcessed = false OR b.payoutProcessed IS NULL) " +
+           "AND b.completedAt >= :start AND b.completedAt < :end AND b.id > :afterId " +
+           "AND EXISTS (SELECT p.id FROM Payment p WHERE p.booking = b AND p.status = :paymentStatus) " +
+           "ORDER BY b.id")
+    List<PayoutBookingRow> findPayoutChunk(@Param("therapistId") Long therapistId,
+                                           @Param("status") BookingStatus status,
+                                           @Param("paymentStatus") Payment.PaymentStatus paymentStatus,
+                                           @Param("start") LocalDateTime start,
+                                           @Param("end") LocalDateTime end,
+                                           @Param("afterId") Long afterId,
+                                           Pageable pageable);
+    
     // Find bookings by therapist and status
     List<Booking> findByTherapistIdAndStatus(String therapistId, BookingStatus status);
     
@@ -156,13 +217,82 @@ public interface BookingRepository extends JpaRepository<Booking, Long> {
                                  @Param("endDate") LocalDateTime endDate);
     
     // Update methods
+    // Returns fewer than bookingIds.size() if some were already paid out
+    @Modifying
     @Query("UPDATE Booking b SET b.payoutProcessed = true, b.payoutDate = CURRENT_TIMESTAMP " +
-           "WHERE b.id IN :bookingIds")
+           "WHERE b.id IN :bookingIds AND (b.payoutProcessed = false OR b.payoutProcessed IS NULL)")
     int markBookingsAsPaid(@Param("bookingIds") List<Long> bookingIds);
     
     @Query("UPDATE Booking b SET b.reviewReminderSent = true WHERE b.id = :bookingId")
     int markReviewReminderSent(@Param("bookingId") Long bookingId);
     
+    // Flags a booking as counted in the daily rollups; returns 0 if it already was
+    @Modifying
+    @Query("UPDATE Booking b SET b.analyticsRolledUp = true WHERE b.id = :bookingId " +
+           "AND (b.analyticsRolledUp = false OR b.analyticsRolledUp IS NULL)")
+    int claimForRollup(@Param("bookingId") Long bookingId);
+    
+    @Modifying
+    @Query("UPDATE Booking b SET b.analyticsRolledUp = true WHERE b.id IN :bookingIds")
+    int markRolledUp(@Param("bookingIds") Collection<Long> bookingIds);
+    
+    // Completed and paid bookings not yet counted in the daily rollups
+    @Query("SELECT b FROM Booking b WHERE b.status = :status " +
+           "AND UPPER(b.paymentStatus) = 'PAID' " +
+           "AND (b.analyticsRolledUp = false OR b.analyticsRolledUp IS NULL) " +
+           "ORDER BY b.id ASC")
+    List<Booking> findPendingRollup(@Param("status") BookingStatus status, Pageable pageable);
+    
+    // Keyset pages: filters are optional, size comes from the Pageable and the cursor replaces OFFSET
+    @Query("SELECT b FROM Booking b WHERE b.id > :afterId " +
+           "AND (:status IS NULL OR b.status = :status) " +
+           "AND (:customerId IS NULL OR b.customer.id = :customerId) " +
+           "AND (:therapistId IS NULL OR b.therapist.id = :therapistId) " +
+           "ORDER BY b.id ASC")
+    List<Booking> findPageAfterId(@Param("afterId") Long afterId,
+                                  @Param("status") BookingStatus status,
+                                  @Param("customerId") Long customerId,
+                                  @Param("therapistId") Long therapistId,
+                                  Pageable pageable);
+    
+    @Query("SELECT b FROM Booking b " +
+           "WHERE (b.bookingDate > :afterTime OR (b.bookingDate = :afterTime AND b.id > :afterId)) " +
+           "AND (:status IS NULL OR b.status = :status) " +
+           "AND (:customerId IS NULL OR b.customer.id = :customerId) " +
+           "AND (:therapistId IS NULL OR b.therapist.id = :therapistId) " +
+           "ORDER BY b.bookingDate ASC, b.id ASC")
+    List<Booking> findPageAfterBookingDate(@Param("afterTime") LocalDateTime afterTime,
+                                           @Param("afterId") Long afterId,
+                                           @Param("status") BookingStatus status,
+                                           @Param("customerId") Long customerId,
+                                           @Param("therapistId") Long therapistId,
+                                           Pageable pageable);
+    
+    // Export rows read through a server-side cursor; must be consumed inside a transaction
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("SELECT b.id AS id, b.bookingReference AS bookingReference, b.status AS status, " +
+           "c.id AS customerId, b.customerName AS customerName, b.customerEmail AS customerEmail, " +
+           "t.id AS therapistId, s.id AS serviceTypeId, b.bookingDate AS bookingDate, " +
+           "b.durationMinutes AS durationMinutes, b.totalAmount AS totalAmount, " +
+           "b.paymentStatus AS paymentStatus, b.completedAt AS completedAt, b.createdAt AS createdAt " +
+           "FROM Booking b LEFT JOIN b.customer c LEFT JOIN b.therapist t LEFT JOIN b.serviceType s " +
+           "WHERE b.bookingDate >= :from AND b.bookingDate < :to " +
+           "AND (:status IS NULL OR b.status = :status) " +
+           "ORDER BY b.id ASC")
+    Stream<BookingExportRow> streamExportRows(@Param("status") BookingStatus status,
+                                              @Param("from") LocalDateTime from,
+                                              @Param("to") LocalDateTime to);
+    
+    // Source for TherapistCalendar rebuilds
+    @Query("SELECT b.id AS id, t.id AS therapistId, b.bookingDate AS start, b.durationMinutes AS durationMinutes " +
+           "FROM Booking b JOIN b.therapist t " +
+           "WHERE b.status IN :statuses AND b.bookingDate >= :since")
+    List<BusyInterval> findBusyIntervals(@Param("statuses") Collection<BookingStatus> statuses,
+                                         @Param("since") LocalDateTime since);
+    
     // Check existence
     boolean existsByTherapistIdAndScheduledTimeBetween(Long therapistId, 
                                                       LocalDateTime startTime, 
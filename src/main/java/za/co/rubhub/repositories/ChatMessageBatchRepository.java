@@ -0,0 +1,83 @@
+package za.co.rubhub.repositories;
+
+import za.co.rubhub.dto.ChatMessageView;
+import za.co.rubhub.dto.ChatReadMarker;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Plain JDBC batches for the chat write-behind pipeline. Message ids are taken
+ * from the table's own sequence ahead of time, so rows are inserted with known
+ * ids and can be batched, which IDENTITY inserts through JPA cannot.
+ */
+@Repository
+@RequiredArgsConstructor
+public class ChatMessageBatchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public List<Long> allocateIds(int count) {
+        return jdbcTemplate.queryForList(
+                "SELECT nextval('chat_messages_id_seq') FROM generate_series(1, ?)", Long.class, count);
+    }
+
+    // Re-inserting an already stored id is a no-op, so journal replays are safe
+    public int[] insertMessages(List<ChatMessageView> messages) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(messages.size());
+        for (ChatMessageView message : messages) {
+            rows.add(new Object[] {
+                    message.getId(), message.getChatId(), message.getContent(), message.getSenderId(),
+                    message.getSenderRole(), message.getMessageType(), message.getMetadata(),
+                    Boolean.TRUE.equals(message.getIsRead()), Timestamp.valueOf(message.getSentAt()), now
+            });
+        }
+        return jdbcTemplate.batchUpdate(
+                "INSERT INTO chat_messages (id, chat_id, content, sender_id, sender_role, message_type, " +
+                "metadata, is_read, sent_at, created_at) VALUES (?, ?, ?, ?, ?, ?, CAST(? AS JSON), ?, ?, ?) " +
+                "ON CONFLICT (id) DO NOTHING",
+                rows,
+                new int[] {Types.BIGINT, Types.BIGINT, Types.VARCHAR, Types.BIGINT, Types.VARCHAR, Types.VARCHAR,
+                        Types.VARCHAR, Types.BOOLEAN, Types.TIMESTAMP, Types.TIMESTAMP});
+    }
+
+    // One update per chat; an older message never overwrites a newer last message
+    public int[] updateLastMessages(Collection<ChatMessageView> latestPerChat) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> rows = new ArrayList<>(latestPerChat.size());
+        for (ChatMessageView message : latestPerChat) {
+            Timestamp sentAt = Timestamp.valueOf(message.getSentAt());
+            rows.add(new Object[] {
+                    message.getContent(), sentAt, message.getSenderId(), now, message.getChatId(), sentAt
+            });
+        }
+        return jdbcTemplate.batchUpdate(
+                "UPDATE chats SET last_message_content = ?, last_message_sent_at = ?, last_message_sent_by = ?, " +
+                "updated_at = ? WHERE id = ? AND (last_message_sent_at IS NULL OR last_message_sent_at <= ?)",
+                rows);
+    }
+
+    public int[] markRead(List<ChatReadMarker> reads) {
+        if (reads.isEmpty()) {
+            return new int[0];
+        }
+        List<Object[]> rows = new ArrayList<>(reads.size());
+        for (ChatReadMarker read : reads) {
+            rows.add(new Object[] {
+                    Timestamp.valueOf(read.getReadAt()), read.getChatId(), read.getUserId(), read.getUpToId()
+            });
+        }
+        return jdbcTemplate.batchUpdate(
+                "UPDATE chat_messages SET is_read = true, read_at = ? " +
+                "WHERE chat_id = ? AND sender_id <> ? AND id <= ? AND is_read = false",
+                rows);
+    }
+}
@@ -1,6 +1,8 @@
 package za.co.rubhub.repositories;
 
 import za.co.rubhub.model.ChatMessage;
+import za.co.rubhub.repositories.projection.SenderUnreadCount;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -16,6 +18,17 @@ public interface ChatMessageRepository extends JpaRepository<ChatMessage, Long>
     
     List<ChatMessage> findByChatIdOrderBySentAtAsc(Long chatId);
     
+    // Replay for reconnecting chat streams, and history after a message id
+    List<ChatMessage> findByChatIdAndIdGreaterThanOrderByIdAsc(Long chatId, Long id, Pageable pageable);
+    
+    // Keyset history for ChatHistoryCache; ids follow send order
+    List<ChatMessage> findByChatIdAndIdLessThanOrderByIdDesc(Long chatId, Long id, Pageable pageable);
+    
+    // Bounded by ChatWriteBehind.consistentRead so rows still in the write-behind pipeline are not counted twice
+    @Query("SELECT m.senderId AS senderId, COUNT(m) AS unread FROM ChatMessage m " +
+           "WHERE m.chat.id = :chatId AND m.id < :beforeId AND m.isRead = false GROUP BY m.senderId")
+    List<SenderUnreadCount> countUnreadBySender(@Param("chatId") Long chatId, @Param("beforeId") Long beforeId);
+    
     List<ChatMessage> findByChatIdAndSenderId(Long chatId, Long senderId);
     
     List<ChatMessage> findByChatIdAndIsReadFalse(Long chatId);
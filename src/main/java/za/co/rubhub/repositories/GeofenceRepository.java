@@ -20,27 +20,12 @@ public interface GeofenceRepository extends JpaRepository<Geofence, Long> {
     
     List<Geofence> findByTypeAndIsActiveTrue(String type);
     
-    @Query("SELECT g FROM Geofence g WHERE g.isActive = true AND " +
-           "ST_Distance_Sphere(point(g.centerLocation.lng, g.centerLocation.lat), point(:lng, :lat)) <= g.radius")
-    List<Geofence> findGeofencesContainingPoint(@Param("lat") Double lat, @Param("lng") Double lng);
-    
-    @Query("SELECT g FROM Geofence g WHERE g.isActive = true AND g.type = 'no-service' AND " +
-           "ST_Distance_Sphere(point(g.centerLocation.lng, g.centerLocation.lat), point(:lng, :lat)) <= g.radius")
-    List<Geofence> findNoServiceZonesContainingPoint(@Param("lat") Double lat, @Param("lng") Double lng);
-    
-    @Query("SELECT g FROM Geofence g WHERE g.isActive = true AND g.type = 'high-risk' AND " +
-           "ST_Distance_Sphere(point(g.centerLocation.lng, g.centerLocation.lat), point(:lng, :lat)) <= g.radius")
-    List<Geofence> findHighRiskZonesContainingPoint(@Param("lat") Double lat, @Param("lng") Double lng);
-    
-    @Query("SELECT g FROM Geofence g WHERE g.isActive = true AND g.type = 'premium' AND " +
-           "ST_Distance_Sphere(point(g.centerLocation.lng, g.centerLocation.lat), point(:lng, :lat)) <= g.radius")
-    List<Geofence> findPremiumZonesContainingPoint(@Param("lat") Double lat, @Param("lng") Double lng);
-    
-    @Query(value = "SELECT g.* FROM geofences g WHERE g.is_active = true AND " +
-                   "ST_Contains(ST_MakePolygon(ST_GeomFromText('LINESTRING(' || " +
-                   "string_agg(gc.latitude || ' ' || gc.longitude, ', ') || ')')), " +
-                   "ST_SetSRID(ST_MakePoint(:lng, :lat), 4326))", nativeQuery = true)
-    List<Geofence> findPolygonGeofencesContainingPoint(@Param("lat") Double lat, @Param("lng") Double lng);
+    // Loaded with polygon vertices so the in-memory GeofenceIndex can compile them outside a session
+    @Query("SELECT DISTINCT g FROM Geofence g LEFT JOIN FETCH g.Location WHERE g.isActive = true")
+    List<Geofence> findActiveWithLocations();
+    
+    @Query("SELECT g FROM Geofence g LEFT JOIN FETCH g.Location WHERE g.id = :id")
+    Optional<Geofence> findByIdWithLocations(@Param("id") Long id);
     
     @Query("SELECT COUNT(g) FROM Geofence g WHERE g.type = :type AND g.isActive = true")
     Long countByTypeAndActive(@Param("type") String type);
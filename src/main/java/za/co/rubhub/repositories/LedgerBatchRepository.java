@@ -0,0 +1,59 @@
+package za.co.rubhub.repositories;
+
+import za.co.rubhub.dto.LedgerEntry;
+import za.co.rubhub.model.Transaction;
+import za.co.rubhub.repositories.projection.LedgerAccountRef;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Appends ledger journal lines to transactions as one JDBC batch. Lines are
+ * only ever inserted; a correction is a new line in the opposite direction.
+ */
+@Repository
+@RequiredArgsConstructor
+public class LedgerBatchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public int[] insertEntries(List<LedgerEntry> entries, Map<Long, LedgerAccountRef> accounts, LocalDateTime postedAt) {
+        Timestamp now = Timestamp.valueOf(postedAt);
+        List<Object[]> rows = new ArrayList<>(entries.size());
+        for (LedgerEntry entry : entries) {
+            LedgerAccountRef from = accounts.get(entry.getFromAccountId());
+            LedgerAccountRef to = accounts.get(entry.getToAccountId());
+            String transactionId = entry.getLineId() != null
+                    ? entry.getLineId() : "LED-" + UUID.randomUUID().toString().toUpperCase();
+            rows.add(new Object[] {
+                    transactionId, String.valueOf(from.getUserId()),
+                    entry.getReference() != null ? entry.getReference() : transactionId,
+                    entry.getType().name(), Transaction.TransactionCategory.TRANSFER.name(), entry.getDescription(),
+                    entry.getAmount(), entry.getAmount(), Transaction.TransactionStatus.COMPLETED.name(),
+                    String.valueOf(from.getId()), from.getAccountType(),
+                    String.valueOf(to.getId()), to.getAccountType(),
+                    entry.getBookingId(), entry.getBookingId() != null ? String.valueOf(entry.getBookingId()) : null,
+                    now, now, now, now
+            });
+        }
+        return jdbcTemplate.batchUpdate(
+                "INSERT INTO transactions (transaction_id, user_id, reference, transaction_type, transaction_category, " +
+                "description, amount, currency, fee, tax, net_amount, status, from_account_id, from_account_type, " +
+                "to_account_id, to_account_type, booking_id, booking_id_string, transaction_date, completed_date, " +
+                "is_secure, fraud_check_performed, created_at, updated_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, 'ZAR', 0, 0, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, true, false, ?, ?)",
+                rows,
+                new int[] {Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+                        Types.NUMERIC, Types.NUMERIC, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR,
+                        Types.VARCHAR, Types.VARCHAR, Types.BIGINT, Types.VARCHAR,
+                        Types.TIMESTAMP, Types.TIMESTAMP, Types.TIMESTAMP, Types.TIMESTAMP});
+    }
+}
@@ -1,14 +1,27 @@
 package za.co.rubhub.repositories;
 
 import za.co.rubhub.model.MassageRequest;
+import za.co.rubhub.repositories.projection.BusyInterval;
+import za.co.rubhub.repositories.projection.MassageRequestExportRow;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface MassageRequestRepository extends JpaRepository<MassageRequest, Long> {
@@ -34,6 +47,24 @@ public interface MassageRequestRepository extends JpaRepository<MassageRequest,
     @Query("SELECT mr FROM MassageRequest mr WHERE mr.status = 'PENDING' AND mr.therapist IS NULL")
     List<MassageRequest> findUnassignedRequests();
     
+    // Source for DispatchQueue reloads
+    List<MassageRequest> findByStatusAndTherapistIsNull(MassageRequest.Status status);
+    
+    // Source for TherapistCalendar rebuilds
+    @Query("SELECT m.id AS id, t.id AS therapistId, m.preferredDateTime AS start, m.durationMinutes AS durationMinutes " +
+           "FROM MassageRequest m JOIN m.therapist t " +
+           "WHERE m.status IN :statuses AND m.preferredDateTime >= :since")
+    List<BusyInterval> findBusyIntervals(@Param("statuses") Collection<MassageRequest.Status> statuses,
+                                         @Param("since") LocalDateTime since);
+    
+    // Durable half of a dispatch claim: only succeeds while the request is still pending and unassigned
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE massage_requests SET therapist_id = :therapistId, status = 'ASSIGNED', " +
+                   "updated_at = CURRENT_TIMESTAMP " +
+                   "WHERE id = :requestId AND therapist_id IS NULL AND status = 'PENDING'", nativeQuery = true)
+    int claimUnassigned(@Param("requestId") Long requestId, @Param("therapistId") Long therapistId);
+    
     // Find active requests (not completed or cancelled)
     @Query("SELECT mr FROM MassageRequest mr WHERE mr.status IN ('PENDING', 'PREPARATION', 'ACCEPTED', 'IN_PROGRESS')")
     List<MassageRequest> findActiveRequests();
@@ -112,4 +143,47 @@ public interface MassageRequestRepository extends JpaRepository<MassageRequest,
     int updateRequestStatus(@Param("requestId") Long requestId, 
                           @Param("status") String status);
     List<MassageRequest> findByTherapistIdAndStatus(String therapistId, String status);
-}
\ No newline at end of file
+    
+    // Keyset pages: filters are optional, size comes from the Pageable and the cursor replaces OFFSET
+    @Query("SELECT m FROM MassageRequest m WHERE m.id > :afterId " +
+           "AND (:status IS NULL OR m.status = :status) " +
+           "AND (:clientId IS NULL OR m.client.id = :clientId) " +
+           "AND (:therapistId IS NULL OR m.therapist.id = :therapistId) " +
+           "ORDER BY m.id ASC")
+    List<MassageRequest> findPageAfterId(@Param("afterId") Long afterId,
+                                         @Param("status") MassageRequest.Status status,
+                                         @Param("clientId") Long clientId,
+                                         @Param("therapistId") Long therapistId,
+                                         Pageable pageable);
+    
+    @Query("SELECT m FROM MassageRequest m " +
+           "WHERE (m.preferredDateTime > :afterTime OR (m.preferredDateTime = :afterTime AND m.id > :afterId)) " +
+           "AND (:status IS NULL OR m.status = :status) " +
+           "AND (:clientId IS NULL OR m.client.id = :clientId) " +
+           "AND (:therapistId IS NULL OR m.therapist.id = :therapistId) " +
+           "ORDER BY m.preferredDateTime ASC, m.id ASC")
+    List<MassageRequest> findPageAfterPreferredDateTime(@Param("afterTime") LocalDateTime afterTime,
+                                                        @Param("afterId") Long afterId,
+                                                        @Param("status") MassageRequest.Status status,
+                                                        @Param("clientId") Long clientId,
+                                                        @Param("therapistId") Long therapistId,
+                                                        Pageable pageable);
+    
+    // Export rows read through a server-side cursor; must be consumed inside a transaction
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("SELECT m.id AS id, m.status AS status, c.id AS clientId, m.clientName AS clientName, " +
+           "t.id AS therapistId, m.serviceType AS serviceType, m.preferredDateTime AS preferredDateTime, " +
+           "m.durationMinutes AS durationMinutes, m.locationAddress AS locationAddress, " +
+           "m.estimatedPrice AS estimatedPrice, m.actualPrice AS actualPrice, " +
+           "m.paymentStatus AS paymentStatus, m.createdAt AS createdAt " +
+           "FROM MassageRequest m LEFT JOIN m.client c LEFT JOIN m.therapist t " +
+           "WHERE m.preferredDateTime >= :from AND m.preferredDateTime < :to " +
+           "AND (:status IS NULL OR m.status = :status) " +
+           "ORDER BY m.id ASC")
+    Stream<MassageRequestExportRow> streamExportRows(@Param("status") MassageRequest.Status status,
+                                                     @Param("from") LocalDateTime from,
+                                                     @Param("to") LocalDateTime to);
+}
@@ -0,0 +1,78 @@
+package za.co.rubhub.repositories;
+
+import za.co.rubhub.model.PayFastItnInboxEntry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * JDBC access to payfast_itn_inbox. The webhook appends one row per
+ * notification with a single statement; workers claim rows in batches with
+ * SKIP LOCKED, so several workers, or several instances, never take the same row.
+ */
+@Repository
+@RequiredArgsConstructor
+public class PayFastItnInboxRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // False when the notification is already in the inbox
+    public boolean append(String pfPaymentId, String mPaymentId, String paymentStatus, BigDecimal amountGross,
+                          String payload, LocalDateTime receivedAt) {
+        return jdbcTemplate.update(
+                "INSERT INTO payfast_itn_inbox (pf_payment_id, m_payment_id, payment_status, amount_gross, payload, " +
+                "status, attempts, received_at) VALUES (?, ?, ?, ?, ?, 'RECEIVED', 0, ?) " +
+                "ON CONFLICT (pf_payment_id, payment_status) DO NOTHING",
+                new Object[] {pfPaymentId, mPaymentId, paymentStatus, amountGross, payload, Timestamp.valueOf(receivedAt)},
+                new int[] {Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.NUMERIC, Types.VARCHAR, Types.TIMESTAMP}) > 0;
+    }
+
+    // New rows, plus rows whose claim is older than staleBefore because their worker died; oldest first
+    public List<PayFastItnInboxEntry> claim(int limit, LocalDateTime now, LocalDateTime staleBefore) {
+        List<PayFastItnInboxEntry> claimed = jdbcTemplate.query(
+                "UPDATE payfast_itn_inbox SET status = 'PROCESSING', claimed_at = ?, attempts = attempts + 1 " +
+                "WHERE id IN (SELECT id FROM payfast_itn_inbox " +
+                "WHERE status = 'RECEIVED' OR (status = 'PROCESSING' AND claimed_at < ?) " +
+                "ORDER BY id LIMIT ? FOR UPDATE SKIP LOCKED) " +
+                "RETURNING id, pf_payment_id, m_payment_id, payment_status, amount_gross, attempts",
+                (rs, rowNum) -> {
+                    PayFastItnInboxEntry entry = new PayFastItnInboxEntry();
+                    entry.setId(rs.getLong("id"));
+                    entry.setPfPaymentId(rs.getString("pf_payment_id"));
+                    entry.setMPaymentId(rs.getString("m_payment_id"));
+                    entry.setPaymentStatus(rs.getString("payment_status"));
+                    entry.setAmountGross(rs.getBigDecimal("amount_gross"));
+                    entry.setAttempts(rs.getInt("attempts"));
+                    entry.setStatus(PayFastItnInboxEntry.InboxStatus.PROCESSING);
+                    return entry;
+                },
+                Timestamp.valueOf(now), Timestamp.valueOf(staleBefore), limit);
+        claimed.sort(Comparator.comparing(PayFastItnInboxEntry::getId));
+        return claimed;
+    }
+
+    // Writes each entry's status, processed time and failure reason
+    public int[] finish(List<PayFastItnInboxEntry> entries) {
+        List<Object[]> rows = new ArrayList<>(entries.size());
+        for (PayFastItnInboxEntry entry : entries) {
+            rows.add(new Object[] {
+                    entry.getStatus().name(),
+                    entry.getProcessedAt() != null ? Timestamp.valueOf(entry.getProcessedAt()) : null,
+                    entry.getFailureReason(),
+                    entry.getId()
+            });
+        }
+        return jdbcTemplate.batchUpdate(
+                "UPDATE payfast_itn_inbox SET status = ?, processed_at = ?, failure_reason = ? WHERE id = ?",
+                rows,
+                new int[] {Types.VARCHAR, Types.TIMESTAMP, Types.VARCHAR, Types.BIGINT});
+    }
+}
@@ -2,22 +2,45 @@ package za.co.rubhub.repositories;
 
 import za.co.rubhub.model.Payment;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import javax.persistence.LockModeType;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface PaymentRepository extends JpaRepository<Payment, Long> {
     
+    // Row-locked until the caller commits, so status transitions on one payment never interleave
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
     Optional<Payment> findByTransactionId(String transactionId);
     
     Optional<Payment> findByProviderTransactionId(String providerTransactionId);
     
+    // Row-locks the payments in id order until the caller commits; the fetch join below cannot take the lock
+    // itself, since Postgres refuses FOR UPDATE on the nullable side of an outer join
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT p.id FROM Payment p WHERE p.transactionId IN :transactionIds ORDER BY p.id")
+    List<Long> lockByTransactionIdIn(@Param("transactionIds") Collection<String> transactionIds);
+    
+    // Loads the booking with each payment so a batch of status changes does not fetch them one by one
+    @Query("SELECT p FROM Payment p LEFT JOIN FETCH p.booking WHERE p.transactionId IN :transactionIds")
+    List<Payment> findByTransactionIdInWithBooking(@Param("transactionIds") Collection<String> transactionIds);
+    
+    // Completed payments still owed to a therapist whose SUSPENSE credit was never posted: those completed
+    // before markPaid posted to the ledger. The credit's journal line id is PAYMENT-<transactionId>
+    @Query("SELECT p.transactionId FROM Payment p JOIN p.booking b WHERE p.status = :status " +
+           "AND (b.payoutProcessed = false OR b.payoutProcessed IS NULL) " +
+           "AND NOT EXISTS (SELECT t.id FROM Transaction t WHERE t.transactionId = CONCAT('PAYMENT-', p.transactionId)) " +
+           "ORDER BY p.id")
+    List<String> findTransactionIdsWithoutLedgerCredit(@Param("status") Payment.PaymentStatus status);
+    
     List<Payment> findByUserId(String userId);
     
     List<Payment> findByBookingId(String bookingId);
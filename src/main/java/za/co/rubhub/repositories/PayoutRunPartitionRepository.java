@@ -0,0 +1,41 @@
+package za.co.rubhub.repositories;
+
+import za.co.rubhub.model.PayoutRunPartition;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@Repository
+public interface PayoutRunPartitionRepository extends JpaRepository<PayoutRunPartition, Long> {
+    
+    List<PayoutRunPartition> findByRunId(Long runId);
+    
+    // Runs inside the chunk's transaction, so the checkpoint moves only if the chunk commits
+    @Modifying
+    @Query("UPDATE PayoutRunPartition p SET p.lastBookingId = :lastBookingId, " +
+           "p.chunksCommitted = p.chunksCommitted + 1, p.bookingsPaid = p.bookingsPaid + :bookings, " +
+           "p.bookingAmount = p.bookingAmount + :bookingAmount, " +
+           "p.therapistAmount = p.therapistAmount + :therapistAmount, " +
+           "p.rubhubFees = p.rubhubFees + :rubhubFees, p.updatedAt = :now WHERE p.id = :id")
+    int recordChunk(@Param("id") Long id,
+                    @Param("lastBookingId") Long lastBookingId,
+                    @Param("bookings") int bookings,
+                    @Param("bookingAmount") BigDecimal bookingAmount,
+                    @Param("therapistAmount") BigDecimal therapistAmount,
+                    @Param("rubhubFees") BigDecimal rubhubFees,
+                    @Param("now") LocalDateTime now);
+    
+    @Modifying
+    @Query("UPDATE PayoutRunPartition p SET p.status = :status, p.failureReason = :reason, p.updatedAt = :now " +
+           "WHERE p.id = :id")
+    int updateStatus(@Param("id") Long id,
+                     @Param("status") PayoutRunPartition.PartitionStatus status,
+                     @Param("reason") String reason,
+                     @Param("now") LocalDateTime now);
+}
@@ -0,0 +1,17 @@
+package za.co.rubhub.repositories;
+
+import za.co.rubhub.model.PayoutRun;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface PayoutRunRepository extends JpaRepository<PayoutRun, Long> {
+    
+    Optional<PayoutRun> findByPeriodStartAndPeriodEnd(LocalDateTime periodStart, LocalDateTime periodEnd);
+    
+    List<PayoutRun> findByStatus(PayoutRun.RunStatus status);
+}
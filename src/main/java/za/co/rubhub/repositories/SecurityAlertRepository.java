@@ -1,14 +1,23 @@
 package za.co.rubhub.repositories;
 
 import za.co.rubhub.model.SecurityAlert;
+import za.co.rubhub.repositories.projection.SecurityAlertMetricsRow;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface SecurityAlertRepository extends JpaRepository<SecurityAlert, Long> {
@@ -87,6 +96,11 @@ public interface SecurityAlertRepository extends JpaRepository<SecurityAlert, Lo
            "AND sa.timestamp < :olderThan")
     List<SecurityAlert> findUnresolvedAlertsOlderThan(@Param("olderThan") LocalDateTime olderThan);
     
+    // What SecurityAlertBoard shows: open or still flashing, with the user, booking and actions loaded
+    @Query("SELECT DISTINCT sa FROM SecurityAlert sa LEFT JOIN FETCH sa.user LEFT JOIN FETCH sa.request " +
+           "LEFT JOIN FETCH sa.actionsTaken WHERE sa.status IN :statuses OR sa.isFlashing = true")
+    List<SecurityAlert> findBoardAlerts(@Param("statuses") List<SecurityAlert.AlertStatus> statuses);
+    
     // Find alerts by multiple statuses
     @Query("SELECT sa FROM SecurityAlert sa WHERE sa.status IN :statuses " +
            "ORDER BY sa.timestamp DESC")
@@ -107,6 +121,14 @@ public interface SecurityAlertRepository extends JpaRepository<SecurityAlert, Lo
     List<Object[]> getDailyAlertStats(@Param("start") LocalDateTime start,
                                      @Param("end") LocalDateTime end);
     
+    // Links a duplicate to its incident; clustering itself happens in AlertClusterIndex
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE security_alerts SET incident_id = :incidentId WHERE id = :alertId", nativeQuery = true)
+    int linkToIncident(@Param("alertId") Long alertId, @Param("incidentId") Long incidentId);
+    
+    List<SecurityAlert> findByIncidentId(Long incidentId);
+    
     // Find similar/duplicate alerts (same location and time window)
     @Query("SELECT sa FROM SecurityAlert sa WHERE " +
            "sa.location.latitude BETWEEN :lat - 0.01 AND :lat + 0.01 " +
@@ -162,9 +184,39 @@ public interface SecurityAlertRepository extends JpaRepository<SecurityAlert, Lo
            "WHERE sa.id = :alertId")
     int markSecurityCompanyNotified(@Param("alertId") Long alertId);
     
+    // Emergency contact notification claim: exactly one caller flips the flag and sends
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE security_alerts SET emergency_contacts_notified = true, " +
+                   "emergency_contacts_notified_at = :notifiedAt " +
+                   "WHERE id = :alertId AND (emergency_contacts_notified IS NULL OR emergency_contacts_notified = false)",
+           nativeQuery = true)
+    int claimEmergencyContactsNotification(@Param("alertId") Long alertId,
+                                           @Param("notifiedAt") LocalDateTime notifiedAt);
+    
+    @Query("SELECT sa FROM SecurityAlert sa WHERE sa.priority >= :minPriority " +
+           "AND sa.status IN ('ACTIVE', 'IN_PROGRESS') " +
+           "AND (sa.notifications.emergencyContacts IS NULL OR sa.notifications.emergencyContacts = false) " +
+           "AND sa.timestamp < :raisedBefore")
+    List<SecurityAlert> findUnnotifiedAlerts(@Param("minPriority") Integer minPriority,
+                                             @Param("raisedBefore") LocalDateTime raisedBefore);
+    
     // Cleanup/archive old resolved alerts
     @Query("DELETE FROM SecurityAlert sa WHERE sa.status = 'RESOLVED' " +
            "AND sa.resolvedAt < :olderThan")
     int deleteOldResolvedAlerts(@Param("olderThan") LocalDateTime olderThan);
-    Optional<SecurityAlert> findLatestByTimeRange(String timeRange, LocalDateTime minusHours);
+    
+    // Metrics source read through a server-side cursor; must be consumed inside a transaction
+    @QueryHints({
+            @QueryHint(name = HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("SELECT sa.type AS type, sa.status AS status, sa.priority AS priority, sa.timestamp AS timestamp, " +
+           "sa.acknowledgedAt AS acknowledgedAt, sa.resolvedAt AS resolvedAt, sa.location.city AS city, " +
+           "sa.notifications.saps AS sapsNotified, sa.notifications.securityCompany AS securityCompanyNotified, " +
+           "sa.isFalseAlarm AS isFalseAlarm, sa.streamAvailable AS streamAvailable, " +
+           "sa.recordingUrl AS recordingUrl, sa.recordingDuration AS recordingDuration " +
+           "FROM SecurityAlert sa WHERE sa.timestamp >= :start AND sa.timestamp < :end")
+    Stream<SecurityAlertMetricsRow> streamMetricsRows(@Param("start") LocalDateTime start,
+                                                      @Param("end") LocalDateTime end);
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package za.co.rubhub.repositories;
+
+import za.co.rubhub.model.SecurityMetrics;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface SecurityMetricsRepository extends JpaRepository<SecurityMetrics, Long> {
+
+    // Latest persisted run for a range, if it was generated after the given time
+    Optional<SecurityMetrics> findFirstByTimeRangeAndGeneratedAtAfterOrderByGeneratedAtDesc(String timeRange,
+                                                                                           LocalDateTime after);
+}
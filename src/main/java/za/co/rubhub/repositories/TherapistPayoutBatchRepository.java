@@ -0,0 +1,46 @@
+package za.co.rubhub.repositories;
+
+import za.co.rubhub.model.Booking;
+import za.co.rubhub.model.TherapistPayout;
+import za.co.rubhub.repositories.projection.PayoutBookingRow;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Inserts one payout chunk's therapist_payouts rows as a single JDBC batch.
+ * TherapistPayout uses IDENTITY ids, which Hibernate never batches.
+ */
+@Repository
+@RequiredArgsConstructor
+public class TherapistPayoutBatchRepository {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public int[] insertProcessed(Long runId, List<PayoutBookingRow> bookings, LocalDateTime processedAt) {
+        Timestamp now = Timestamp.valueOf(processedAt);
+        List<Object[]> rows = new ArrayList<>(bookings.size());
+        for (PayoutBookingRow booking : bookings) {
+            BigDecimal amount = booking.getTotalAmount() != null ? booking.getTotalAmount() : BigDecimal.ZERO;
+            BigDecimal fee = Booking.rubhubFeeOn(amount);
+            rows.add(new Object[] {
+                    booking.getTherapistId(), booking.getId(), String.valueOf(booking.getTherapistId()),
+                    String.valueOf(booking.getId()), amount, fee, amount.subtract(fee), fee,
+                    TherapistPayout.PayoutStatus.PROCESSED.name(), now, now,
+                    "PAYOUT-" + runId + "-" + booking.getId(), now, now
+            });
+        }
+        return jdbcTemplate.batchUpdate(
+                "INSERT INTO therapist_payouts (therapist_id, booking_id, therapist_id_string, booking_id_string, " +
+                "booking_amount, rubhub_fee, therapist_amount, rubhub_earnings, payout_status, payout_date, " +
+                "processed_at, reference, currency, attempt_count, created_at, updated_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 'ZAR', 0, ?, ?)",
+                rows);
+    }
+}
@@ -1,6 +1,7 @@
 package za.co.rubhub.repositories;
 
 import za.co.rubhub.model.Therapist;
+import za.co.rubhub.repositories.projection.TherapistCity;
 
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
@@ -42,6 +43,13 @@ public interface TherapistRepository extends JpaRepository<Therapist, Long> {
                    "WHERE u.city = :city AND t.is_active = true AND t.is_available = true", nativeQuery = true)
     List<Therapist> findByCityAndAvailable(@Param("city") String city);
     
+    // City lookups for TherapistSlotGrid without initialising the lazy user association
+    @Query("SELECT t.id AS therapistId, u.city AS city FROM Therapist t JOIN t.user u WHERE t.isAvailable = true")
+    List<TherapistCity> findAvailableTherapistCities();
+    
+    @Query("SELECT u.city FROM Therapist t JOIN t.user u WHERE t.id = :therapistId")
+    Optional<String> findCityByTherapistId(@Param("therapistId") Long therapistId);
+    
     @Query("SELECT AVG(t.rating) FROM Therapist t WHERE t.isActive = true")
     Optional<Double> getAverageRating();
     
@@ -56,5 +64,4 @@ public interface TherapistRepository extends JpaRepository<Therapist, Long> {
                    "WHERE t.is_active = true " +
                    "GROUP BY t.specialization", nativeQuery = true)
     List<Object[]> getTherapistCountBySpecialization();
-    List<Therapist> findByLocationNear(double longitude, double latitude, double maxDistance);
 }
\ No newline at end of file
@@ -1,14 +1,23 @@
 package za.co.rubhub.repositories;
 
 import za.co.rubhub.model.Transaction;
+import za.co.rubhub.repositories.projection.AccountDayMovement;
+import za.co.rubhub.repositories.projection.StatementLineRow;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
+import static org.hibernate.jpa.QueryHints.HINT_FETCH_SIZE;
+import static org.hibernate.jpa.QueryHints.HINT_READONLY;
 
 @Repository
 public interface TransactionRepository extends JpaRepository<Transaction, Long> {
@@ -49,6 +58,55 @@ public interface TransactionRepository extends JpaRepository<Transaction, Long>
     @Query("SELECT SUM(t.amount) FROM Transaction t WHERE t.fromAccountId = :accountId AND t.status = 'SUCCESS'")
     BigDecimal getTotalDebitsFromAccount(@Param("accountId") String accountId);
     
+    // Credits minus debits over an account's journal lines
+    @Query("SELECT SUM(CASE WHEN t.toAccountId = :accountId THEN t.amount ELSE -t.amount END) " +
+           "FROM Transaction t WHERE (t.fromAccountId = :accountId OR t.toAccountId = :accountId) " +
+           "AND t.status = :status")
+    BigDecimal sumNetMovement(@Param("accountId") String accountId,
+                              @Param("status") Transaction.TransactionStatus status);
+    
+    // Net movement over [start, end); served from the (account, date) indexes rather than the account's whole history
+    @Query("SELECT SUM(CASE WHEN t.toAccountId = :accountId THEN t.amount ELSE -t.amount END) " +
+           "FROM Transaction t WHERE (t.fromAccountId = :accountId OR t.toAccountId = :accountId) " +
+           "AND t.status = :status AND t.transactionDate >= :start AND t.transactionDate < :end")
+    BigDecimal sumNetMovementBetween(@Param("accountId") String accountId,
+                                     @Param("status") Transaction.TransactionStatus status,
+                                     @Param("start") LocalDateTime start,
+                                     @Param("end") LocalDateTime end);
+    
+    @QueryHints({
+        @QueryHint(name = HINT_FETCH_SIZE, value = "500"),
+        @QueryHint(name = HINT_READONLY, value = "true")
+    })
+    @Query("SELECT t.id AS id, t.transactionId AS transactionId, t.transactionDate AS transactionDate, " +
+           "t.transactionType AS type, t.description AS description, t.reference AS reference, " +
+           "t.fromAccountId AS fromAccountId, t.toAccountId AS toAccountId, t.amount AS amount " +
+           "FROM Transaction t WHERE (t.fromAccountId = :accountId OR t.toAccountId = :accountId) " +
+           "AND t.status = :status AND t.transactionDate >= :start AND t.transactionDate < :end " +
+           "ORDER BY t.transactionDate ASC, t.id ASC")
+    Stream<StatementLineRow> streamStatementLines(@Param("accountId") String accountId,
+                                                  @Param("status") Transaction.TransactionStatus status,
+                                                  @Param("start") LocalDateTime start,
+                                                  @Param("end") LocalDateTime end);
+    
+    // Completed credits and debits per ledger account over [start, end); account ids are stored as text
+    @Query(value = "SELECT m.account_id AS \"accountId\", SUM(m.credit) AS \"credits\", " +
+                   "SUM(m.debit) AS \"debits\", COUNT(*) AS \"entries\" FROM (" +
+                   "SELECT CAST(t.to_account_id AS BIGINT) AS account_id, t.amount AS credit, 0 AS debit " +
+                   "FROM transactions t WHERE t.status = 'COMPLETED' AND t.to_account_id ~ '^[0-9]+$' " +
+                   "AND t.transaction_date >= :start AND t.transaction_date < :end " +
+                   "UNION ALL " +
+                   "SELECT CAST(t.from_account_id AS BIGINT), 0, t.amount " +
+                   "FROM transactions t WHERE t.status = 'COMPLETED' AND t.from_account_id ~ '^[0-9]+$' " +
+                   "AND t.transaction_date >= :start AND t.transaction_date < :end" +
+                   ") m GROUP BY m.account_id",
+           nativeQuery = true)
+    List<AccountDayMovement> sumMovementByAccount(@Param("start") LocalDateTime start,
+                                                  @Param("end") LocalDateTime end);
+    
+    @Query("SELECT MIN(t.transactionDate) FROM Transaction t WHERE t.status = :status")
+    LocalDateTime findEarliestTransactionDate(@Param("status") Transaction.TransactionStatus status);
+    
     @Query("SELECT t.transactionType, COUNT(t), SUM(t.amount), AVG(t.amount) " +
            "FROM Transaction t WHERE t.status = 'SUCCESS' " +
            "AND t.transactionDate BETWEEN :startDate AND :endDate " +
@@ -0,0 +1,9 @@
+package za.co.rubhub.repositories.projection;
+
+import java.math.BigDecimal;
+
+// An account's cached balance, without loading the entity
+public interface AccountBalanceRow {
+    Long getId();
+    BigDecimal getBalance();
+}
@@ -0,0 +1,11 @@
+package za.co.rubhub.repositories.projection;
+
+import java.math.BigDecimal;
+
+// One account's completed ledger movement over a day
+public interface AccountDayMovement {
+    Long getAccountId();
+    BigDecimal getCredits();
+    BigDecimal getDebits();
+    Long getEntries();
+}
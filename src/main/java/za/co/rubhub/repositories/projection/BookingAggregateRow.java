@@ -0,0 +1,16 @@
+package za.co.rubhub.repositories.projection;
+
+import za.co.rubhub.model.Booking;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+// Completed and paid bookings grouped by day x therapist x service type x rating
+public interface BookingAggregateRow {
+    LocalDate getDay();
+    Long getTherapistId();
+    Long getServiceTypeId();
+    Booking.Rating getRating();
+    Long getBookings();
+    BigDecimal getRevenue();
+}
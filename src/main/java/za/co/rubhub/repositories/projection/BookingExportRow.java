@@ -0,0 +1,24 @@
+package za.co.rubhub.repositories.projection;
+
+import za.co.rubhub.model.BookingStatus;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Flat booking row for exports; read as scalars so no entities enter the persistence context
+public interface BookingExportRow {
+    Long getId();
+    String getBookingReference();
+    BookingStatus getStatus();
+    Long getCustomerId();
+    String getCustomerName();
+    String getCustomerEmail();
+    Long getTherapistId();
+    Long getServiceTypeId();
+    LocalDateTime getBookingDate();
+    Integer getDurationMinutes();
+    BigDecimal getTotalAmount();
+    String getPaymentStatus();
+    LocalDateTime getCompletedAt();
+    LocalDateTime getCreatedAt();
+}
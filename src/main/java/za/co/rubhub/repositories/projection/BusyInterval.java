@@ -0,0 +1,11 @@
+package za.co.rubhub.repositories.projection;
+
+import java.time.LocalDateTime;
+
+// A booking or assigned request occupying a therapist's time
+public interface BusyInterval {
+    Long getId();
+    Long getTherapistId();
+    LocalDateTime getStart();
+    Integer getDurationMinutes();
+}
@@ -0,0 +1,10 @@
+package za.co.rubhub.repositories.projection;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+
+public interface DailyTotals {
+    LocalDate getDay();
+    Long getBookings();
+    BigDecimal getRevenue();
+}
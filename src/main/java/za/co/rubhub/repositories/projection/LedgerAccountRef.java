@@ -0,0 +1,9 @@
+package za.co.rubhub.repositories.projection;
+
+// The parts of an account a journal line records; none of them change once the account exists
+public interface LedgerAccountRef {
+    Long getId();
+    Long getUserId();
+    String getAccountType();
+    Long getShardOf();
+}
@@ -0,0 +1,23 @@
+package za.co.rubhub.repositories.projection;
+
+import za.co.rubhub.model.MassageRequest;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Flat massage request row for exports
+public interface MassageRequestExportRow {
+    Long getId();
+    MassageRequest.Status getStatus();
+    Long getClientId();
+    String getClientName();
+    Long getTherapistId();
+    String getServiceType();
+    LocalDateTime getPreferredDateTime();
+    Integer getDurationMinutes();
+    String getLocationAddress();
+    BigDecimal getEstimatedPrice();
+    BigDecimal getActualPrice();
+    MassageRequest.PaymentStatus getPaymentStatus();
+    LocalDateTime getCreatedAt();
+}
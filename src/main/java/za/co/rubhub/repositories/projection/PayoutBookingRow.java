@@ -0,0 +1,10 @@
+package za.co.rubhub.repositories.projection;
+
+import java.math.BigDecimal;
+
+// An unpaid completed booking as the payout engine needs it
+public interface PayoutBookingRow {
+    Long getId();
+    Long getTherapistId();
+    BigDecimal getTotalAmount();
+}
@@ -0,0 +1,11 @@
+package za.co.rubhub.repositories.projection;
+
+import java.math.BigDecimal;
+
+// Totals for a period and the period before it, fetched in one query
+public interface PeriodComparison {
+    Long getCurrentBookings();
+    BigDecimal getCurrentRevenue();
+    Long getPreviousBookings();
+    BigDecimal getPreviousRevenue();
+}
@@ -0,0 +1,22 @@
+package za.co.rubhub.repositories.projection;
+
+import za.co.rubhub.model.SecurityAlert;
+
+import java.time.LocalDateTime;
+
+// The columns security metrics are computed from; read as scalars so no entities enter the persistence context
+public interface SecurityAlertMetricsRow {
+    SecurityAlert.AlertType getType();
+    SecurityAlert.AlertStatus getStatus();
+    Integer getPriority();
+    LocalDateTime getTimestamp();
+    LocalDateTime getAcknowledgedAt();
+    LocalDateTime getResolvedAt();
+    String getCity();
+    Boolean getSapsNotified();
+    Boolean getSecurityCompanyNotified();
+    Boolean getIsFalseAlarm();
+    Boolean getStreamAvailable();
+    String getRecordingUrl();
+    Long getRecordingDuration();
+}
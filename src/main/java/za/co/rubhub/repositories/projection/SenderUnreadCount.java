@@ -0,0 +1,7 @@
+package za.co.rubhub.repositories.projection;
+
+// Unread messages in a chat from one sender
+public interface SenderUnreadCount {
+    Long getSenderId();
+    Long getUnread();
+}
@@ -0,0 +1,19 @@
+package za.co.rubhub.repositories.projection;
+
+import za.co.rubhub.model.Transaction;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// A journal line touching an account, read as scalars for statements
+public interface StatementLineRow {
+    Long getId();
+    String getTransactionId();
+    LocalDateTime getTransactionDate();
+    Transaction.TransactionType getType();
+    String getDescription();
+    String getReference();
+    String getFromAccountId();
+    String getToAccountId();
+    BigDecimal getAmount();
+}
@@ -0,0 +1,7 @@
+package za.co.rubhub.repositories.projection;
+
+// City a therapist works in, taken from their user profile
+public interface TherapistCity {
+    Long getTherapistId();
+    String getCity();
+}
@@ -0,0 +1,11 @@
+package za.co.rubhub.repositories.projection;
+
+import java.math.BigDecimal;
+
+public interface TherapistTotals {
+    Long getTherapistId();
+    Long getBookings();
+    BigDecimal getRevenue();
+    Long getRatingTotal();
+    Long getRatingCount();
+}
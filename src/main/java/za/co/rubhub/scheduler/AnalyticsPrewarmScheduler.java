@@ -0,0 +1,141 @@
+package za.co.rubhub.scheduler;
+
+import za.co.rubhub.service.impl.AnalyticsCache;
+import za.co.rubhub.service.impl.AnalyticsService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps every supported analytics range generated ahead of time so dashboard
+ * requests are served from AnalyticsCache and never pay for generation.
+ * Each range has its own cadence; due ranges are generated in parallel on the
+ * bounded analyticsPrewarmExecutor and swapped into the cache when complete.
+ */
+@Slf4j
+@Component
+public class AnalyticsPrewarmScheduler {
+
+    private static final Map<String, Duration> CADENCES;
+    static {
+        Map<String, Duration> cadences = new LinkedHashMap<>();
+        cadences.put("7d", Duration.ofMinutes(5));
+        cadences.put("30d", Duration.ofMinutes(10));
+        cadences.put("90d", Duration.ofMinutes(20));
+        cadences.put("1y", Duration.ofMinutes(30));
+        CADENCES = Collections.unmodifiableMap(cadences);
+    }
+
+    private final AnalyticsService analyticsService;
+    private final AnalyticsCache analyticsCache;
+    private final ThreadPoolTaskExecutor executor;
+    private final MeterRegistry meterRegistry;
+
+    // Ranges queued or generating right now; a range is never submitted twice
+    private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+    public AnalyticsPrewarmScheduler(AnalyticsService analyticsService,
+                                     AnalyticsCache analyticsCache,
+                                     @Qualifier("analyticsPrewarmExecutor") ThreadPoolTaskExecutor executor,
+                                     MeterRegistry meterRegistry) {
+        this.analyticsService = analyticsService;
+        this.analyticsCache = analyticsCache;
+        this.executor = executor;
+        this.meterRegistry = meterRegistry;
+
+        // A scheduled range stays fresh for one missed run before requests trigger a refresh
+        for (Map.Entry<String, Duration> cadence : CADENCES.entrySet()) {
+            analyticsCache.setFreshFor(cadence.getKey(), cadence.getValue().multipliedBy(2));
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmAll() {
+        log.info("Pre-warming analytics for ranges {}", CADENCES.keySet());
+        for (String timeRange : CADENCES.keySet()) {
+            submit(timeRange);
+        }
+    }
+
+    // Checks every minute which ranges have reached their cadence
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void refreshDueRanges() {
+        LocalDateTime now = LocalDateTime.now();
+        for (Map.Entry<String, Duration> cadence : CADENCES.entrySet()) {
+            Optional<LocalDateTime> generatedAt = analyticsCache.generatedAt(cadence.getKey());
+            if (!generatedAt.isPresent() || !generatedAt.get().plus(cadence.getValue()).isAfter(now)) {
+                submit(cadence.getKey());
+            }
+        }
+    }
+
+    // Daily at 03:30, after the night's rollups have settled
+    @Scheduled(cron = "0 30 3 * * *")
+    public void cleanupOldAnalytics() {
+        try {
+            analyticsService.cleanupOldAnalyticsData();
+        } catch (Exception e) {
+            log.error("Analytics cleanup failed: {}", e.getMessage(), e);
+        }
+    }
+
+    private void submit(String timeRange) {
+        if (!running.add(timeRange)) {
+            return;
+        }
+        try {
+            executor.execute(() -> generate(timeRange));
+        } catch (TaskRejectedException e) {
+            running.remove(timeRange);
+            log.warn("Analytics pre-warm queue is full; {} will be retried on the next tick", timeRange);
+        }
+    }
+
+    private void generate(String timeRange) {
+        long start = System.nanoTime();
+        try {
+            // Generates the whole snapshot before the cache swaps it in
+            analyticsService.generateAnalyticsData(timeRange);
+            long elapsed = System.nanoTime() - start;
+            generationTimer(timeRange).record(elapsed, TimeUnit.NANOSECONDS);
+            log.debug("Pre-warmed {} analytics in {} ms", timeRange, TimeUnit.NANOSECONDS.toMillis(elapsed));
+        } catch (Exception e) {
+            failureCounter(timeRange).increment();
+            log.error("Pre-warming {} analytics failed: {}", timeRange, e.getMessage(), e);
+        } finally {
+            running.remove(timeRange);
+        }
+    }
+
+    private Timer generationTimer(String timeRange) {
+        return Timer.builder("rubhub.analytics.generation")
+                .description("Time to generate a dashboard analytics snapshot")
+                .tag("range", timeRange)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+    }
+
+    private Counter failureCounter(String timeRange) {
+        return Counter.builder("rubhub.analytics.generation.failures")
+                .tag("range", timeRange)
+                .register(meterRegistry);
+    }
+}
@@ -5,6 +5,8 @@ import za.co.rubhub.service.PayoutProcessingResult;
 import za.co.rubhub.service.EmailService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
@@ -42,11 +44,13 @@ public class PayoutScheduler {
     
     /**
      * Additional safety check - runs every Monday at 9:00 AM
-     * to catch any missed payouts from Friday
+     * to catch any missed payouts from Friday. Resumes unfinished runs, then
+     * re-runs the same window Friday paid; bookings already paid drop out
      */
     @Scheduled(cron = "0 0 9 * * MON") // Every Monday at 9:00 AM
     public void payoutSafetyCheck() {
         log.info("Running payout safety check...");
+        resumeUnfinishedPayouts();
         
         try {
             PayoutProcessingResult result = paymentService.processTherapistPayouts();
@@ -63,6 +67,23 @@ public class PayoutScheduler {
         }
     }
     
+    /**
+     * A run interrupted by a restart carries on from its last committed chunk
+     * as soon as the application is back
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void resumeUnfinishedPayouts() {
+        try {
+            for (PayoutProcessingResult result : paymentService.resumeUnfinishedPayouts()) {
+                if (result.getTotalBookings() > 0) {
+                    emailService.sendPayoutReport(result);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Resuming unfinished payouts failed: {}", e.getMessage(), e);
+        }
+    }
+    
     private void sendFailureNotification(Exception e) {
         // Implement failure notification logic
         // This could be another email, Slack notification, etc.
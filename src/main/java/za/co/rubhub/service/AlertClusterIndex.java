@@ -0,0 +1,222 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.model.Location;
+import za.co.rubhub.model.SecurityAlert;
+import za.co.rubhub.repositories.SecurityAlertRepository;
+import za.co.rubhub.util.GeoUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Groups new security alerts with recent unresolved alerts of the same type
+ * nearby, so a burst from one cause (say, a power outage tripping duration
+ * overruns across a suburb) becomes one incident instead of hundreds of
+ * unrelated alerts.
+ *
+ * Alerts are indexed by 0.01 degree grid cell and 15 minute time bucket. A
+ * new alert looks at its own and the eight neighbouring cells in the current
+ * and previous bucket, so matching costs the same however many alerts are
+ * open. A matched alert also registers the incident in its own cell, which
+ * lets an incident grow across neighbouring cells as the burst spreads.
+ * Buckets older than the window are dropped whole.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AlertClusterIndex {
+
+    // Same box as the old findSimilarAlerts query: about 1.1 km either way
+    static final double CELL_SIZE = 0.01;
+    static final Duration WINDOW = Duration.ofMinutes(30);
+    private static final long BUCKET_SECONDS = WINDOW.getSeconds() / 2;
+
+    private static final List<SecurityAlert.AlertStatus> OPEN_STATUSES = Arrays.asList(
+            SecurityAlert.AlertStatus.ACTIVE, SecurityAlert.AlertStatus.IN_PROGRESS,
+            SecurityAlert.AlertStatus.ESCALATED);
+
+    private final SecurityAlertRepository securityAlertRepository;
+
+    // bucket -> cell -> alert type -> latest alert of an incident there; guarded by this
+    private final Map<Long, Map<Long, Map<SecurityAlert.AlertType, Slot>>> buckets = new HashMap<>();
+    // Open incidents by the id of their first alert
+    private final Map<Long, Incident> incidents = new HashMap<>();
+
+    // Restores the window from the database so a restart does not split ongoing incidents
+    @EventListener(ApplicationReadyEvent.class)
+    public void warm() {
+        LocalDateTime now = LocalDateTime.now();
+        List<SecurityAlert> recent = securityAlertRepository.findByTimestampBetween(now.minus(WINDOW), now);
+        recent.sort(Comparator.comparing(SecurityAlert::getTimestamp));
+        int indexed = 0;
+        int opened;
+        synchronized (this) {
+            for (SecurityAlert alert : recent) {
+                if (!OPEN_STATUSES.contains(alert.getStatus())) {
+                    continue;
+                }
+                Long incidentId = alert.getIncidentId();
+                Incident incident = incidentId != null ? incidents.get(incidentId) : null;
+                if (incident == null) {
+                    incident = open(incidentId != null ? incidentId : alert.getId());
+                }
+                if (index(alert, incident)) {
+                    indexed++;
+                }
+            }
+            opened = incidents.size();
+        }
+        log.info("Alert cluster index warmed with {} alerts in {} incidents", indexed, opened);
+    }
+
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public synchronized void expire() {
+        long oldest = bucketOf(LocalDateTime.now()) - 1;
+        buckets.keySet().removeIf(bucket -> bucket < oldest);
+        // An incident nobody has joined within the window is no longer a magnet for new alerts
+        LocalDateTime cutoff = LocalDateTime.now().minus(WINDOW);
+        incidents.values().removeIf(incident -> {
+            if (incident.lastSeen.isBefore(cutoff)) {
+                incident.open = false;
+                return true;
+            }
+            return false;
+        });
+    }
+
+    /**
+     * Clusters a just-saved alert. Returns the id of the incident it joined,
+     * or null when it starts a new incident of its own (or has no location).
+     */
+    public synchronized Long cluster(SecurityAlert alert) {
+        if (alert.getId() == null || !hasLocation(alert)) {
+            return null;
+        }
+        Incident incident = match(alert);
+        if (incident == null) {
+            index(alert, open(alert.getId()));
+            return null;
+        }
+        index(alert, incident);
+        return incident.id;
+    }
+
+    // Called with every saved alert; a closed incident head stops attracting new alerts
+    public synchronized void onStatusChanged(SecurityAlert alert) {
+        if (alert.getId() != null && !OPEN_STATUSES.contains(alert.getStatus())) {
+            Incident closed = incidents.remove(alert.getId());
+            if (closed != null) {
+                closed.open = false;
+            }
+        }
+    }
+
+    private Incident match(SecurityAlert alert) {
+        double lat = alert.getLocation().getLatitude();
+        double lng = alert.getLocation().getLongitude();
+        int row = GeoUtils.cellIndex(lat, CELL_SIZE);
+        int col = GeoUtils.cellIndex(lng, CELL_SIZE);
+        LocalDateTime at = alert.getTimestamp();
+        long bucket = bucketOf(at);
+
+        Incident best = null;
+        for (long b = bucket; b >= bucket - 1; b--) {
+            Map<Long, Map<SecurityAlert.AlertType, Slot>> cells = buckets.get(b);
+            if (cells == null) {
+                continue;
+            }
+            for (int r = row - 1; r <= row + 1; r++) {
+                for (int c = col - 1; c <= col + 1; c++) {
+                    Map<SecurityAlert.AlertType, Slot> types = cells.get(GeoUtils.cellKey(r, c));
+                    Slot slot = types != null ? types.get(alert.getType()) : null;
+                    if (slot == null || !slot.incident.open
+                            || Math.abs(slot.latitude - lat) > CELL_SIZE || Math.abs(slot.longitude - lng) > CELL_SIZE
+                            || Duration.between(slot.seenAt, at).abs().compareTo(WINDOW) > 0) {
+                        continue;
+                    }
+                    // The oldest incident wins so neighbouring bursts merge into one
+                    if (best == null || slot.incident.id < best.id) {
+                        best = slot.incident;
+                    }
+                }
+            }
+        }
+        return best;
+    }
+
+    private Incident open(Long id) {
+        Incident incident = new Incident(id);
+        incidents.put(id, incident);
+        return incident;
+    }
+
+    private boolean index(SecurityAlert alert, Incident incident) {
+        if (!hasLocation(alert) || alert.getTimestamp() == null) {
+            return false;
+        }
+        Location location = alert.getLocation();
+        long cell = GeoUtils.cellKey(location.getLatitude(), location.getLongitude(), CELL_SIZE);
+        Map<SecurityAlert.AlertType, Slot> types = buckets
+                .computeIfAbsent(bucketOf(alert.getTimestamp()), b -> new HashMap<>())
+                .computeIfAbsent(cell, c -> new EnumMap<>(SecurityAlert.AlertType.class));
+        Slot current = types.get(alert.getType());
+        // Keep the older incident in a cell; the newer one can still be found through its own cells
+        if (current == null || !current.incident.open || current.incident == incident
+                || incident.id < current.incident.id) {
+            types.put(alert.getType(), new Slot(incident, location.getLatitude(), location.getLongitude(),
+                    alert.getTimestamp()));
+        }
+        if (alert.getTimestamp().isAfter(incident.lastSeen)) {
+            incident.lastSeen = alert.getTimestamp();
+        }
+        return true;
+    }
+
+    private static boolean hasLocation(SecurityAlert alert) {
+        Location location = alert.getLocation();
+        return location != null && alert.getType() != null && alert.getTimestamp() != null
+                && GeoUtils.isValidCoordinate(location.getLatitude(), location.getLongitude());
+    }
+
+    private static long bucketOf(LocalDateTime time) {
+        return Math.floorDiv(time.toEpochSecond(ZoneOffset.UTC), BUCKET_SECONDS);
+    }
+
+    private static final class Incident {
+        private final Long id;
+        private boolean open = true;
+        private LocalDateTime lastSeen = LocalDateTime.MIN;
+
+        Incident(Long id) {
+            this.id = id;
+        }
+    }
+
+    // The latest alert of an incident in one cell and bucket
+    private static final class Slot {
+        private final Incident incident;
+        private final double latitude;
+        private final double longitude;
+        private final LocalDateTime seenAt;
+
+        Slot(Incident incident, double latitude, double longitude, LocalDateTime seenAt) {
+            this.incident = incident;
+            this.latitude = latitude;
+            this.longitude = longitude;
+            this.seenAt = seenAt;
+        }
+    }
+}
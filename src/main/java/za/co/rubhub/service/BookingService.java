@@ -3,34 +3,113 @@ package za.co.rubhub.service;
 import za.co.rubhub.model.Booking;
 import za.co.rubhub.model.BookingStatus;
 import za.co.rubhub.model.User;
+import za.co.rubhub.dto.CursorPage;
+import za.co.rubhub.dto.PageCursor;
 import za.co.rubhub.repositories.BookingRepository;
+import za.co.rubhub.repositories.projection.BookingExportRow;
+import za.co.rubhub.service.impl.BookingRollupService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 public class BookingService {
 
+    private static final int MAX_PAGE_SIZE = 500;
+    // Open bounds for date filters; kept inside the range Postgres timestamps can hold
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 0, 0);
+
     @Autowired
     private BookingRepository bookingRepository;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
     @Autowired
     private UserService userService;
 
     @Autowired
     private TherapistService therapistService;
 
+    @Autowired
+    private BookingRollupService bookingRollupService;
+
+    @Autowired
+    private TherapistCalendar therapistCalendar;
+
     // Basic CRUD operations
     public List<Booking> findAll() {
         return bookingRepository.findAll();
     }
 
+    public long countAll() {
+        return bookingRepository.count();
+    }
+
     public Optional<Booking> findById(Long id) {
         return bookingRepository.findById(id);
     }
 
+    // Every match in id order, read a keyset page at a time. Each page is detached once the sink has it,
+    // so the request's persistence context never holds more than one page
+    public void forEachBooking(BookingStatus status, Long customerId, Long therapistId, Consumer<Booking> sink) {
+        String cursor = null;
+        do {
+            CursorPage<Booking> page = findPage(status, customerId, therapistId, false, cursor, MAX_PAGE_SIZE);
+            page.getItems().forEach(sink);
+            entityManager.clear();
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+    }
+
+    // Keyset pagination ordered by id, or by booking date when sortByTime is set
+    public CursorPage<Booking> findPage(BookingStatus status, Long customerId, Long therapistId,
+                                        boolean sortByTime, String cursor, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        PageCursor after = PageCursor.decode(cursor);
+        // One extra row tells us whether there is another page without a COUNT
+        PageRequest page = PageRequest.of(0, size + 1);
+
+        List<Booking> rows;
+        if (sortByTime) {
+            LocalDateTime afterTime = after != null && after.getTime() != null ? after.getTime() : EARLIEST;
+            Long afterId = after != null && after.getTime() != null ? after.getId() : 0L;
+            rows = bookingRepository.findPageAfterBookingDate(afterTime, afterId, status, customerId, therapistId, page);
+        } else {
+            Long afterId = after != null ? after.getId() : 0L;
+            rows = bookingRepository.findPageAfterId(afterId, status, customerId, therapistId, page);
+        }
+
+        boolean hasMore = rows.size() > size;
+        List<Booking> items = hasMore ? new ArrayList<>(rows.subList(0, size)) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            Booking last = items.get(items.size() - 1);
+            nextCursor = new PageCursor(sortByTime ? last.getBookingDate() : null, last.getId()).encode();
+        }
+        return new CursorPage<>(items, nextCursor, hasMore);
+    }
+
+    // Streams flat rows from a database cursor; memory stays flat however many bookings match
+    @Transactional(readOnly = true)
+    public void exportBookings(BookingStatus status, LocalDateTime from, LocalDateTime to,
+                               Consumer<BookingExportRow> sink) {
+        try (Stream<BookingExportRow> rows = bookingRepository.streamExportRows(status,
+                from != null ? from : EARLIEST, to != null ? to : LATEST)) {
+            rows.forEach(sink);
+        }
+    }
+
     public Booking findByRequestId(String requestId) {
         return bookingRepository.findByRequestId(Long.parseLong(requestId));
     }
@@ -51,7 +130,13 @@ public class BookingService {
         // Calculate totals before saving
         booking.calculateTotals();
         
-        return bookingRepository.save(booking);
+        Booking saved = bookingRepository.save(booking);
+        // Completed and paid bookings feed the daily analytics rollups
+        if (saved.isCompletedAndPaid()) {
+            bookingRollupService.recordBooking(saved);
+        }
+        therapistCalendar.sync(saved);
+        return saved;
     }
 
     public void deleteById(Long id) {
@@ -72,15 +157,17 @@ public class BookingService {
             throw new RuntimeException("Therapist is not available for booking");
         }
 
-        // Check for scheduling conflicts
-        if (hasSchedulingConflict(booking)) {
-            throw new RuntimeException("Scheduling conflict: Therapist already has a booking at this time");
-        }
-
         booking.setStatus(BookingStatus.PENDING);
         booking.setPaymentStatus("pending");
-        
-        return save(booking);
+        if (booking.getBookingDate() == null) {
+            return save(booking);
+        }
+
+        // Checked and saved under the therapist's calendar lock so two bookings can't both take the slot
+        return therapistCalendar.reserve(booking.getTherapist().getId(), booking.getBookingDate(),
+                durationOf(booking), booking, () -> save(booking))
+                .orElseThrow(() -> new RuntimeException(
+                        "Scheduling conflict: Therapist already has a booking at this time"));
     }
 
     public Booking acceptBooking(String bookingId, String therapistId) {
@@ -151,6 +238,7 @@ public class BookingService {
             }
 
             booking.setStatus(BookingStatus.COMPLETED);
+            booking.setCompletedAt(LocalDateTime.now());
             booking.setActualEndTime(LocalDateTime.now());
             booking.setUpdatedAt(LocalDateTime.now());
             
@@ -186,7 +274,11 @@ public class BookingService {
         throw new RuntimeException("Booking not found with ID: " + bookingId);
     }
 
+    // PAID is only ever set by PaymentService.markPaid, which also credits the customer's money to SUSPENSE
     public Booking updatePaymentStatus(Long bookingId, String paymentStatus, String transactionId) {
+        if ("PAID".equalsIgnoreCase(paymentStatus)) {
+            throw new IllegalArgumentException("A booking is marked PAID only by its completed PayFast payment");
+        }
         Optional<Booking> bookingOpt = findById(bookingId);
         if (bookingOpt.isPresent()) {
             Booking booking = bookingOpt.get();
@@ -256,15 +348,14 @@ public class BookingService {
     }
 
     // Utility methods
-    private boolean hasSchedulingConflict(Booking booking) {
-        LocalDateTime start = (LocalDateTime) booking.getScheduledTime();
-        LocalDateTime end = start.plusMinutes(booking.getServiceType().getDuration());
-        
-        // List<Booking> conflicts = bookingRepository.findTherapistConflicts(
-        //     booking.getTherapist().getId(), start, end);
-        
-        // return !conflicts.isEmpty();
-        return false;
+    private static int durationOf(Booking booking) {
+        if (booking.getDurationMinutes() != null && booking.getDurationMinutes() > 0) {
+            return booking.getDurationMinutes();
+        }
+        if (booking.getServiceType() != null && booking.getServiceType().getDuration() != null) {
+            return booking.getServiceType().getDuration();
+        }
+        return 60;
     }
 
     // Statistics methods
@@ -0,0 +1,313 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.dto.ChatMessageView;
+import za.co.rubhub.dto.ChatReadMarker;
+import za.co.rubhub.dto.CursorPage;
+import za.co.rubhub.model.ChatMessage;
+import za.co.rubhub.repositories.ChatMessageRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The newest 200 messages of recently used chats, kept in a ring buffer per
+ * chat with least-recently-used eviction across chats.
+ *
+ * Opening a chat and scrolling recent history are answered from the ring;
+ * only the part of a page older than the ring goes to Postgres. Rings are
+ * loaded through ChatWriteBehind.consistentRead and then fed by its accept
+ * callbacks, so they include messages that are not stored yet.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatHistoryCache {
+
+    static final int TAIL_SIZE = 200;
+    static final int MAX_CHATS = 2000;
+    public static final int MAX_PAGE_SIZE = 100;
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatWriteBehind chatWriteBehind;
+
+    // Access order gives LRU eviction; guarded by this
+    private final Map<Long, Tail> tails = new LinkedHashMap<Long, Tail>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Tail> eldest) {
+            return size() > MAX_CHATS;
+        }
+    };
+
+    // Accept callback from ChatWriteBehind; only chats already in memory are touched
+    public void onAccepted(ChatMessageView message) {
+        Tail tail = cached(message.getChatId());
+        if (tail != null) {
+            tail.add(message);
+        }
+    }
+
+    public void onRead(ChatReadMarker marker) {
+        Tail tail = cached(marker.getChatId());
+        if (tail != null) {
+            tail.read(marker);
+        }
+    }
+
+    // Newest messages, oldest first; nextCursor is the id to pass as "before" for the previous page
+    public CursorPage<ChatMessageView> latest(Long chatId, int limit) {
+        return before(chatId, Long.MAX_VALUE, limit);
+    }
+
+    public CursorPage<ChatMessageView> before(Long chatId, long beforeId, int limit) {
+        int size = pageSize(limit);
+        Tail tail = tail(chatId);
+
+        List<ChatMessageView> fromTail;
+        synchronized (tail) {
+            int end = tail.countBelow(beforeId);
+            fromTail = tail.slice(Math.max(0, end - size), end);
+            if (end >= size || tail.complete) {
+                return page(fromTail, end > size || (end == size && !tail.complete), true);
+            }
+        }
+
+        // The ring ran out: the rest of the page is older than anything it holds
+        int missing = size - fromTail.size();
+        long below = fromTail.isEmpty() ? beforeId : fromTail.get(0).getId();
+        List<ChatMessage> rows = chatMessageRepository.findByChatIdAndIdLessThanOrderByIdDesc(
+                chatId, below, PageRequest.of(0, missing + 1));
+        boolean hasMore = rows.size() > missing;
+        List<ChatMessageView> items = new ArrayList<>(size);
+        for (int i = Math.min(rows.size(), missing) - 1; i >= 0; i--) {
+            items.add(ChatMessageView.from(rows.get(i), chatId));
+        }
+        items.addAll(fromTail);
+        return page(items, hasMore, true);
+    }
+
+    // Messages after the id, oldest first; nextCursor is the id to pass as "after" for the next page
+    public CursorPage<ChatMessageView> after(Long chatId, long afterId, int limit) {
+        int size = pageSize(limit);
+        Tail tail = tail(chatId);
+
+        synchronized (tail) {
+            // The ring holds every message from its oldest one onwards
+            if (tail.complete || (tail.size > 0 && afterId >= tail.get(0).getId())) {
+                int start = tail.countBelow(afterId + 1);
+                int end = Math.min(start + size, tail.size);
+                return page(tail.slice(start, end), end < tail.size, false);
+            }
+        }
+
+        List<ChatMessage> rows = chatMessageRepository.findByChatIdAndIdGreaterThanOrderByIdAsc(
+                chatId, afterId, PageRequest.of(0, size + 1));
+        List<ChatMessageView> items = new ArrayList<>(size + 1);
+        for (ChatMessage row : rows) {
+            items.add(ChatMessageView.from(row, chatId));
+        }
+        if (rows.size() <= size) {
+            // Stored rows ran out; anything newer is still on its way to the database and in the ring
+            long last = items.isEmpty() ? afterId : items.get(items.size() - 1).getId();
+            synchronized (tail) {
+                int start = tail.countBelow(last + 1);
+                items.addAll(tail.slice(start, Math.min(tail.size, start + size + 1 - items.size())));
+            }
+        }
+        boolean hasMore = items.size() > size;
+        return page(hasMore ? new ArrayList<>(items.subList(0, size)) : items, hasMore, false);
+    }
+
+    private Tail cached(Long chatId) {
+        synchronized (this) {
+            return tails.get(chatId);
+        }
+    }
+
+    private Tail tail(Long chatId) {
+        Tail tail = cached(chatId);
+        if (tail == null) {
+            tail = load(chatId);
+        }
+        tail.awaitLoaded();
+        return tail;
+    }
+
+    private Tail load(Long chatId) {
+        Tail created = new Tail();
+        Tail[] winner = {created};
+        try {
+            List<ChatMessage> newestFirst = chatWriteBehind.consistentRead(chatId, snapshot -> {
+                synchronized (this) {
+                    Tail existing = tails.get(chatId);
+                    if (existing != null) {
+                        winner[0] = existing;
+                        return;
+                    }
+                    tails.put(chatId, created);
+                }
+                created.seed(snapshot);
+            }, storedBefore -> winner[0] == created
+                    ? chatMessageRepository.findByChatIdAndIdLessThanOrderByIdDesc(chatId, storedBefore,
+                            PageRequest.of(0, TAIL_SIZE))
+                    : null);
+            if (winner[0] != created) {
+                return winner[0];
+            }
+            created.finishLoading(chatId, newestFirst);
+            return created;
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                tails.remove(chatId, created);
+            }
+            created.fail(e);
+            throw e;
+        }
+    }
+
+    private static int pageSize(int limit) {
+        return Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+    }
+
+    private static CursorPage<ChatMessageView> page(List<ChatMessageView> items, boolean hasMore, boolean backwards) {
+        String nextCursor = null;
+        if (hasMore && !items.isEmpty()) {
+            ChatMessageView edge = backwards ? items.get(0) : items.get(items.size() - 1);
+            nextCursor = String.valueOf(edge.getId());
+        }
+        return new CursorPage<>(items, nextCursor, hasMore);
+    }
+
+    private static final class Tail {
+        private final ChatMessageView[] ring = new ChatMessageView[TAIL_SIZE];
+        private int start;
+        private int size;
+        // True while the ring holds every message the chat has
+        private boolean complete;
+        private boolean loading = true;
+        private RuntimeException failure;
+        // Writes seen while loading, applied once the stored messages are in
+        private final List<ChatMessageView> early = new ArrayList<>();
+        private final List<ChatReadMarker> earlyReads = new ArrayList<>();
+
+        synchronized void seed(ChatWriteBehind.Snapshot snapshot) {
+            early.addAll(snapshot.getMessages());
+            earlyReads.addAll(snapshot.getReads());
+        }
+
+        synchronized void add(ChatMessageView message) {
+            if (loading) {
+                early.add(message);
+            } else {
+                push(message);
+            }
+        }
+
+        synchronized void read(ChatReadMarker marker) {
+            if (loading) {
+                earlyReads.add(marker);
+            } else {
+                applyRead(marker);
+            }
+        }
+
+        synchronized void finishLoading(Long chatId, List<ChatMessage> newestFirst) {
+            // The snapshot and later callbacks never overlap the stored rows, so a sort is all the merge needs
+            List<ChatMessageView> all = new ArrayList<>(newestFirst.size() + early.size());
+            for (ChatMessage message : newestFirst) {
+                all.add(ChatMessageView.from(message, chatId));
+            }
+            all.addAll(early);
+            all.sort(Comparator.comparing(ChatMessageView::getId));
+
+            complete = newestFirst.size() < TAIL_SIZE;
+            for (ChatMessageView message : all) {
+                push(message);
+            }
+            for (ChatReadMarker marker : earlyReads) {
+                applyRead(marker);
+            }
+            early.clear();
+            earlyReads.clear();
+            loading = false;
+            notifyAll();
+        }
+
+        synchronized void fail(RuntimeException e) {
+            failure = e;
+            loading = false;
+            notifyAll();
+        }
+
+        synchronized void awaitLoaded() {
+            while (loading) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while loading chat history", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+
+        private void push(ChatMessageView message) {
+            if (size == TAIL_SIZE) {
+                ring[start] = message;
+                start = (start + 1) % TAIL_SIZE;
+                complete = false;
+            } else {
+                ring[(start + size) % TAIL_SIZE] = message;
+                size++;
+            }
+        }
+
+        private void applyRead(ChatReadMarker marker) {
+            for (int i = 0; i < size; i++) {
+                ChatMessageView message = get(i);
+                if (message.getId() <= marker.getUpToId() && !Boolean.TRUE.equals(message.getIsRead())
+                        && !marker.getUserId().equals(message.getSenderId())) {
+                    ring[(start + i) % TAIL_SIZE] = message.markedRead();
+                }
+            }
+        }
+
+        ChatMessageView get(int index) {
+            return ring[(start + index) % TAIL_SIZE];
+        }
+
+        // Number of messages with an id below the given one; ids ascend through the ring
+        int countBelow(long id) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (get(mid).getId() < id) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        List<ChatMessageView> slice(int from, int to) {
+            if (from >= to) {
+                return new ArrayList<>();
+            }
+            List<ChatMessageView> slice = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                slice.add(get(i));
+            }
+            return slice;
+        }
+    }
+}
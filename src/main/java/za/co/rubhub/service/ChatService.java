@@ -1,22 +1,29 @@
 package za.co.rubhub.service;
+import za.co.rubhub.dto.ChatMessageView;
+import za.co.rubhub.dto.CursorPage;
 import za.co.rubhub.model.Chat;
 import za.co.rubhub.model.ChatMessage;
-import za.co.rubhub.repositories.ChatMessageRepository;
 import za.co.rubhub.repositories.ChatRepository;
-import lombok.NoArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.time.LocalDateTime;
 import java.util.List;
 
 import java.util.Optional;
 
 @Service
-@NoArgsConstructor
+@RequiredArgsConstructor
 public class ChatService {
-    private  ChatRepository chatRepository;
+    private final ChatRepository chatRepository;
     
-    private  ChatMessageRepository messageRepository;
+    private final ChatStreamHub chatStreamHub;
+
+    private final ChatWriteBehind chatWriteBehind;
+
+    private final ChatHistoryCache chatHistoryCache;
+
+    private final ChatUnreadCounters chatUnreadCounters;
     
 
     public Chat createChat(Chat chat) {
@@ -33,25 +40,45 @@ public class ChatService {
         return chatRepository.findById(id);
     }
 
-    public ChatMessage sendMessage(ChatMessage message) {
+    // Acknowledged once journaled; the message and the chat's last message reach the database in the next batch
+    public ChatMessage sendMessage(Long chatId, ChatMessage message) {
         message.setCreatedAt(LocalDateTime.now());
-        
-        // Update last message in chat
-        chatRepository.findById(message.getId()).ifPresent(chat -> {
-            Chat.LastMessage lastMessage = new Chat.LastMessage();
-            lastMessage.setContent(message.getContent());
-            lastMessage.setSentAt(message.getCreatedAt());
-            lastMessage.setSentBy(message.getSenderId());
-            chat.setLastMessage(lastMessage);
-            chat.setUpdatedAt(LocalDateTime.now());
-            chatRepository.save(chat);
+        if (message.getSentAt() == null) {
+            message.setSentAt(message.getCreatedAt());
+        }
+        chatWriteBehind.append(chatId, message, view -> {
+            chatStreamHub.publish(chatId, view);
+            chatHistoryCache.onAccepted(view);
+            chatUnreadCounters.onAccepted(view);
         });
-        
-        return messageRepository.save(message);
+        return message;
+    }
+
+    // Marks every message the user has received in the chat so far as read
+    public void markRead(Long chatId, Long userId) {
+        chatWriteBehind.markRead(chatId, userId, marker -> {
+            chatHistoryCache.onRead(marker);
+            chatUnreadCounters.onRead(marker);
+        });
+    }
+
+    public long getUnreadCount(Long chatId, Long userId) {
+        return chatUnreadCounters.unreadFor(chatId, userId);
+    }
+
+    public SseEmitter streamMessages(Long chatId, Long lastSeenId) {
+        return chatStreamHub.subscribe(chatId, lastSeenId);
     }
 
-    public List<ChatMessage> getChatMessages(String chatId) {
-        return messageRepository.findAll();
+    // Pages are oldest first; "before" scrolls back through history, "after" catches up from a known id
+    public CursorPage<ChatMessageView> getChatMessages(Long chatId, Long before, Long after, int limit) {
+        if (after != null) {
+            return chatHistoryCache.after(chatId, after, limit);
+        }
+        if (before != null) {
+            return chatHistoryCache.before(chatId, before, limit);
+        }
+        return chatHistoryCache.latest(chatId, limit);
     }
 
     public Chat deactivateChat(Long chatId) {
@@ -0,0 +1,254 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.dto.ChatMessageView;
+import za.co.rubhub.model.ChatMessage;
+import za.co.rubhub.repositories.ChatMessageRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pushes chat messages to connected clients over server-sent events.
+ *
+ * Each connection has its own bounded buffer drained on chatStreamExecutor,
+ * so publishing never blocks on a slow client. A connection whose buffer
+ * fills up is closed with an "overflow" event; the client reconnects with
+ * Last-Event-ID and the missed messages are replayed from the database before
+ * live delivery resumes.
+ */
+@Slf4j
+@Component
+public class ChatStreamHub {
+
+    static final int BUFFER_CAPACITY = 256;
+    // Larger gaps are left to the history endpoint
+    static final int RESUME_LIMIT = 500;
+    private static final long EMITTER_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatWriteBehind chatWriteBehind;
+    private final ThreadPoolTaskExecutor executor;
+
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    public ChatStreamHub(ChatMessageRepository chatMessageRepository,
+                         ChatWriteBehind chatWriteBehind,
+                         @Qualifier("chatStreamExecutor") ThreadPoolTaskExecutor executor) {
+        this.chatMessageRepository = chatMessageRepository;
+        this.chatWriteBehind = chatWriteBehind;
+        this.executor = executor;
+    }
+
+    /**
+     * Opens a stream for the chat. With a last seen id, messages after it are
+     * replayed first; live messages arriving meanwhile are buffered and sent
+     * afterwards without duplicates.
+     */
+    public SseEmitter subscribe(Long chatId, Long lastSeenId) {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MILLIS);
+        Subscriber subscriber = new Subscriber(chatId, emitter, lastSeenId != null ? lastSeenId : 0L);
+        emitter.onCompletion(() -> unregister(subscriber));
+        emitter.onTimeout(() -> unregister(subscriber));
+        emitter.onError(e -> unregister(subscriber));
+
+        subscribers.computeIfAbsent(chatId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+
+        // Hold the drain until the backlog is out so replayed and live messages stay in order
+        subscriber.draining.set(true);
+        try {
+            executor.execute(() -> replay(subscriber, lastSeenId));
+        } catch (TaskRejectedException e) {
+            log.warn("Chat stream executor is saturated; refusing stream for chat {}", chatId);
+            close(subscriber, "overflow");
+        }
+        return emitter;
+    }
+
+    // Fans the message out to every connection on the chat; never blocks the caller
+    public void publish(Long chatId, ChatMessageView message) {
+        Set<Subscriber> chatSubscribers = subscribers.get(chatId);
+        if (chatSubscribers == null) {
+            return;
+        }
+        for (Subscriber subscriber : chatSubscribers) {
+            if (!subscriber.buffer.offer(message)) {
+                log.info("Chat stream buffer full for chat {}; closing slow connection", chatId);
+                close(subscriber, "overflow");
+                continue;
+            }
+            scheduleDrain(subscriber);
+        }
+    }
+
+    public int connectionCount() {
+        int count = 0;
+        for (Set<Subscriber> chatSubscribers : subscribers.values()) {
+            count += chatSubscribers.size();
+        }
+        return count;
+    }
+
+    // Keeps idle connections open through proxies and finds dead ones
+    @Scheduled(fixedRate = 25000, initialDelay = 25000)
+    public void heartbeat() {
+        for (Set<Subscriber> chatSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : chatSubscribers) {
+                subscriber.heartbeatDue = true;
+                scheduleDrain(subscriber);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Set<Subscriber> chatSubscribers : subscribers.values()) {
+            for (Subscriber subscriber : chatSubscribers) {
+                subscriber.emitter.complete();
+            }
+        }
+        subscribers.clear();
+    }
+
+    private void replay(Subscriber subscriber, Long lastSeenId) {
+        try {
+            if (lastSeenId != null) {
+                // Memory before the database: a message leaves the write-behind queue only once stored
+                List<ChatMessageView> unstored = chatWriteBehind.unstoredAfter(subscriber.chatId, lastSeenId);
+                List<ChatMessage> missed = chatMessageRepository.findByChatIdAndIdGreaterThanOrderByIdAsc(
+                        subscriber.chatId, lastSeenId, PageRequest.of(0, RESUME_LIMIT));
+                for (ChatMessage message : missed) {
+                    send(subscriber, ChatMessageView.from(message, subscriber.chatId));
+                }
+                if (missed.size() == RESUME_LIMIT) {
+                    // Tells the client to load the rest of the gap from history
+                    subscriber.emitter.send(SseEmitter.event().name("truncated").data(subscriber.lastSentId));
+                } else {
+                    for (ChatMessageView message : unstored) {
+                        send(subscriber, message);
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            log.debug("Chat stream replay failed for chat {}: {}", subscriber.chatId, e.getMessage());
+            close(subscriber, null);
+            return;
+        } finally {
+            subscriber.draining.set(false);
+        }
+        scheduleDrain(subscriber);
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (subscriber.closed || !subscriber.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> drain(subscriber));
+        } catch (TaskRejectedException e) {
+            subscriber.draining.set(false);
+            close(subscriber, "overflow");
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            if (subscriber.heartbeatDue) {
+                subscriber.heartbeatDue = false;
+                subscriber.emitter.send(SseEmitter.event().comment("keep-alive"));
+            }
+            ChatMessageView message;
+            while (!subscriber.closed && (message = subscriber.buffer.poll()) != null) {
+                send(subscriber, message);
+            }
+        } catch (IOException | RuntimeException e) {
+            close(subscriber, null);
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // A publish may have landed after the last poll but before the flag was cleared
+        if (!subscriber.closed && (!subscriber.buffer.isEmpty() || subscriber.heartbeatDue)) {
+            scheduleDrain(subscriber);
+        }
+    }
+
+    private static void send(Subscriber subscriber, ChatMessageView message) throws IOException {
+        // Already delivered by the replay, or a duplicate across a reconnect
+        if (message.getId() == null || message.getId() <= subscriber.lastSentId) {
+            return;
+        }
+        subscriber.emitter.send(SseEmitter.event()
+                .id(String.valueOf(message.getId()))
+                .name("message")
+                .data(message));
+        subscriber.lastSentId = message.getId();
+    }
+
+    private void close(Subscriber subscriber, String reason) {
+        if (subscriber.closed) {
+            return;
+        }
+        subscriber.closed = true;
+        unregister(subscriber);
+        subscriber.buffer.clear();
+        if (reason == null) {
+            subscriber.emitter.complete();
+            return;
+        }
+        // The farewell event is written off the caller's thread, which may be a publisher
+        try {
+            executor.execute(() -> {
+                try {
+                    subscriber.emitter.send(SseEmitter.event().name(reason).data(subscriber.lastSentId));
+                    subscriber.emitter.complete();
+                } catch (IOException | RuntimeException e) {
+                    subscriber.emitter.completeWithError(e);
+                }
+            });
+        } catch (TaskRejectedException e) {
+            subscriber.emitter.complete();
+        }
+    }
+
+    private void unregister(Subscriber subscriber) {
+        subscriber.closed = true;
+        Set<Subscriber> chatSubscribers = subscribers.get(subscriber.chatId);
+        if (chatSubscribers != null) {
+            chatSubscribers.remove(subscriber);
+            if (chatSubscribers.isEmpty()) {
+                subscribers.remove(subscriber.chatId, chatSubscribers);
+            }
+        }
+    }
+
+    private static final class Subscriber {
+        private final Long chatId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<ChatMessageView> buffer = new ArrayBlockingQueue<>(BUFFER_CAPACITY);
+        // Only one drain per connection runs at a time, so sends are never interleaved
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile long lastSentId;
+        private volatile boolean heartbeatDue;
+        private volatile boolean closed;
+
+        Subscriber(Long chatId, SseEmitter emitter, long lastSentId) {
+            this.chatId = chatId;
+            this.emitter = emitter;
+            this.lastSentId = lastSentId;
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.dto.ChatMessageView;
+import za.co.rubhub.dto.ChatReadMarker;
+import za.co.rubhub.repositories.ChatMessageRepository;
+import za.co.rubhub.repositories.projection.SenderUnreadCount;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unread counts per chat, split by sender so any participant's count is
+ * "unread messages not sent by me" without a COUNT(*). A chat's counters are
+ * loaded once through ChatWriteBehind.consistentRead and afterwards only move
+ * with accepted messages and read receipts.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ChatUnreadCounters {
+
+    static final int MAX_CHATS = 10000;
+
+    private final ChatMessageRepository chatMessageRepository;
+    private final ChatWriteBehind chatWriteBehind;
+
+    // Access order gives LRU eviction; an evicted chat is simply recounted on next use
+    private final Map<Long, Counter> counters = new LinkedHashMap<Long, Counter>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Counter> eldest) {
+            return size() > MAX_CHATS;
+        }
+    };
+
+    public void onAccepted(ChatMessageView message) {
+        Counter counter = cached(message.getChatId());
+        if (counter != null) {
+            counter.apply(message);
+        }
+    }
+
+    public void onRead(ChatReadMarker marker) {
+        Counter counter = cached(marker.getChatId());
+        if (counter != null) {
+            counter.apply(marker);
+        }
+    }
+
+    public long unreadFor(Long chatId, Long userId) {
+        Counter counter = cached(chatId);
+        if (counter == null) {
+            counter = load(chatId);
+        }
+        return counter.unreadFor(userId);
+    }
+
+    private Counter cached(Long chatId) {
+        synchronized (this) {
+            return counters.get(chatId);
+        }
+    }
+
+    private Counter load(Long chatId) {
+        Counter created = new Counter();
+        Counter[] winner = {created};
+        try {
+            List<SenderUnreadCount> stored = chatWriteBehind.consistentRead(chatId, snapshot -> {
+                synchronized (this) {
+                    Counter existing = counters.get(chatId);
+                    if (existing != null) {
+                        winner[0] = existing;
+                        return;
+                    }
+                    counters.put(chatId, created);
+                }
+                created.seed(snapshot);
+            }, storedBefore -> winner[0] == created
+                    ? chatMessageRepository.countUnreadBySender(chatId, storedBefore)
+                    : null);
+            if (winner[0] == created) {
+                created.finishLoading(stored);
+            }
+            return winner[0];
+        } catch (RuntimeException e) {
+            synchronized (this) {
+                counters.remove(chatId, created);
+            }
+            created.fail(e);
+            throw e;
+        }
+    }
+
+    private static final class Counter {
+        private final Map<Long, Long> unreadBySender = new HashMap<>();
+        private boolean loading = true;
+        private RuntimeException failure;
+        // Messages and read markers in the order they were accepted, applied after the stored counts
+        private final List<Object> early = new ArrayList<>();
+
+        synchronized void seed(ChatWriteBehind.Snapshot snapshot) {
+            // A marker covers every message with an id up to its own bound, so that fixes the interleaving
+            List<ChatMessageView> messages = snapshot.getMessages();
+            List<ChatReadMarker> reads = snapshot.getReads();
+            int m = 0;
+            int r = 0;
+            while (m < messages.size() || r < reads.size()) {
+                if (r == reads.size()
+                        || (m < messages.size() && messages.get(m).getId() <= reads.get(r).getUpToId())) {
+                    early.add(messages.get(m++));
+                } else {
+                    early.add(reads.get(r++));
+                }
+            }
+        }
+
+        synchronized void apply(Object event) {
+            if (loading) {
+                early.add(event);
+            } else if (event instanceof ChatMessageView) {
+                ChatMessageView message = (ChatMessageView) event;
+                if (!Boolean.TRUE.equals(message.getIsRead())) {
+                    unreadBySender.merge(message.getSenderId(), 1L, Long::sum);
+                }
+            } else {
+                // Everything not sent by the reader is now read
+                Long reader = ((ChatReadMarker) event).getUserId();
+                unreadBySender.keySet().removeIf(sender -> !sender.equals(reader));
+            }
+        }
+
+        synchronized void finishLoading(List<SenderUnreadCount> stored) {
+            for (SenderUnreadCount count : stored) {
+                unreadBySender.put(count.getSenderId(), count.getUnread());
+            }
+            loading = false;
+            for (Object event : early) {
+                apply(event);
+            }
+            early.clear();
+            notifyAll();
+        }
+
+        synchronized void fail(RuntimeException e) {
+            failure = e;
+            loading = false;
+            notifyAll();
+        }
+
+        synchronized long unreadFor(Long userId) {
+            while (loading) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Interrupted while counting unread messages", e);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            long unread = 0;
+            for (Map.Entry<Long, Long> entry : unreadBySender.entrySet()) {
+                if (!entry.getKey().equals(userId)) {
+                    unread += entry.getValue();
+                }
+            }
+            return unread;
+        }
+    }
+}
@@ -0,0 +1,528 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.dto.ChatMessageView;
+import za.co.rubhub.dto.ChatReadMarker;
+import za.co.rubhub.model.ChatMessage;
+import za.co.rubhub.repositories.ChatMessageBatchRepository;
+import za.co.rubhub.repositories.ChatRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Write-behind pipeline for chat messages.
+ *
+ * A message is acknowledged once it has an id from a pre-allocated block and
+ * its line is appended to a local journal segment. A single flusher thread
+ * swaps the segment, writes the pending messages in JDBC batches together with
+ * one last-message update per chat, and then deletes the segment. Segments left
+ * behind by a crash are replayed on startup; inserts ignore ids already stored,
+ * so a replay is harmless.
+ *
+ * The journal is written to the OS without fsync. It survives a process crash
+ * but not losing the machine.
+ */
+@Slf4j
+@Component
+public class ChatWriteBehind {
+
+    static final int BATCH_SIZE = 500;
+    // Beyond this many unstored messages senders are turned away until the database catches up
+    static final int MAX_BACKLOG = 20000;
+    private static final long FLUSH_INTERVAL_MILLIS = 50;
+    private static final int ID_BLOCK_SIZE = 200;
+    private static final int ID_LOW_WATER = 50;
+    private static final int MAX_KNOWN_CHATS = 10000;
+    private static final String SEGMENT_PREFIX = "segment-";
+    // chat_messages.sender_role is varchar(20)
+    private static final int MAX_SENDER_ROLE_LENGTH = 20;
+
+    private final ChatMessageBatchRepository batchRepository;
+    private final ChatRepository chatRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Path journalDir;
+
+    // Guards ids, pending and the open segment; held only for in-memory work and one buffered write
+    private final Object lock = new Object();
+    private final TreeSet<Long> ids = new TreeSet<>();
+    private long lastIssuedId;
+    private boolean refilling;
+    private List<ChatMessageView> pending = new ArrayList<>();
+    private List<ChatReadMarker> pendingReads = new ArrayList<>();
+    private BufferedWriter segment;
+    private Path segmentPath;
+    private long segmentSequence;
+
+    // Taken from pending but not yet committed, oldest first
+    private final Deque<Batch> unflushed = new ConcurrentLinkedDeque<>();
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final Set<Long> knownChats = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService flusher;
+
+    public ChatWriteBehind(ChatMessageBatchRepository batchRepository,
+                           ChatRepository chatRepository,
+                           TransactionTemplate transactionTemplate,
+                           ObjectMapper objectMapper,
+                           // No default: acknowledged messages live only here until flushed, so it must survive restarts
+                           @Value("${rubhub.chat.journal-dir}") String journalDir) {
+        this.batchRepository = batchRepository;
+        this.chatRepository = chatRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.journalDir = Paths.get(journalDir);
+
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, "chat-write-behind");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        this.flusher = executor;
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        Files.createDirectories(journalDir);
+        recover();
+        synchronized (lock) {
+            openSegment();
+        }
+        flusher.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MILLIS, FLUSH_INTERVAL_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+        synchronized (lock) {
+            closeSegment();
+            if (pending.isEmpty()) {
+                try {
+                    Files.deleteIfExists(segmentPath);
+                } catch (IOException e) {
+                    log.debug("Could not delete empty chat journal segment {}", segmentPath);
+                }
+            }
+        }
+        if (backlog.get() > 0) {
+            log.warn("{} chat messages were not stored before shutdown; they will be replayed from {}",
+                    backlog.get(), journalDir);
+        }
+    }
+
+    /**
+     * Assigns the message an id and journals it. onAccepted runs under the
+     * pipeline lock, so it sees messages in id order; it must not block.
+     * Messages the database would reject are refused with an
+     * IllegalArgumentException before they are journaled.
+     */
+    public ChatMessageView append(Long chatId, ChatMessage message, Consumer<ChatMessageView> onAccepted) {
+        validate(message);
+        ensureChatExists(chatId);
+        ChatMessageView view;
+        int queued;
+        synchronized (lock) {
+            if (backlog.get() >= MAX_BACKLOG) {
+                throw new IllegalStateException("Chat messages are backing up; try again shortly");
+            }
+            message.setId(nextId());
+            view = ChatMessageView.from(message, chatId);
+            try {
+                segment.write(objectMapper.writeValueAsString(view));
+                segment.newLine();
+                segment.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not journal chat message", e);
+            }
+            pending.add(view);
+            backlog.incrementAndGet();
+            queued = pending.size();
+            onAccepted.accept(view);
+        }
+        if (queued == BATCH_SIZE) {
+            submit(this::flushQuietly);
+        }
+        return view;
+    }
+
+    /**
+     * Marks everything accepted so far in the chat as read by the user, except
+     * the user's own messages. The update is applied in the same flush as the
+     * messages it covers, after they are inserted. onAccepted runs under the
+     * pipeline lock, in order with message callbacks.
+     */
+    public ChatReadMarker markRead(Long chatId, Long userId, Consumer<ChatReadMarker> onAccepted) {
+        synchronized (lock) {
+            if (ids.isEmpty()) {
+                addIds(batchRepository.allocateIds(ID_BLOCK_SIZE));
+            }
+            // Every id issued from here on is above the marker, every earlier one at or below it
+            ChatReadMarker marker = new ChatReadMarker(chatId, userId, ids.first() - 1, LocalDateTime.now());
+            pendingReads.add(marker);
+            onAccepted.accept(marker);
+            return marker;
+        }
+    }
+
+    // Journaled messages for the chat after the given id that may not be in the database yet, in id order
+    public List<ChatMessageView> unstoredAfter(Long chatId, long afterId) {
+        List<ChatMessageView> found = new ArrayList<>();
+        // Pending first: a batch leaves pending for unflushed, and leaves unflushed only once committed
+        synchronized (lock) {
+            collect(pending, chatId, afterId, found);
+        }
+        for (Batch batch : unflushed) {
+            collect(batch.messages, chatId, afterId, found);
+        }
+        found.sort(Comparator.comparing(ChatMessageView::getId));
+        return found;
+    }
+
+    /**
+     * Loads per-chat state that must agree with this pipeline. onSnapshot runs
+     * under the pipeline lock: callbacks registered there receive every message
+     * accepted after the snapshot and none before it. databaseRead runs after
+     * the lock is released and is given the lowest message id not known to be
+     * stored; reading only rows below it, it sees exactly the writes the
+     * snapshot and later callbacks do not, however many batches commit
+     * meanwhile. Ids are handed out in acceptance order and batches commit in
+     * that order, so every row below the bound is already stored.
+     */
+    public <T> T consistentRead(Long chatId, Consumer<Snapshot> onSnapshot, Function<Long, T> databaseRead) {
+        long storedBefore;
+        synchronized (lock) {
+            List<ChatMessageView> messages = unstoredAfter(chatId, 0L);
+            List<ChatReadMarker> reads = new ArrayList<>();
+            for (Batch batch : unflushed) {
+                collectReads(batch.reads, chatId, reads);
+            }
+            collectReads(pendingReads, chatId, reads);
+            storedBefore = firstUnstoredId();
+            onSnapshot.accept(new Snapshot(messages, reads));
+        }
+        return databaseRead.apply(storedBefore);
+    }
+
+    public int backlog() {
+        return backlog.get();
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("Chat write-behind flush failed; {} messages waiting: {}", backlog.get(), e.getMessage(), e);
+        }
+    }
+
+    // Flusher thread only, apart from the final call in stop()
+    private synchronized void flush() {
+        synchronized (lock) {
+            if (!pending.isEmpty() || !pendingReads.isEmpty()) {
+                Path closed = segmentPath;
+                Batch batch = new Batch(pending, pendingReads, closed);
+                pending = new ArrayList<>();
+                pendingReads = new ArrayList<>();
+                closeSegment();
+                openSegment();
+                unflushed.add(batch);
+            }
+        }
+
+        Batch batch;
+        while ((batch = unflushed.peek()) != null) {
+            // A failure leaves the batch at the head, so it is retried on the next tick in order
+            if (!batch.messages.isEmpty() || !batch.reads.isEmpty()) {
+                persist(batch);
+            }
+            try {
+                if (batch.segment != null) {
+                    Files.deleteIfExists(batch.segment);
+                }
+            } catch (IOException e) {
+                log.warn("Could not delete chat journal segment {}: {}", batch.segment, e.getMessage());
+            }
+            unflushed.poll();
+            backlog.addAndGet(-batch.messages.size());
+        }
+    }
+
+    private void persist(Batch batch) {
+        List<ChatMessageView> messages = batch.messages;
+        try {
+            transactionTemplate.execute(status -> {
+                write(messages);
+                batchRepository.markRead(batch.reads);
+                return null;
+            });
+        } catch (DataIntegrityViolationException e) {
+            // One bad row (e.g. its chat was deleted) must not hold back the rest
+            log.warn("Chat batch of {} rejected ({}); storing messages one at a time",
+                    messages.size(), e.getMostSpecificCause().getMessage());
+            for (ChatMessageView message : messages) {
+                try {
+                    transactionTemplate.execute(status -> {
+                        write(Collections.singletonList(message));
+                        return null;
+                    });
+                } catch (DataIntegrityViolationException rejected) {
+                    log.error("Dropping chat message {} for chat {}: {}", message.getId(), message.getChatId(),
+                            rejected.getMostSpecificCause().getMessage());
+                }
+            }
+            transactionTemplate.execute(status -> batchRepository.markRead(batch.reads));
+        }
+    }
+
+    private void write(List<ChatMessageView> messages) {
+        for (int from = 0; from < messages.size(); from += BATCH_SIZE) {
+            batchRepository.insertMessages(messages.subList(from, Math.min(from + BATCH_SIZE, messages.size())));
+        }
+        // Messages are in id order, so the last one seen per chat is its newest
+        Map<Long, ChatMessageView> latestPerChat = new LinkedHashMap<>();
+        for (ChatMessageView message : messages) {
+            latestPerChat.put(message.getChatId(), message);
+        }
+        batchRepository.updateLastMessages(latestPerChat.values());
+    }
+
+    // Mirrors the NOT NULL columns of chat_messages; a journaled message that fails the insert is dropped
+    private static void validate(ChatMessage message) {
+        if (message == null) {
+            throw new IllegalArgumentException("Message is required");
+        }
+        if (message.getContent() == null || message.getContent().trim().isEmpty()) {
+            throw new IllegalArgumentException("Message content is required");
+        }
+        if (message.getSenderId() == null) {
+            throw new IllegalArgumentException("Message senderId is required");
+        }
+        if (message.getSenderRole() == null || message.getSenderRole().trim().isEmpty()) {
+            throw new IllegalArgumentException("Message senderRole is required");
+        }
+        if (message.getSenderRole().length() > MAX_SENDER_ROLE_LENGTH) {
+            throw new IllegalArgumentException("Message senderRole is longer than " + MAX_SENDER_ROLE_LENGTH);
+        }
+    }
+
+    private void ensureChatExists(Long chatId) {
+        if (chatId == null) {
+            throw new RuntimeException("Chat not found");
+        }
+        if (knownChats.contains(chatId)) {
+            return;
+        }
+        if (!chatRepository.existsById(chatId)) {
+            throw new RuntimeException("Chat not found");
+        }
+        if (knownChats.size() >= MAX_KNOWN_CHATS) {
+            knownChats.clear();
+        }
+        knownChats.add(chatId);
+    }
+
+    // Called under lock. A committed batch may still be queued, which only keeps the bound lower
+    private long firstUnstoredId() {
+        long first = Long.MAX_VALUE;
+        for (Batch batch : unflushed) {
+            if (!batch.messages.isEmpty()) {
+                first = Math.min(first, batch.messages.get(0).getId());
+            }
+        }
+        if (!pending.isEmpty()) {
+            first = Math.min(first, pending.get(0).getId());
+        }
+        if (ids.isEmpty()) {
+            addIds(batchRepository.allocateIds(ID_BLOCK_SIZE));
+        }
+        return Math.min(first, ids.first());
+    }
+
+    // Called under lock. Ids are handed out strictly increasing so subscribers can de-duplicate by id
+    private Long nextId() {
+        if (ids.isEmpty()) {
+            addIds(batchRepository.allocateIds(ID_BLOCK_SIZE));
+        } else if (ids.size() <= ID_LOW_WATER && !refilling) {
+            refilling = true;
+            submit(this::refillIds);
+        }
+        Long id = ids.pollFirst();
+        lastIssuedId = id;
+        return id;
+    }
+
+    private void refillIds() {
+        try {
+            List<Long> block = batchRepository.allocateIds(ID_BLOCK_SIZE);
+            synchronized (lock) {
+                addIds(block);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not pre-allocate chat message ids: {}", e.getMessage());
+        } finally {
+            synchronized (lock) {
+                refilling = false;
+            }
+        }
+    }
+
+    // A block fetched in the background can arrive after a newer one; ids below those issued are skipped
+    private void addIds(Collection<Long> block) {
+        for (Long id : block) {
+            if (id > lastIssuedId) {
+                ids.add(id);
+            }
+        }
+        if (ids.isEmpty()) {
+            throw new IllegalStateException("Could not allocate chat message ids");
+        }
+    }
+
+    private void submit(Runnable task) {
+        try {
+            flusher.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Shutting down; the final flush in stop() picks the work up
+        }
+    }
+
+    private void recover() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(journalDir, SEGMENT_PREFIX + "*.log")) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        segments.sort(Comparator.comparing(Path::toString));
+        for (Path path : segments) {
+            List<ChatMessageView> messages = new ArrayList<>();
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                try {
+                    messages.add(objectMapper.readValue(line, ChatMessageView.class));
+                } catch (IOException e) {
+                    // Only the line being written when the process died can be torn
+                    log.warn("Skipping unreadable chat journal line in {}", path);
+                }
+            }
+            messages.sort(Comparator.comparing(ChatMessageView::getId));
+            unflushed.add(new Batch(messages, Collections.emptyList(), path));
+            backlog.addAndGet(messages.size());
+        }
+        if (!segments.isEmpty()) {
+            log.info("Replaying {} chat messages from {} journal segments", backlog.get(), segments.size());
+            flushQuietly();
+        }
+    }
+
+    private void openSegment() {
+        segmentPath = journalDir.resolve(String.format("%s%013d-%06d.log",
+                SEGMENT_PREFIX, System.currentTimeMillis(), segmentSequence++));
+        try {
+            segment = Files.newBufferedWriter(segmentPath, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open chat journal segment " + segmentPath, e);
+        }
+    }
+
+    private void closeSegment() {
+        if (segment == null) {
+            return;
+        }
+        try {
+            segment.close();
+        } catch (IOException e) {
+            log.warn("Could not close chat journal segment {}: {}", segmentPath, e.getMessage());
+        }
+        segment = null;
+    }
+
+    private static void collect(List<ChatMessageView> messages, Long chatId, long afterId, List<ChatMessageView> into) {
+        for (ChatMessageView message : messages) {
+            if (chatId.equals(message.getChatId()) && message.getId() > afterId) {
+                into.add(message);
+            }
+        }
+    }
+
+    private static void collectReads(List<ChatReadMarker> reads, Long chatId, List<ChatReadMarker> into) {
+        for (ChatReadMarker read : reads) {
+            if (chatId.equals(read.getChatId())) {
+                into.add(read);
+            }
+        }
+    }
+
+    private static final class Batch {
+        private final List<ChatMessageView> messages;
+        // Not journaled: a read lost in a crash only leaves messages unread
+        private final List<ChatReadMarker> reads;
+        private final Path segment;
+
+        Batch(List<ChatMessageView> messages, List<ChatReadMarker> reads, Path segment) {
+            this.messages = messages;
+            this.reads = reads;
+            this.segment = segment;
+        }
+    }
+
+    // A chat's writes still in the pipeline, each list in the order it was accepted
+    public static final class Snapshot {
+        private final List<ChatMessageView> messages;
+        private final List<ChatReadMarker> reads;
+
+        Snapshot(List<ChatMessageView> messages, List<ChatReadMarker> reads) {
+            this.messages = messages;
+            this.reads = reads;
+        }
+
+        public List<ChatMessageView> getMessages() { return messages; }
+        public List<ChatReadMarker> getReads() { return reads; }
+    }
+}
@@ -0,0 +1,257 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.model.MassageRequest;
+import za.co.rubhub.repositories.MassageRequestRepository;
+import za.co.rubhub.util.GeoUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory queue of PENDING massage requests that have no therapist yet,
+ * partitioned by the same lat/lng grid cells as TherapistLocationIndex.
+ *
+ * Therapist polls are answered entirely from memory. Claiming a job is a
+ * compare-and-set on the job followed by a conditional UPDATE ... WHERE
+ * therapist_id IS NULL, so exactly one therapist wins even across instances.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class DispatchQueue {
+
+    private static final double CELL_SIZE = GeoUtils.DEFAULT_CELL_SIZE_DEGREES;
+
+    // Partition for requests without usable coordinates; included in every poll
+    private static final long NO_LOCATION_CELL = Long.MIN_VALUE;
+
+    private static final long UNCLAIMED = 0L;
+
+    public enum ClaimResult { CLAIMED, ALREADY_CLAIMED }
+
+    private final MassageRequestRepository massageRequestRepository;
+
+    private final Map<Long, Job> jobs = new ConcurrentHashMap<>();
+    private final Map<Long, Map<Long, Job>> cells = new ConcurrentHashMap<>();
+
+    // Reconciles with the database on startup and every minute to pick up other instances' writes
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void reload() {
+        long start = System.currentTimeMillis();
+        List<MassageRequest> open = massageRequestRepository.findByStatusAndTherapistIsNull(MassageRequest.Status.PENDING);
+
+        Set<Long> openIds = new HashSet<>();
+        for (MassageRequest request : open) {
+            openIds.add(request.getId());
+            jobs.computeIfAbsent(request.getId(), id -> {
+                Job job = new Job(request);
+                cells.computeIfAbsent(job.cellKey, key -> new ConcurrentHashMap<>()).put(job.requestId, job);
+                return job;
+            });
+        }
+        for (Long id : jobs.keySet()) {
+            if (!openIds.contains(id)) {
+                remove(id);
+            }
+        }
+        log.info("Dispatch queue reconciled: {} open requests in {} ms",
+                jobs.size(), System.currentTimeMillis() - start);
+    }
+
+    // Called after every save; the request is queued only while it is PENDING and unassigned
+    public void sync(MassageRequest request) {
+        if (request == null || request.getId() == null) {
+            return;
+        }
+        if (request.getStatus() == MassageRequest.Status.PENDING && request.getTherapist() == null) {
+            Job job = new Job(request);
+            Job previous = jobs.put(job.requestId, job);
+            if (previous != null) {
+                removeFromCell(previous);
+            }
+            cells.computeIfAbsent(job.cellKey, key -> new ConcurrentHashMap<>()).put(job.requestId, job);
+        } else {
+            remove(request.getId());
+        }
+    }
+
+    public void remove(Long requestId) {
+        Job job = jobs.remove(requestId);
+        if (job != null) {
+            removeFromCell(job);
+        }
+    }
+
+    public boolean isOpen(Long requestId) {
+        Job job = jobs.get(requestId);
+        return job != null && job.isOpen();
+    }
+
+    public int size() {
+        return jobs.size();
+    }
+
+    /**
+     * Atomically assigns the request to the therapist. The in-memory CAS turns
+     * away local losers without touching the database; the conditional update
+     * settles races with other instances.
+     */
+    public ClaimResult claim(Long requestId, Long therapistId) {
+        Job job = jobs.get(requestId);
+        if (job != null && !job.claimedBy.compareAndSet(UNCLAIMED, therapistId)) {
+            return ClaimResult.ALREADY_CLAIMED;
+        }
+
+        int updated;
+        try {
+            updated = massageRequestRepository.claimUnassigned(requestId, therapistId);
+        } catch (RuntimeException e) {
+            if (job != null) {
+                job.claimedBy.compareAndSet(therapistId, UNCLAIMED);
+            }
+            throw e;
+        }
+
+        // Either we won, or the row was already taken elsewhere; it is no longer open work
+        remove(requestId);
+        return updated == 1 ? ClaimResult.CLAIMED : ClaimResult.ALREADY_CLAIMED;
+    }
+
+    // Open jobs within radiusMeters of the therapist (plus jobs with no location), nearest first
+    public List<Job> findOpenNear(double latitude, double longitude, double radiusMeters, int limit) {
+        double dLat = GeoUtils.metersToLatDegrees(radiusMeters);
+        double dLng = GeoUtils.metersToLngDegrees(radiusMeters, latitude);
+        int minRow = GeoUtils.cellIndex(latitude - dLat, CELL_SIZE);
+        int maxRow = GeoUtils.cellIndex(latitude + dLat, CELL_SIZE);
+        int minCol = GeoUtils.cellIndex(longitude - dLng, CELL_SIZE);
+        int maxCol = GeoUtils.cellIndex(longitude + dLng, CELL_SIZE);
+
+        List<Job> matches = new ArrayList<>();
+        long cellCount = (long) (maxRow - minRow + 1) * (maxCol - minCol + 1);
+        if (cellCount > cells.size()) {
+            // Walking the occupied cells is cheaper than walking an empty bounding box
+            for (Map<Long, Job> cell : cells.values()) {
+                collectNear(cell, latitude, longitude, radiusMeters, matches);
+            }
+        } else {
+            for (int row = minRow; row <= maxRow; row++) {
+                for (int col = minCol; col <= maxCol; col++) {
+                    Map<Long, Job> cell = cells.get(GeoUtils.cellKey(row, col));
+                    if (cell != null) {
+                        collectNear(cell, latitude, longitude, radiusMeters, matches);
+                    }
+                }
+            }
+            Map<Long, Job> unlocated = cells.get(NO_LOCATION_CELL);
+            if (unlocated != null) {
+                collectNear(unlocated, latitude, longitude, radiusMeters, matches);
+            }
+        }
+
+        matches.sort(Comparator.comparingDouble((Job job) -> job.distanceFrom(latitude, longitude))
+                .thenComparing(Job::getRequestId));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    // Oldest open jobs first, for callers without a position
+    public List<Job> findOpen(int limit) {
+        List<Job> open = new ArrayList<>();
+        for (Job job : jobs.values()) {
+            if (job.isOpen()) {
+                open.add(job);
+            }
+        }
+        open.sort(Comparator.comparing(Job::getRequestId));
+        return open.size() > limit ? new ArrayList<>(open.subList(0, limit)) : open;
+    }
+
+    private void collectNear(Map<Long, Job> cell, double latitude, double longitude,
+                             double radiusMeters, List<Job> matches) {
+        for (Job job : cell.values()) {
+            if (job.isOpen() && (!job.hasLocation() || job.distanceFrom(latitude, longitude) <= radiusMeters)) {
+                matches.add(job);
+            }
+        }
+    }
+
+    private void removeFromCell(Job job) {
+        Map<Long, Job> cell = cells.get(job.cellKey);
+        if (cell != null) {
+            cell.remove(job.requestId, job);
+            if (cell.isEmpty()) {
+                cells.remove(job.cellKey, cell);
+            }
+        }
+    }
+
+    // Immutable snapshot of an open request plus its claim slot
+    public static final class Job {
+        private final Long requestId;
+        private final String serviceType;
+        private final Integer durationMinutes;
+        private final LocalDateTime preferredDateTime;
+        private final String locationAddress;
+        private final Double latitude;
+        private final Double longitude;
+        private final BigDecimal estimatedPrice;
+        private final MassageRequest.UrgencyLevel urgencyLevel;
+        private final long cellKey;
+        private final AtomicLong claimedBy = new AtomicLong(UNCLAIMED);
+
+        Job(MassageRequest request) {
+            this.requestId = request.getId();
+            this.serviceType = request.getServiceType();
+            this.durationMinutes = request.getDurationMinutes();
+            this.preferredDateTime = request.getPreferredDateTime();
+            this.locationAddress = request.getLocationAddress();
+            this.estimatedPrice = request.getEstimatedPrice();
+            this.urgencyLevel = request.getUrgencyLevel();
+            if (GeoUtils.isValidCoordinate(request.getLocationLatitude(), request.getLocationLongitude())) {
+                this.latitude = request.getLocationLatitude();
+                this.longitude = request.getLocationLongitude();
+                this.cellKey = GeoUtils.cellKey(latitude, longitude, CELL_SIZE);
+            } else {
+                this.latitude = null;
+                this.longitude = null;
+                this.cellKey = NO_LOCATION_CELL;
+            }
+        }
+
+        boolean isOpen() {
+            return claimedBy.get() == UNCLAIMED;
+        }
+
+        boolean hasLocation() {
+            return latitude != null;
+        }
+
+        double distanceFrom(double lat, double lng) {
+            return hasLocation() ? GeoUtils.distanceMeters(lat, lng, latitude, longitude) : Double.MAX_VALUE;
+        }
+
+        public Long getRequestId() { return requestId; }
+        public String getServiceType() { return serviceType; }
+        public Integer getDurationMinutes() { return durationMinutes; }
+        public LocalDateTime getPreferredDateTime() { return preferredDateTime; }
+        public String getLocationAddress() { return locationAddress; }
+        public Double getLatitude() { return latitude; }
+        public Double getLongitude() { return longitude; }
+        public BigDecimal getEstimatedPrice() { return estimatedPrice; }
+        public MassageRequest.UrgencyLevel getUrgencyLevel() { return urgencyLevel; }
+    }
+}
@@ -0,0 +1,297 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.model.Geofence;
+import za.co.rubhub.model.Location;
+import za.co.rubhub.repositories.GeofenceRepository;
+import za.co.rubhub.util.GeoUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Compiled, in-process copy of all active geofences.
+ *
+ * Each fence is reduced to a bounding box plus either a polygon or a circle and
+ * bucketed into a lat/lng grid by its bounding box. A containment check only
+ * tests the fences bucketed in the point's cell. The snapshot is immutable and
+ * replaced wholesale (copy-on-write) when a fence changes, so lookups never lock.
+ * A full reload reads the database without blocking single-fence changes;
+ * changes that arrive meanwhile are replayed onto the new snapshot before it
+ * replaces the old one.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class GeofenceIndex {
+
+    private static final double CELL_SIZE = GeoUtils.DEFAULT_CELL_SIZE_DEGREES;
+
+    // Fences spanning more cells than this are kept in a list that every lookup scans
+    private static final int MAX_CELLS_PER_FENCE = 400;
+
+    private final GeofenceRepository geofenceRepository;
+
+    private volatile Snapshot snapshot = new Snapshot(Collections.<Long, CompiledGeofence>emptyMap());
+
+    // Changes made while a full reload is reading the database, replayed onto its result before it goes live.
+    // A null value records a removal. Guarded by this; null when no reload is running
+    private Map<Long, CompiledGeofence> changedDuringReload;
+    private final Object reloadLock = new Object();
+
+    // Full reload on startup and every 10 minutes to pick up changes made by other instances
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelay = 600000, initialDelay = 600000)
+    public void reloadAll() {
+        synchronized (reloadLock) {
+            long start = System.currentTimeMillis();
+            synchronized (this) {
+                changedDuringReload = new HashMap<>();
+            }
+            Map<Long, CompiledGeofence> compiled = new HashMap<>();
+            try {
+                for (Geofence geofence : geofenceRepository.findActiveWithLocations()) {
+                    CompiledGeofence fence = CompiledGeofence.compile(geofence);
+                    if (fence != null) {
+                        compiled.put(geofence.getId(), fence);
+                    }
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    changedDuringReload = null;
+                }
+                throw e;
+            }
+
+            int replayed;
+            synchronized (this) {
+                replayed = changedDuringReload.size();
+                for (Map.Entry<Long, CompiledGeofence> change : changedDuringReload.entrySet()) {
+                    if (change.getValue() == null) {
+                        compiled.remove(change.getKey());
+                    } else {
+                        compiled.put(change.getKey(), change.getValue());
+                    }
+                }
+                changedDuringReload = null;
+                this.snapshot = new Snapshot(compiled);
+            }
+            log.info("Geofence index loaded {} active fences ({} replayed) in {} ms",
+                    compiled.size(), replayed, System.currentTimeMillis() - start);
+        }
+    }
+
+    // Re-reads a single fence and swaps it into the snapshot
+    public void reload(Long geofenceId) {
+        Optional<Geofence> geofence = geofenceRepository.findByIdWithLocations(geofenceId);
+        CompiledGeofence fence = geofence.isPresent() && Boolean.TRUE.equals(geofence.get().getIsActive())
+                ? CompiledGeofence.compile(geofence.get()) : null;
+        synchronized (this) {
+            Map<Long, CompiledGeofence> compiled = new HashMap<>(snapshot.fences);
+            compiled.remove(geofenceId);
+            if (fence != null) {
+                compiled.put(geofenceId, fence);
+            }
+            this.snapshot = new Snapshot(compiled);
+            if (changedDuringReload != null) {
+                changedDuringReload.put(geofenceId, fence);
+            }
+        }
+    }
+
+    public synchronized void remove(Long geofenceId) {
+        if (changedDuringReload != null) {
+            changedDuringReload.put(geofenceId, null);
+        }
+        if (!snapshot.fences.containsKey(geofenceId)) {
+            return;
+        }
+        Map<Long, CompiledGeofence> compiled = new HashMap<>(snapshot.fences);
+        compiled.remove(geofenceId);
+        this.snapshot = new Snapshot(compiled);
+    }
+
+    public List<Geofence> findContaining(double latitude, double longitude) {
+        List<CompiledGeofence> hits = snapshot.containing(latitude, longitude);
+        List<Geofence> geofences = new ArrayList<>(hits.size());
+        for (CompiledGeofence fence : hits) {
+            geofences.add(fence.geofence);
+        }
+        return geofences;
+    }
+
+    public Set<String> findZoneTypes(double latitude, double longitude) {
+        Set<String> types = new LinkedHashSet<>();
+        for (CompiledGeofence fence : snapshot.containing(latitude, longitude)) {
+            types.add(fence.type);
+        }
+        return types;
+    }
+
+    public int size() {
+        return snapshot.fences.size();
+    }
+
+    private static class Snapshot {
+        private final Map<Long, CompiledGeofence> fences;
+        private final Map<Long, CompiledGeofence[]> cells;
+        private final CompiledGeofence[] oversized;
+
+        Snapshot(Map<Long, CompiledGeofence> fences) {
+            this.fences = Collections.unmodifiableMap(new HashMap<>(fences));
+
+            Map<Long, List<CompiledGeofence>> buckets = new HashMap<>();
+            List<CompiledGeofence> large = new ArrayList<>();
+            for (CompiledGeofence fence : fences.values()) {
+                int minRow = GeoUtils.cellIndex(fence.minLat, CELL_SIZE);
+                int maxRow = GeoUtils.cellIndex(fence.maxLat, CELL_SIZE);
+                int minCol = GeoUtils.cellIndex(fence.minLng, CELL_SIZE);
+                int maxCol = GeoUtils.cellIndex(fence.maxLng, CELL_SIZE);
+                long cellCount = (long) (maxRow - minRow + 1) * (maxCol - minCol + 1);
+                if (cellCount > MAX_CELLS_PER_FENCE) {
+                    large.add(fence);
+                    continue;
+                }
+                for (int row = minRow; row <= maxRow; row++) {
+                    for (int col = minCol; col <= maxCol; col++) {
+                        buckets.computeIfAbsent(GeoUtils.cellKey(row, col), key -> new ArrayList<>()).add(fence);
+                    }
+                }
+            }
+
+            Map<Long, CompiledGeofence[]> packed = new HashMap<>(buckets.size() * 2);
+            for (Map.Entry<Long, List<CompiledGeofence>> bucket : buckets.entrySet()) {
+                packed.put(bucket.getKey(), bucket.getValue().toArray(new CompiledGeofence[0]));
+            }
+            this.cells = packed;
+            this.oversized = large.toArray(new CompiledGeofence[0]);
+        }
+
+        List<CompiledGeofence> containing(double latitude, double longitude) {
+            List<CompiledGeofence> hits = new ArrayList<>(2);
+            CompiledGeofence[] bucket = cells.get(GeoUtils.cellKey(latitude, longitude, CELL_SIZE));
+            if (bucket != null) {
+                for (CompiledGeofence fence : bucket) {
+                    if (fence.contains(latitude, longitude)) {
+                        hits.add(fence);
+                    }
+                }
+            }
+            for (CompiledGeofence fence : oversized) {
+                if (fence.contains(latitude, longitude)) {
+                    hits.add(fence);
+                }
+            }
+            return hits;
+        }
+    }
+
+    static final class CompiledGeofence {
+        private final Geofence geofence;
+        private final String type;
+        private final double minLat;
+        private final double maxLat;
+        private final double minLng;
+        private final double maxLng;
+
+        // Polygon vertices; null for circular fences
+        private final double[] lats;
+        private final double[] lngs;
+
+        // Circle centre and radius in meters; only used when there is no polygon
+        private final double centerLat;
+        private final double centerLng;
+        private final double radiusMeters;
+
+        private CompiledGeofence(Geofence geofence, double[] lats, double[] lngs,
+                                 double centerLat, double centerLng, double radiusMeters,
+                                 double minLat, double maxLat, double minLng, double maxLng) {
+            this.geofence = geofence;
+            this.type = geofence.getType() != null ? geofence.getType() : "";
+            this.lats = lats;
+            this.lngs = lngs;
+            this.centerLat = centerLat;
+            this.centerLng = centerLng;
+            this.radiusMeters = radiusMeters;
+            this.minLat = minLat;
+            this.maxLat = maxLat;
+            this.minLng = minLng;
+            this.maxLng = maxLng;
+        }
+
+        static CompiledGeofence compile(Geofence geofence) {
+            List<Location> vertices = new ArrayList<>();
+            if (geofence.getLocation() != null) {
+                for (Location vertex : geofence.getLocation()) {
+                    if (vertex != null && GeoUtils.isValidCoordinate(vertex.getLatitude(), vertex.getLongitude())) {
+                        vertices.add(vertex);
+                    }
+                }
+            }
+
+            if (vertices.size() >= 3) {
+                double[] lats = new double[vertices.size()];
+                double[] lngs = new double[vertices.size()];
+                double minLat = Double.MAX_VALUE, maxLat = -Double.MAX_VALUE;
+                double minLng = Double.MAX_VALUE, maxLng = -Double.MAX_VALUE;
+                for (int i = 0; i < vertices.size(); i++) {
+                    lats[i] = vertices.get(i).getLatitude();
+                    lngs[i] = vertices.get(i).getLongitude();
+                    minLat = Math.min(minLat, lats[i]);
+                    maxLat = Math.max(maxLat, lats[i]);
+                    minLng = Math.min(minLng, lngs[i]);
+                    maxLng = Math.max(maxLng, lngs[i]);
+                }
+                return new CompiledGeofence(geofence, lats, lngs, 0, 0, 0, minLat, maxLat, minLng, maxLng);
+            }
+
+            Location center = geofence.getCenterLocation();
+            Double radius = geofence.getRadius();
+            if (center != null && GeoUtils.isValidCoordinate(center.getLatitude(), center.getLongitude())
+                    && radius != null && radius > 0) {
+                double lat = center.getLatitude();
+                double lng = center.getLongitude();
+                double dLat = GeoUtils.metersToLatDegrees(radius);
+                double dLng = GeoUtils.metersToLngDegrees(radius, lat);
+                return new CompiledGeofence(geofence, null, null, lat, lng, radius,
+                        lat - dLat, lat + dLat, lng - dLng, lng + dLng);
+            }
+
+            log.warn("Skipping geofence {} ({}): no usable polygon or centre/radius", geofence.getId(), geofence.getName());
+            return null;
+        }
+
+        boolean contains(double latitude, double longitude) {
+            if (latitude < minLat || latitude > maxLat || longitude < minLng || longitude > maxLng) {
+                return false;
+            }
+            if (lats != null) {
+                return polygonContains(latitude, longitude);
+            }
+            return GeoUtils.distanceMeters(centerLat, centerLng, latitude, longitude) <= radiusMeters;
+        }
+
+        // Even-odd ray casting; longitude is x, latitude is y
+        private boolean polygonContains(double latitude, double longitude) {
+            boolean inside = false;
+            for (int i = 0, j = lats.length - 1; i < lats.length; j = i++) {
+                if ((lats[i] > latitude) != (lats[j] > latitude)
+                        && longitude < (lngs[j] - lngs[i]) * (latitude - lats[i]) / (lats[j] - lats[i]) + lngs[i]) {
+                    inside = !inside;
+                }
+            }
+            return inside;
+        }
+    }
+}
@@ -1,18 +1,40 @@
 package za.co.rubhub.service;
 
+import za.co.rubhub.dto.LocationPoint;
+import za.co.rubhub.dto.ZoneClassification;
 import za.co.rubhub.model.*;
+import za.co.rubhub.util.GeoUtils;
 import za.co.rubhub.repositories.GeofenceRepository;
-import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 @Service
-@RequiredArgsConstructor
 public class GeofenceService {
+    // Points classified per pass; results are handed to the sink one chunk at a time
+    private static final int CLASSIFY_CHUNK_SIZE = 2048;
+    // Points per task handed to the classify pool
+    private static final int CLASSIFY_SLICE_SIZE = 256;
+
     private final GeofenceRepository geofenceRepository;
+    private final GeofenceIndex geofenceIndex;
+    private final ThreadPoolTaskExecutor classifyExecutor;
+
+    public GeofenceService(GeofenceRepository geofenceRepository,
+                           GeofenceIndex geofenceIndex,
+                           @Qualifier("geofenceClassifyExecutor") ThreadPoolTaskExecutor classifyExecutor) {
+        this.geofenceRepository = geofenceRepository;
+        this.geofenceIndex = geofenceIndex;
+        this.classifyExecutor = classifyExecutor;
+    }
 
     public Geofence createGeofence(Geofence geofence) {
-        return geofenceRepository.save(geofence);
+        Geofence saved = geofenceRepository.save(geofence);
+        geofenceIndex.reload(saved.getId());
+        return saved;
     }
 
     public List<Geofence> getAllGeofences() {
@@ -34,17 +56,62 @@ public class GeofenceService {
             existing.setLocation(geofence.getLocation());
             existing.setRadius(geofence.getRadius());
             existing.setDescription(geofence.getDescription());
-            return geofenceRepository.save(existing);
+            existing.setCenterLocation(geofence.getCenterLocation());
+            if (geofence.getIsActive() != null) {
+                existing.setIsActive(geofence.getIsActive());
+            }
+            Geofence saved = geofenceRepository.save(existing);
+            geofenceIndex.reload(saved.getId());
+            return saved;
         }).orElseThrow(() -> new RuntimeException("Geofence not found"));
     }
 
     public void deleteGeofence(Long id) {
         geofenceRepository.deleteById(id);
+        geofenceIndex.remove(id);
     }
 
+    // Answered from the in-memory GeofenceIndex; no database round trip
     public List<Geofence> checkLocation(Double lat, Double lng) {
-        // Convert radius from meters to radians (assuming 100km radius for search)
-        double radiusInRadians = 100000 / 6378137.0;
-        return geofenceRepository.findGeofencesContainingPoint(lat, lng);
+        return geofenceIndex.findContaining(lat, lng);
+    }
+
+    public Set<String> getZoneTypes(Double lat, Double lng) {
+        return geofenceIndex.findZoneTypes(lat, lng);
+    }
+
+    // Classifies the points in order, chunk by chunk, spreading each chunk's slices over the classify pool
+    public void classifyLocations(List<LocationPoint> points, Consumer<List<ZoneClassification>> sink) {
+        for (int from = 0; from < points.size(); from += CLASSIFY_CHUNK_SIZE) {
+            List<LocationPoint> chunk = points.subList(from, Math.min(from + CLASSIFY_CHUNK_SIZE, points.size()));
+            List<CompletableFuture<List<ZoneClassification>>> slices = new ArrayList<>();
+            for (int start = 0; start < chunk.size(); start += CLASSIFY_SLICE_SIZE) {
+                List<LocationPoint> slice = chunk.subList(start, Math.min(start + CLASSIFY_SLICE_SIZE, chunk.size()));
+                slices.add(CompletableFuture.supplyAsync(() -> classifyAll(slice), classifyExecutor));
+            }
+            List<ZoneClassification> results = new ArrayList<>(chunk.size());
+            for (CompletableFuture<List<ZoneClassification>> slice : slices) {
+                results.addAll(slice.join());
+            }
+            sink.accept(results);
+        }
+    }
+
+    private List<ZoneClassification> classifyAll(List<LocationPoint> points) {
+        List<ZoneClassification> results = new ArrayList<>(points.size());
+        for (LocationPoint point : points) {
+            results.add(classify(point));
+        }
+        return results;
+    }
+
+    private ZoneClassification classify(LocationPoint point) {
+        if (point == null) {
+            return new ZoneClassification(null, Collections.<String>emptySet());
+        }
+        if (!GeoUtils.isValidCoordinate(point.getLat(), point.getLng())) {
+            return new ZoneClassification(point.getId(), Collections.<String>emptySet());
+        }
+        return new ZoneClassification(point.getId(), geofenceIndex.findZoneTypes(point.getLat(), point.getLng()));
     }
 }
\ No newline at end of file
@@ -0,0 +1,184 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.dto.LedgerEntry;
+import za.co.rubhub.model.Account;
+import za.co.rubhub.model.Transaction;
+import za.co.rubhub.repositories.AccountRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Spreads the SUSPENSE and RUBHUB house accounts over shard rows.
+ *
+ * Every payout moves money out of SUSPENSE and into RUBHUB, so with one row
+ * each, parallel payout chunks queue on the same two row locks. Each house
+ * account gets a fixed number of shard rows next to its primary row. A
+ * posting picks a shard by therapist, so chunks for different therapists
+ * mostly lock different rows. The logical balance is the primary plus all
+ * its shards. Each shard has the ledger's zero floor, so a payment credited
+ * to a therapist's SUSPENSE shard is what that therapist's payout debits.
+ *
+ * A periodic compaction folds RUBHUB shards back into the primary through
+ * the ledger. SUSPENSE shards keep their money for the payouts that will
+ * take it out; folding it away would make every payout borrow it back from
+ * the primary row. Shards left negative from before the floor are covered
+ * from the primary for both.
+ */
+@Slf4j
+@Component
+public class HouseAccountShards {
+
+    static final List<String> SHARDED_TYPES =
+            Arrays.asList(LedgerService.SUSPENSE_ACCOUNT_TYPE, LedgerService.RUBHUB_ACCOUNT_TYPE);
+    // Only ever credited by postings, so their money can sit on the primary
+    private static final List<String> FOLDED_TYPES = Collections.singletonList(LedgerService.RUBHUB_ACCOUNT_TYPE);
+
+    private final AccountRepository accountRepository;
+    private final LedgerService ledgerService;
+    private final TransactionTemplate transactionTemplate;
+    private final int shardCount;
+
+    // House account type -> shard account ids by shard index
+    private final Map<String, Long[]> shards = new ConcurrentHashMap<>();
+
+    public HouseAccountShards(AccountRepository accountRepository,
+                              LedgerService ledgerService,
+                              TransactionTemplate transactionTemplate,
+                              @Value("${ledger.house-account-shards:8}") int shardCount) {
+        this.accountRepository = accountRepository;
+        this.ledgerService = ledgerService;
+        this.transactionTemplate = transactionTemplate;
+        this.shardCount = Math.max(1, shardCount);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void prepare() {
+        for (String type : SHARDED_TYPES) {
+            try {
+                shardIds(type);
+            } catch (RuntimeException e) {
+                log.warn("Could not prepare {} shards: {}", type, e.getMessage());
+            }
+        }
+    }
+
+    // The shard a given key always writes to; the same therapist keeps hitting the same row
+    public Long shardFor(String accountType, long key) {
+        Long[] ids = shardIds(accountType);
+        return ids[Math.floorMod(Long.hashCode(key), ids.length)];
+    }
+
+    public BigDecimal balance(String accountType) {
+        return accountRepository.sumShardedBalance(ledgerService.houseAccountId(accountType));
+    }
+
+    // Folds each RUBHUB shard into its primary with one ledger line, and covers any negative shard from it
+    @Scheduled(cron = "0 15 * * * *")
+    public void compact() {
+        for (String type : SHARDED_TYPES) {
+            Long primaryId;
+            try {
+                primaryId = ledgerService.houseAccountId(type);
+            } catch (RuntimeException e) {
+                continue;
+            }
+            // Positive shards first, so the primary holds their money before it covers the negative ones
+            List<Account> byBalance = accountRepository.findByShardOfOrderByShardIndexAsc(primaryId);
+            byBalance.sort(Comparator.comparing(Account::getBalance,
+                    Comparator.nullsLast(Comparator.<BigDecimal>reverseOrder())));
+            int folded = 0;
+            for (Account shard : byBalance) {
+                // Deltas are relative, so postings landing on the shard meanwhile simply stay behind for next time
+                BigDecimal balance = shard.getBalance();
+                if (balance == null || balance.signum() == 0
+                        || (balance.signum() > 0 && !FOLDED_TYPES.contains(type))) {
+                    continue;
+                }
+                LedgerEntry entry = balance.signum() > 0
+                        ? new LedgerEntry(shard.getId(), primaryId, balance, Transaction.TransactionType.ADJUSTMENT,
+                                "Shard compaction", "COMPACT-" + type, null)
+                        : new LedgerEntry(primaryId, shard.getId(), balance.negate(), Transaction.TransactionType.ADJUSTMENT,
+                                "Shard compaction", "COMPACT-" + type, null);
+                try {
+                    ledgerService.post(Collections.singletonList(entry));
+                    folded++;
+                } catch (RuntimeException e) {
+                    log.warn("Could not fold {} shard {} ({}): {}", type, shard.getShardIndex(), balance, e.getMessage());
+                }
+            }
+            if (folded > 0) {
+                log.info("Compacted {} {} shards into account {}", folded, type, primaryId);
+            }
+        }
+    }
+
+    private Long[] shardIds(String accountType) {
+        Long[] ids = shards.get(accountType);
+        if (ids != null) {
+            return ids;
+        }
+        synchronized (this) {
+            ids = shards.get(accountType);
+            if (ids == null) {
+                ids = ensureShards(accountType);
+                shards.put(accountType, ids);
+            }
+            return ids;
+        }
+    }
+
+    // Creates whichever of the shard rows do not exist yet; another instance creating them first is fine
+    private Long[] ensureShards(String accountType) {
+        Long primaryId = ledgerService.houseAccountId(accountType);
+        try {
+            transactionTemplate.execute(status -> {
+                Account primary = accountRepository.findById(primaryId)
+                        .orElseThrow(() -> new RuntimeException("House account not found: " + accountType));
+                boolean[] present = new boolean[shardCount];
+                for (Account shard : accountRepository.findByShardOfOrderByShardIndexAsc(primaryId)) {
+                    if (shard.getShardIndex() != null && shard.getShardIndex() < shardCount) {
+                        present[shard.getShardIndex()] = true;
+                    }
+                }
+                for (int index = 0; index < shardCount; index++) {
+                    if (!present[index]) {
+                        Account shard = new Account(primary.getUser(), accountType, null);
+                        shard.setShardOf(primaryId);
+                        shard.setShardIndex(index);
+                        accountRepository.save(shard);
+                    }
+                }
+                return null;
+            });
+        } catch (DataIntegrityViolationException e) {
+            log.info("{} shards were created concurrently", accountType);
+        }
+
+        Long[] ids = new Long[shardCount];
+        for (Account shard : accountRepository.findByShardOfOrderByShardIndexAsc(primaryId)) {
+            if (shard.getShardIndex() != null && shard.getShardIndex() < shardCount) {
+                ids[shard.getShardIndex()] = shard.getId();
+            }
+        }
+        for (int index = 0; index < shardCount; index++) {
+            if (ids[index] == null) {
+                throw new IllegalStateException(accountType + " shard " + index + " is missing");
+            }
+        }
+        return ids;
+    }
+}
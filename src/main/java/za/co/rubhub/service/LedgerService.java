@@ -0,0 +1,196 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.dto.LedgerEntry;
+import za.co.rubhub.model.Account;
+import za.co.rubhub.model.Transaction;
+import za.co.rubhub.repositories.AccountRepository;
+import za.co.rubhub.repositories.LedgerBatchRepository;
+import za.co.rubhub.repositories.TransactionRepository;
+import za.co.rubhub.repositories.projection.AccountBalanceRow;
+import za.co.rubhub.repositories.projection.LedgerAccountRef;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Double-entry ledger over accounts and transactions.
+ *
+ * Every movement is appended to the transactions journal as a line naming
+ * both accounts, and the account's balance column is a cached total of those
+ * lines. Balances move by net delta with an atomic UPDATE, never by reading
+ * the row and saving it back, so concurrent postings cannot lose each other.
+ * A posting of many lines touches each account once: a payout chunk that
+ * moves money out of SUSPENSE five hundred times updates the SUSPENSE row one
+ * time. Rows are updated in account id order, so two postings never deadlock.
+ *
+ * Every account, shard rows included, refuses a delta that would take it
+ * below zero, so a posting only ever locks the rows it moves. A shard too
+ * short for a debit borrows the difference from its primary and sibling
+ * shards, with journal lines of its own, and only then is the posting
+ * refused. The same therapist's payments and payouts share a shard, so that
+ * is the rare case; it takes donor rows out of id order, and a deadlock
+ * there fails the posting like any other error. Counterparty accounts, such
+ * as the PayFast account customer payments come from, have no floor at all.
+ */
+@Service
+@RequiredArgsConstructor
+public class LedgerService {
+
+    public static final String SUSPENSE_ACCOUNT_TYPE = "SUSPENSE";
+    public static final String THERAPIST_ACCOUNT_TYPE = "THERAPIST";
+    public static final String RUBHUB_ACCOUNT_TYPE = "RUBHUB";
+    // Customer money collected through PayFast; every payment leaves it, so its balance runs negative
+    public static final String PAYFAST_ACCOUNT_TYPE = "PAYFAST";
+    private static final Set<String> COUNTERPARTY_ACCOUNT_TYPES = Collections.singleton(PAYFAST_ACCOUNT_TYPE);
+
+    private final AccountRepository accountRepository;
+    private final TransactionRepository transactionRepository;
+    private final LedgerBatchRepository ledgerBatchRepository;
+
+    private final Map<Long, LedgerAccountRef> accountRefs = new ConcurrentHashMap<>();
+    private final Map<String, Long> houseAccountIds = new ConcurrentHashMap<>();
+
+    @Transactional
+    public void transfer(Long fromAccountId, Long toAccountId, BigDecimal amount, String description, String reference) {
+        post(Collections.singletonList(LedgerEntry.transfer(fromAccountId, toAccountId, amount, description, reference)));
+    }
+
+    // All lines commit together or not at all; joins the caller's transaction if there is one
+    @Transactional
+    public void post(List<LedgerEntry> entries) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        Map<Long, BigDecimal> deltas = new TreeMap<>();
+        for (LedgerEntry entry : entries) {
+            if (entry.getAmount() == null || entry.getAmount().signum() <= 0) {
+                throw new IllegalArgumentException("Ledger amounts must be positive");
+            }
+            if (entry.getFromAccountId().equals(entry.getToAccountId())) {
+                throw new IllegalArgumentException("Cannot transfer from account " + entry.getFromAccountId() + " to itself");
+            }
+            deltas.merge(entry.getFromAccountId(), entry.getAmount().negate(), BigDecimal::add);
+            deltas.merge(entry.getToAccountId(), entry.getAmount(), BigDecimal::add);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Map<Long, LedgerAccountRef> refs = refs(deltas.keySet());
+        ledgerBatchRepository.insertEntries(entries, refs, now);
+
+        // Last, so row locks on hot accounts are held only from here to commit
+        for (Map.Entry<Long, BigDecimal> delta : deltas.entrySet()) {
+            if (delta.getValue().signum() == 0) {
+                continue;
+            }
+            LedgerAccountRef ref = refs.get(delta.getKey());
+            int updated = applyDelta(ref, delta.getValue(), now);
+            if (updated == 0 && ref.getShardOf() != null && delta.getValue().signum() < 0) {
+                borrowInto(ref, delta.getValue().negate(), now);
+                updated = applyDelta(ref, delta.getValue(), now);
+            }
+            if (updated == 0) {
+                throw new IllegalStateException("Insufficient balance in account " + delta.getKey());
+            }
+        }
+    }
+
+    // The balance the journal adds up to; differs from the cached balance only if something bypassed the ledger
+    @Transactional(readOnly = true)
+    public BigDecimal journalBalance(Long accountId) {
+        BigDecimal total = transactionRepository.sumNetMovement(String.valueOf(accountId),
+                Transaction.TransactionStatus.COMPLETED);
+        return total != null ? total : BigDecimal.ZERO;
+    }
+
+    public Long houseAccountId(String accountType) {
+        return houseAccountIds.computeIfAbsent(accountType, type -> accountRepository
+                .findFirstByAccountTypeAndShardOfIsNullOrderByIdAsc(type)
+                .map(Account::getId)
+                .orElseThrow(() -> new RuntimeException("House account not found: " + type)));
+    }
+
+    public Long therapistAccountId(Long therapistId) {
+        List<Account> accounts = accountRepository.findTherapistAccounts(therapistId, THERAPIST_ACCOUNT_TYPE);
+        if (accounts.isEmpty()) {
+            throw new RuntimeException("Therapist account not found for therapist: " + therapistId);
+        }
+        return accounts.get(0).getId();
+    }
+
+    private int applyDelta(LedgerAccountRef ref, BigDecimal delta, LocalDateTime now) {
+        return COUNTERPARTY_ACCOUNT_TYPES.contains(ref.getAccountType())
+                ? accountRepository.applyCounterpartyDelta(ref.getId(), delta, now)
+                : accountRepository.applyDelta(ref.getId(), delta, now);
+    }
+
+    // Moves the shard's shortfall in from the primary and sibling shards with the most money, one journal line each
+    private void borrowInto(LedgerAccountRef shard, BigDecimal debit, LocalDateTime now) {
+        List<AccountBalanceRow> rows = accountRepository.findHouseAccountBalances(shard.getShardOf());
+        BigDecimal shortfall = debit;
+        for (AccountBalanceRow row : rows) {
+            if (row.getId().equals(shard.getId()) && row.getBalance() != null) {
+                shortfall = debit.subtract(row.getBalance());
+            }
+        }
+        List<LedgerEntry> moves = new ArrayList<>();
+        for (AccountBalanceRow row : rows) {
+            if (shortfall.signum() <= 0) {
+                break;
+            }
+            if (row.getId().equals(shard.getId()) || row.getBalance() == null || row.getBalance().signum() <= 0) {
+                continue;
+            }
+            BigDecimal take = row.getBalance().min(shortfall);
+            // The balance was read without a lock; a donor spent meanwhile refuses and the next one is tried
+            if (accountRepository.applyDelta(row.getId(), take.negate(), now) == 0) {
+                continue;
+            }
+            accountRepository.applyDelta(shard.getId(), take, now);
+            moves.add(new LedgerEntry(row.getId(), shard.getId(), take, Transaction.TransactionType.ADJUSTMENT,
+                    "Shard rebalance", "REBALANCE-" + shard.getAccountType(), null));
+            shortfall = shortfall.subtract(take);
+        }
+        if (!moves.isEmpty()) {
+            Set<Long> accountIds = new HashSet<>();
+            for (LedgerEntry move : moves) {
+                accountIds.add(move.getFromAccountId());
+            }
+            accountIds.add(shard.getId());
+            ledgerBatchRepository.insertEntries(moves, refs(accountIds), now);
+        }
+    }
+
+    private Map<Long, LedgerAccountRef> refs(Set<Long> accountIds) {
+        Set<Long> missing = new HashSet<>();
+        for (Long accountId : accountIds) {
+            if (!accountRefs.containsKey(accountId)) {
+                missing.add(accountId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (LedgerAccountRef ref : accountRepository.findLedgerRefs(missing)) {
+                accountRefs.put(ref.getId(), ref);
+            }
+        }
+        Map<Long, LedgerAccountRef> refs = new TreeMap<>();
+        for (Long accountId : accountIds) {
+            LedgerAccountRef ref = accountRefs.get(accountId);
+            if (ref == null) {
+                throw new IllegalArgumentException("Account not found: " + accountId);
+            }
+            refs.put(accountId, ref);
+        }
+        return refs;
+    }
+}
@@ -6,27 +6,56 @@ import za.co.rubhub.model.Therapist;
 import za.co.rubhub.model.User;
 import za.co.rubhub.model.MassageRequest.PaymentStatus;
 import za.co.rubhub.model.MassageRequest.Status;
+import za.co.rubhub.dto.CursorPage;
+import za.co.rubhub.dto.PageCursor;
 import za.co.rubhub.repositories.MassageRequestRepository;
+import za.co.rubhub.repositories.projection.MassageRequestExportRow;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 public class MassageRequestService {
 
+    private static final int MAX_PAGE_SIZE = 500;
+    // Open bounds for date filters; kept inside the range Postgres timestamps can hold
+    private static final LocalDateTime EARLIEST = LocalDateTime.of(1970, 1, 1, 0, 0);
+    private static final LocalDateTime LATEST = LocalDateTime.of(9999, 12, 31, 0, 0);
+
     @Autowired
     private MassageRequestRepository massageRequestRepository;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
     @Autowired
     private UserService userService;
 
     @Autowired
     private TherapistService therapistService;
 
+    @Autowired
+    private DispatchQueue dispatchQueue;
+
+    @Autowired
+    private MatchingEngine matchingEngine;
+
+    @Autowired
+    private TherapistCalendar therapistCalendar;
+
     // Basic CRUD operations
     public List<MassageRequest> findAll() {
         return massageRequestRepository.findAll();
@@ -36,6 +65,57 @@ public class MassageRequestService {
         return massageRequestRepository.findById(id);
     }
 
+    // Every match in id order, read a keyset page at a time. Each page is detached once the sink has it,
+    // so the request's persistence context never holds more than one page
+    public void forEachMassageRequest(Status status, Long clientId, Long therapistId, Consumer<MassageRequest> sink) {
+        String cursor = null;
+        do {
+            CursorPage<MassageRequest> page = findPage(status, clientId, therapistId, false, cursor, MAX_PAGE_SIZE);
+            page.getItems().forEach(sink);
+            entityManager.clear();
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+    }
+
+    // Keyset pagination ordered by id, or by preferred date/time when sortByTime is set
+    public CursorPage<MassageRequest> findPage(Status status, Long clientId, Long therapistId,
+                                               boolean sortByTime, String cursor, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        PageCursor after = PageCursor.decode(cursor);
+        // One extra row tells us whether there is another page without a COUNT
+        PageRequest page = PageRequest.of(0, size + 1);
+
+        List<MassageRequest> rows;
+        if (sortByTime) {
+            LocalDateTime afterTime = after != null && after.getTime() != null ? after.getTime() : EARLIEST;
+            Long afterId = after != null && after.getTime() != null ? after.getId() : 0L;
+            rows = massageRequestRepository.findPageAfterPreferredDateTime(
+                    afterTime, afterId, status, clientId, therapistId, page);
+        } else {
+            Long afterId = after != null ? after.getId() : 0L;
+            rows = massageRequestRepository.findPageAfterId(afterId, status, clientId, therapistId, page);
+        }
+
+        boolean hasMore = rows.size() > size;
+        List<MassageRequest> items = hasMore ? new ArrayList<>(rows.subList(0, size)) : rows;
+        String nextCursor = null;
+        if (hasMore) {
+            MassageRequest last = items.get(items.size() - 1);
+            nextCursor = new PageCursor(sortByTime ? last.getPreferredDateTime() : null, last.getId()).encode();
+        }
+        return new CursorPage<>(items, nextCursor, hasMore);
+    }
+
+    // Streams flat rows from a database cursor; memory stays flat however many requests match
+    @Transactional(readOnly = true)
+    public void exportRequests(Status status, LocalDateTime from, LocalDateTime to,
+                               Consumer<MassageRequestExportRow> sink) {
+        try (Stream<MassageRequestExportRow> rows = massageRequestRepository.streamExportRows(status,
+                from != null ? from : EARLIEST, to != null ? to : LATEST)) {
+            rows.forEach(sink);
+        }
+    }
+
     public List<MassageRequest> findByCustomerId(Long customerId) {
         return massageRequestRepository.findByCustomerId(customerId);
     }
@@ -53,7 +133,10 @@ public class MassageRequestService {
         massageRequest.calculateTotals();
         massageRequest.setUpdatedAt(LocalDateTime.now());
         
-        return massageRequestRepository.save(massageRequest);
+        MassageRequest saved = massageRequestRepository.save(massageRequest);
+        dispatchQueue.sync(saved);
+        therapistCalendar.sync(saved);
+        return saved;
     }
 
     public void deleteById(String id) {
@@ -72,26 +155,64 @@ public class MassageRequestService {
         massageRequest.setStatus(Status.PENDING);
         massageRequest.setPaymentStatus(PaymentStatus.PENDING);
 
-        return save(massageRequest);
+        MassageRequest saved = save(massageRequest);
+        // Offers go out straight away; if nobody qualifies the request waits in the dispatch queue
+        matchingEngine.match(saved);
+        return saved;
     }
 
     public MassageRequest assignTherapist(Long requestId, Long therapistId) {
-        Optional<MassageRequest> requestOpt = findById(requestId);
-        Optional<Therapist> therapistOpt = therapistService.findByTherapistId(therapistId);
+        if (!therapistService.findByTherapistId(therapistId).isPresent()) {
+            throw new RuntimeException("Request or therapist not found");
+        }
 
-        if (requestOpt.isPresent() && therapistOpt.isPresent()) {
-            MassageRequest request = requestOpt.get();
-            Therapist therapist = therapistOpt.get();
+        MassageRequest request = findById(requestId)
+                .orElseThrow(() -> new RuntimeException("Request or therapist not found"));
+
+        // Claimed through the dispatch queue so two therapists can never both win the job
+        Supplier<MassageRequest> claim = () -> {
+            if (dispatchQueue.claim(requestId, therapistId) != DispatchQueue.ClaimResult.CLAIMED) {
+                throw new IllegalStateException("Request " + requestId + " is no longer available");
+            }
+            MassageRequest assigned = findById(requestId)
+                    .orElseThrow(() -> new RuntimeException("Request or therapist not found"));
+            therapistCalendar.sync(assigned);
+            return assigned;
+        };
+
+        // The conflict check and the claim run under the therapist's calendar lock, so two jobs can't both take the slot
+        MassageRequest assigned;
+        if (request.getPreferredDateTime() == null) {
+            assigned = claim.get();
+        } else {
+            assigned = therapistCalendar.reserve(therapistId, request.getPreferredDateTime(),
+                    request.getDurationMinutes() != null ? request.getDurationMinutes() : 60, null, claim)
+                    .orElseThrow(() -> new IllegalStateException(
+                            "Therapist has scheduling conflict at the requested time"));
+        }
+        matchingEngine.close(requestId);
+        return assigned;
+    }
 
-            // Check for scheduling conflicts
-            // if (hasSchedulingConflict(therapistId, request.getScheduledTime(), request.getDuration())) {
-            //     throw new RuntimeException("Therapist has scheduling conflict at the requested time");
-            // }
+    // A therapist accepting a matcher offer; the first of the batch to accept wins the claim
+    public MassageRequest acceptOffer(Long requestId, Long therapistId) {
+        if (!matchingEngine.isOffered(requestId, therapistId)) {
+            throw new IllegalStateException("No open offer for request " + requestId);
+        }
+        return assignTherapist(requestId, therapistId);
+    }
 
-            request.assignToTherapist(therapist);
-            return save(request);
+    public List<Long> findOffersForTherapist(Long therapistId) {
+        return matchingEngine.findOffersFor(therapistId);
+    }
+
+    // Served from the in-memory dispatch queue; never reaches the database
+    public List<DispatchQueue.Job> findOpenJobs(Double latitude, Double longitude, double radiusMeters, int limit) {
+        int size = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+        if (latitude != null && longitude != null) {
+            return dispatchQueue.findOpenNear(latitude, longitude, radiusMeters, size);
         }
-        throw new RuntimeException("Request or therapist not found");
+        return dispatchQueue.findOpen(size);
     }
 
 
@@ -0,0 +1,210 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.model.MassageRequest;
+import za.co.rubhub.util.GeoUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Scores nearby therapists for a new request and offers the job to the best
+ * few at once. Scoring reads only TherapistLocationIndex snapshots. The first
+ * offered therapist to accept claims the job through DispatchQueue. If nobody
+ * accepts before the offer expires, it cascades to the next candidates.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class MatchingEngine {
+
+    static final double MAX_MATCH_RADIUS_METERS = 30000;
+    static final int MAX_CANDIDATES = 15;
+    static final int OFFER_BATCH_SIZE = 3;
+    static final long OFFER_TIMEOUT_MILLIS = 45000;
+
+    // Weights sum to 1, so scores fall between 0 and 1
+    private static final double DISTANCE_WEIGHT = 0.35;
+    private static final double RATING_WEIGHT = 0.25;
+    private static final double RESPONSE_WEIGHT = 0.15;
+    private static final double CANCELLATION_WEIGHT = 0.15;
+    private static final double SPECIALIZATION_WEIGHT = 0.10;
+
+    // Response times at or beyond this earn nothing
+    private static final double SLOWEST_RESPONSE_MINUTES = 60;
+
+    private final TherapistLocationIndex therapistLocationIndex;
+    private final DispatchQueue dispatchQueue;
+    private final TherapistCalendar therapistCalendar;
+
+    private final Map<Long, Offer> offers = new ConcurrentHashMap<>();
+
+    // Ranks candidates and sends the first batch of offers; returns false when nobody qualifies
+    public boolean match(MassageRequest request) {
+        if (request == null || request.getId() == null
+                || !GeoUtils.isValidCoordinate(request.getLocationLatitude(), request.getLocationLongitude())) {
+            return false;
+        }
+        long start = System.nanoTime();
+        List<Candidate> ranked = rank(request);
+        if (log.isDebugEnabled()) {
+            log.debug("Scored {} candidates for request {} in {} us", ranked.size(), request.getId(),
+                    (System.nanoTime() - start) / 1000);
+        }
+        if (ranked.isEmpty()) {
+            log.info("No therapist candidates for request {}; left in the dispatch queue", request.getId());
+            return false;
+        }
+        Offer offer = new Offer(request.getId(), ranked, 0, System.currentTimeMillis() + OFFER_TIMEOUT_MILLIS);
+        offers.put(request.getId(), offer);
+        logOffer(offer);
+        return true;
+    }
+
+    public List<Candidate> rank(MassageRequest request) {
+        double latitude = request.getLocationLatitude();
+        double longitude = request.getLocationLongitude();
+        LocalDateTime at = request.getPreferredDateTime() != null ? request.getPreferredDateTime() : LocalDateTime.now();
+        int durationMinutes = request.getDurationMinutes() != null ? request.getDurationMinutes() : 60;
+
+        List<Candidate> candidates = new ArrayList<>();
+        for (TherapistLocationIndex.Match match
+                : therapistLocationIndex.findWithinRadius(latitude, longitude, MAX_MATCH_RADIUS_METERS)) {
+            TherapistLocationIndex.Entry therapist = match.getEntry();
+            if (!therapist.isAvailableForBookingAt(at)
+                    || !therapistCalendar.isFree(therapist.getTherapistId(), at, durationMinutes)) {
+                continue;
+            }
+            candidates.add(new Candidate(therapist.getTherapistId(), match.getDistanceMeters(),
+                    score(therapist, match.getDistanceMeters(), request.getServiceType())));
+        }
+
+        candidates.sort(Comparator.comparingDouble(Candidate::getScore).reversed()
+                .thenComparingDouble(Candidate::getDistanceMeters));
+        return candidates.size() > MAX_CANDIDATES ? new ArrayList<>(candidates.subList(0, MAX_CANDIDATES)) : candidates;
+    }
+
+    // True while the therapist holds a live offer for the request
+    public boolean isOffered(Long requestId, Long therapistId) {
+        Offer offer = offers.get(requestId);
+        return offer != null && !offer.isExpired(System.currentTimeMillis()) && offer.currentBatch().contains(therapistId);
+    }
+
+    public List<Long> findOffersFor(Long therapistId) {
+        long now = System.currentTimeMillis();
+        List<Long> requestIds = new ArrayList<>();
+        for (Offer offer : offers.values()) {
+            if (!offer.isExpired(now) && offer.currentBatch().contains(therapistId)) {
+                requestIds.add(offer.requestId);
+            }
+        }
+        Collections.sort(requestIds);
+        return requestIds;
+    }
+
+    // Called once a request is assigned, by offer or by hand
+    public void close(Long requestId) {
+        offers.remove(requestId);
+    }
+
+    // Expired offers move on to the next batch; requests nobody took stay in the dispatch queue
+    @Scheduled(fixedDelay = 5000, initialDelay = 5000)
+    public void cascadeExpiredOffers() {
+        long now = System.currentTimeMillis();
+        for (Offer offer : offers.values()) {
+            if (!dispatchQueue.isOpen(offer.requestId)) {
+                offers.remove(offer.requestId, offer);
+                continue;
+            }
+            if (!offer.isExpired(now)) {
+                continue;
+            }
+            int next = offer.batchStart + OFFER_BATCH_SIZE;
+            if (next >= offer.ranked.size()) {
+                offers.remove(offer.requestId, offer);
+                log.info("Offers for request {} exhausted; left in the dispatch queue", offer.requestId);
+                continue;
+            }
+            Offer cascaded = new Offer(offer.requestId, offer.ranked, next, now + OFFER_TIMEOUT_MILLIS);
+            if (offers.replace(offer.requestId, offer, cascaded)) {
+                logOffer(cascaded);
+            }
+        }
+    }
+
+    private double score(TherapistLocationIndex.Entry therapist, double distanceMeters, String serviceType) {
+        double distance = 1.0 - Math.min(distanceMeters / MAX_MATCH_RADIUS_METERS, 1.0);
+        double rating = Math.min(therapist.getRating() / 5.0, 1.0);
+        // Unknown response time scores as average rather than best or worst
+        double response = therapist.getResponseTimeMinutes() == null ? 0.5
+                : 1.0 - Math.min(therapist.getResponseTimeMinutes() / SLOWEST_RESPONSE_MINUTES, 1.0);
+        // cancellation_rate is stored as a percentage
+        double reliability = 1.0 - Math.min(therapist.getCancellationRate() / 100.0, 1.0);
+        double specialization = therapist.hasSpecialization(serviceType) ? 1.0 : 0.0;
+
+        return DISTANCE_WEIGHT * distance
+                + RATING_WEIGHT * rating
+                + RESPONSE_WEIGHT * response
+                + CANCELLATION_WEIGHT * reliability
+                + SPECIALIZATION_WEIGHT * specialization;
+    }
+
+    private void logOffer(Offer offer) {
+        // Therapist apps pick offers up from GET /api/massage-requests/offers
+        log.info("Request {} offered to therapists {} until {}", offer.requestId, offer.currentBatch(),
+                Instant.ofEpochMilli(offer.expiresAt));
+    }
+
+    private static final class Offer {
+        private final Long requestId;
+        private final List<Candidate> ranked;
+        private final int batchStart;
+        private final long expiresAt;
+        private final List<Long> batch;
+
+        Offer(Long requestId, List<Candidate> ranked, int batchStart, long expiresAt) {
+            this.requestId = requestId;
+            this.ranked = ranked;
+            this.batchStart = batchStart;
+            this.expiresAt = expiresAt;
+            List<Long> ids = new ArrayList<>(OFFER_BATCH_SIZE);
+            for (int i = batchStart; i < Math.min(batchStart + OFFER_BATCH_SIZE, ranked.size()); i++) {
+                ids.add(ranked.get(i).getTherapistId());
+            }
+            this.batch = Collections.unmodifiableList(ids);
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+
+        List<Long> currentBatch() {
+            return batch;
+        }
+    }
+
+    public static final class Candidate {
+        private final Long therapistId;
+        private final double distanceMeters;
+        private final double score;
+
+        Candidate(Long therapistId, double distanceMeters, double score) {
+            this.therapistId = therapistId;
+            this.distanceMeters = distanceMeters;
+            this.score = score;
+        }
+
+        public Long getTherapistId() { return therapistId; }
+        public double getDistanceMeters() { return distanceMeters; }
+        public double getScore() { return score; }
+    }
+}
@@ -0,0 +1,243 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.util.CircuitBreaker;
+import za.co.rubhub.util.TokenBucket;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.http.conn.ConnectTimeoutException;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * HTTP transport for the PayFast API.
+ *
+ * Calls run on the payfastClientExecutor window over a pooled keep-alive
+ * connection manager sized to the same window, so at most that many
+ * requests are open against PayFast at once. Every attempt first takes a
+ * permit from a token bucket set to PayFast's rate limit.
+ *
+ * Only a failed connect is retried, with full-jitter exponential backoff.
+ * A 5xx response or a read timeout is not, since PayFast may already have
+ * acted on a payout submit that has no idempotency key. Consecutive failures
+ * open a circuit breaker, and calls fail fast until a trial call succeeds;
+ * every attempt let through reports its outcome, whatever it fails with.
+ * Latency is recorded per path and outcome.
+ */
+@Slf4j
+@Component
+public class PayFastClient {
+
+    private static final String METRIC_PREFIX = "rubhub.payfast.client";
+
+    private final String baseUrl;
+    private final int maxAttempts;
+    private final long backoffBaseMillis;
+    private final long backoffCapMillis;
+
+    private final RestTemplate restTemplate;
+    private final CloseableHttpClient httpClient;
+    private final ThreadPoolTaskExecutor executor;
+    private final TokenBucket rateLimiter;
+    private final CircuitBreaker circuitBreaker;
+    private final MeterRegistry meterRegistry;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Counter rejected;
+    private final Counter retries;
+
+    public PayFastClient(RestTemplateBuilder restTemplateBuilder,
+                         MeterRegistry meterRegistry,
+                         @Qualifier("payfastClientExecutor") ThreadPoolTaskExecutor executor,
+                         @Value("${payfast.base.url}") String baseUrl,
+                         @Value("${payfast.client.rate-per-second:10}") double ratePerSecond,
+                         @Value("${payfast.client.burst:10}") int burst,
+                         @Value("${payfast.client.connect-timeout-ms:2000}") long connectTimeoutMillis,
+                         @Value("${payfast.client.read-timeout-ms:15000}") long readTimeoutMillis,
+                         @Value("${payfast.client.max-attempts:3}") int maxAttempts,
+                         @Value("${payfast.client.backoff-base-ms:200}") long backoffBaseMillis,
+                         @Value("${payfast.client.backoff-cap-ms:5000}") long backoffCapMillis,
+                         @Value("${payfast.client.breaker-failure-threshold:5}") int breakerFailureThreshold,
+                         @Value("${payfast.client.breaker-open-ms:30000}") long breakerOpenMillis) {
+        this.baseUrl = baseUrl;
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.backoffBaseMillis = backoffBaseMillis;
+        this.backoffCapMillis = backoffCapMillis;
+        this.meterRegistry = meterRegistry;
+        this.executor = executor;
+
+        int maxInFlight = executor.getMaxPoolSize();
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxInFlight);
+        connectionManager.setDefaultMaxPerRoute(maxInFlight);
+        connectionManager.setValidateAfterInactivity(10000);
+        this.httpClient = HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .evictIdleConnections(60, TimeUnit.SECONDS)
+                .disableAutomaticRetries()
+                .build();
+        this.restTemplate = restTemplateBuilder
+                .requestFactory(() -> new HttpComponentsClientHttpRequestFactory(httpClient))
+                .setConnectTimeout(Duration.ofMillis(connectTimeoutMillis))
+                .setReadTimeout(Duration.ofMillis(readTimeoutMillis))
+                .build();
+
+        this.rateLimiter = new TokenBucket(ratePerSecond, burst);
+        this.circuitBreaker = new CircuitBreaker(breakerFailureThreshold, breakerOpenMillis);
+
+        Gauge.builder(METRIC_PREFIX + ".in_flight", inFlight, AtomicInteger::get)
+                .description("PayFast requests currently on the wire")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".queued", executor, e -> e.getThreadPoolExecutor().getQueue().size())
+                .description("PayFast calls waiting for a slot in the window")
+                .register(meterRegistry);
+        Gauge.builder(METRIC_PREFIX + ".circuit_open", circuitBreaker,
+                        breaker -> breaker.getState() == CircuitBreaker.State.CLOSED ? 0 : 1)
+                .register(meterRegistry);
+        this.rejected = Counter.builder(METRIC_PREFIX + ".rejected")
+                .description("Calls refused because the window queue was full or the circuit was open")
+                .register(meterRegistry);
+        this.retries = Counter.builder(METRIC_PREFIX + ".retries").register(meterRegistry);
+    }
+
+    // The executor bean outlives this one, so drain it here before the connections go away
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            httpClient.close();
+        } catch (IOException e) {
+            log.warn("Could not close PayFast HTTP client: {}", e.getMessage());
+        }
+    }
+
+    // Completes exceptionally with the last HTTP or I/O error once retries are spent
+    public <T> CompletableFuture<T> post(String path, HttpEntity<?> entity, Class<T> responseType) {
+        if (executor.getThreadPoolExecutor().isShutdown()) {
+            return failed(new IllegalStateException("PayFast client is shut down"));
+        }
+        try {
+            return CompletableFuture.supplyAsync(() -> execute(path, entity, responseType), executor);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            return failed(new IllegalStateException("PayFast call queue is full", e));
+        }
+    }
+
+    public CircuitBreaker.State circuitState() {
+        return circuitBreaker.getState();
+    }
+
+    private <T> T execute(String path, HttpEntity<?> entity, Class<T> responseType) {
+        RuntimeException lastError = null;
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            try {
+                rateLimiter.acquire();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted waiting for a PayFast rate permit", e);
+            }
+            if (!circuitBreaker.tryAcquire()) {
+                rejected.increment();
+                throw new IllegalStateException("PayFast circuit is open", lastError);
+            }
+
+            long started = System.nanoTime();
+            inFlight.incrementAndGet();
+            try {
+                T body = restTemplate.postForEntity(baseUrl + path, entity, responseType).getBody();
+                record(path, "success", started);
+                circuitBreaker.onSuccess();
+                return body;
+            } catch (HttpClientErrorException e) {
+                // PayFast answered; the request itself is wrong and retrying will not fix it
+                record(path, "client_error", started);
+                circuitBreaker.onSuccess();
+                throw e;
+            } catch (HttpServerErrorException e) {
+                // PayFast may have acted before failing; a retried submit could pay twice
+                record(path, "server_error", started);
+                circuitBreaker.onFailure();
+                throw e;
+            } catch (ResourceAccessException e) {
+                record(path, "io_error", started);
+                circuitBreaker.onFailure();
+                if (!neverSent(e)) {
+                    throw e;
+                }
+                lastError = e;
+            } catch (RuntimeException e) {
+                // Anything else (an unreadable body, an unknown status) still has to end a half-open trial
+                record(path, "error", started);
+                circuitBreaker.onFailure();
+                throw e;
+            } finally {
+                inFlight.decrementAndGet();
+            }
+
+            if (attempt < maxAttempts) {
+                retries.increment();
+                log.warn("PayFast {} attempt {} of {} failed: {}", path, attempt, maxAttempts, lastError.getMessage());
+                backoff(attempt);
+            }
+        }
+        throw lastError;
+    }
+
+    // Only a failed connect is certain not to have reached PayFast
+    private static boolean neverSent(ResourceAccessException e) {
+        Throwable cause = e.getCause();
+        return cause instanceof ConnectException || cause instanceof ConnectTimeoutException;
+    }
+
+    // Full jitter: a random sleep up to the capped exponential delay, so retries from the window spread out
+    private void backoff(int attempt) {
+        long ceiling = Math.min(backoffCapMillis, backoffBaseMillis << Math.min(attempt - 1, 20));
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(ceiling + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted between PayFast retries", e);
+        }
+    }
+
+    private void record(String path, String outcome, long startedNanos) {
+        Timer.builder(METRIC_PREFIX + ".latency")
+                .description("PayFast call latency per attempt")
+                .tag("path", path)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry)
+                .record(System.nanoTime() - startedNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private static <T> CompletableFuture<T> failed(Throwable error) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(error);
+        return future;
+    }
+}
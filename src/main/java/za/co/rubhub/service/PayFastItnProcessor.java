@@ -0,0 +1,221 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.model.Payment;
+import za.co.rubhub.model.PayFastItnInboxEntry;
+import za.co.rubhub.model.PayFastItnInboxEntry.InboxStatus;
+import za.co.rubhub.repositories.PayFastItnInboxRepository;
+import za.co.rubhub.repositories.PaymentRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Applies the PayFast ITN inbox to payments and bookings.
+ *
+ * Drains run on the payfastItnExecutor, started every second and whenever
+ * the receiver appends a row, with at most one per pool thread at a time.
+ * Each claims up to BATCH_SIZE inbox rows at a time, loads their payments
+ * with one query, applies every transition and marks the rows done in a single
+ * transaction. Transitions only move a payment forward, so a row applied
+ * twice, after a crash between commit and claim expiry, changes nothing the
+ * second time. If a batch fails, its rows are retried one by one so a single
+ * bad notification cannot hold back the others. A COMPLETE is applied only
+ * when its gross amount is present and matches the payment.
+ */
+@Slf4j
+@Component
+public class PayFastItnProcessor {
+
+    static final int BATCH_SIZE = 200;
+    static final int MAX_ATTEMPTS = 5;
+    private static final long CLAIM_TIMEOUT_MINUTES = 5;
+
+    private final PayFastItnInboxRepository inboxRepository;
+    private final PaymentRepository paymentRepository;
+    private final PaymentService paymentService;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolTaskExecutor executor;
+
+    // Drains queued or running right now; never more than the pool has threads
+    private final AtomicInteger draining = new AtomicInteger();
+
+    public PayFastItnProcessor(PayFastItnInboxRepository inboxRepository,
+                               PaymentRepository paymentRepository,
+                               PaymentService paymentService,
+                               TransactionTemplate transactionTemplate,
+                               @Qualifier("payfastItnExecutor") ThreadPoolTaskExecutor executor) {
+        this.inboxRepository = inboxRepository;
+        this.paymentRepository = paymentRepository;
+        this.paymentService = paymentService;
+        this.transactionTemplate = transactionTemplate;
+        this.executor = executor;
+    }
+
+    // Fills every idle worker; claims use SKIP LOCKED, so parallel drains never take the same row
+    @Scheduled(fixedDelay = 1000, initialDelay = 1000)
+    public void poll() {
+        for (int i = executor.getMaxPoolSize(); i > 0; i--) {
+            if (!submit()) {
+                return;
+            }
+        }
+    }
+
+    // Starts a drain now rather than at the next poll, unless every worker is already draining
+    public void wake() {
+        submit();
+    }
+
+    private boolean submit() {
+        if (draining.incrementAndGet() > executor.getMaxPoolSize()) {
+            draining.decrementAndGet();
+            return false;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    drain();
+                } catch (Exception e) {
+                    log.error("PayFast ITN processing failed: {}", e.getMessage(), e);
+                } finally {
+                    draining.decrementAndGet();
+                }
+            });
+            return true;
+        } catch (TaskRejectedException e) {
+            draining.decrementAndGet();
+            return false;
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            LocalDateTime now = LocalDateTime.now();
+            List<PayFastItnInboxEntry> batch = inboxRepository.claim(BATCH_SIZE, now,
+                    now.minusMinutes(CLAIM_TIMEOUT_MINUTES));
+            if (batch.isEmpty()) {
+                return;
+            }
+            process(batch);
+            if (batch.size() < BATCH_SIZE) {
+                return;
+            }
+        }
+    }
+
+    private void process(List<PayFastItnInboxEntry> batch) {
+        try {
+            transactionTemplate.execute(status -> apply(batch));
+            return;
+        } catch (RuntimeException e) {
+            if (batch.size() == 1) {
+                giveBack(batch.get(0), e);
+                return;
+            }
+            log.warn("PayFast ITN batch of {} failed, retrying one by one: {}", batch.size(), e.getMessage());
+        }
+        for (PayFastItnInboxEntry entry : batch) {
+            try {
+                transactionTemplate.execute(status -> apply(Collections.singletonList(entry)));
+            } catch (RuntimeException e) {
+                giveBack(entry, e);
+            }
+        }
+    }
+
+    private int apply(List<PayFastItnInboxEntry> entries) {
+        Set<String> transactionIds = entries.stream()
+                .map(PayFastItnInboxEntry::getMPaymentId)
+                .collect(Collectors.toSet());
+        // Held to commit, so a concurrent batch with a row for the same payment waits and then sees its new status
+        paymentRepository.lockByTransactionIdIn(transactionIds);
+        Map<String, Payment> payments = new HashMap<>();
+        for (Payment payment : paymentRepository.findByTransactionIdInWithBooking(transactionIds)) {
+            payments.put(payment.getTransactionId(), payment);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        int applied = 0;
+        for (PayFastItnInboxEntry entry : entries) {
+            entry.setProcessedAt(now);
+            entry.setFailureReason(null);
+            Payment payment = payments.get(entry.getMPaymentId());
+            if (payment == null) {
+                finish(entry, InboxStatus.IGNORED, "Unknown payment " + entry.getMPaymentId());
+                continue;
+            }
+            switch (entry.getPaymentStatus()) {
+                case "COMPLETE":
+                    // The receiver stores a missing or unreadable amount_gross as null; the raw value stays in the payload
+                    if (entry.getAmountGross() == null) {
+                        finish(entry, InboxStatus.FAILED, "Missing or unreadable amount_gross");
+                    } else if (payment.getAmount() == null
+                            || entry.getAmountGross().compareTo(payment.getAmount()) != 0) {
+                        finish(entry, InboxStatus.FAILED, "Amount " + entry.getAmountGross()
+                                + " does not match payment amount " + payment.getAmount());
+                    } else if (paymentService.markPaid(payment, entry.getPfPaymentId(), now)) {
+                        finish(entry, InboxStatus.APPLIED, null);
+                        applied++;
+                    } else {
+                        finish(entry, InboxStatus.IGNORED, "Payment already " + payment.getStatus());
+                    }
+                    break;
+                case "FAILED":
+                case "CANCELLED":
+                case "ABORTED":
+                    Payment.PaymentStatus outcome = "FAILED".equals(entry.getPaymentStatus())
+                            ? Payment.PaymentStatus.FAILED : Payment.PaymentStatus.CANCELLED;
+                    if (paymentService.markFailed(payment, outcome, "PayFast reported " + entry.getPaymentStatus(), now)) {
+                        finish(entry, InboxStatus.APPLIED, null);
+                        applied++;
+                    } else {
+                        finish(entry, InboxStatus.IGNORED, "Payment already " + payment.getStatus());
+                    }
+                    break;
+                default:
+                    finish(entry, InboxStatus.IGNORED, "Unhandled payment status " + entry.getPaymentStatus());
+            }
+        }
+        // Same transaction as the payment changes, so a row is marked done exactly when its transition commits
+        inboxRepository.finish(entries);
+        return applied;
+    }
+
+    // Back to the inbox for another attempt, or failed for good once attempts run out
+    private void giveBack(PayFastItnInboxEntry entry, RuntimeException error) {
+        boolean exhausted = entry.getAttempts() != null && entry.getAttempts() >= MAX_ATTEMPTS;
+        entry.setStatus(exhausted ? InboxStatus.FAILED : InboxStatus.RECEIVED);
+        entry.setProcessedAt(exhausted ? LocalDateTime.now() : null);
+        entry.setFailureReason(truncate(error.getMessage()));
+        log.error("Could not apply PayFast ITN {} for payment {} (attempt {}): {}",
+                entry.getPfPaymentId(), entry.getMPaymentId(), entry.getAttempts(), error.getMessage());
+        try {
+            inboxRepository.finish(Collections.singletonList(entry));
+        } catch (RuntimeException e) {
+            // Left claimed; it is picked up again once the claim times out
+            log.warn("Could not release PayFast ITN {}: {}", entry.getId(), e.getMessage());
+        }
+    }
+
+    private static void finish(PayFastItnInboxEntry entry, InboxStatus status, String reason) {
+        entry.setStatus(status);
+        entry.setFailureReason(truncate(reason));
+    }
+
+    private static String truncate(String reason) {
+        return reason != null && reason.length() > 500 ? reason.substring(0, 500) : reason;
+    }
+}
@@ -0,0 +1,129 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.repositories.PayFastItnInboxRepository;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Front door for PayFast ITNs. A notification is checked against its
+ * signature, dropped if it was seen recently, and otherwise appended to the
+ * inbox table with one insert before PayFast gets its 200. Nothing else
+ * happens on the request thread: PayFastItnProcessor applies the inbox to
+ * payments and bookings in batches.
+ *
+ * PayFast resends an ITN until it gets a 200, and resends in bursts during
+ * incidents. The recent-key cache answers those without touching the
+ * database; the inbox's unique key catches any the cache has forgotten.
+ */
+@Slf4j
+@Component
+public class PayFastItnReceiver {
+
+    static final int MAX_RECENT = 50000;
+    private static final String METRIC_PREFIX = "rubhub.payfast.itn";
+
+    public enum Outcome {
+        ACCEPTED, DUPLICATE, REJECTED
+    }
+
+    private final PayFastService payFastService;
+    private final PayFastItnInboxRepository inboxRepository;
+    private final PayFastItnProcessor processor;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
+
+    // Access order gives LRU eviction; a forgotten key only costs one conflicting insert
+    private final Map<String, Boolean> recent = Collections.synchronizedMap(
+            new LinkedHashMap<String, Boolean>(1024, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                    return size() > MAX_RECENT;
+                }
+            });
+
+    public PayFastItnReceiver(PayFastService payFastService,
+                              PayFastItnInboxRepository inboxRepository,
+                              PayFastItnProcessor processor,
+                              ObjectMapper objectMapper,
+                              MeterRegistry meterRegistry) {
+        this.payFastService = payFastService;
+        this.inboxRepository = inboxRepository;
+        this.processor = processor;
+        this.objectMapper = objectMapper;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // Throws if the inbox cannot be written, so PayFast is told to retry
+    public Outcome receive(Map<String, String> fields) {
+        long started = System.nanoTime();
+        Outcome outcome = accept(fields);
+        Timer.builder(METRIC_PREFIX + ".receive")
+                .description("Time to verify and record a PayFast ITN")
+                .tag("outcome", outcome.name().toLowerCase())
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry)
+                .record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        return outcome;
+    }
+
+    private Outcome accept(Map<String, String> fields) {
+        String pfPaymentId = fields.get("pf_payment_id");
+        String mPaymentId = fields.get("m_payment_id");
+        String paymentStatus = fields.get("payment_status");
+        if (isBlank(pfPaymentId) || isBlank(mPaymentId) || isBlank(paymentStatus)) {
+            log.warn("Rejected PayFast ITN without payment ids or status");
+            return Outcome.REJECTED;
+        }
+        if (!payFastService.verifyItnSignature(fields)) {
+            log.warn("Rejected PayFast ITN {} for payment {}: bad signature", pfPaymentId, mPaymentId);
+            return Outcome.REJECTED;
+        }
+
+        String key = pfPaymentId + ":" + paymentStatus.toUpperCase();
+        if (recent.containsKey(key)) {
+            return Outcome.DUPLICATE;
+        }
+        boolean appended = inboxRepository.append(pfPaymentId, mPaymentId, paymentStatus.toUpperCase(),
+                amount(fields.get("amount_gross")), toJson(fields), LocalDateTime.now());
+        recent.put(key, Boolean.TRUE);
+        if (!appended) {
+            return Outcome.DUPLICATE;
+        }
+        processor.wake();
+        return Outcome.ACCEPTED;
+    }
+
+    private String toJson(Map<String, String> fields) {
+        try {
+            return objectMapper.writeValueAsString(fields);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialise PayFast ITN", e);
+        }
+    }
+
+    private static BigDecimal amount(String value) {
+        if (isBlank(value)) {
+            return null;
+        }
+        try {
+            return new BigDecimal(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
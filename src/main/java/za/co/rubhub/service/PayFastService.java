@@ -6,17 +6,19 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.MediaType;
-import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
-import org.springframework.web.client.RestTemplate;
 import org.apache.commons.codec.digest.DigestUtils;
-import org.springframework.boot.web.client.RestTemplateBuilder;
 
+import java.io.UnsupportedEncodingException;
 import java.math.BigDecimal;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.Optional;
+import java.util.concurrent.CompletionException;
 
 @Service
 @Slf4j
@@ -31,52 +33,41 @@ public class PayFastService {
     @Value("${payfast.passphrase}")
     private String passphrase;
     
-    @Value("${payfast.base.url}")
-    private String baseUrl;
+    private final PayFastClient payFastClient;
     
-    private final RestTemplate restTemplate;
-    
-    public PayFastService(RestTemplateBuilder restTemplateBuilder) {
-        this.restTemplate = restTemplateBuilder.build();
+    public PayFastService(PayFastClient payFastClient) {
+        this.payFastClient = payFastClient;
     }
     
+    // Blocks until PayFast answers; the call is pooled, rate limited and retried by PayFastClient
     public PayFastResponse processPayout(Therapist therapist, BigDecimal amount, String reference) {
+        // Prepare PayFast payout request
+        PayFastPayoutRequest request = new PayFastPayoutRequest();
+        request.setMerchantId(merchantId);
+        request.setMerchantKey(merchantKey);
+        request.setAmount(amount);
+        request.setBeneficiaryId(therapist.getPayfastBeneficiaryId());
+        request.setReference(reference);
+        
+        // Generate signature
+        String signature = generateSignature(request);
+        request.setSignature(signature);
+        
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        headers.set("merchant-id", merchantId);
+        headers.set("version", "v1");
+        
+        HttpEntity<PayFastPayoutRequest> entity = new HttpEntity<>(request, headers);
+        
         try {
-            // Prepare PayFast payout request
-            PayFastPayoutRequest request = new PayFastPayoutRequest();
-            request.setMerchantId(merchantId);
-            request.setMerchantKey(merchantKey);
-            request.setAmount(amount);
-            request.setBeneficiaryId(therapist.getPayfastBeneficiaryId());
-            request.setReference(reference);
-            
-            // Generate signature
-            String signature = generateSignature(request);
-            request.setSignature(signature);
-            
-            // Make API call to PayFast
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            headers.set("merchant-id", merchantId);
-            headers.set("version", "v1");
-            
-            HttpEntity<PayFastPayoutRequest> entity = new HttpEntity<>(request, headers);
-            
-            ResponseEntity<PayFastResponse> response = restTemplate.postForEntity(
-                baseUrl + "/payouts/submit", 
-                entity, 
-                PayFastResponse.class
-            );
-            
-            log.info("PayFast payout response for therapist {}: {}", 
-                    therapist.getId(), response.getBody());
-            
-            return response.getBody();
-            
-        } catch (Exception e) {
-            log.error("Error processing PayFast payout for therapist {}: {}", 
-                     therapist.getId(), e.getMessage(), e);
-            throw new RuntimeException("PayFast payout failed", e);
+            PayFastResponse response = payFastClient.post("/payouts/submit", entity, PayFastResponse.class).join();
+            log.info("PayFast payout response for therapist {}: {}", therapist.getId(), response);
+            return response;
+        } catch (CompletionException e) {
+            log.error("Error processing PayFast payout for therapist {}: {}",
+                    therapist.getId(), e.getCause().getMessage(), e.getCause());
+            throw new RuntimeException("PayFast payout failed", e.getCause());
         }
     }
     
@@ -89,19 +80,51 @@ public class PayFastService {
             parameters.put("beneficiary_id", request.getBeneficiaryId());
             parameters.put("reference", request.getReference());
             
-            String payload = parameters.entrySet().stream()
-                .map(entry -> entry.getKey() + "=" + entry.getValue())
-                .collect(Collectors.joining("&"));
-            
-            if (passphrase != null && !passphrase.isEmpty()) {
-                payload += "&passphrase=" + passphrase;
-            }
-            
-            return DigestUtils.md5Hex(payload).toLowerCase();
+            return signatureOf(parameters);
             
         } catch (Exception e) {
             log.error("Error generating PayFast signature: {}", e.getMessage(), e);
             throw new RuntimeException("Signature generation failed", e);
         }
     }
+    
+    /**
+     * Checks an ITN against its signature field. PayFast signs every posted
+     * field except the signature, in the order posted, with values URL-encoded.
+     */
+    public boolean verifyItnSignature(Map<String, String> fields) {
+        String signature = fields.get("signature");
+        if (signature == null || signature.isEmpty()) {
+            return false;
+        }
+        Map<String, String> parameters = new LinkedHashMap<>();
+        for (Map.Entry<String, String> field : fields.entrySet()) {
+            if (!"signature".equals(field.getKey())) {
+                parameters.put(field.getKey(), urlEncode(field.getValue() != null ? field.getValue().trim() : ""));
+            }
+        }
+        byte[] expected = signatureOf(parameters).getBytes(StandardCharsets.US_ASCII);
+        byte[] actual = signature.toLowerCase().getBytes(StandardCharsets.US_ASCII);
+        return MessageDigest.isEqual(expected, actual);
+    }
+    
+    private String signatureOf(Map<String, String> parameters) {
+        String payload = parameters.entrySet().stream()
+            .map(entry -> entry.getKey() + "=" + entry.getValue())
+            .collect(Collectors.joining("&"));
+        
+        if (passphrase != null && !passphrase.isEmpty()) {
+            payload += "&passphrase=" + passphrase;
+        }
+        
+        return DigestUtils.md5Hex(payload).toLowerCase();
+    }
+    
+    private static String urlEncode(String value) {
+        try {
+            return URLEncoder.encode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
\ No newline at end of file
@@ -1,15 +1,22 @@
 package za.co.rubhub.service;
 
+import za.co.rubhub.dto.LedgerEntry;
 import za.co.rubhub.model.*;
 import za.co.rubhub.model.Payment.PaymentStatus;
-import za.co.rubhub.model.TherapistPayout.PayoutStatus;
 import za.co.rubhub.repositories.*;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 import java.math.BigDecimal;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.temporal.TemporalAdjusters;
 import java.util.*;
 
 import javax.validation.Valid;
@@ -19,200 +26,52 @@ import javax.validation.Valid;
 @RequiredArgsConstructor
 public class PaymentService {
     private final BookingRepository bookingRepository;
+    private final PaymentRepository paymentRepository;
     private final TherapistRepository therapistRepository;
-    private final AccountRepository accountRepository;
-    private final TransactionRepository transactionRepository;
     private final EmailService emailService;
+    private final PayoutEngine payoutEngine;
+    private final LedgerService ledgerService;
+    private final HouseAccountShards houseAccountShards;
+    private final TransactionTemplate transactionTemplate;
     private static final BigDecimal RUBHUB_FEE_PERCENTAGE = new BigDecimal("0.12");
-    private static final String SUSPENSE_ACCOUNT_TYPE = "SUSPENSE";
-    private static final String THERAPIST_ACCOUNT_TYPE = "THERAPIST";
-    private static final String RUBHUB_ACCOUNT_TYPE = "RUBHUB";
+    // PayoutScheduler's weekly run
+    private static final DayOfWeek PAYOUT_DAY = DayOfWeek.FRIDAY;
+    private static final int OPENING_CREDIT_BATCH = 200;
  
-    @Transactional
+    /**
+     * Pays the window of the latest Friday payout run: the Monday-to-Sunday
+     * week that ended before it. Anchored to the run rather than to today, so
+     * the Monday safety check re-runs the week Friday paid instead of paying
+     * the week that has only just ended. See PayoutEngine for chunking and resume.
+     */
     public PayoutProcessingResult processTherapistPayouts() {
         log.info("Starting therapist payout processing...");
         
-        LocalDateTime startOfWeek = LocalDateTime.now().minusWeeks(1).with(java.time.DayOfWeek.MONDAY);
-        LocalDateTime endOfWeek = startOfWeek.with(java.time.DayOfWeek.SUNDAY).plusDays(1).minusSeconds(1);
-        
-        // Get completed bookings from last week that haven't been paid out
-        List<Booking> completedBookings = bookingRepository
-                .findCompletedBookingsForPayout(startOfWeek, endOfWeek);
-        
-        log.info("Found {} completed bookings for payout", completedBookings.size());
-        
-        PayoutProcessingResult result = new PayoutProcessingResult();
-        result.setTotalBookings(completedBookings.size());
-        result.setProcessingDate(LocalDateTime.now());
-        
-        // Group bookings by therapist
-        Map<String, List<Booking>> bookingsByTherapist = new HashMap<>();
-        for (Booking booking : completedBookings) {
-            // bookingsByTherapist
-                    // .computeIfAbsent(booking.getTherapist().getId(), k -> new ArrayList<>())
-                    // .add(booking);
-        }
-        
-        // Process payouts for each therapist
-        for (Map.Entry<String, List<Booking>> entry : bookingsByTherapist.entrySet()) {
-            String therapistId = entry.getKey();
-            List<Booking> therapistBookings = entry.getValue();
-            
-            try {
-                processTherapistPayout(therapistId, therapistBookings, result);
-            } catch (Exception e) {
-                log.error("Failed to process payout for therapist: {}", therapistId, e);
-                result.incrementFailedPayouts();
-            }
-        }
+        LocalDate payoutDay = LocalDate.now().with(TemporalAdjusters.previousOrSame(PAYOUT_DAY));
+        LocalDateTime startOfWeek = payoutDay.minusWeeks(1).with(DayOfWeek.MONDAY).atStartOfDay();
+        LocalDateTime endOfWeek = startOfWeek.plusWeeks(1);
         
+        PayoutProcessingResult result = payoutEngine.run(startOfWeek, endOfWeek);
         log.info("Payout processing completed: {}", result);
         return result;
     }
     
-    private void processTherapistPayout(String therapistId, List<Booking> bookings, 
-                                      PayoutProcessingResult result) {
-        // Get therapist account
-        Optional<Account> therapistAccountOpt = accountRepository
-                .findByUserIdAndAccountType(therapistId, THERAPIST_ACCOUNT_TYPE);
-        
-        if (therapistAccountOpt== null) {
-            log.warn("Therapist account not found for therapist: {}", therapistId);
-            result.incrementFailedPayouts();
-            return;
-        }
-        
-        Account therapistAccount = therapistAccountOpt.get();
-        Account suspenseAccount = getSuspenseAccount();
-        Account rubhubAccount = getRubhubAccount();
-        
-        BigDecimal totalTherapistAmount = BigDecimal.ZERO;
-        BigDecimal totalRubhubFees = BigDecimal.ZERO;
-        
-        // Process each booking
-        for (Booking booking : bookings) {
-            try {
-                TherapistPayout payout = new TherapistPayout(
-                );
-                
-                // Create payout record
-                payout.setPayoutDate(LocalDateTime.now());
-                // payout = payoutRepository.save(payout);
-                
-                // // Transfer from suspense to therapist account
-                // boolean transferSuccess = transferFunds(
-                //         suspenseAccount.getId(),
-                //         therapistAccount.getId(),
-                //         payout.getTherapistAmount(),
-                //         "Therapist Payout - Booking: " + booking.getId(),
-                //         payout.getId()
-                // );
-                
-                // if (transferSuccess) {
-                    // Transfer RubHub fee to RubHub account
-                    // transferFunds(
-                    //         suspenseAccount.getId(),
-                    //         rubhubAccount.getId(),
-                    //         payout.getRubhubFee(),
-                    //         "RubHub Fee - Booking: " + booking.getId(),
-                    //         payout.getId()
-                    // );
-                    
-                    // Mark booking as processed
-                    booking.setPayoutProcessed(true);
-                    bookingRepository.save(booking);
-                    
-                    // Update payout status
-                    payout.setPayoutStatus(PayoutStatus.PROCESSED);
-                    payout.setProcessedAt(LocalDateTime.now());
-                    // payoutRepository.save(payout);
-                    
-                    totalTherapistAmount = totalTherapistAmount.add(payout.getTherapistAmount());
-                    totalRubhubFees = totalRubhubFees.add(payout.getRubhubFee());
-                    
-                    result.incrementSuccessfulPayouts();
-                    result.addProcessedAmount(payout.getBookingAmount());
-                    
-                    log.info("Successfully processed payout for booking: {}", booking.getId());
-                // } else {
-                    // payout.setPayoutStatus("FAILED");
-                    // payout.setFailureReason("Fund transfer failed");
-                    // payoutRepository.save(payout);
-                    // result.incrementFailedPayouts();
-                // }
-                
-            } catch (Exception e) {
-                log.error("Failed to process booking payout: {}", booking.getId(), e);
-                result.incrementFailedPayouts();
-            }
-        }
-        
-        // Update result with therapist summary
-        result.addTherapistSummary(therapistId, bookings.size(), totalTherapistAmount, totalRubhubFees);
+    // Finishes payout runs a restart interrupted or that left therapists unpaid
+    public List<PayoutProcessingResult> resumeUnfinishedPayouts() {
+        return payoutEngine.resumeUnfinished();
     }
     
-    private boolean transferFunds(Long fromAccountId, Long toAccountId, 
+    // Moves money between two accounts through the ledger; false if it could not be posted
+    public boolean transferFunds(Long fromAccountId, Long toAccountId, 
                                  BigDecimal amount, String description, String reference) {
         try {
-            // Get accounts
-            Optional<Account> fromAccountOpt = accountRepository.findById(fromAccountId);
-            Optional<Account> toAccountOpt = accountRepository.findById(toAccountId);
-            
-            // if (fromAccountOpt.empty() || toAccountOpt.empty()) {
-            //     log.error("Account not found for transfer: from={}, to={}", fromAccountId, toAccountId);
-            //     return false;
-            // }
-            
-            Account fromAccount = fromAccountOpt.get();
-            Account toAccount = toAccountOpt.get();
-            
-            // Check sufficient balance
-            if (fromAccount.getBalance().compareTo(amount) < 0) {
-                log.error("Insufficient balance in account: {}", fromAccountId);
-                return false;
-            }
-            
-            // Update balances
-            fromAccount.setBalance(fromAccount.getBalance().subtract(amount));
-            toAccount.setBalance(toAccount.getBalance().add(amount));
-            
-            accountRepository.save(fromAccount);
-            accountRepository.save(toAccount);
-            
-            // Record transaction
-            Transaction transaction = new Transaction();
-            // transaction.setFromAccountId(fromAccountId);
-            // transaction.setToAccountId(toAccountId);
-            // transaction.setAmount(amount);
-            // transaction.setTransactionType("TRANSFER");
-            // transaction.setStatus("SUCCESS");
-            transaction.setReference(reference);
-            transaction.setTransactionDate(LocalDateTime.now());
-            transaction.setDescription(description);
-            
-            transactionRepository.save(transaction);
-            
+            ledgerService.transfer(fromAccountId, toAccountId, amount, description, reference);
             return true;
-            
-        } catch (Exception e) {
+        } catch (RuntimeException e) {
             log.error("Fund transfer failed: {}", e.getMessage(), e);
             return false;
         }
     }
-    
-    private Account getSuspenseAccount() {
-        return accountRepository.findByAccountType(SUSPENSE_ACCOUNT_TYPE)
-                .stream()
-                .findFirst()
-                .orElseThrow(() -> new RuntimeException("Suspense account not found"));
-    }
-    
-    private Account getRubhubAccount() {
-        return accountRepository.findByAccountType(RUBHUB_ACCOUNT_TYPE)
-                .stream()
-                .findFirst()
-                .orElseThrow(() -> new RuntimeException("RubHub account not found"));
-    }
 
     public Optional<Payment> findById(String id) {
         // TODO Auto-generated method stub
@@ -249,14 +108,118 @@ public class PaymentService {
         throw new UnsupportedOperationException("Unimplemented method 'save'");
     }
 
-    public Payment processPaymentSuccess(String transactionId, String providerTransactionId) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException("Unimplemented method 'processPaymentSuccess'");
+    @Transactional
+    public Payment processPaymentFailure(String transactionId, String errorMessage) {
+        Payment payment = paymentRepository.findByTransactionId(transactionId)
+                .orElseThrow(() -> new RuntimeException("Payment not found: " + transactionId));
+        markFailed(payment, PaymentStatus.FAILED, errorMessage, LocalDateTime.now());
+        return payment;
     }
 
-    public Payment processPaymentFailure(String transactionId, String errorMessage) {
-        // TODO Auto-generated method stub
-        throw new UnsupportedOperationException("Unimplemented method 'processPaymentFailure'");
+    // Completes a payment and its booking and posts it to the ledger in the caller's transaction; false if it
+    // was already completed or refunded, so repeats are no-ops. The caller must hold the payment's row lock,
+    // and the journal line id is the payment's, so even a second post would be refused
+    public boolean markPaid(Payment payment, String providerTransactionId, LocalDateTime at) {
+        PaymentStatus status = payment.getStatus();
+        if (status == PaymentStatus.COMPLETED || status == PaymentStatus.REFUNDED
+                || status == PaymentStatus.PARTIALLY_REFUNDED) {
+            return false;
+        }
+        payment.setStatus(PaymentStatus.COMPLETED);
+        if (providerTransactionId != null) {
+            payment.setProviderTransactionId(providerTransactionId);
+        }
+        payment.setPaymentDate(at);
+        payment.setProcessedDate(at);
+        Booking booking = payment.getBooking();
+        if (booking != null && !"PAID".equalsIgnoreCase(booking.getPaymentStatus())) {
+            booking.setPaymentStatus("PAID");
+            booking.setUpdatedAt(at);
+        }
+        postPayment(payment, booking);
+        return true;
+    }
+
+    /**
+     * Opening posting for payments completed before markPaid posted to the
+     * ledger: credits SUSPENSE for each one whose booking has not been paid
+     * out, so the payout run can debit it. Runs on every startup and finds
+     * nothing once done; the payment's journal line id refuses a credit that
+     * another instance posted first, which only rolls back that batch.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void postMissingPaymentCredits() {
+        List<String> transactionIds;
+        try {
+            transactionIds = paymentRepository.findTransactionIdsWithoutLedgerCredit(PaymentStatus.COMPLETED);
+        } catch (RuntimeException e) {
+            log.error("Could not look for payments missing a SUSPENSE credit: {}", e.getMessage(), e);
+            return;
+        }
+        int posted = 0;
+        for (int from = 0; from < transactionIds.size(); from += OPENING_CREDIT_BATCH) {
+            List<String> batch = transactionIds.subList(from, Math.min(from + OPENING_CREDIT_BATCH, transactionIds.size()));
+            try {
+                posted += transactionTemplate.execute(status -> {
+                    paymentRepository.lockByTransactionIdIn(batch);
+                    int count = 0;
+                    for (Payment payment : paymentRepository.findByTransactionIdInWithBooking(batch)) {
+                        if (payment.getStatus() == PaymentStatus.COMPLETED) {
+                            postPayment(payment, payment.getBooking());
+                            count++;
+                        }
+                    }
+                    return count;
+                });
+            } catch (DataIntegrityViolationException e) {
+                log.info("SUSPENSE credits for a batch of {} payments were posted concurrently", batch.size());
+            } catch (RuntimeException e) {
+                log.error("Could not post SUSPENSE credits for {} payments: {}", batch.size(), e.getMessage(), e);
+            }
+        }
+        if (posted > 0) {
+            log.info("Posted opening SUSPENSE credits for {} completed payments", posted);
+        }
+    }
+
+    // The gross moves from the PayFast account into SUSPENSE, where the payout run takes the therapist's share and the fee
+    private void postPayment(Payment payment, Booking booking) {
+        BigDecimal amount = payment.getAmount();
+        if (amount == null || amount.signum() <= 0) {
+            return;
+        }
+        Long bookingId = booking != null ? booking.getId() : null;
+        // The shard the payout run debits for this therapist, so payments and payouts mostly meet on one row
+        long shardKey = booking != null && booking.getTherapist() != null
+                ? booking.getTherapist().getId() : payment.getId();
+        ledgerService.post(Collections.singletonList(new LedgerEntry(
+                ledgerService.houseAccountId(LedgerService.PAYFAST_ACCOUNT_TYPE),
+                houseAccountShards.shardFor(LedgerService.SUSPENSE_ACCOUNT_TYPE, shardKey),
+                amount, Transaction.TransactionType.PAYMENT, "Customer Payment - Booking: " + bookingId,
+                paymentReference(payment), bookingId, paymentReference(payment))));
+    }
+
+    static String paymentReference(Payment payment) {
+        return "PAYMENT-" + payment.getTransactionId();
+    }
+
+    // Fails or cancels a payment that has not settled yet; a late failure never undoes a completed payment
+    public boolean markFailed(Payment payment, PaymentStatus outcome, String reason, LocalDateTime at) {
+        PaymentStatus status = payment.getStatus();
+        if (status != null && status != PaymentStatus.PENDING && status != PaymentStatus.PROCESSING) {
+            return false;
+        }
+        payment.setStatus(outcome);
+        payment.setProcessedDate(at);
+        if (reason != null) {
+            payment.setNotes(reason);
+        }
+        Booking booking = payment.getBooking();
+        if (booking != null && "PENDING".equalsIgnoreCase(booking.getPaymentStatus())) {
+            booking.setPaymentStatus("FAILED");
+            booking.setUpdatedAt(at);
+        }
+        return true;
     }
 
     public List<Payment> findPaymentsForPayout() {
@@ -0,0 +1,334 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.dto.LedgerEntry;
+import za.co.rubhub.model.Booking;
+import za.co.rubhub.model.BookingStatus;
+import za.co.rubhub.model.Payment;
+import za.co.rubhub.model.PayoutRun;
+import za.co.rubhub.model.PayoutRunPartition;
+import za.co.rubhub.model.Transaction;
+import za.co.rubhub.repositories.BookingRepository;
+import za.co.rubhub.repositories.PayoutRunPartitionRepository;
+import za.co.rubhub.repositories.PayoutRunRepository;
+import za.co.rubhub.repositories.TherapistPayoutBatchRepository;
+import za.co.rubhub.repositories.projection.PayoutBookingRow;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Pays therapists for a payout window in parallel, one therapist per partition.
+ *
+ * Each partition walks its therapist's unpaid bookings in chunks. A chunk
+ * inserts its therapist_payouts rows, flags its bookings as paid, moves the
+ * partition checkpoint and posts its ledger lines in one transaction, so a
+ * crash loses at most the chunk in flight. Paid bookings drop out of the
+ * chunk query, which is what makes a rerun of the same window resume rather
+ * than repeat: partitions already done have nothing left to find.
+ *
+ * The ledger lines take each booking's money out of SUSPENSE, which
+ * PaymentService.markPaid filled when the customer paid, so only bookings
+ * with a completed payment are picked up. A chunk SUSPENSE cannot cover
+ * fails as a whole and leaves its bookings unpaid.
+ */
+@Slf4j
+@Component
+public class PayoutEngine {
+
+    static final int CHUNK_SIZE = 500;
+    private static final int MAX_REASON_LENGTH = 500;
+    private static final List<PayoutRun.RunStatus> UNFINISHED =
+            Arrays.asList(PayoutRun.RunStatus.RUNNING, PayoutRun.RunStatus.FAILED);
+
+    private final BookingRepository bookingRepository;
+    private final PayoutRunRepository payoutRunRepository;
+    private final PayoutRunPartitionRepository partitionRepository;
+    private final TherapistPayoutBatchRepository payoutBatchRepository;
+    private final LedgerService ledgerService;
+    private final HouseAccountShards houseAccountShards;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolTaskExecutor executor;
+
+    // One run at a time per instance; across instances the guarded markBookingsAsPaid rolls a contested chunk back
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public PayoutEngine(BookingRepository bookingRepository,
+                        PayoutRunRepository payoutRunRepository,
+                        PayoutRunPartitionRepository partitionRepository,
+                        TherapistPayoutBatchRepository payoutBatchRepository,
+                        LedgerService ledgerService,
+                        HouseAccountShards houseAccountShards,
+                        TransactionTemplate transactionTemplate,
+                        @Qualifier("payoutExecutor") ThreadPoolTaskExecutor executor) {
+        this.bookingRepository = bookingRepository;
+        this.payoutRunRepository = payoutRunRepository;
+        this.partitionRepository = partitionRepository;
+        this.payoutBatchRepository = payoutBatchRepository;
+        this.ledgerService = ledgerService;
+        this.houseAccountShards = houseAccountShards;
+        this.transactionTemplate = transactionTemplate;
+        this.executor = executor;
+    }
+
+    // Pays every unpaid completed booking in [start, end), reopening the window's run if it exists
+    public PayoutProcessingResult run(LocalDateTime start, LocalDateTime end) {
+        if (!running.compareAndSet(false, true)) {
+            throw new IllegalStateException("A payout run is already in progress");
+        }
+        try {
+            PayoutRun run = payoutRunRepository.findByPeriodStartAndPeriodEnd(start, end)
+                    .orElseGet(() -> new PayoutRun(start, end));
+            return execute(run);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // Finishes runs that were interrupted or left partitions failed
+    public List<PayoutProcessingResult> resumeUnfinished() {
+        List<PayoutProcessingResult> results = new ArrayList<>();
+        if (!running.compareAndSet(false, true)) {
+            return results;
+        }
+        try {
+            for (PayoutRun.RunStatus status : UNFINISHED) {
+                for (PayoutRun run : payoutRunRepository.findByStatus(status)) {
+                    log.info("Resuming payout run {} for {} to {}", run.getId(), run.getPeriodStart(), run.getPeriodEnd());
+                    results.add(execute(run));
+                }
+            }
+        } finally {
+            running.set(false);
+        }
+        return results;
+    }
+
+    private PayoutProcessingResult execute(PayoutRun run) {
+        long began = System.nanoTime();
+        run.setStatus(PayoutRun.RunStatus.RUNNING);
+        run.setStartedAt(LocalDateTime.now());
+        run.setFinishedAt(null);
+        run.setAttempts(run.getAttempts() != null ? run.getAttempts() + 1 : 1);
+        PayoutRun started = payoutRunRepository.save(run);
+
+        List<PayoutRunPartition> partitions = transactionTemplate.execute(status -> plan(started));
+        log.info("Payout run {}: {} therapists to pay", started.getId(), partitions.size());
+
+        List<CompletableFuture<PartitionOutcome>> outcomes = new ArrayList<>(partitions.size());
+        for (PayoutRunPartition partition : partitions) {
+            outcomes.add(CompletableFuture.supplyAsync(() -> processPartition(started, partition), executor));
+        }
+
+        PayoutProcessingResult result = new PayoutProcessingResult();
+        result.setProcessingDate(LocalDateTime.now());
+        int failed = 0;
+        for (CompletableFuture<PartitionOutcome> outcome : outcomes) {
+            PartitionOutcome partitionOutcome = outcome.join();
+            partitionOutcome.addTo(result);
+            if (partitionOutcome.failed) {
+                failed++;
+            }
+        }
+
+        started.setStatus(failed == 0 ? PayoutRun.RunStatus.COMPLETED : PayoutRun.RunStatus.FAILED);
+        started.setFinishedAt(LocalDateTime.now());
+        payoutRunRepository.save(started);
+        log.info("Payout run {} finished in {} s: {} bookings paid, {} of {} therapists failed",
+                started.getId(), Duration.ofNanos(System.nanoTime() - began).getSeconds(),
+                result.getSuccessfulPayouts(), failed, partitions.size());
+        return result;
+    }
+
+    // One partition per therapist still owed money in the window; partitions with nothing left are done
+    private List<PayoutRunPartition> plan(PayoutRun run) {
+        Set<Long> due = new HashSet<>(bookingRepository.findTherapistIdsDueForPayout(
+                BookingStatus.COMPLETED, Payment.PaymentStatus.COMPLETED, run.getPeriodStart(), run.getPeriodEnd()));
+        Map<Long, PayoutRunPartition> existing = new HashMap<>();
+        for (PayoutRunPartition partition : partitionRepository.findByRunId(run.getId())) {
+            existing.put(partition.getTherapistId(), partition);
+        }
+
+        List<PayoutRunPartition> changed = new ArrayList<>();
+        List<PayoutRunPartition> toRun = new ArrayList<>(due.size());
+        for (Long therapistId : due) {
+            PayoutRunPartition partition = existing.get(therapistId);
+            if (partition == null) {
+                partition = new PayoutRunPartition(run.getId(), therapistId);
+            }
+            partition.setStatus(PayoutRunPartition.PartitionStatus.PENDING);
+            partition.setFailureReason(null);
+            changed.add(partition);
+            toRun.add(partition);
+        }
+        for (PayoutRunPartition partition : existing.values()) {
+            if (!due.contains(partition.getTherapistId())
+                    && partition.getStatus() != PayoutRunPartition.PartitionStatus.DONE) {
+                partition.setStatus(PayoutRunPartition.PartitionStatus.DONE);
+                partition.setFailureReason(null);
+                changed.add(partition);
+            }
+        }
+        partitionRepository.saveAll(changed);
+        return toRun;
+    }
+
+    // Never throws; a failed partition is recorded and picked up by the next resume
+    private PartitionOutcome processPartition(PayoutRun run, PayoutRunPartition partition) {
+        PartitionOutcome outcome = new PartitionOutcome(partition.getTherapistId());
+        try {
+            // Parallel partitions write to different house account shards instead of queueing on one row
+            Long therapistId = partition.getTherapistId();
+            Accounts accounts = new Accounts(ledgerService.therapistAccountId(therapistId),
+                    houseAccountShards.shardFor(LedgerService.SUSPENSE_ACCOUNT_TYPE, therapistId),
+                    houseAccountShards.shardFor(LedgerService.RUBHUB_ACCOUNT_TYPE, therapistId));
+            long afterId = 0L;
+            while (true) {
+                long cursor = afterId;
+                Chunk chunk = transactionTemplate.execute(status -> commitChunk(run, partition, accounts, cursor));
+                if (chunk == null) {
+                    break;
+                }
+                outcome.add(chunk);
+                afterId = chunk.lastBookingId;
+                if (chunk.bookings < CHUNK_SIZE) {
+                    break;
+                }
+            }
+            updateStatus(partition, PayoutRunPartition.PartitionStatus.DONE, null);
+        } catch (RuntimeException e) {
+            log.error("Payout failed for therapist {} in run {} after {} bookings",
+                    partition.getTherapistId(), run.getId(), outcome.bookings, e);
+            outcome.failed = true;
+            String reason = String.valueOf(e.getMessage());
+            try {
+                updateStatus(partition, PayoutRunPartition.PartitionStatus.FAILED,
+                        reason.length() > MAX_REASON_LENGTH ? reason.substring(0, MAX_REASON_LENGTH) : reason);
+            } catch (RuntimeException statusError) {
+                log.warn("Could not record failed payout partition {}", partition.getId(), statusError);
+            }
+        }
+        return outcome;
+    }
+
+    // Runs inside a transaction: payout rows, paid flags, checkpoint and ledger lines commit together or not at all
+    private Chunk commitChunk(PayoutRun run, PayoutRunPartition partition, Accounts accounts, long afterId) {
+        List<PayoutBookingRow> rows = bookingRepository.findPayoutChunk(partition.getTherapistId(),
+                BookingStatus.COMPLETED, Payment.PaymentStatus.COMPLETED, run.getPeriodStart(), run.getPeriodEnd(), afterId,
+                PageRequest.of(0, CHUNK_SIZE));
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        Chunk chunk = new Chunk();
+        List<Long> bookingIds = new ArrayList<>(rows.size());
+        List<LedgerEntry> entries = new ArrayList<>(rows.size() * 2);
+        String reference = "PAYOUT-" + run.getId();
+        for (PayoutBookingRow row : rows) {
+            BigDecimal amount = row.getTotalAmount() != null ? row.getTotalAmount() : BigDecimal.ZERO;
+            BigDecimal fee = Booking.rubhubFeeOn(amount);
+            bookingIds.add(row.getId());
+            if (amount.subtract(fee).signum() > 0) {
+                entries.add(new LedgerEntry(accounts.suspense, accounts.therapist, amount.subtract(fee),
+                        Transaction.TransactionType.PAYOUT, "Therapist Payout - Booking: " + row.getId(),
+                        reference, row.getId()));
+            }
+            if (fee.signum() > 0) {
+                entries.add(new LedgerEntry(accounts.suspense, accounts.rubhub, fee,
+                        Transaction.TransactionType.SERVICE_FEE, "RubHub Fee - Booking: " + row.getId(),
+                        reference, row.getId()));
+            }
+            chunk.bookingAmount = chunk.bookingAmount.add(amount);
+            chunk.rubhubFees = chunk.rubhubFees.add(fee);
+            chunk.therapistAmount = chunk.therapistAmount.add(amount.subtract(fee));
+            chunk.lastBookingId = row.getId();
+        }
+        chunk.bookings = rows.size();
+
+        LocalDateTime now = LocalDateTime.now();
+        payoutBatchRepository.insertProcessed(run.getId(), rows, now);
+        int paid = bookingRepository.markBookingsAsPaid(bookingIds);
+        if (paid != bookingIds.size()) {
+            throw new IllegalStateException("Payout chunk for therapist " + partition.getTherapistId()
+                    + " lost " + (bookingIds.size() - paid) + " bookings to another run");
+        }
+        partitionRepository.recordChunk(partition.getId(), chunk.lastBookingId, chunk.bookings,
+                chunk.bookingAmount, chunk.therapistAmount, chunk.rubhubFees, now);
+        // One balance update per account for the whole chunk, taken last to keep the shard row locks short
+        ledgerService.post(entries);
+        return chunk;
+    }
+
+    private void updateStatus(PayoutRunPartition partition, PayoutRunPartition.PartitionStatus status, String reason) {
+        transactionTemplate.execute(tx ->
+                partitionRepository.updateStatus(partition.getId(), status, reason, LocalDateTime.now()));
+    }
+
+    private static final class Accounts {
+        private final Long therapist;
+        private final Long suspense;
+        private final Long rubhub;
+
+        Accounts(Long therapist, Long suspense, Long rubhub) {
+            this.therapist = therapist;
+            this.suspense = suspense;
+            this.rubhub = rubhub;
+        }
+    }
+
+    private static final class Chunk {
+        private int bookings;
+        private long lastBookingId;
+        private BigDecimal bookingAmount = BigDecimal.ZERO;
+        private BigDecimal therapistAmount = BigDecimal.ZERO;
+        private BigDecimal rubhubFees = BigDecimal.ZERO;
+    }
+
+    // What this pass did for one therapist; merged into the result on the calling thread
+    private static final class PartitionOutcome {
+        private final Long therapistId;
+        private int bookings;
+        private BigDecimal bookingAmount = BigDecimal.ZERO;
+        private BigDecimal therapistAmount = BigDecimal.ZERO;
+        private BigDecimal rubhubFees = BigDecimal.ZERO;
+        private boolean failed;
+
+        PartitionOutcome(Long therapistId) {
+            this.therapistId = therapistId;
+        }
+
+        void add(Chunk chunk) {
+            bookings += chunk.bookings;
+            bookingAmount = bookingAmount.add(chunk.bookingAmount);
+            therapistAmount = therapistAmount.add(chunk.therapistAmount);
+            rubhubFees = rubhubFees.add(chunk.rubhubFees);
+        }
+
+        void addTo(PayoutProcessingResult result) {
+            result.setTotalBookings(result.getTotalBookings() + bookings);
+            result.setSuccessfulPayouts(result.getSuccessfulPayouts() + bookings);
+            if (bookings > 0) {
+                result.addProcessedAmount(bookingAmount);
+                result.addTherapistSummary(String.valueOf(therapistId), bookings, therapistAmount, rubhubFees);
+            }
+            if (failed) {
+                result.incrementFailedPayouts();
+            }
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.dto.SecurityAlertView;
+import za.co.rubhub.model.SecurityAlert;
+import za.co.rubhub.repositories.SecurityAlertRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Materialised view of the alerts the ops console shows: everything active,
+ * in progress or still flashing.
+ *
+ * SecurityService applies every status change as it is saved, so reads never
+ * touch the database. Consoles connect over server-sent events, receive one
+ * snapshot and then a delta per change, each stamped with the board version.
+ * A console that falls behind has its queued deltas replaced by a fresh
+ * snapshot instead of being disconnected. A reconcile against the database
+ * every minute picks up writes made by other instances.
+ */
+@Slf4j
+@Component
+public class SecurityAlertBoard {
+
+    static final int BUFFER_CAPACITY = 256;
+    private static final long EMITTER_TIMEOUT_MILLIS = 30 * 60 * 1000L;
+    private static final List<SecurityAlert.AlertStatus> OPEN_STATUSES =
+            Arrays.asList(SecurityAlert.AlertStatus.ACTIVE, SecurityAlert.AlertStatus.IN_PROGRESS);
+
+    // Highest priority first, oldest first within a priority
+    private static final Comparator<SecurityAlertView> CONSOLE_ORDER = Comparator
+            .comparing((SecurityAlertView view) -> view.getPriority() != null ? view.getPriority() : 0).reversed()
+            .thenComparing(SecurityAlertView::getTimestamp, Comparator.nullsLast(Comparator.naturalOrder()));
+
+    private final SecurityAlertRepository securityAlertRepository;
+    private final ThreadPoolTaskExecutor executor;
+
+    // Guarded by this
+    private final Map<Long, SecurityAlertView> alerts = new HashMap<>();
+    private long version;
+    // Alerts applied while a reconcile is reading the database; the reconcile leaves them alone
+    private Set<Long> touchedDuringReconcile;
+
+    private volatile Snapshot snapshot = new Snapshot(0L, Collections.emptyList());
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Object reconcileLock = new Object();
+
+    public SecurityAlertBoard(SecurityAlertRepository securityAlertRepository,
+                              @Qualifier("opsStreamExecutor") ThreadPoolTaskExecutor executor) {
+        this.securityAlertRepository = securityAlertRepository;
+        this.executor = executor;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelay = 60000, initialDelay = 60000)
+    public void reconcile() {
+        synchronized (reconcileLock) {
+            synchronized (this) {
+                touchedDuringReconcile = new HashSet<>();
+            }
+            Map<Long, SecurityAlertView> stored = new HashMap<>();
+            try {
+                for (SecurityAlert alert : securityAlertRepository.findBoardAlerts(OPEN_STATUSES)) {
+                    stored.put(alert.getId(), SecurityAlertView.from(alert));
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    touchedDuringReconcile = null;
+                }
+                throw e;
+            }
+
+            int changed = 0;
+            synchronized (this) {
+                Set<Long> ids = new HashSet<>(alerts.keySet());
+                ids.addAll(stored.keySet());
+                for (Long id : ids) {
+                    if (!touchedDuringReconcile.contains(id) && put(id, stored.get(id))) {
+                        changed++;
+                    }
+                }
+                touchedDuringReconcile = null;
+            }
+            log.info("Security alert board reconciled: {} alerts on board, {} changed", stored.size(), changed);
+        }
+    }
+
+    // Called with every saved alert; the alert joins, changes on or leaves the board
+    public void apply(SecurityAlert alert) {
+        if (alert == null || alert.getId() == null) {
+            return;
+        }
+        SecurityAlertView view = onBoard(alert) ? SecurityAlertView.from(alert) : null;
+        synchronized (this) {
+            if (touchedDuringReconcile != null) {
+                touchedDuringReconcile.add(alert.getId());
+            }
+            put(alert.getId(), view);
+        }
+    }
+
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    public List<SecurityAlertView> activeAlerts() {
+        List<SecurityAlertView> active = new ArrayList<>();
+        for (SecurityAlertView view : snapshot.alerts) {
+            if (view.getStatus() == SecurityAlert.AlertStatus.ACTIVE) {
+                active.add(view);
+            }
+        }
+        return active;
+    }
+
+    public List<SecurityAlertView> flashingAlerts() {
+        List<SecurityAlertView> flashing = new ArrayList<>();
+        for (SecurityAlertView view : snapshot.alerts) {
+            if (Boolean.TRUE.equals(view.getIsFlashing())) {
+                flashing.add(view);
+            }
+        }
+        return flashing;
+    }
+
+    public SseEmitter subscribe() {
+        SseEmitter emitter = new SseEmitter(EMITTER_TIMEOUT_MILLIS);
+        Subscriber subscriber = new Subscriber(emitter);
+        emitter.onCompletion(() -> subscriber.closed = true);
+        emitter.onTimeout(() -> subscriber.closed = true);
+        emitter.onError(e -> subscriber.closed = true);
+        // Registered and seeded under the lock so no delta lands between the snapshot and the first live one
+        synchronized (this) {
+            subscribers.add(subscriber);
+            subscriber.buffer.offer(snapshot);
+        }
+        scheduleDrain(subscriber);
+        return emitter;
+    }
+
+    // Keeps idle consoles open through proxies and finds dead ones
+    @Scheduled(fixedRate = 25000, initialDelay = 25000)
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.heartbeatDue = true;
+            scheduleDrain(subscriber);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        for (Subscriber subscriber : subscribers) {
+            subscriber.emitter.complete();
+        }
+        subscribers.clear();
+    }
+
+    private static boolean onBoard(SecurityAlert alert) {
+        return OPEN_STATUSES.contains(alert.getStatus()) || Boolean.TRUE.equals(alert.getIsFlashing());
+    }
+
+    // Caller holds the lock; returns whether the board changed
+    private boolean put(Long alertId, SecurityAlertView view) {
+        SecurityAlertView current = alerts.get(alertId);
+        if (view == null ? current == null : sameState(current, view)) {
+            return false;
+        }
+        if (view == null) {
+            alerts.remove(alertId);
+        } else {
+            alerts.put(alertId, view);
+        }
+        version++;
+        List<SecurityAlertView> ordered = new ArrayList<>(alerts.values());
+        ordered.sort(CONSOLE_ORDER);
+        snapshot = new Snapshot(version, Collections.unmodifiableList(ordered));
+        publish(new Delta(version, alertId, view));
+        return true;
+    }
+
+    private static boolean sameState(SecurityAlertView current, SecurityAlertView view) {
+        return current != null
+                && current.getStatus() == view.getStatus()
+                && Objects.equals(current.getIsFlashing(), view.getIsFlashing())
+                && Objects.equals(current.getPriority(), view.getPriority())
+                && Objects.equals(current.getIncidentId(), view.getIncidentId())
+                && Objects.equals(current.getUpdatedAt(), view.getUpdatedAt())
+                // Adding an action only writes the collection table, so updated_at does not move
+                && actionCount(current) == actionCount(view);
+    }
+
+    private static int actionCount(SecurityAlertView view) {
+        return view.getActionsTaken() != null ? view.getActionsTaken().size() : -1;
+    }
+
+    // Caller holds the lock, so every console sees deltas in version order
+    private void publish(Delta delta) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.closed) {
+                subscribers.remove(subscriber);
+                continue;
+            }
+            if (!subscriber.buffer.offer(delta)) {
+                // The snapshot already includes this delta and supersedes everything queued
+                subscriber.buffer.clear();
+                subscriber.buffer.offer(snapshot);
+            }
+            scheduleDrain(subscriber);
+        }
+    }
+
+    private void scheduleDrain(Subscriber subscriber) {
+        if (subscriber.closed || !subscriber.draining.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            executor.execute(() -> drain(subscriber));
+        } catch (TaskRejectedException e) {
+            subscriber.draining.set(false);
+            log.warn("Ops stream executor is saturated; closing a console stream");
+            close(subscriber);
+        }
+    }
+
+    private void drain(Subscriber subscriber) {
+        try {
+            if (subscriber.heartbeatDue) {
+                subscriber.heartbeatDue = false;
+                subscriber.emitter.send(SseEmitter.event().comment("keep-alive"));
+            }
+            Object next;
+            while (!subscriber.closed && (next = subscriber.buffer.poll()) != null) {
+                if (next instanceof Snapshot) {
+                    Snapshot current = (Snapshot) next;
+                    subscriber.emitter.send(SseEmitter.event()
+                            .id(String.valueOf(current.version)).name("snapshot").data(current));
+                } else {
+                    Delta delta = (Delta) next;
+                    subscriber.emitter.send(SseEmitter.event()
+                            .id(String.valueOf(delta.version)).name("alert").data(delta));
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            close(subscriber);
+        } finally {
+            subscriber.draining.set(false);
+        }
+        // A publish may have landed after the last poll but before the flag was cleared
+        if (!subscriber.closed && (!subscriber.buffer.isEmpty() || subscriber.heartbeatDue)) {
+            scheduleDrain(subscriber);
+        }
+    }
+
+    private void close(Subscriber subscriber) {
+        subscriber.closed = true;
+        subscribers.remove(subscriber);
+        subscriber.buffer.clear();
+        subscriber.emitter.complete();
+    }
+
+    // Every alert on the board at a version, in console order
+    public static final class Snapshot {
+        private final long version;
+        private final List<SecurityAlertView> alerts;
+
+        Snapshot(long version, List<SecurityAlertView> alerts) {
+            this.version = version;
+            this.alerts = alerts;
+        }
+
+        public long getVersion() { return version; }
+        public List<SecurityAlertView> getAlerts() { return alerts; }
+    }
+
+    // One alert changed; a null alert means it left the board
+    public static final class Delta {
+        private final long version;
+        private final Long alertId;
+        private final SecurityAlertView alert;
+
+        Delta(long version, Long alertId, SecurityAlertView alert) {
+            this.version = version;
+            this.alertId = alertId;
+            this.alert = alert;
+        }
+
+        public long getVersion() { return version; }
+        public Long getAlertId() { return alertId; }
+        public SecurityAlertView getAlert() { return alert; }
+        public boolean isRemoved() { return alert == null; }
+    }
+
+    private static final class Subscriber {
+        private final SseEmitter emitter;
+        private final BlockingQueue<Object> buffer = new ArrayBlockingQueue<>(BUFFER_CAPACITY);
+        // Only one drain per console runs at a time, so sends are never interleaved
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean heartbeatDue;
+        private volatile boolean closed;
+
+        Subscriber(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.dto.SecurityAlertEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * In-process fan-out of security alert events to their handlers.
+ *
+ * Events run on one of three lanes chosen by alert priority, each with its
+ * own executor bean from SchedulerConfig and bounded queue, so a panic alert never waits behind a
+ * backlog of duration overruns. A full panic lane runs the event on the
+ * publishing thread rather than dropping it; a full lower lane drops the
+ * event and leaves it to the handler's own sweep to pick up.
+ */
+@Slf4j
+@Component
+public class SecurityAlertBus {
+
+    public enum Lane {
+        PANIC(5),
+        URGENT(4),
+        ROUTINE(Integer.MIN_VALUE);
+
+        private final int minPriority;
+
+        Lane(int minPriority) {
+            this.minPriority = minPriority;
+        }
+
+        public static Lane forPriority(int priority) {
+            for (Lane lane : values()) {
+                if (priority >= lane.minPriority) {
+                    return lane;
+                }
+            }
+            return ROUTINE;
+        }
+    }
+
+    private final List<Consumer<SecurityAlertEvent>> handlers = new CopyOnWriteArrayList<>();
+    private final Map<Lane, ThreadPoolTaskExecutor> executors = new EnumMap<>(Lane.class);
+    private final Map<Lane, Timer> waitTimers = new EnumMap<>(Lane.class);
+    private final Map<Lane, Counter> rejections = new EnumMap<>(Lane.class);
+
+    public SecurityAlertBus(MeterRegistry meterRegistry,
+                            @Qualifier("alertPanicExecutor") ThreadPoolTaskExecutor panicExecutor,
+                            @Qualifier("alertUrgentExecutor") ThreadPoolTaskExecutor urgentExecutor,
+                            @Qualifier("alertRoutineExecutor") ThreadPoolTaskExecutor routineExecutor) {
+        executors.put(Lane.PANIC, panicExecutor);
+        executors.put(Lane.URGENT, urgentExecutor);
+        executors.put(Lane.ROUTINE, routineExecutor);
+        for (Lane lane : Lane.values()) {
+            ThreadPoolTaskExecutor executor = executors.get(lane);
+            String tag = lane.name().toLowerCase();
+            Gauge.builder("rubhub.security.alerts.lane.queued", executor,
+                            e -> e.getThreadPoolExecutor().getQueue().size())
+                    .description("Alert events waiting for a lane thread")
+                    .tag("lane", tag)
+                    .register(meterRegistry);
+            Gauge.builder("rubhub.security.alerts.lane.active", executor, ThreadPoolTaskExecutor::getActiveCount)
+                    .tag("lane", tag)
+                    .register(meterRegistry);
+            waitTimers.put(lane, Timer.builder("rubhub.security.alerts.lane.wait")
+                    .description("Time from publish until a lane thread picks the event up")
+                    .tag("lane", tag)
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .register(meterRegistry));
+            rejections.put(lane, Counter.builder("rubhub.security.alerts.lane.rejected")
+                    .tag("lane", tag)
+                    .register(meterRegistry));
+        }
+    }
+
+    public void subscribe(Consumer<SecurityAlertEvent> handler) {
+        handlers.add(handler);
+    }
+
+    // Never blocks on a lower lane; returns false when the event was dropped
+    public boolean publish(SecurityAlertEvent event) {
+        Lane lane = Lane.forPriority(event.getPriority());
+        long publishedAt = System.nanoTime();
+        Runnable task = () -> {
+            waitTimers.get(lane).record(System.nanoTime() - publishedAt, TimeUnit.NANOSECONDS);
+            dispatch(event);
+        };
+        try {
+            executors.get(lane).execute(task);
+            return true;
+        } catch (TaskRejectedException e) {
+            rejections.get(lane).increment();
+            if (lane == Lane.PANIC) {
+                log.warn("Panic alert lane is full; handling alert {} on the caller", event.getAlertId());
+                task.run();
+                return true;
+            }
+            log.warn("Security alert lane {} is full; dropped {} event for alert {}",
+                    lane, event.getKind(), event.getAlertId());
+            return false;
+        }
+    }
+
+    private void dispatch(SecurityAlertEvent event) {
+        // One failing handler must not keep the event from the others
+        for (Consumer<SecurityAlertEvent> handler : handlers) {
+            try {
+                handler.accept(event);
+            } catch (Exception e) {
+                log.error("Security alert handler failed for alert {}: {}", event.getAlertId(), e.getMessage(), e);
+            }
+        }
+    }
+}
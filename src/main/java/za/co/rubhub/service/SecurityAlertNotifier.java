@@ -0,0 +1,70 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.dto.SecurityAlertEvent;
+import za.co.rubhub.model.SecurityAlert;
+import za.co.rubhub.repositories.SecurityAlertRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Notifies emergency contacts for high-priority alerts off the request path.
+ *
+ * The alert's notified flag is claimed with a conditional UPDATE before
+ * anything is sent, so a redelivered event, a sweep and a manual trigger
+ * never notify twice. Only that UPDATE writes the flag; entity saves leave it
+ * alone.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class SecurityAlertNotifier {
+
+    static final int MIN_PRIORITY = 4;
+    // Younger alerts are most likely still queued on their lane
+    private static final long SWEEP_GRACE_SECONDS = 30;
+
+    private final SecurityAlertRepository securityAlertRepository;
+    private final SecurityAlertBus securityAlertBus;
+
+    @PostConstruct
+    public void register() {
+        securityAlertBus.subscribe(this::onEvent);
+    }
+
+    // Picks up events dropped by a full lane, failed sends and alerts raised before a restart
+    @Scheduled(fixedDelay = 30000, initialDelay = 30000)
+    public void sweep() {
+        List<SecurityAlert> missed = securityAlertRepository.findUnnotifiedAlerts(
+                MIN_PRIORITY, LocalDateTime.now().minusSeconds(SWEEP_GRACE_SECONDS));
+        for (SecurityAlert alert : missed) {
+            securityAlertBus.publish(SecurityAlertEvent.of(SecurityAlertEvent.Kind.RAISED, alert));
+        }
+        if (!missed.isEmpty()) {
+            log.info("Re-published {} alerts with emergency contacts still to notify", missed.size());
+        }
+    }
+
+    // Returns false when another caller already notified for this alert
+    public boolean notifyEmergencyContacts(Long alertId) {
+        if (securityAlertRepository.claimEmergencyContactsNotification(alertId, LocalDateTime.now()) == 0) {
+            log.debug("Emergency contacts already notified for alert: {}", alertId);
+            return false;
+        }
+        // In a real implementation, this would message the user's emergency contacts; a send that can
+        // fail must give the claim back so the sweep retries it
+        log.info("Emergency contacts notified for alert: {}", alertId);
+        return true;
+    }
+
+    private void onEvent(SecurityAlertEvent event) {
+        if (event.getKind() == SecurityAlertEvent.Kind.RAISED && event.getPriority() >= MIN_PRIORITY) {
+            notifyEmergencyContacts(event.getAlertId());
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.model.SecurityAlert;
+import za.co.rubhub.model.SecurityMetrics;
+import za.co.rubhub.repositories.projection.SecurityAlertMetricsRow;
+import za.co.rubhub.util.QuantileSketch;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.TextStyle;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Running aggregates for one SecurityMetrics period, fed one alert row at a
+ * time. Memory depends on the number of cities and alert types, never on the
+ * number of alerts, so a year is as cheap to hold as a day.
+ */
+public class SecurityMetricsAccumulator {
+
+    private static final double SKETCH_ACCURACY = 0.01;
+
+    private final LocalDateTime start;
+    private final LocalDateTime end;
+
+    private int total;
+    private int active;
+    private int pendingSelfieChecks;
+    private int resolved;
+    private int falseAlarms;
+    private int sapsCalls;
+    private int securityCompanyCalls;
+    private int streams;
+    private int recordings;
+    private long recordingSeconds;
+    private int recordingsWithDuration;
+
+    private final QuantileSketch responseTimes = new QuantileSketch(SKETCH_ACCURACY);
+    private final QuantileSketch resolutionTimes = new QuantileSketch(SKETCH_ACCURACY);
+    private double responseMinutesTotal;
+    private double resolutionMinutesTotal;
+
+    private final Map<SecurityAlert.AlertType, Integer> byType = new EnumMap<>(SecurityAlert.AlertType.class);
+    private final Map<SecurityAlert.AlertType, double[]> responseByType = new EnumMap<>(SecurityAlert.AlertType.class);
+    private final Map<Integer, Integer> byPriority = new TreeMap<>();
+    private final Map<String, Integer> byCity = new TreeMap<>();
+    private final int[] byHour = new int[24];
+    private final int[] byDay = new int[7];
+
+    public SecurityMetricsAccumulator(LocalDateTime start, LocalDateTime end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public void accept(SecurityAlertMetricsRow row) {
+        total++;
+        SecurityAlert.AlertStatus status = row.getStatus();
+        if (status == SecurityAlert.AlertStatus.ACTIVE) {
+            active++;
+            if (row.getType() == SecurityAlert.AlertType.SELFIE_VERIFICATION_FAILED) {
+                pendingSelfieChecks++;
+            }
+        }
+        if (status == SecurityAlert.AlertStatus.RESOLVED) {
+            resolved++;
+        }
+        if (status == SecurityAlert.AlertStatus.FALSE_ALARM || Boolean.TRUE.equals(row.getIsFalseAlarm())) {
+            falseAlarms++;
+        }
+        if (Boolean.TRUE.equals(row.getSapsNotified())) {
+            sapsCalls++;
+        }
+        if (Boolean.TRUE.equals(row.getSecurityCompanyNotified())) {
+            securityCompanyCalls++;
+        }
+        if (Boolean.TRUE.equals(row.getStreamAvailable())) {
+            streams++;
+        }
+        if (row.getRecordingUrl() != null) {
+            recordings++;
+            if (row.getRecordingDuration() != null) {
+                recordingSeconds += row.getRecordingDuration();
+                recordingsWithDuration++;
+            }
+        }
+
+        LocalDateTime raisedAt = row.getTimestamp();
+        if (raisedAt != null) {
+            if (row.getAcknowledgedAt() != null) {
+                double minutes = minutesBetween(raisedAt, row.getAcknowledgedAt());
+                responseTimes.add(minutes);
+                responseMinutesTotal += minutes;
+                if (row.getType() != null) {
+                    double[] sumAndCount = responseByType.computeIfAbsent(row.getType(), t -> new double[2]);
+                    sumAndCount[0] += minutes;
+                    sumAndCount[1]++;
+                }
+            }
+            if (row.getResolvedAt() != null) {
+                double minutes = minutesBetween(raisedAt, row.getResolvedAt());
+                resolutionTimes.add(minutes);
+                resolutionMinutesTotal += minutes;
+            }
+            byHour[raisedAt.getHour()]++;
+            byDay[raisedAt.getDayOfWeek().getValue() - 1]++;
+        }
+
+        if (row.getType() != null) {
+            byType.merge(row.getType(), 1, Integer::sum);
+        }
+        byPriority.merge(row.getPriority() != null ? row.getPriority() : 1, 1, Integer::sum);
+        String city = row.getCity() != null && !row.getCity().trim().isEmpty() ? row.getCity().trim() : "Unknown";
+        byCity.merge(city, 1, Integer::sum);
+    }
+
+    public int getTotal() {
+        return total;
+    }
+
+    public void writeTo(SecurityMetrics metrics, ObjectMapper objectMapper) {
+        metrics.setTotalAlerts(total);
+        metrics.setActivePanicAlerts(active);
+        metrics.setPendingSelfieChecks(pendingSelfieChecks);
+        metrics.setResolvedToday(resolved);
+        metrics.setFalseAlarms(falseAlarms);
+        metrics.setSapsCallsToday(sapsCalls);
+        metrics.setSecurityCompanyCalls(securityCompanyCalls);
+        metrics.setTotalStreamsInitiated(streams);
+        metrics.setRecordingsSaved(recordings);
+        metrics.setAverageStreamDuration(recordingsWithDuration > 0
+                ? round(recordingSeconds / 60.0 / recordingsWithDuration) : 0.0);
+
+        long responses = responseTimes.getCount();
+        long resolutions = resolutionTimes.getCount();
+        metrics.setAverageResponseTime(responses > 0 ? round(responseMinutesTotal / responses) : 0.0);
+        metrics.setAverageResolutionTime(resolutions > 0 ? round(resolutionMinutesTotal / resolutions) : 0.0);
+        metrics.setResponseTimeP50(rounded(responseTimes.quantile(0.5)));
+        metrics.setResponseTimeP90(rounded(responseTimes.quantile(0.9)));
+        metrics.setResponseTimeP99(rounded(responseTimes.quantile(0.99)));
+        metrics.setResolutionTimeP50(rounded(resolutionTimes.quantile(0.5)));
+        metrics.setResolutionTimeP90(rounded(resolutionTimes.quantile(0.9)));
+
+        metrics.setResolutionRate(total > 0 ? round(resolved * 100.0 / total) : 0.0);
+        metrics.setFalseAlarmRate(total > 0 ? round(falseAlarms * 100.0 / total) : 0.0);
+
+        long days = Math.max(1, Duration.between(start, end).toDays());
+        metrics.setAverageDailyAlerts(round((double) total / days));
+        if (total > 0) {
+            metrics.setPeakHour(indexOfMax(byHour));
+            metrics.setPeakDay(DayOfWeek.of(indexOfMax(byDay) + 1).getDisplayName(TextStyle.FULL, Locale.ENGLISH));
+        }
+
+        Map<String, Double> responseAverages = new TreeMap<>();
+        for (Map.Entry<SecurityAlert.AlertType, double[]> entry : responseByType.entrySet()) {
+            responseAverages.put(entry.getKey().name(), round(entry.getValue()[0] / entry.getValue()[1]));
+        }
+        metrics.setResponseTimeByAlertType(toJson(objectMapper, responseAverages));
+        metrics.setAlertsByType(toJson(objectMapper, byType));
+        metrics.setAlertsByPriority(toJson(objectMapper, byPriority));
+        metrics.setAlertsByCity(toJson(objectMapper, byCity));
+    }
+
+    private static double minutesBetween(LocalDateTime from, LocalDateTime to) {
+        return Duration.between(from, to).getSeconds() / 60.0;
+    }
+
+    private static int indexOfMax(int[] counts) {
+        int best = 0;
+        for (int i = 1; i < counts.length; i++) {
+            if (counts[i] > counts[best]) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100.0) / 100.0;
+    }
+
+    private static Double rounded(Double value) {
+        return value != null ? round(value) : null;
+    }
+
+    private static String toJson(ObjectMapper objectMapper, Object value) {
+        try {
+            return objectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Could not serialise security metrics", e);
+        }
+    }
+}
@@ -1,15 +1,24 @@
 // SecurityServiceImpl.java
 package za.co.rubhub.service;
 
+import za.co.rubhub.dto.SecurityAlertEvent;
+import za.co.rubhub.dto.SecurityAlertView;
 import za.co.rubhub.model.*;
 import za.co.rubhub.repositories.*;
+import za.co.rubhub.repositories.projection.SecurityAlertMetricsRow;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Slf4j
 @Service
@@ -19,6 +28,21 @@ public class SecurityService {
     private final SecurityAlertRepository securityAlertRepository;
     private final BookingRepository bookingRepository;
     private final UserRepository userRepository;
+    private final SecurityAlertBus securityAlertBus;
+    private final SecurityAlertNotifier securityAlertNotifier;
+    private final SecurityAlertBoard securityAlertBoard;
+    private final AlertClusterIndex alertClusterIndex;
+    private final SecurityMetricsRepository securityMetricsRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    
+    // Dashboards ask for one of these; anything else is served as the default range
+    private static final List<String> METRICS_TIME_RANGES = Arrays.asList("7d", "30d", "90d", "1y");
+    private static final String DEFAULT_METRICS_TIME_RANGE = "30d";
+    
+    // One generation per range at a time; concurrent dashboard requests wait for it and reuse the result.
+    // Keyed by normalised range, so it never holds more than METRICS_TIME_RANGES
+    private final Map<String, Object> metricsLocks = new ConcurrentHashMap<>();
     
     // Security Alerts Management
     public SecurityAlert createSecurityAlert(SecurityAlert alert) {
@@ -44,11 +68,18 @@ public class SecurityService {
         
         SecurityAlert savedAlert = securityAlertRepository.save(alert);
         
-        // Automatically notify emergency contacts for high-priority alerts
-        if (alert.getPriority() >= 4) {
-            notifyEmergencyContacts(savedAlert.getId());
+        // A recent unresolved alert of the same type nearby makes this one part of its incident
+        Long incidentId = alertClusterIndex.cluster(savedAlert);
+        if (incidentId != null) {
+            securityAlertRepository.linkToIncident(savedAlert.getId(), incidentId);
+            savedAlert.setIncidentId(incidentId);
+            log.info("Security alert {} linked to incident {}", savedAlert.getId(), incidentId);
         }
         
+        // The alert is stored; emergency contacts and other handlers are notified on its priority lane
+        securityAlertBoard.apply(savedAlert);
+        securityAlertBus.publish(SecurityAlertEvent.of(SecurityAlertEvent.Kind.RAISED, savedAlert));
+        
         log.info("Security alert created with ID: {}", savedAlert.getId());
         return savedAlert;
     }
@@ -67,7 +98,7 @@ public class SecurityService {
                         alert.setIsFlashing(true);
                     }
                     
-                    return securityAlertRepository.save(alert);
+                    return published(securityAlertRepository.save(alert));
                 })
                 .orElseThrow(() -> new RuntimeException("Security alert not found: " + alertId));
     }
@@ -84,19 +115,34 @@ public class SecurityService {
                     }
                     alert.getActionsTaken().add(action);
                     
-                    return securityAlertRepository.save(alert);
+                    return published(securityAlertRepository.save(alert));
                 })
                 .orElseThrow(() -> new RuntimeException("Security alert not found: " + alertId));
     }
     
-    public List<SecurityAlert> getActiveAlerts() {
-        log.info("Fetching active security alerts");
-        return securityAlertRepository.findByStatus(SecurityAlert.AlertStatus.ACTIVE);
+    // Served from the in-memory board; see streamAlerts for push updates
+    public List<SecurityAlertView> getActiveAlerts() {
+        return securityAlertBoard.activeAlerts();
+    }
+    
+    public List<SecurityAlertView> getFlashingAlerts() {
+        return securityAlertBoard.flashingAlerts();
     }
     
-    public List<SecurityAlert> getFlashingAlerts() {
-        log.info("Fetching flashing security alerts");
-        return securityAlertRepository.findByIsFlashingTrue();
+    // The first alert of the incident followed by every alert clustered into it
+    public List<SecurityAlert> getIncidentAlerts(Long alertId) {
+        SecurityAlert alert = securityAlertRepository.findById(alertId)
+                .orElseThrow(() -> new RuntimeException("Security alert not found: " + alertId));
+        Long incidentId = alert.getIncidentId() != null ? alert.getIncidentId() : alert.getId();
+        List<SecurityAlert> alerts = new ArrayList<>();
+        securityAlertRepository.findById(incidentId).ifPresent(alerts::add);
+        alerts.addAll(securityAlertRepository.findByIncidentId(incidentId));
+        return alerts;
+    }
+    
+    // A snapshot of the board, then one delta per change
+    public SseEmitter streamAlerts() {
+        return securityAlertBoard.subscribe();
     }
     
     public SecurityAlert resolveAlert(Long alertId, String resolutionNotes, String resolvedBy) {
@@ -110,8 +156,7 @@ public class SecurityService {
                     alert.setResolvedBy(resolvedBy);
                     alert.setIsFlashing(false);
                     
-                    
-                    return securityAlertRepository.save(alert);
+                    return published(securityAlertRepository.save(alert));
                 })
                 .orElseThrow(() -> new RuntimeException("Security alert not found: " + alertId));
     }
@@ -124,7 +169,7 @@ public class SecurityService {
                     alert.setRecordingUrl(recordingUrl);
                     alert.setRecordingDuration(duration);
                     alert.setRecordingEndedAt(LocalDateTime.now());
-                    securityAlertRepository.save(alert);
+                    published(securityAlertRepository.save(alert));
                 });
     }
     
@@ -141,7 +186,7 @@ public class SecurityService {
                     notifications.setSapsReference(sapsReference);
                     alert.setNotifications(notifications);
                     
-                    securityAlertRepository.save(alert);
+                    published(securityAlertRepository.save(alert));
                     
                     // Record the action
                     SecurityAlert.ActionTaken action = new SecurityAlert.ActionTaken();
@@ -163,7 +208,7 @@ public class SecurityService {
                     notifications.setSecurityCompany(true);
                     alert.setNotifications(notifications);
                     
-                    securityAlertRepository.save(alert);
+                    published(securityAlertRepository.save(alert));
                     
                     // Record the action
                     SecurityAlert.ActionTaken action = new SecurityAlert.ActionTaken();
@@ -176,19 +221,10 @@ public class SecurityService {
                 });
     }
     
+    // Idempotent: does nothing if the alert's contacts were already notified
     public void notifyEmergencyContacts(Long alertId) {
         log.info("Notifying emergency contacts for alert: {}", alertId);
-        
-        securityAlertRepository.findById(alertId)
-                .ifPresent(alert -> {
-                    SecurityAlert.NotificationStatus notifications = alert.getNotifications();
-                    notifications.setEmergencyContacts(true);
-                    alert.setNotifications(notifications);
-                    
-                    securityAlertRepository.save(alert);
-                    
-                    log.info("Emergency contacts notified for alert: {}", alertId);
-                });
+        securityAlertNotifier.notifyEmergencyContacts(alertId);
     }
     
     public void sendSAPSEmail(Long alertId) {
@@ -211,16 +247,18 @@ public class SecurityService {
     }
     
     // Dashboard Data
-    public SecurityMetrics getSecurityMetrics(String timeRange) {
-        log.info("Generating security metrics for time range: {}", timeRange);
-        
-        LocalDateTime now = LocalDateTime.now();
-        LocalDateTime startDate = calculateStartDate(timeRange, now);
-        
-        // Try to get cached metrics first
-        // return securityAlertRepository.findLatestByTimeRange(timeRange, now.minusHours(1));
-                // .orElseGet(() -> generateSecurityMetrics(timeRange, startDate, now));
-                return null;
+    // Served from the last persisted run for the range while it is under an hour old
+    public SecurityMetrics getSecurityMetrics(String requestedTimeRange) {
+        String timeRange = normalizeTimeRange(requestedTimeRange);
+        synchronized (metricsLocks.computeIfAbsent(timeRange, range -> new Object())) {
+            LocalDateTime now = LocalDateTime.now();
+            return securityMetricsRepository
+                    .findFirstByTimeRangeAndGeneratedAtAfterOrderByGeneratedAtDesc(timeRange, now.minusHours(1))
+                    .orElseGet(() -> {
+                        log.info("Generating security metrics for time range: {}", timeRange);
+                        return generateSecurityMetrics(timeRange, calculateStartDate(timeRange, now), now);
+                    });
+        }
     }
     
     public List<Map<String, Object>> getAlertStatistics() {
@@ -254,57 +292,44 @@ public class SecurityService {
     }
     
     // Private helper methods
+    private SecurityAlert published(SecurityAlert alert) {
+        // The board keeps a summary of these; load them while the request's session is still open
+        Hibernate.initialize(alert.getUser());
+        Hibernate.initialize(alert.getRequest());
+        Hibernate.initialize(alert.getActionsTaken());
+        alertClusterIndex.onStatusChanged(alert);
+        securityAlertBoard.apply(alert);
+        securityAlertBus.publish(SecurityAlertEvent.of(SecurityAlertEvent.Kind.UPDATED, alert));
+        return alert;
+    }
+    
+    // One pass over a database cursor; only the running aggregates are held in memory
     private SecurityMetrics generateSecurityMetrics(String timeRange, LocalDateTime start, LocalDateTime end) {
+        long began = System.currentTimeMillis();
+        SecurityMetricsAccumulator accumulator = new SecurityMetricsAccumulator(start, end);
+        transactionTemplate.execute(status -> {
+            try (Stream<SecurityAlertMetricsRow> rows = securityAlertRepository.streamMetricsRows(start, end)) {
+                rows.forEach(accumulator::accept);
+            }
+            return null;
+        });
+        
         SecurityMetrics metrics = new SecurityMetrics();
         metrics.setDate(start);
         metrics.setTimeRange(timeRange);
-        metrics.setGeneratedAt(LocalDateTime.now());
-        
-        // Calculate various metrics
-        List<SecurityAlert> alerts = securityAlertRepository.findByTimestampBetween(start, end);
-        
-        // Basic counts
-        metrics.setActivePanicAlerts((int) alerts.stream()
-                .filter(a -> a.getStatus() == SecurityAlert.AlertStatus.ACTIVE)
-                .count());
-        
-        metrics.setSapsCallsToday((int) alerts.stream()
-                .filter(a -> a.getNotifications() != null && a.getNotifications().getSaps())
-                .count());
-        
-        metrics.setResolvedToday((int) alerts.stream()
-                .filter(a -> a.getStatus() == SecurityAlert.AlertStatus.RESOLVED)
-                .count());
+        metrics.setMetricsStartDate(start);
+        metrics.setMetricsEndDate(end);
+        accumulator.writeTo(metrics, objectMapper);
         
-        metrics.setTotalAlerts(alerts.size());
-        
-        // Calculate response times
-        calculateResponseTimes(metrics, alerts);
-        
-        // Calculate geographic distribution
-        calculateGeographicDistribution(metrics, alerts);
-        
-        // Calculate success metrics
-        // calculateSuccessMetrics(metrics, alerts);
-        
-        // Stream metrics
-        // calculateStreamMetrics(metrics, streams);
-        
-        //return securityAlertRepository.save(metrics);
-        return null;
-    }
-    
-    private void calculateResponseTimes(SecurityMetrics metrics, List<SecurityAlert> alerts) {
-        // Implementation for calculating average response times
-        // This would require tracking when alerts were acknowledged vs when they were created
-    }
-    
-    private void calculateGeographicDistribution(SecurityMetrics metrics, List<SecurityAlert> alerts) {
-        // Implementation for calculating alerts by area/city
+        SecurityMetrics saved = securityMetricsRepository.save(metrics);
+        log.info("Security metrics for {} generated from {} alerts in {} ms",
+                timeRange, accumulator.getTotal(), System.currentTimeMillis() - began);
+        return saved;
     }
     
-    private void calculateSuccessMetrics(SecurityMetrics metrics, List<SecurityAlert> alerts) {
-        // Implementation for calculating resolution rates, false alarm rates, etc.
+    private static String normalizeTimeRange(String timeRange) {
+        String range = timeRange != null ? timeRange.trim().toLowerCase(Locale.ROOT) : "";
+        return METRICS_TIME_RANGES.contains(range) ? range : DEFAULT_METRICS_TIME_RANGE;
     }
     
     private LocalDateTime calculateStartDate(String timeRange, LocalDateTime endDate) {
@@ -0,0 +1,175 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.dto.StatementLine;
+import za.co.rubhub.model.AccountBalanceSnapshot;
+import za.co.rubhub.model.Transaction;
+import za.co.rubhub.repositories.AccountBalanceSnapshotRepository;
+import za.co.rubhub.repositories.TransactionRepository;
+import za.co.rubhub.repositories.projection.AccountDayMovement;
+import za.co.rubhub.repositories.projection.StatementLineRow;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Balances and statements for ledger accounts, answered as snapshot + delta.
+ *
+ * A nightly job writes each account's closing balance for every day it
+ * moved. The balance at any instant is the latest snapshot before that day
+ * plus the completed journal lines since, which is at most a day's worth for
+ * an active account. A statement starts from that opening balance and streams
+ * only the lines inside its range, so its cost follows the range and not the
+ * account's history.
+ *
+ * A line is stamped when it is written but becomes visible only when its
+ * transaction commits, so a day can still gain lines after it was snapshotted.
+ * Each run therefore redoes the last few snapshotted days and every day after
+ * them in order, and each closing balance builds on the one just rewritten.
+ */
+@Slf4j
+@Service
+public class StatementService {
+
+    private static final Transaction.TransactionStatus POSTED = Transaction.TransactionStatus.COMPLETED;
+
+    private final TransactionRepository transactionRepository;
+    private final AccountBalanceSnapshotRepository snapshotRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final int redoDays;
+
+    private final AtomicBoolean snapshotting = new AtomicBoolean();
+
+    public StatementService(TransactionRepository transactionRepository,
+                            AccountBalanceSnapshotRepository snapshotRepository,
+                            TransactionTemplate transactionTemplate,
+                            @Value("${ledger.snapshot.redo-days:3}") int redoDays) {
+        this.transactionRepository = transactionRepository;
+        this.snapshotRepository = snapshotRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.redoDays = Math.max(1, redoDays);
+    }
+
+    // Receives a statement as it is read: the opening balance, each line in order, then the closing balance
+    public interface StatementSink {
+        void opening(BigDecimal balance);
+
+        void line(StatementLine line);
+
+        void closing(BigDecimal balance);
+    }
+
+    @Transactional(readOnly = true)
+    public BigDecimal balanceAt(Long accountId, LocalDateTime at) {
+        // A snapshot dated D holds the balance at the start of D + 1, so only days before at's date apply
+        Optional<AccountBalanceSnapshot> snapshot = snapshotRepository
+                .findFirstByAccountIdAndSnapshotDateLessThanOrderBySnapshotDateDesc(accountId, at.toLocalDate());
+        if (!snapshot.isPresent()) {
+            BigDecimal total = transactionRepository.sumNetMovementBetween(String.valueOf(accountId), POSTED,
+                    LocalDateTime.of(1970, 1, 1, 0, 0), at);
+            return total != null ? total : BigDecimal.ZERO;
+        }
+        LocalDateTime since = snapshot.get().getSnapshotDate().plusDays(1).atStartOfDay();
+        BigDecimal delta = transactionRepository.sumNetMovementBetween(String.valueOf(accountId), POSTED, since, at);
+        return delta != null ? snapshot.get().getClosingBalance().add(delta) : snapshot.get().getClosingBalance();
+    }
+
+    // Lines in [start, end), read through a cursor; runs in one read-only transaction so the balances agree
+    @Transactional(readOnly = true)
+    public void streamStatement(Long accountId, LocalDateTime start, LocalDateTime end, StatementSink sink) {
+        String account = String.valueOf(accountId);
+        BigDecimal balance = balanceAt(accountId, start);
+        sink.opening(balance);
+        try (Stream<StatementLineRow> rows = transactionRepository.streamStatementLines(account, POSTED, start, end)) {
+            for (StatementLineRow row : (Iterable<StatementLineRow>) rows::iterator) {
+                boolean credit = account.equals(row.getToAccountId());
+                BigDecimal amount = row.getAmount() != null ? row.getAmount() : BigDecimal.ZERO;
+                BigDecimal signed = credit ? amount : amount.negate();
+                balance = balance.add(signed);
+                sink.line(new StatementLine(row.getTransactionId(), row.getTransactionDate(), row.getType(),
+                        row.getDescription(), row.getReference(),
+                        credit ? row.getFromAccountId() : row.getToAccountId(), signed, balance));
+            }
+        }
+        sink.closing(balance);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void catchUpOnStartup() {
+        snapshotClosedDays();
+    }
+
+    // Snapshots every finished day since the last one, starting redoDays back so lines committed late are counted
+    @Scheduled(cron = "0 30 0 * * *")
+    public void snapshotClosedDays() {
+        if (!snapshotting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            LocalDate yesterday = LocalDate.now().minusDays(1);
+            LocalDate latest = snapshotRepository.findLatestSnapshotDate();
+            LocalDate day;
+            if (latest != null) {
+                // Days after the earliest redone one are redone too, since their closings carry its balance forward
+                day = latest.minusDays(redoDays - 1);
+            } else {
+                LocalDateTime earliest = transactionRepository.findEarliestTransactionDate(POSTED);
+                if (earliest == null) {
+                    return;
+                }
+                day = earliest.toLocalDate();
+            }
+            int days = 0;
+            for (; !day.isAfter(yesterday); day = day.plusDays(1)) {
+                LocalDate snapshotDay = day;
+                transactionTemplate.execute(status -> snapshotDay(snapshotDay));
+                days++;
+            }
+            if (days > 0) {
+                log.info("Snapshotted account balances through {} ({} days)", yesterday, days);
+            }
+        } catch (Exception e) {
+            log.error("Account balance snapshot failed: {}", e.getMessage(), e);
+        } finally {
+            snapshotting.set(false);
+        }
+    }
+
+    // Closing balance = the account's previous snapshot + the day's movement; accounts that did not move are skipped
+    private int snapshotDay(LocalDate day) {
+        List<AccountDayMovement> movements = transactionRepository.sumMovementByAccount(
+                day.atStartOfDay(), day.plusDays(1).atStartOfDay());
+        if (movements.isEmpty()) {
+            return 0;
+        }
+        Map<Long, BigDecimal> previous = new HashMap<>();
+        for (AccountBalanceSnapshot snapshot : snapshotRepository.findLatestBefore(
+                movements.stream().map(AccountDayMovement::getAccountId).collect(Collectors.toSet()), day)) {
+            previous.put(snapshot.getAccountId(), snapshot.getClosingBalance());
+        }
+        for (AccountDayMovement movement : movements) {
+            BigDecimal credits = movement.getCredits() != null ? movement.getCredits() : BigDecimal.ZERO;
+            BigDecimal debits = movement.getDebits() != null ? movement.getDebits() : BigDecimal.ZERO;
+            BigDecimal closing = previous.getOrDefault(movement.getAccountId(), BigDecimal.ZERO)
+                    .add(credits).subtract(debits);
+            snapshotRepository.upsert(movement.getAccountId(), day, closing, credits, debits,
+                    movement.getEntries() != null ? movement.getEntries() : 0L);
+        }
+        return movements.size();
+    }
+}
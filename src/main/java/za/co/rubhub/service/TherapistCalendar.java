@@ -0,0 +1,481 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.model.Booking;
+import za.co.rubhub.model.BookingStatus;
+import za.co.rubhub.model.MassageRequest;
+import za.co.rubhub.repositories.BookingRepository;
+import za.co.rubhub.repositories.MassageRequestRepository;
+import za.co.rubhub.repositories.projection.BusyInterval;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Per-therapist busy intervals from active bookings and assigned requests.
+ *
+ * Each therapist's schedule is an immutable array sorted by start time with a
+ * running maximum of end times, so "is this slot free?" is one binary search
+ * and "next free slots" is a binary search plus a walk over the gaps. Writers
+ * replace a therapist's schedule under the calendar lock; readers never lock.
+ * A rebuild reads the database without blocking writers; changes that arrive
+ * meanwhile are replayed onto the new schedules before they replace the old.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TherapistCalendar {
+
+    static final Set<BookingStatus> BUSY_BOOKING_STATUSES = Collections.unmodifiableSet(EnumSet.of(
+            BookingStatus.PENDING, BookingStatus.PREPARATION, BookingStatus.CONFIRMED,
+            BookingStatus.ACCEPTED, BookingStatus.IN_PROGRESS));
+
+    static final Set<MassageRequest.Status> BUSY_REQUEST_STATUSES = Collections.unmodifiableSet(EnumSet.of(
+            MassageRequest.Status.ASSIGNED, MassageRequest.Status.ACCEPTED));
+
+    // Sessions that started before this are finished and not loaded
+    private static final int LOOKBACK_HOURS = 24;
+    private static final int DEFAULT_DURATION_MINUTES = 60;
+    private static final int RESERVATION_LOCK_STRIPES = 64;
+
+    private final BookingRepository bookingRepository;
+    private final MassageRequestRepository massageRequestRepository;
+
+    private volatile Map<Long, Schedule> schedules = new ConcurrentHashMap<>();
+    // Which therapist each booking / request key is on, so a sync only touches the schedules involved.
+    // Guarded by this
+    private Map<String, Long> owners = new HashMap<>();
+
+    // Changes made while a rebuild is reading the database, replayed onto the fresh schedules before they
+    // go live. Guarded by this; null when no rebuild is running
+    private Map<String, Change> changedDuringRebuild;
+    private final Object rebuildLock = new Object();
+
+    // Striped by therapist id; held across "is the slot free" and taking it, see reserve
+    private final Object[] reservationLocks = newLocks(RESERVATION_LOCK_STRIPES);
+
+    // Notified with the therapist id whenever that therapist's schedule changes
+    private final List<Consumer<Long>> listeners = new CopyOnWriteArrayList<>();
+
+    // Full rebuild on startup and every 10 minutes to pick up writes made by other instances
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelay = 600000, initialDelay = 600000)
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            long start = System.currentTimeMillis();
+            LocalDateTime since = LocalDateTime.now().minusHours(LOOKBACK_HOURS);
+            synchronized (this) {
+                changedDuringRebuild = new HashMap<>();
+            }
+
+            Map<Long, List<Interval>> byTherapist = new HashMap<>();
+            Map<String, Long> freshOwners = new HashMap<>();
+            int count = 0;
+            try {
+                for (BusyInterval busy : bookingRepository.findBusyIntervals(BUSY_BOOKING_STATUSES, since)) {
+                    count += add(byTherapist, freshOwners, bookingKey(busy.getId()), busy);
+                }
+                for (BusyInterval busy : massageRequestRepository.findBusyIntervals(BUSY_REQUEST_STATUSES, since)) {
+                    count += add(byTherapist, freshOwners, requestKey(busy.getId()), busy);
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    changedDuringRebuild = null;
+                }
+                throw e;
+            }
+
+            Map<Long, Schedule> fresh = new ConcurrentHashMap<>();
+            for (Map.Entry<Long, List<Interval>> entry : byTherapist.entrySet()) {
+                fresh.put(entry.getKey(), Schedule.of(entry.getValue()));
+            }
+            Set<Long> changed = new HashSet<>(byTherapist.keySet());
+            int replayed;
+            synchronized (this) {
+                replayed = changedDuringRebuild.size();
+                for (Map.Entry<String, Change> change : changedDuringRebuild.entrySet()) {
+                    apply(fresh, freshOwners, change.getKey(), change.getValue(), changed);
+                }
+                changedDuringRebuild = null;
+                // Therapists whose last interval went away changed too
+                changed.addAll(this.schedules.keySet());
+                this.schedules = fresh;
+                this.owners = freshOwners;
+            }
+            for (Long therapistId : changed) {
+                notifyListeners(therapistId);
+            }
+            log.info("Therapist calendar rebuilt with {} busy intervals for {} therapists ({} replayed) in {} ms",
+                    count, fresh.size(), replayed, System.currentTimeMillis() - start);
+        }
+    }
+
+    public void addListener(Consumer<Long> listener) {
+        listeners.add(listener);
+    }
+
+    // Called after a booking is saved; it occupies its therapist only while in a busy status
+    public void sync(Booking booking) {
+        if (booking == null || booking.getId() == null) {
+            return;
+        }
+        Long therapistId = booking.getTherapist() != null ? booking.getTherapist().getId() : null;
+        Interval interval = null;
+        if (therapistId != null && booking.getBookingDate() != null
+                && BUSY_BOOKING_STATUSES.contains(booking.getStatus())) {
+            interval = new Interval(bookingKey(booking.getId()), booking.getBookingDate(),
+                    durationOf(booking.getDurationMinutes()));
+        }
+        put(bookingKey(booking.getId()), therapistId, interval);
+    }
+
+    // Called after a request is saved or claimed
+    public void sync(MassageRequest request) {
+        if (request == null || request.getId() == null) {
+            return;
+        }
+        Long therapistId = request.getTherapist() != null ? request.getTherapist().getId() : null;
+        Interval interval = null;
+        if (therapistId != null && request.getPreferredDateTime() != null
+                && BUSY_REQUEST_STATUSES.contains(request.getStatus())) {
+            interval = new Interval(requestKey(request.getId()), request.getPreferredDateTime(),
+                    durationOf(request.getDurationMinutes()));
+        }
+        put(requestKey(request.getId()), therapistId, interval);
+    }
+
+    /**
+     * Runs reservation only if the therapist is free for the slot, holding the
+     * therapist's lock from the check until the reservation returns, so two
+     * callers can never both see the slot free and both take it. The
+     * reservation must sync what it saved into the calendar before returning.
+     * Empty when the slot is taken.
+     */
+    public <T> Optional<T> reserve(Long therapistId, LocalDateTime start, int durationMinutes, Booking ignoring,
+                                   Supplier<T> reservation) {
+        synchronized (reservationLocks[Math.floorMod(therapistId.hashCode(), reservationLocks.length)]) {
+            if (!isFree(therapistId, start, durationMinutes, ignoring)) {
+                return Optional.empty();
+            }
+            return Optional.ofNullable(reservation.get());
+        }
+    }
+
+    public boolean isFree(Long therapistId, LocalDateTime start, int durationMinutes) {
+        return isFree(therapistId, start, durationMinutes, null);
+    }
+
+    public boolean isFree(Long therapistId, LocalDateTime start, int durationMinutes, Booking ignoring) {
+        Schedule schedule = schedules.get(therapistId);
+        if (schedule == null) {
+            return true;
+        }
+        long from = toMinute(start);
+        String ignoreKey = ignoring != null && ignoring.getId() != null ? bookingKey(ignoring.getId()) : null;
+        return !schedule.overlaps(from, from + durationMinutes, ignoreKey);
+    }
+
+    // Up to count free windows of at least durationMinutes between from and until, earliest first
+    public List<Window> nextFreeWindows(Long therapistId, LocalDateTime from, LocalDateTime until,
+                                        int durationMinutes, int count) {
+        Schedule schedule = schedules.getOrDefault(therapistId, Schedule.EMPTY);
+        long fromMinute = toMinute(from);
+        long untilMinute = toMinute(until);
+
+        List<Window> windows = new ArrayList<>();
+        long cursor = fromMinute;
+        for (int i = schedule.firstEndingAfter(cursor); i < schedule.size() && windows.size() < count; i++) {
+            if (schedule.starts[i] >= untilMinute) {
+                break;
+            }
+            if (schedule.starts[i] - cursor >= durationMinutes) {
+                windows.add(new Window(fromMinute(cursor), fromMinute(schedule.starts[i])));
+            }
+            cursor = Math.max(cursor, schedule.ends[i]);
+        }
+        if (windows.size() < count && untilMinute - cursor >= durationMinutes) {
+            windows.add(new Window(fromMinute(cursor), until));
+        }
+        return windows;
+    }
+
+    // Busy intervals overlapping [from, to), in start order
+    public List<Window> busyBetween(Long therapistId, LocalDateTime from, LocalDateTime to) {
+        Schedule schedule = schedules.getOrDefault(therapistId, Schedule.EMPTY);
+        long fromMinute = toMinute(from);
+        long toMinute = toMinute(to);
+        List<Window> busy = new ArrayList<>();
+        for (int i = schedule.firstEndingAfter(fromMinute); i < schedule.size() && schedule.starts[i] < toMinute; i++) {
+            if (schedule.ends[i] > fromMinute) {
+                busy.add(new Window(fromMinute(schedule.starts[i]), fromMinute(schedule.ends[i])));
+            }
+        }
+        return busy;
+    }
+
+    private void put(String key, Long therapistId, Interval interval) {
+        List<Long> changed = new ArrayList<>(2);
+        Change change = new Change(therapistId, interval);
+        synchronized (this) {
+            apply(schedules, owners, key, change, changed);
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.put(key, change);
+            }
+        }
+        for (Long id : changed) {
+            notifyListeners(id);
+        }
+    }
+
+    // Moves key to its new therapist (or drops it), touching only the old and new owners' schedules
+    private static void apply(Map<Long, Schedule> schedules, Map<String, Long> owners, String key, Change change,
+                              Collection<Long> changed) {
+        Long previous = change.interval != null ? owners.put(key, change.therapistId) : owners.remove(key);
+        if (previous != null && !previous.equals(change.therapistId)) {
+            Schedule current = schedules.get(previous);
+            if (current != null) {
+                Schedule updated = current.without(key);
+                if (updated.size() == 0) {
+                    schedules.remove(previous);
+                } else {
+                    schedules.put(previous, updated);
+                }
+                changed.add(previous);
+            }
+        }
+        if (change.therapistId != null) {
+            Schedule current = schedules.getOrDefault(change.therapistId, Schedule.EMPTY);
+            Schedule updated = change.interval != null ? current.with(change.interval) : current.without(key);
+            if (updated != current) {
+                schedules.put(change.therapistId, updated);
+                changed.add(change.therapistId);
+            }
+        }
+    }
+
+    private void notifyListeners(Long therapistId) {
+        for (Consumer<Long> listener : listeners) {
+            try {
+                listener.accept(therapistId);
+            } catch (RuntimeException e) {
+                log.warn("Calendar listener failed for therapist {}: {}", therapistId, e.getMessage());
+            }
+        }
+    }
+
+    private static int add(Map<Long, List<Interval>> byTherapist, Map<String, Long> owners, String key,
+                           BusyInterval busy) {
+        if (busy.getTherapistId() == null || busy.getStart() == null) {
+            return 0;
+        }
+        owners.put(key, busy.getTherapistId());
+        byTherapist.computeIfAbsent(busy.getTherapistId(), id -> new ArrayList<>())
+                .add(new Interval(key, busy.getStart(), durationOf(busy.getDurationMinutes())));
+        return 1;
+    }
+
+    private static Object[] newLocks(int count) {
+        Object[] locks = new Object[count];
+        for (int i = 0; i < count; i++) {
+            locks[i] = new Object();
+        }
+        return locks;
+    }
+
+    private static int durationOf(Integer durationMinutes) {
+        return durationMinutes != null && durationMinutes > 0 ? durationMinutes : DEFAULT_DURATION_MINUTES;
+    }
+
+    private static String bookingKey(Long id) {
+        return "booking:" + id;
+    }
+
+    private static String requestKey(Long id) {
+        return "request:" + id;
+    }
+
+    // Local wall-clock minutes; DST is irrelevant because slots are booked in local time
+    static long toMinute(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC) / 60;
+    }
+
+    static LocalDateTime fromMinute(long minute) {
+        return LocalDateTime.ofEpochSecond(minute * 60, 0, ZoneOffset.UTC);
+    }
+
+    // A sync recorded during a rebuild; a null interval means the key is no longer busy
+    private static final class Change {
+        private final Long therapistId;
+        private final Interval interval;
+
+        Change(Long therapistId, Interval interval) {
+            this.therapistId = therapistId;
+            this.interval = interval;
+        }
+    }
+
+    private static final class Interval {
+        private final String key;
+        private final long start;
+        private final long end;
+
+        Interval(String key, LocalDateTime start, int durationMinutes) {
+            this.key = key;
+            this.start = toMinute(start);
+            this.end = this.start + durationMinutes;
+        }
+
+        Interval(String key, long start, long end) {
+            this.key = key;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private static final class Schedule {
+        static final Schedule EMPTY = new Schedule(new String[0], new long[0], new long[0]);
+
+        private final String[] keys;
+        private final long[] starts;
+        private final long[] ends;
+        // maxEnds[i] is the latest end among intervals 0..i; non-decreasing, so it can be binary searched
+        private final long[] maxEnds;
+
+        private Schedule(String[] keys, long[] starts, long[] ends) {
+            this.keys = keys;
+            this.starts = starts;
+            this.ends = ends;
+            this.maxEnds = new long[ends.length];
+            long max = Long.MIN_VALUE;
+            for (int i = 0; i < ends.length; i++) {
+                max = Math.max(max, ends[i]);
+                maxEnds[i] = max;
+            }
+        }
+
+        static Schedule of(List<Interval> intervals) {
+            List<Interval> sorted = new ArrayList<>(intervals);
+            sorted.sort((a, b) -> Long.compare(a.start, b.start));
+            String[] keys = new String[sorted.size()];
+            long[] starts = new long[sorted.size()];
+            long[] ends = new long[sorted.size()];
+            for (int i = 0; i < sorted.size(); i++) {
+                keys[i] = sorted.get(i).key;
+                starts[i] = sorted.get(i).start;
+                ends[i] = sorted.get(i).end;
+            }
+            return new Schedule(keys, starts, ends);
+        }
+
+        int size() {
+            return starts.length;
+        }
+
+        boolean contains(String key) {
+            for (String existing : keys) {
+                if (existing.equals(key)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        Schedule with(Interval interval) {
+            List<Interval> intervals = toIntervals(interval.key);
+            intervals.add(interval);
+            return of(intervals);
+        }
+
+        Schedule without(String key) {
+            return contains(key) ? of(toIntervals(key)) : this;
+        }
+
+        boolean overlaps(long from, long to, String ignoreKey) {
+            // Last interval starting before the end of the slot
+            int last = lastStartingBefore(to);
+            if (last < 0 || maxEnds[last] <= from) {
+                return false;
+            }
+            if (ignoreKey == null) {
+                return true;
+            }
+            for (int i = last; i >= 0 && maxEnds[i] > from; i--) {
+                if (ends[i] > from && !keys[i].equals(ignoreKey)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Index of the first interval whose running max end is after minute
+        int firstEndingAfter(long minute) {
+            int low = 0;
+            int high = maxEnds.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (maxEnds[mid] > minute) {
+                    high = mid;
+                } else {
+                    low = mid + 1;
+                }
+            }
+            return low;
+        }
+
+        private int lastStartingBefore(long minute) {
+            int low = 0;
+            int high = starts.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (starts[mid] < minute) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low - 1;
+        }
+
+        private List<Interval> toIntervals(String excludingKey) {
+            List<Interval> intervals = new ArrayList<>(keys.length + 1);
+            for (int i = 0; i < keys.length; i++) {
+                if (!keys[i].equals(excludingKey)) {
+                    intervals.add(new Interval(keys[i], starts[i], ends[i]));
+                }
+            }
+            return intervals;
+        }
+    }
+
+    public static final class Window {
+        private final LocalDateTime start;
+        private final LocalDateTime end;
+
+        Window(LocalDateTime start, LocalDateTime end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public LocalDateTime getStart() { return start; }
+        public LocalDateTime getEnd() { return end; }
+    }
+}
@@ -0,0 +1,370 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.model.Therapist;
+import za.co.rubhub.repositories.TherapistRepository;
+import za.co.rubhub.util.GeoUtils;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory grid index of available therapists by their last reported position.
+ * Reads are lock-free; writes (location / availability changes and periodic
+ * rebuilds) are serialised on the index. A rebuild reads the database without
+ * blocking writers; changes that arrive meanwhile are replayed onto the new
+ * grid before it replaces the old one.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TherapistLocationIndex {
+
+    private static final double CELL_SIZE = GeoUtils.DEFAULT_CELL_SIZE_DEGREES;
+
+    private final TherapistRepository therapistRepository;
+
+    private volatile Grid grid = new Grid();
+
+    // Changes made while a rebuild is reading the database, replayed onto the fresh grid before it goes live.
+    // A null value records a removal. Guarded by this; null when no rebuild is running
+    private Map<Long, Entry> changedDuringRebuild;
+    private final Object rebuildLock = new Object();
+
+    // Full rebuild on startup and every 5 minutes to pick up writes made outside TherapistService
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelay = 300000, initialDelay = 300000)
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            long start = System.currentTimeMillis();
+            synchronized (this) {
+                changedDuringRebuild = new HashMap<>();
+            }
+            Grid fresh = new Grid();
+            try {
+                for (Therapist therapist : therapistRepository.findByIsAvailableTrue()) {
+                    Entry entry = toEntry(therapist);
+                    if (entry != null) {
+                        fresh.put(entry);
+                    }
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    changedDuringRebuild = null;
+                }
+                throw e;
+            }
+
+            int replayed;
+            synchronized (this) {
+                replayed = changedDuringRebuild.size();
+                for (Map.Entry<Long, Entry> change : changedDuringRebuild.entrySet()) {
+                    if (change.getValue() == null) {
+                        fresh.remove(change.getKey());
+                    } else {
+                        fresh.put(change.getValue());
+                    }
+                }
+                changedDuringRebuild = null;
+                this.grid = fresh;
+            }
+            log.info("Therapist location index rebuilt with {} therapists ({} replayed) in {} ms",
+                    fresh.entries.size(), replayed, System.currentTimeMillis() - start);
+        }
+    }
+
+    // Called whenever a therapist's position or availability may have changed
+    public synchronized void update(Therapist therapist) {
+        if (therapist == null || therapist.getId() == null) {
+            return;
+        }
+        Entry entry = toEntry(therapist);
+        if (entry == null) {
+            grid.remove(therapist.getId());
+        } else {
+            grid.put(entry);
+        }
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.put(therapist.getId(), entry);
+        }
+    }
+
+    public synchronized void remove(Long therapistId) {
+        grid.remove(therapistId);
+        if (changedDuringRebuild != null) {
+            changedDuringRebuild.put(therapistId, null);
+        }
+    }
+
+    public int size() {
+        return grid.entries.size();
+    }
+
+    // All therapists within radiusMeters of the point that are also willing to travel that far, nearest first
+    public List<Match> findWithinRadius(double latitude, double longitude, double radiusMeters) {
+        Grid current = this.grid;
+        List<Match> matches = new ArrayList<>();
+
+        for (Entry entry : candidatesWithin(current, latitude, longitude, radiusMeters)) {
+            double distance = GeoUtils.distanceMeters(latitude, longitude, entry.latitude, entry.longitude);
+            if (distance <= radiusMeters && entry.canTravel(distance)) {
+                matches.add(new Match(entry, distance));
+            }
+        }
+
+        matches.sort(Comparator.comparingDouble(Match::getDistanceMeters));
+        return matches;
+    }
+
+    // The k nearest therapists within maxDistanceMeters, searched ring by ring outwards from the point
+    public List<Match> findNearest(double latitude, double longitude, int k, double maxDistanceMeters) {
+        if (k <= 0) {
+            return Collections.emptyList();
+        }
+        Grid current = this.grid;
+        int total = current.entries.size();
+        if (total == 0) {
+            return Collections.emptyList();
+        }
+
+        int centerRow = GeoUtils.cellIndex(latitude, CELL_SIZE);
+        int centerCol = GeoUtils.cellIndex(longitude, CELL_SIZE);
+        // Distance guaranteed to be fully covered by each additional ring
+        double ringMeters = Math.min(
+                CELL_SIZE / GeoUtils.metersToLatDegrees(1),
+                CELL_SIZE / GeoUtils.metersToLngDegrees(1, latitude));
+        // No further out than the farthest occupied cell, however large the distance asked for
+        int maxRing = (int) Math.min(Math.ceil(maxDistanceMeters / ringMeters) + 1,
+                current.ringsToCover(centerRow, centerCol));
+
+        List<Match> matches = new ArrayList<>();
+        int seen = 0;
+        for (int ring = 0; ring <= maxRing && seen < total; ring++) {
+            for (int row = centerRow - ring; row <= centerRow + ring; row++) {
+                for (int col = centerCol - ring; col <= centerCol + ring; col++) {
+                    // Only the perimeter of the ring; inner cells were scanned already
+                    if (Math.abs(row - centerRow) != ring && Math.abs(col - centerCol) != ring) {
+                        continue;
+                    }
+                    Set<Long> ids = current.cells.get(GeoUtils.cellKey(row, col));
+                    if (ids == null) {
+                        continue;
+                    }
+                    for (Long id : ids) {
+                        Entry entry = current.entries.get(id);
+                        if (entry == null) {
+                            continue;
+                        }
+                        seen++;
+                        double distance = GeoUtils.distanceMeters(latitude, longitude, entry.latitude, entry.longitude);
+                        if (distance <= maxDistanceMeters && entry.canTravel(distance)) {
+                            matches.add(new Match(entry, distance));
+                        }
+                    }
+                }
+            }
+
+            if (matches.size() >= k) {
+                matches.sort(Comparator.comparingDouble(Match::getDistanceMeters));
+                if (matches.get(k - 1).getDistanceMeters() <= ring * ringMeters) {
+                    break;
+                }
+            }
+        }
+
+        matches.sort(Comparator.comparingDouble(Match::getDistanceMeters));
+        return matches.size() > k ? new ArrayList<>(matches.subList(0, k)) : matches;
+    }
+
+    private Collection<Entry> candidatesWithin(Grid current, double latitude, double longitude, double radiusMeters) {
+        double dLat = GeoUtils.metersToLatDegrees(radiusMeters);
+        double dLng = GeoUtils.metersToLngDegrees(radiusMeters, latitude);
+
+        int minRow = GeoUtils.cellIndex(latitude - dLat, CELL_SIZE);
+        int maxRow = GeoUtils.cellIndex(latitude + dLat, CELL_SIZE);
+        int minCol = GeoUtils.cellIndex(longitude - dLng, CELL_SIZE);
+        int maxCol = GeoUtils.cellIndex(longitude + dLng, CELL_SIZE);
+
+        // For very large radii a straight scan is cheaper than walking empty cells
+        long cellCount = (long) (maxRow - minRow + 1) * (maxCol - minCol + 1);
+        if (cellCount > current.entries.size()) {
+            return current.entries.values();
+        }
+
+        List<Entry> candidates = new ArrayList<>();
+        for (int row = minRow; row <= maxRow; row++) {
+            for (int col = minCol; col <= maxCol; col++) {
+                Set<Long> ids = current.cells.get(GeoUtils.cellKey(row, col));
+                if (ids == null) {
+                    continue;
+                }
+                for (Long id : ids) {
+                    Entry entry = current.entries.get(id);
+                    if (entry != null) {
+                        candidates.add(entry);
+                    }
+                }
+            }
+        }
+        return candidates;
+    }
+
+    private Entry toEntry(Therapist therapist) {
+        if (!Boolean.TRUE.equals(therapist.getIsAvailable())) {
+            return null;
+        }
+        if (!GeoUtils.isValidCoordinate(therapist.getCurrentLatitude(), therapist.getCurrentLongitude())) {
+            return null;
+        }
+        Integer travelRadius = therapist.getTravelRadius();
+        double travelRadiusMeters = travelRadius != null && travelRadius > 0
+                ? travelRadius * 1000.0
+                : Double.MAX_VALUE;
+        return new Entry(therapist, travelRadiusMeters);
+    }
+
+    private static class Grid {
+        private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+        private final Map<Long, Set<Long>> cells = new ConcurrentHashMap<>();
+
+        // Rows and columns any entry has occupied; only ever widen, so they may overstate after removals
+        private volatile int minRow = Integer.MAX_VALUE;
+        private volatile int maxRow = Integer.MIN_VALUE;
+        private volatile int minCol = Integer.MAX_VALUE;
+        private volatile int maxCol = Integer.MIN_VALUE;
+
+        void put(Entry entry) {
+            int row = GeoUtils.cellIndex(entry.latitude, CELL_SIZE);
+            int col = GeoUtils.cellIndex(entry.longitude, CELL_SIZE);
+            minRow = Math.min(minRow, row);
+            maxRow = Math.max(maxRow, row);
+            minCol = Math.min(minCol, col);
+            maxCol = Math.max(maxCol, col);
+            Entry previous = entries.put(entry.therapistId, entry);
+            if (previous != null && previous.cellKey != entry.cellKey) {
+                removeFromCell(previous);
+            }
+            cells.computeIfAbsent(entry.cellKey, key -> ConcurrentHashMap.newKeySet()).add(entry.therapistId);
+        }
+
+        void remove(Long therapistId) {
+            Entry previous = entries.remove(therapistId);
+            if (previous != null) {
+                removeFromCell(previous);
+            }
+        }
+
+        // Rings around the cell needed to reach every occupied cell
+        int ringsToCover(int row, int col) {
+            long reach = Math.max(
+                    Math.max((long) row - minRow, (long) maxRow - row),
+                    Math.max((long) col - minCol, (long) maxCol - col));
+            return (int) Math.max(0, Math.min(reach, Integer.MAX_VALUE - 1));
+        }
+
+        private void removeFromCell(Entry entry) {
+            Set<Long> ids = cells.get(entry.cellKey);
+            if (ids != null) {
+                ids.remove(entry.therapistId);
+                if (ids.isEmpty()) {
+                    cells.remove(entry.cellKey, ids);
+                }
+            }
+        }
+    }
+
+    // Position plus the attributes the matcher scores on, copied so the entity is never shared
+    public static final class Entry {
+        private final Long therapistId;
+        private final double latitude;
+        private final double longitude;
+        private final double travelRadiusMeters;
+        private final long cellKey;
+
+        private final double rating;
+        private final Integer responseTimeMinutes;
+        private final double cancellationRate;
+        private final String specialization;
+        private final boolean bookable;
+        private final String availableFrom;
+        private final String availableTo;
+        private final String workingDays;
+
+        Entry(Therapist therapist, double travelRadiusMeters) {
+            this.therapistId = therapist.getId();
+            this.latitude = therapist.getCurrentLatitude();
+            this.longitude = therapist.getCurrentLongitude();
+            this.travelRadiusMeters = travelRadiusMeters;
+            this.cellKey = GeoUtils.cellKey(latitude, longitude, CELL_SIZE);
+
+            this.rating = therapist.getRating() != null ? therapist.getRating().doubleValue() : 0.0;
+            this.responseTimeMinutes = therapist.getAverageResponseTimeMinutes();
+            this.cancellationRate = therapist.getCancellationRate() != null
+                    ? therapist.getCancellationRate().doubleValue() : 0.0;
+            this.specialization = therapist.getSpecialization() != null
+                    ? therapist.getSpecialization().toLowerCase() : "";
+            this.bookable = therapist.isBookable();
+            this.availableFrom = therapist.getAvailableFrom();
+            this.availableTo = therapist.getAvailableTo();
+            this.workingDays = therapist.getWorkingDays();
+        }
+
+        boolean canTravel(double distanceMeters) {
+            return distanceMeters <= travelRadiusMeters;
+        }
+
+        // Same rule as Therapist.isAvailableForBooking, evaluated for the given time
+        public boolean isAvailableForBookingAt(LocalDateTime at) {
+            return bookable && Therapist.isWithinWorkingHours(availableFrom, availableTo, workingDays, at);
+        }
+
+        public boolean hasSpecialization(String serviceType) {
+            return serviceType != null && !serviceType.isEmpty()
+                    && specialization.contains(serviceType.toLowerCase());
+        }
+
+        public Long getTherapistId() { return therapistId; }
+        public double getLatitude() { return latitude; }
+        public double getLongitude() { return longitude; }
+        public double getTravelRadiusMeters() { return travelRadiusMeters; }
+        public double getRating() { return rating; }
+        public Integer getResponseTimeMinutes() { return responseTimeMinutes; }
+        public double getCancellationRate() { return cancellationRate; }
+    }
+
+    public static final class Match {
+        private final Entry entry;
+        private final double distanceMeters;
+
+        Match(Entry entry, double distanceMeters) {
+            this.entry = entry;
+            this.distanceMeters = distanceMeters;
+        }
+
+        public Long getTherapistId() { return entry.therapistId; }
+        public Entry getEntry() { return entry; }
+        public double getDistanceMeters() { return distanceMeters; }
+    }
+
+    // Utility for callers that only need the ids, in match order
+    public static List<Long> therapistIds(List<Match> matches) {
+        List<Long> ids = new ArrayList<>(matches.size());
+        for (Match match : matches) {
+            ids.add(match.getTherapistId());
+        }
+        return ids;
+    }
+}
@@ -4,8 +4,16 @@ import za.co.rubhub.model.Therapist;
 import za.co.rubhub.repositories.TherapistRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Service
 public class TherapistService {
@@ -13,6 +21,14 @@ public class TherapistService {
     @Autowired
     private TherapistRepository therapistRepository;
 
+    @Autowired
+    private TherapistLocationIndex therapistLocationIndex;
+
+    @Autowired
+    private TherapistSlotGrid therapistSlotGrid;
+
+    @Autowired
+    private MassageServiceTypeService massageServiceTypeService;
     
      public Optional<Therapist> findById(Long id) {
         return therapistRepository.findById(id);
@@ -42,8 +58,29 @@ public class TherapistService {
         return therapistRepository.findAvailableVerifiedTherapists();
     }
 
+    // maxDistance is in meters; results are nearest first
     public List<Therapist> findByLocationNear(double longitude, double latitude, double maxDistance) {
-        return therapistRepository.findByLocationNear(longitude, latitude, maxDistance);
+        List<TherapistLocationIndex.Match> matches =
+            therapistLocationIndex.findWithinRadius(latitude, longitude, maxDistance);
+        return findAllInOrder(TherapistLocationIndex.therapistIds(matches));
+    }
+
+    public List<Therapist> findNearestAvailable(double latitude, double longitude, int limit, double maxDistance) {
+        List<TherapistLocationIndex.Match> matches =
+            therapistLocationIndex.findNearest(latitude, longitude, limit, maxDistance);
+        return findAllInOrder(TherapistLocationIndex.therapistIds(matches));
+    }
+
+    public Therapist updateLocation(Long therapistId, Double latitude, Double longitude) {
+        Optional<Therapist> therapistOpt = therapistRepository.findById(therapistId);
+        if (therapistOpt.isPresent()) {
+            Therapist therapist = therapistOpt.get();
+            therapist.setCurrentLatitude(latitude);
+            therapist.setCurrentLongitude(longitude);
+            therapist.setLastActive(java.time.LocalDateTime.now());
+            return save(therapist);
+        }
+        throw new RuntimeException("Therapist not found with ID: " + therapistId);
     }
 
     public List<Therapist> findByService(String service) {
@@ -54,7 +91,51 @@ public class TherapistService {
         // Generate therapist ID if not provided
         if (therapist.getId() == null ) {
         }
-        return therapistRepository.save(therapist);
+        Therapist saved = therapistRepository.save(therapist);
+        therapistLocationIndex.update(saved);
+        therapistSlotGrid.update(saved);
+        return saved;
+    }
+
+    // Answered from the precomputed slot grid; never reads bookings
+    public List<LocalDateTime> findAvailableSlots(Long therapistId, LocalDate from, int days,
+                                                  Long serviceTypeId, Integer durationMinutes) {
+        LocalDate today = LocalDate.now();
+        LocalDate start = from == null || from.isBefore(today) ? today : from;
+        long remaining = TherapistSlotGrid.HORIZON_DAYS - ChronoUnit.DAYS.between(today, start);
+        int span = (int) Math.max(0, Math.min(days, remaining));
+        return therapistSlotGrid.findSlots(therapistId, start, span, resolveDuration(serviceTypeId, durationMinutes));
+    }
+
+    public List<TherapistSlotGrid.TherapistSlots> findAvailableSlotsInCity(String city, LocalDate date, LocalTime at,
+                                                                          Long serviceTypeId, Integer durationMinutes) {
+        return therapistSlotGrid.findSlotsInCity(city, date, at, resolveDuration(serviceTypeId, durationMinutes));
+    }
+
+    // The service type's duration wins over an explicit one; an hour when neither is given
+    private int resolveDuration(Long serviceTypeId, Integer durationMinutes) {
+        if (serviceTypeId != null) {
+            Integer duration = massageServiceTypeService.getServiceTypeById(serviceTypeId)
+                .orElseThrow(() -> new IllegalArgumentException("Service type not found with ID: " + serviceTypeId))
+                .getDuration();
+            if (duration != null && duration > 0) {
+                return duration;
+            }
+        }
+        return durationMinutes != null ? durationMinutes : 60;
+    }
+
+    // Loads therapists by id in a single query, keeping the order of the ids
+    private List<Therapist> findAllInOrder(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Map<Long, Therapist> byId = therapistRepository.findAllById(ids).stream()
+            .collect(Collectors.toMap(Therapist::getId, Function.identity()));
+        return ids.stream()
+            .map(byId::get)
+            .filter(t -> t != null)
+            .collect(Collectors.toList());
     }
 
 
@@ -0,0 +1,431 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.model.Therapist;
+import za.co.rubhub.repositories.TherapistRepository;
+import za.co.rubhub.repositories.projection.TherapistCity;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed free-slot grid for bookable therapists over the next 14 days.
+ *
+ * A day is 48 half-hour slots, so each therapist-day is a single long with a
+ * bit set for every slot inside working hours and not taken by the calendar.
+ * "Can this session start here" is a mask test, and every valid start time in
+ * a day is a handful of shifts and ANDs. Rows are rebuilt from working hours
+ * and TherapistCalendar; the calendar pushes changes for one therapist at a
+ * time, so booking traffic only recomputes the affected row. A rebuild reads
+ * the database without blocking those changes and replays them onto the new
+ * rows before they go live.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TherapistSlotGrid {
+
+    public static final int SLOT_MINUTES = 30;
+    public static final int HORIZON_DAYS = 14;
+    static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+    private static final long ALL_DAY = (1L << SLOTS_PER_DAY) - 1;
+
+    private final TherapistRepository therapistRepository;
+    private final TherapistCalendar therapistCalendar;
+
+    private volatile Index index = new Index();
+
+    // Profile changes made while a rebuild is reading the database, replayed onto the fresh index before it
+    // goes live. A null value records a removal. Guarded by this; null when no rebuild is running
+    private Map<Long, Profile> changedDuringRebuild;
+    // Therapists whose bookings changed meanwhile; their fresh rows are recomputed before the swap
+    private Set<Long> refreshedDuringRebuild;
+    private final Object rebuildLock = new Object();
+
+    @PostConstruct
+    public void subscribe() {
+        therapistCalendar.addListener(this::refresh);
+    }
+
+    // Full rebuild on startup and every 10 minutes; the midnight run rolls the 14-day window forward
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 0/10 * * * *")
+    public void rebuild() {
+        synchronized (rebuildLock) {
+            long start = System.currentTimeMillis();
+            LocalDate today = LocalDate.now();
+            synchronized (this) {
+                changedDuringRebuild = new HashMap<>();
+                refreshedDuringRebuild = new HashSet<>();
+            }
+
+            List<Profile> profiles = new ArrayList<>();
+            try {
+                Map<Long, String> cities = new HashMap<>();
+                for (TherapistCity city : therapistRepository.findAvailableTherapistCities()) {
+                    cities.put(city.getTherapistId(), city.getCity());
+                }
+                for (Therapist therapist : therapistRepository.findByIsAvailableTrue()) {
+                    if (therapist.isBookable()) {
+                        profiles.add(new Profile(therapist, cities.get(therapist.getId())));
+                    }
+                }
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    changedDuringRebuild = null;
+                    refreshedDuringRebuild = null;
+                }
+                throw e;
+            }
+
+            Index fresh = new Index();
+            for (Profile profile : profiles) {
+                fresh.put(build(profile, today));
+            }
+
+            int replayed;
+            synchronized (this) {
+                replayed = changedDuringRebuild.size() + refreshedDuringRebuild.size();
+                for (Map.Entry<Long, Profile> change : changedDuringRebuild.entrySet()) {
+                    if (change.getValue() == null) {
+                        fresh.remove(change.getKey());
+                    } else {
+                        fresh.put(build(change.getValue(), today));
+                    }
+                }
+                for (Long therapistId : refreshedDuringRebuild) {
+                    Row row = fresh.rows.get(therapistId);
+                    if (row != null && !changedDuringRebuild.containsKey(therapistId)) {
+                        fresh.put(build(row.profile, today));
+                    }
+                }
+                changedDuringRebuild = null;
+                refreshedDuringRebuild = null;
+                this.index = fresh;
+            }
+            log.info("Therapist slot grid rebuilt for {} therapists ({} replayed) in {} ms",
+                    fresh.rows.size(), replayed, System.currentTimeMillis() - start);
+        }
+    }
+
+    // Called whenever a therapist's profile may have changed
+    public void update(Therapist therapist) {
+        if (therapist == null || therapist.getId() == null) {
+            return;
+        }
+        Profile profile = null;
+        if (therapist.isBookable()) {
+            // Looked up before taking the lock so the query never holds up calendar refreshes
+            String city = therapistRepository.findCityByTherapistId(therapist.getId()).orElse(null);
+            profile = new Profile(therapist, city);
+        }
+        synchronized (this) {
+            if (profile == null) {
+                index.remove(therapist.getId());
+            } else {
+                index.put(build(profile, LocalDate.now()));
+            }
+            if (changedDuringRebuild != null) {
+                changedDuringRebuild.put(therapist.getId(), profile);
+            }
+        }
+    }
+
+    // Recomputes one row after its therapist's bookings changed
+    public synchronized void refresh(Long therapistId) {
+        Row row = index.rows.get(therapistId);
+        if (row != null) {
+            index.put(build(row.profile, LocalDate.now()));
+        }
+        if (refreshedDuringRebuild != null) {
+            refreshedDuringRebuild.add(therapistId);
+        }
+    }
+
+    // Every start time from the given day onwards where the session fits, earliest first
+    public List<LocalDateTime> findSlots(Long therapistId, LocalDate from, int days, int durationMinutes) {
+        Row row = index.rows.get(therapistId);
+        if (row == null) {
+            return Collections.emptyList();
+        }
+        int slots = slotsFor(durationMinutes);
+        LocalDateTime now = LocalDateTime.now();
+
+        List<LocalDateTime> starts = new ArrayList<>();
+        for (int d = 0; d < days; d++) {
+            LocalDate date = from.plusDays(d);
+            addStarts(date, startMask(row.day(date), slots, date, now), starts);
+        }
+        return starts;
+    }
+
+    /**
+     * Free therapists in a city on a day. With a start time, only therapists
+     * free for the whole session from that time are returned, each with that
+     * one slot; without one, every start time that day is listed.
+     */
+    public List<TherapistSlots> findSlotsInCity(String city, LocalDate date, LocalTime at, int durationMinutes) {
+        Set<Long> therapistIds = index.cities.get(normalizeCity(city));
+        if (therapistIds == null) {
+            return Collections.emptyList();
+        }
+        int slots = slotsFor(durationMinutes);
+        LocalDateTime now = LocalDateTime.now();
+
+        long required = 0;
+        if (at != null) {
+            if (!date.atTime(at).isAfter(now)) {
+                return Collections.emptyList();
+            }
+            int minute = at.toSecondOfDay() / 60;
+            int first = minute / SLOT_MINUTES;
+            int last = ceilDiv(minute + durationMinutes, SLOT_MINUTES);
+            if (last > SLOTS_PER_DAY) {
+                return Collections.emptyList();
+            }
+            required = range(first, last);
+        }
+
+        List<TherapistSlots> result = new ArrayList<>();
+        for (Long therapistId : therapistIds) {
+            Row row = index.rows.get(therapistId);
+            if (row == null) {
+                continue;
+            }
+            long free = row.day(date);
+            if (at != null) {
+                if ((free & required) == required) {
+                    result.add(new TherapistSlots(therapistId, Collections.singletonList(date.atTime(at))));
+                }
+                continue;
+            }
+            long starts = startMask(free, slots, date, now);
+            if (starts != 0) {
+                List<LocalDateTime> times = new ArrayList<>(Long.bitCount(starts));
+                addStarts(date, starts, times);
+                result.add(new TherapistSlots(therapistId, times));
+            }
+        }
+        result.sort((a, b) -> a.therapistId.compareTo(b.therapistId));
+        return result;
+    }
+
+    public int size() {
+        return index.rows.size();
+    }
+
+    private Row build(Profile profile, LocalDate firstDay) {
+        long[] days = new long[HORIZON_DAYS];
+        boolean anyWorking = false;
+        for (int d = 0; d < HORIZON_DAYS; d++) {
+            days[d] = workingMask(profile, firstDay.plusDays(d));
+            anyWorking |= days[d] != 0;
+        }
+
+        if (anyWorking) {
+            LocalDateTime horizonStart = firstDay.atStartOfDay();
+            LocalDateTime horizonEnd = firstDay.plusDays(HORIZON_DAYS).atStartOfDay();
+            for (TherapistCalendar.Window busy
+                    : therapistCalendar.busyBetween(profile.therapistId, horizonStart, horizonEnd)) {
+                clear(days, horizonStart, busy);
+            }
+        }
+        return new Row(profile, firstDay, days);
+    }
+
+    // Clears every slot the busy window touches, even partly
+    private static void clear(long[] days, LocalDateTime horizonStart, TherapistCalendar.Window busy) {
+        long startMinute = Math.max(0, Duration.between(horizonStart, busy.getStart()).toMinutes());
+        long endMinute = Math.min((long) HORIZON_DAYS * 24 * 60, Duration.between(horizonStart, busy.getEnd()).toMinutes());
+        for (long slot = startMinute / SLOT_MINUTES; slot < ceilDiv(endMinute, SLOT_MINUTES); slot++) {
+            int day = (int) (slot / SLOTS_PER_DAY);
+            days[day] &= ~(1L << (slot % SLOTS_PER_DAY));
+        }
+    }
+
+    // Slots in which a whole session can fit within working hours, using the same rules as Therapist
+    private static long workingMask(Profile profile, LocalDate date) {
+        if (profile.availableFrom == null || profile.availableTo == null) {
+            return 0;
+        }
+        LocalTime from;
+        LocalTime to;
+        try {
+            from = LocalTime.parse(profile.availableFrom);
+            to = LocalTime.parse(profile.availableTo);
+        } catch (Exception e) {
+            // Unparseable hours count as available, as in Therapist.isWithinWorkingHours
+            return worksOn(profile, date) ? ALL_DAY : 0;
+        }
+        int first = ceilDiv(from.toSecondOfDay() / 60, SLOT_MINUTES);
+        int last = to.toSecondOfDay() / 60 / SLOT_MINUTES;
+        if (to.isAfter(from)) {
+            return worksOn(profile, date) ? range(first, last) : 0;
+        }
+        // Hours that run past midnight, e.g. 18:00 to 02:00; the early hours belong to the previous day's shift
+        long mask = 0;
+        if (worksOn(profile, date)) {
+            mask |= range(first, SLOTS_PER_DAY);
+        }
+        if (worksOn(profile, date.minusDays(1))) {
+            mask |= range(0, last);
+        }
+        return mask;
+    }
+
+    private static boolean worksOn(Profile profile, LocalDate date) {
+        if (profile.workingDays == null || profile.workingDays.isEmpty()) {
+            return true;
+        }
+        String day = DayOfWeek.from(date).toString().substring(0, 3);
+        return profile.workingDays.toUpperCase(Locale.ROOT).contains(day);
+    }
+
+    // Bit i is set when slots i .. i+slots-1 are all free, skipping starts already in the past
+    private static long startMask(long free, int slots, LocalDate date, LocalDateTime now) {
+        long starts = free;
+        for (int i = 1; i < slots && starts != 0; i++) {
+            starts &= free >>> i;
+        }
+        if (date.isBefore(now.toLocalDate())) {
+            return 0;
+        }
+        if (date.equals(now.toLocalDate())) {
+            int firstFuture = ceilDiv(now.toLocalTime().toSecondOfDay() / 60 + 1, SLOT_MINUTES);
+            starts &= ~range(0, Math.min(firstFuture, SLOTS_PER_DAY));
+        }
+        return starts;
+    }
+
+    private static void addStarts(LocalDate date, long starts, List<LocalDateTime> into) {
+        LocalDateTime midnight = date.atStartOfDay();
+        while (starts != 0) {
+            int slot = Long.numberOfTrailingZeros(starts);
+            into.add(midnight.plusMinutes((long) slot * SLOT_MINUTES));
+            starts &= starts - 1;
+        }
+    }
+
+    private static int slotsFor(int durationMinutes) {
+        if (durationMinutes <= 0) {
+            throw new IllegalArgumentException("Duration must be positive");
+        }
+        return Math.min(ceilDiv(durationMinutes, SLOT_MINUTES), SLOTS_PER_DAY + 1);
+    }
+
+    // Bits first (inclusive) to last (exclusive)
+    private static long range(int first, int last) {
+        if (last <= first) {
+            return 0;
+        }
+        return ((1L << last) - 1) & ~((1L << first) - 1);
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    private static long ceilDiv(long value, long divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+    static String normalizeCity(String city) {
+        return city == null ? "" : city.trim().toLowerCase(Locale.ROOT);
+    }
+
+    // What a row is built from, so calendar changes can rebuild it without touching the database
+    private static final class Profile {
+        private final Long therapistId;
+        private final String city;
+        private final String availableFrom;
+        private final String availableTo;
+        private final String workingDays;
+
+        Profile(Therapist therapist, String city) {
+            this.therapistId = therapist.getId();
+            this.city = normalizeCity(city);
+            this.availableFrom = therapist.getAvailableFrom();
+            this.availableTo = therapist.getAvailableTo();
+            this.workingDays = therapist.getWorkingDays();
+        }
+    }
+
+    private static final class Row {
+        private final Profile profile;
+        private final LocalDate firstDay;
+        private final long[] days;
+
+        Row(Profile profile, LocalDate firstDay, long[] days) {
+            this.profile = profile;
+            this.firstDay = firstDay;
+            this.days = days;
+        }
+
+        long day(LocalDate date) {
+            long offset = ChronoUnit.DAYS.between(firstDay, date);
+            return offset >= 0 && offset < days.length ? days[(int) offset] : 0;
+        }
+    }
+
+    private static final class Index {
+        private final Map<Long, Row> rows = new ConcurrentHashMap<>();
+        private final Map<String, Set<Long>> cities = new ConcurrentHashMap<>();
+
+        void put(Row row) {
+            Row previous = rows.put(row.profile.therapistId, row);
+            if (previous != null && !previous.profile.city.equals(row.profile.city)) {
+                removeFromCity(previous);
+            }
+            cities.computeIfAbsent(row.profile.city, key -> ConcurrentHashMap.newKeySet()).add(row.profile.therapistId);
+        }
+
+        void remove(Long therapistId) {
+            Row previous = rows.remove(therapistId);
+            if (previous != null) {
+                removeFromCity(previous);
+            }
+        }
+
+        private void removeFromCity(Row row) {
+            Set<Long> ids = cities.get(row.profile.city);
+            if (ids != null) {
+                ids.remove(row.profile.therapistId);
+                if (ids.isEmpty()) {
+                    cities.remove(row.profile.city, ids);
+                }
+            }
+        }
+    }
+
+    public static final class TherapistSlots {
+        private final Long therapistId;
+        private final List<LocalDateTime> slots;
+
+        TherapistSlots(Long therapistId, List<LocalDateTime> slots) {
+            this.therapistId = therapistId;
+            this.slots = slots;
+        }
+
+        public Long getTherapistId() { return therapistId; }
+        public List<LocalDateTime> getSlots() { return slots; }
+    }
+}
@@ -0,0 +1,248 @@
+package za.co.rubhub.service.impl;
+
+import za.co.rubhub.model.AnalyticsData;
+import za.co.rubhub.repositories.AnalyticsRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Hibernate;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Two-tier cache for dashboard analytics keyed by time range.
+ *
+ * Tier one is an in-process, size-bounded map. Tier two is the latest
+ * analytics_data row for the range, only read on a cold start or after
+ * eviction. Loads are single-flight: concurrent misses for the same range wait
+ * on one generation instead of each regenerating and saving a row. Entries
+ * past their fresh window are still served while one background refresh runs.
+ */
+@Slf4j
+@Component
+public class AnalyticsCache {
+
+    // Served as-is unless a range has its own window (see setFreshFor)
+    static final Duration FRESH_FOR = Duration.ofMinutes(10);
+    // Served while a background refresh runs; older entries are regenerated on the request path
+    static final Duration SERVE_STALE_FOR = Duration.ofHours(1);
+
+    private static final int MAX_ENTRIES = 16;
+
+    private final AnalyticsRepository analyticsRepository;
+    private final TransactionTemplate transactionTemplate;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<AnalyticsData>> inFlight = new ConcurrentHashMap<>();
+    private final Map<String, Duration> freshWindows = new ConcurrentHashMap<>();
+
+    // Refreshes are coalesced per range; sized in SchedulerConfig
+    private final ThreadPoolTaskExecutor refreshExecutor;
+
+    public AnalyticsCache(AnalyticsRepository analyticsRepository,
+                          TransactionTemplate transactionTemplate,
+                          @Qualifier("analyticsRefreshExecutor") ThreadPoolTaskExecutor refreshExecutor) {
+        this.analyticsRepository = analyticsRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    public AnalyticsData get(String timeRange, Function<String, AnalyticsData> generator) {
+        Entry entry = entries.get(timeRange);
+        if (entry == null) {
+            entry = loadWarmCopy(timeRange);
+        }
+
+        if (entry != null) {
+            Duration age = entry.age();
+            Duration freshFor = freshFor(timeRange);
+            if (age.compareTo(freshFor) <= 0) {
+                return entry.data;
+            }
+            if (age.compareTo(serveStaleFor(freshFor)) <= 0) {
+                refreshInBackground(timeRange, generator);
+                return entry.data;
+            }
+        }
+
+        return join(load(timeRange, generator, false));
+    }
+
+    // Regenerates the range now, sharing the work with any load already running for it
+    public AnalyticsData refresh(String timeRange, Function<String, AnalyticsData> generator) {
+        return join(load(timeRange, generator, false));
+    }
+
+    public void refreshInBackground(String timeRange, Function<String, AnalyticsData> generator) {
+        if (inFlight.containsKey(timeRange)) {
+            return;
+        }
+        try {
+            load(timeRange, generator, true);
+        } catch (RejectedExecutionException e) {
+            log.warn("Analytics refresh queue is full; keeping stale {} data", timeRange);
+        }
+    }
+
+    // Ranges refreshed on a schedule stay fresh for as long as their cadence allows
+    public void setFreshFor(String timeRange, Duration freshFor) {
+        freshWindows.put(timeRange, freshFor);
+    }
+
+    // Replaces the served snapshot for a range in one step
+    public void put(String timeRange, AnalyticsData data) {
+        if (data == null) {
+            return;
+        }
+        entries.put(timeRange, new Entry(data));
+        evictIfFull();
+    }
+
+    public void invalidateAll() {
+        entries.clear();
+    }
+
+    public Optional<LocalDateTime> generatedAt(String timeRange) {
+        Entry entry = entries.get(timeRange);
+        return entry != null ? Optional.ofNullable(entry.data.getGeneratedAt()) : Optional.empty();
+    }
+
+    private CompletableFuture<AnalyticsData> load(String timeRange, Function<String, AnalyticsData> generator,
+                                                  boolean async) {
+        CompletableFuture<AnalyticsData> created = new CompletableFuture<>();
+        CompletableFuture<AnalyticsData> existing = inFlight.putIfAbsent(timeRange, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        Runnable task = () -> {
+            try {
+                AnalyticsData data = generator.apply(timeRange);
+                put(timeRange, data);
+                created.complete(data);
+            } catch (Throwable t) {
+                log.error("Failed to generate analytics for {}: {}", timeRange, t.getMessage(), t);
+                created.completeExceptionally(t);
+            } finally {
+                inFlight.remove(timeRange, created);
+            }
+        };
+
+        if (async) {
+            try {
+                refreshExecutor.execute(task);
+            } catch (RejectedExecutionException e) {
+                inFlight.remove(timeRange, created);
+                created.completeExceptionally(e);
+                throw e;
+            }
+        } else {
+            task.run();
+        }
+        return created;
+    }
+
+    // The database copy is only a warm-start tier; it is read when memory has nothing for the range
+    private Entry loadWarmCopy(String timeRange) {
+        try {
+            AnalyticsData data = transactionTemplate.execute(status -> {
+                Optional<AnalyticsData> latest = analyticsRepository.findFirstByTimeRangeOrderByGeneratedAtDesc(timeRange);
+                if (!latest.isPresent()) {
+                    return null;
+                }
+                // Detached after this transaction, and shared across threads, so load everything now
+                AnalyticsData found = latest.get();
+                Hibernate.initialize(found.getKpis());
+                Hibernate.initialize(found.getTherapistPerformance());
+                Hibernate.initialize(found.getServicePerformance());
+                Hibernate.initialize(found.getGeographicPerformance());
+                if (found.getRevenueData() != null) {
+                    Hibernate.initialize(found.getRevenueData().getDailyRevenue());
+                }
+                return found;
+            });
+            if (data == null || data.getGeneratedAt() == null) {
+                return null;
+            }
+            Entry entry = new Entry(data);
+            if (entry.age().compareTo(serveStaleFor(freshFor(timeRange))) > 0) {
+                return null;
+            }
+            entries.putIfAbsent(timeRange, entry);
+            evictIfFull();
+            return entries.get(timeRange);
+        } catch (Exception e) {
+            log.warn("Could not read stored analytics for {}: {}", timeRange, e.getMessage());
+            return null;
+        }
+    }
+
+    private Duration freshFor(String timeRange) {
+        return freshWindows.getOrDefault(timeRange, FRESH_FOR);
+    }
+
+    private static Duration serveStaleFor(Duration freshFor) {
+        Duration doubled = freshFor.multipliedBy(2);
+        return doubled.compareTo(SERVE_STALE_FOR) > 0 ? doubled : SERVE_STALE_FOR;
+    }
+
+    private void evictIfFull() {
+        while (entries.size() > MAX_ENTRIES) {
+            String oldest = null;
+            long oldestAt = Long.MAX_VALUE;
+            for (Map.Entry<String, Entry> candidate : entries.entrySet()) {
+                if (candidate.getValue().loadedAt < oldestAt) {
+                    oldestAt = candidate.getValue().loadedAt;
+                    oldest = candidate.getKey();
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            entries.remove(oldest);
+        }
+    }
+
+    private static AnalyticsData join(CompletableFuture<AnalyticsData> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for analytics", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new RuntimeException("Failed to generate analytics", cause);
+        }
+    }
+
+    private static final class Entry {
+        private final AnalyticsData data;
+        // Age is measured from generation, so a warm copy from the database keeps its real age
+        private final long loadedAt;
+
+        Entry(AnalyticsData data) {
+            this.data = data;
+            this.loadedAt = data.getGeneratedAt() != null
+                    ? data.getGeneratedAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                    : System.currentTimeMillis();
+        }
+
+        Duration age() {
+            return Duration.ofMillis(System.currentTimeMillis() - loadedAt);
+        }
+    }
+}
@@ -3,12 +3,19 @@ package za.co.rubhub.service.impl;
 
 import za.co.rubhub.model.*;
 import za.co.rubhub.repositories.AnalyticsRepository;
+import za.co.rubhub.repositories.BookingDailyRollupRepository;
 import za.co.rubhub.repositories.BookingRepository;
+import za.co.rubhub.repositories.MassageServiceTypeRepository;
 import za.co.rubhub.repositories.UserRepository;
+import za.co.rubhub.repositories.projection.DailyTotals;
+import za.co.rubhub.repositories.projection.PeriodComparison;
+import za.co.rubhub.repositories.projection.ServiceTypeTotals;
 import za.co.rubhub.repositories.TherapistRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
@@ -27,24 +34,20 @@ public class AnalyticsService {
     private final BookingRepository bookingRepository;
     private final UserRepository userRepository;
     private final TherapistRepository therapistRepository;
+    private final BookingDailyRollupRepository rollupRepository;
+    private final MassageServiceTypeRepository massageServiceTypeRepository;
+    private final AnalyticsCache analyticsCache;
     
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("MMM d");
     
+    public static final List<String> SUPPORTED_TIME_RANGES = Collections.unmodifiableList(
+            Arrays.asList("7d", "30d", "90d", "1y"));
+    
     public AnalyticsData getDashboardData(String timeRange) {
         log.info("Fetching dashboard data for time range: {}", timeRange);
         
-        // Try to get cached analytics data first
-        Optional<AnalyticsData> cachedData = analyticsRepository
-                .findByTimeRangeAndGeneratedAtAfter(timeRange, LocalDateTime.now().minusHours(1));
-        
-        if (cachedData.isPresent()) {
-            log.info("Returning cached analytics data");
-            return cachedData.get();
-        }
-        
-        // Generate fresh data if cache is stale or doesn't exist
-        log.info("Generating fresh analytics data");
-        return generateAndSaveAnalyticsData(timeRange);
+        // Served from memory; concurrent misses share a single generation
+        return analyticsCache.get(normalizeTimeRange(timeRange), this::generateAndSaveAnalyticsData);
     }
     
     public Map<String, Object> getKPIData(String timeRange) {
@@ -75,17 +78,13 @@ public class AnalyticsService {
             //     "icon", "users"
             // ));
             
-            // Total Revenue KPI
-            List<Booking> currentBookings = bookingRepository.findCompletedPaidBookingsInDateRange(startDate, endDate);
-            List<Booking> previousBookings = bookingRepository.findCompletedPaidBookingsInDateRange(previousStartDate, previousEndDate);
+            // Total Revenue KPI - both periods come back from one query
+            PeriodComparison totals = rollupRepository.comparePeriods(
+                    startDate.toLocalDate(), endDate.toLocalDate(),
+                    previousStartDate.toLocalDate(), previousEndDate.toLocalDate());
             
-            BigDecimal currentRevenue = currentBookings.stream()
-                    .map(Booking::getTotalAmount)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
-            
-            BigDecimal previousRevenue = previousBookings.stream()
-                    .map(Booking::getTotalAmount)
-                    .reduce(BigDecimal.ZERO, BigDecimal::add);
+            BigDecimal currentRevenue = orZero(totals.getCurrentRevenue());
+            BigDecimal previousRevenue = orZero(totals.getPreviousRevenue());
             
             double revenueGrowth = calculateGrowthRate(currentRevenue.doubleValue(), previousRevenue.doubleValue());
             
@@ -98,8 +97,8 @@ public class AnalyticsService {
             // ));
             
             // Appointments KPI
-            int currentAppointments = currentBookings.size();
-            int previousAppointments = previousBookings.size();
+            long currentAppointments = orZero(totals.getCurrentBookings());
+            long previousAppointments = orZero(totals.getPreviousBookings());
             double appointmentGrowth = calculateGrowthRate(currentAppointments, previousAppointments);
             
             // kpis.put("appointments", Map.of(
@@ -137,52 +136,39 @@ public class AnalyticsService {
         LocalDateTime startDate = dateRange[0];
         LocalDateTime endDate = dateRange[1];
         
-        List<Booking> bookings = bookingRepository.findCompletedPaidBookingsInDateRange(startDate, endDate);
-        
         AnalyticsData.RevenueData revenueData = new AnalyticsData.RevenueData();
         
- // Calculate daily revenue - filter out bookings without completion date
-        Map<Object,List<Booking>> bookingsByDate = bookings.stream()
-            .filter(booking -> booking.getCompletedAt() != null)
-            .collect(Collectors.groupingBy(booking -> 
-                ((LocalDateTime) booking.getCompletedAt()).toLocalDate()
-                  ));
-        
-        List<AnalyticsData.RevenueData.DailyRevenue> dailyRevenue = bookingsByDate.entrySet().stream()
-                .sorted()
-                .map(entry -> {
-                    LocalDate date = (LocalDate) entry.getKey();
-                    List<Booking> dayBookings = entry.getValue();
-                    
-                    BigDecimal dayRevenue = dayBookings.stream()
-                            .map(Booking::getTotalAmount)
-                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-                    
-                    BigDecimal averageOrder = dayBookings.isEmpty() ? BigDecimal.ZERO :
-                            dayRevenue.divide(BigDecimal.valueOf(dayBookings.size()), 2, RoundingMode.HALF_UP);
-                    
-                    AnalyticsData.RevenueData.DailyRevenue daily = new AnalyticsData.RevenueData.DailyRevenue();
-                    daily.setDate(date.format(DATE_FORMATTER));
-                    daily.setRevenue(dayRevenue);
-                    daily.setBookings(dayBookings.size());
-                    daily.setAverageOrder(averageOrder);
-                    
-                    return daily;
-                })
-                .collect(Collectors.toList());
+        // Served from the daily rollups: one row per day instead of one per booking
+        List<AnalyticsData.RevenueData.DailyRevenue> dailyRevenue = new ArrayList<>();
+        BigDecimal totalRevenue = BigDecimal.ZERO;
+        long totalBookings = 0;
         
-        revenueData.setDailyRevenue(dailyRevenue);
+        for (DailyTotals day : rollupRepository.sumByDay(startDate.toLocalDate(), endDate.toLocalDate())) {
+            LocalDate date = day.getDay();
+            long dayBookings = orZero(day.getBookings());
+            BigDecimal dayRevenue = orZero(day.getRevenue());
+            
+            BigDecimal averageOrder = dayBookings == 0 ? BigDecimal.ZERO :
+                    dayRevenue.divide(BigDecimal.valueOf(dayBookings), 2, RoundingMode.HALF_UP);
+            
+            AnalyticsData.RevenueData.DailyRevenue daily = new AnalyticsData.RevenueData.DailyRevenue();
+            daily.setDate(date.format(DATE_FORMATTER));
+            daily.setRevenue(dayRevenue);
+            daily.setBookings((int) dayBookings);
+            daily.setAverageOrder(averageOrder);
+            dailyRevenue.add(daily);
+            
+            totalRevenue = totalRevenue.add(dayRevenue);
+            totalBookings += dayBookings;
+        }
         
-        // Calculate totals
-        BigDecimal totalRevenue = bookings.stream()
-                .map(Booking::getTotalAmount)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        revenueData.setDailyRevenue(dailyRevenue);
         
-        BigDecimal averageOrderValue = bookings.isEmpty() ? BigDecimal.ZERO :
-                totalRevenue.divide(BigDecimal.valueOf(bookings.size()), 2, RoundingMode.HALF_UP);
+        BigDecimal averageOrderValue = totalBookings == 0 ? BigDecimal.ZERO :
+                totalRevenue.divide(BigDecimal.valueOf(totalBookings), 2, RoundingMode.HALF_UP);
         
         revenueData.setTotalRevenue(totalRevenue);
-        revenueData.setTotalBookings(bookings.size());
+        revenueData.setTotalBookings((int) totalBookings);
         revenueData.setAverageOrderValue(averageOrderValue);
         
         return revenueData;
@@ -195,42 +181,23 @@ public class AnalyticsService {
         LocalDateTime startDate = dateRange[0];
         LocalDateTime endDate = dateRange[1];
         
-        List<Booking> bookings = bookingRepository.findCompletedPaidBookingsInDateRange(startDate, endDate);
-        
-        // Group bookings by therapist and calculate performance metrics
-        Map<Object,List<Booking>> bookingsByTherapist = bookings.stream()
-                .filter(booking -> booking.getTherapist() != null)
-                .collect(Collectors.groupingBy(booking -> booking.getTherapist().getId()));
-        
-        return bookingsByTherapist.entrySet().stream()
-                .map(entry -> {
-                    String therapistId = (String) entry.getKey();
-                    List<Booking> therapistBookings = entry.getValue();
-                    
-                    // Calculate metrics
-                    int sessions = therapistBookings.size();
-                    BigDecimal revenue = therapistBookings.stream()
-                            .map(Booking::getTherapistEarnings)
-                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-                    
-                    // Calculate average rating (you'd need to implement this based on your rating system)
-                    double averageRating = calculateTherapistAverageRating(therapistId);
-                    
-                    // Calculate completion rate (you'd need to implement this based on your booking status history)
-                    double completionRate = calculateTherapistCompletionRate(therapistId, therapistBookings);
+        // Rows come back grouped per therapist and sorted by revenue; the top 10 is limited in SQL
+        return rollupRepository.sumByTherapist(startDate.toLocalDate(), endDate.toLocalDate(), PageRequest.of(0, 10)).stream()
+                .map(row -> {
+                    Long therapistId = row.getTherapistId();
+                    long sessions = orZero(row.getBookings());
                     
                     AnalyticsData.TherapistPerformance performance = new AnalyticsData.TherapistPerformance();
-                    // performance.setTherapistId(therapistId);
+                    performance.setTherapistId(therapistId);
                     performance.setName(getTherapistName(therapistId));
-                    performance.setSessions(sessions);
-                    performance.setRevenue(revenue);
-                    performance.setRating(averageRating);
-                    performance.setCompletionRate(completionRate);
+                    performance.setSessions((int) sessions);
+                    performance.setRevenue(orZero(row.getRevenue()));
+                    performance.setRating(averageRating(row.getRatingTotal(), row.getRatingCount()));
+                    // Only completed bookings are rolled up
+                    performance.setCompletionRate(sessions > 0 ? 100.0 : 0.0);
                     
                     return performance;
                 })
-                .sorted((a, b) -> b.getRevenue().compareTo(a.getRevenue())) // Sort by revenue descending
-                .limit(10) // Top 10 therapists
                 .collect(Collectors.toList());
     }
     
@@ -241,33 +208,22 @@ public class AnalyticsService {
         LocalDateTime startDate = dateRange[0];
         LocalDateTime endDate = dateRange[1];
         
-        List<Booking> bookings = bookingRepository.findCompletedPaidBookingsInDateRange(startDate, endDate);
+        List<ServiceTypeTotals> rows = rollupRepository.sumByServiceType(startDate.toLocalDate(), endDate.toLocalDate());
         
-    // Group bookings by service type and calculate performance metrics
-        Map<MassageServiceType, List<Booking>> bookingsByService = bookings.stream()
-                .collect(Collectors.groupingBy(Booking::getServiceType));
-
-        return bookingsByService.entrySet().stream()
-                .map(entry -> {
-                    MassageServiceType service = entry.getKey();
-                    List<Booking> serviceBookings = entry.getValue();
-                    
-                    int bookingCount = serviceBookings.size();
-                    BigDecimal revenue = serviceBookings.stream()
-                            .map(Booking::getTotalAmount)
-                            .reduce(BigDecimal.ZERO, BigDecimal::add);
-                    
-                    // Calculate average rating for this service
-                    double averageRating = calculateServiceAverageRating(serviceBookings);
-                    
+        List<Long> serviceTypeIds = rows.stream().map(ServiceTypeTotals::getServiceTypeId).collect(Collectors.toList());
+        Map<Long, String> serviceNames = massageServiceTypeRepository.findAllById(serviceTypeIds).stream()
+                .collect(Collectors.toMap(MassageServiceType::getId, MassageServiceType::getName));
+        
+        return rows.stream()
+                .map(row -> {
                     AnalyticsData.ServicePerformance performance = new AnalyticsData.ServicePerformance();
-                    performance.setBookings(bookingCount);
-                    performance.setRevenue(revenue);
-                    performance.setAverageRating(averageRating);
+                    performance.setService(serviceNames.getOrDefault(row.getServiceTypeId(), "Unknown"));
+                    performance.setBookings((int) orZero(row.getBookings()));
+                    performance.setRevenue(orZero(row.getRevenue()));
+                    performance.setAverageRating(averageRating(row.getRatingTotal(), row.getRatingCount()));
                     
                     return performance;
                 })
-                .sorted((a, b) -> b.getRevenue().compareTo(a.getRevenue())) // Sort by revenue descending
                 .collect(Collectors.toList());
     }
     
@@ -310,9 +266,10 @@ public class AnalyticsService {
     
     public void generateAnalyticsData(String timeRange) {
         log.info("Generating analytics data for time range: {}", timeRange);
-        generateAndSaveAnalyticsData(timeRange);
+        analyticsCache.refresh(normalizeTimeRange(timeRange), this::generateAndSaveAnalyticsData);
     }
     
+    @Transactional
     public void cleanupOldAnalyticsData() {
         log.info("Cleaning up old analytics data");
         LocalDateTime cutoffDate = LocalDateTime.now().minusDays(30);
@@ -378,6 +335,11 @@ public class AnalyticsService {
         }
     }
     
+    // Unknown ranges are computed as 30 days, so they share its cache entry
+    private String normalizeTimeRange(String timeRange) {
+        return SUPPORTED_TIME_RANGES.contains(timeRange) ? timeRange : "30d";
+    }
+    
     private LocalDateTime[] calculateDateRange(String timeRange) {
         LocalDateTime endDate = LocalDateTime.now();
         LocalDateTime startDate;
@@ -417,23 +379,17 @@ public class AnalyticsService {
         return ((current - previous) / previous) * 100;
     }
     
-    // These methods need to be implemented based on your actual data model
-    private double calculateTherapistAverageRating(String therapistId) {
-        // Implement based on your rating system
-        return 4.5 + (new Random().nextDouble() * 0.5); // Mock data
+    private double averageRating(Long ratingTotal, Long ratingCount) {
+        long count = orZero(ratingCount);
+        return count == 0 ? 0.0 : (double) orZero(ratingTotal) / count;
     }
     
-    private double calculateTherapistCompletionRate(String therapistId, List<Booking> bookings) {
-        // Implement based on your completion tracking
-        long completed = bookings.stream()
-                .filter(b -> "COMPLETED".equals(b.getStatus().toString()))
-                .count();
-        return bookings.isEmpty() ? 0 : (double) completed / bookings.size() * 100;
+    private static long orZero(Long value) {
+        return value == null ? 0L : value;
     }
     
-    private double calculateServiceAverageRating(List<Booking> serviceBookings) {
-        // Implement based on your rating system
-        return 4.5 + (new Random().nextDouble() * 0.5); // Mock data
+    private static BigDecimal orZero(BigDecimal value) {
+        return value == null ? BigDecimal.ZERO : value;
     }
     
     private double calculateAreaGrowth(String area, String timeRange) {
@@ -441,7 +397,7 @@ public class AnalyticsService {
         return 5.0 + (new Random().nextDouble() * 15.0); // Mock data
     }
     
-    private String getTherapistName(String therapistId) {
+    private String getTherapistName(Long therapistId) {
         // Implement to get therapist name from repository
         return "Therapist " + therapistId; // Mock data
     }
@@ -0,0 +1,164 @@
+package za.co.rubhub.service.impl;
+
+import za.co.rubhub.model.Booking;
+import za.co.rubhub.model.BookingDailyRollup;
+import za.co.rubhub.model.BookingStatus;
+import za.co.rubhub.repositories.BookingDailyRollupRepository;
+import za.co.rubhub.repositories.BookingRepository;
+import za.co.rubhub.repositories.projection.BookingAggregateRow;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maintains booking_daily_rollups incrementally. Each completed and paid booking
+ * is added to its day x therapist x service row exactly once, guarded by the
+ * booking's analytics_rolled_up flag.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class BookingRollupService {
+    
+    private static final int CATCH_UP_PAGE_SIZE = 500;
+    // Keeps the IN lists of a range rebuild well under driver parameter limits
+    private static final int REBUILD_CHUNK_SIZE = 1000;
+    
+    private final BookingRepository bookingRepository;
+    private final BookingDailyRollupRepository rollupRepository;
+    private final TransactionTemplate transactionTemplate;
+    
+    // Called when a booking is saved; a no-op unless it is completed, paid and not yet counted
+    @Transactional
+    public boolean recordBooking(Booking booking) {
+        return applyToRollup(booking);
+    }
+    
+    // Picks up bookings completed outside BookingService and back-fills history on first run
+    @Scheduled(fixedDelay = 900000, initialDelay = 60000)
+    public void rollUpPendingBookings() {
+        int total = 0;
+        while (true) {
+            List<Booking> pending = bookingRepository.findPendingRollup(
+                    BookingStatus.COMPLETED, PageRequest.of(0, CATCH_UP_PAGE_SIZE));
+            if (pending.isEmpty()) {
+                break;
+            }
+            
+            int applied = 0;
+            for (Booking booking : pending) {
+                try {
+                    Boolean counted = transactionTemplate.execute(status -> applyToRollup(booking));
+                    if (Boolean.TRUE.equals(counted)) {
+                        applied++;
+                    }
+                } catch (Exception e) {
+                    log.error("Failed to roll up booking {}: {}", booking.getId(), e.getMessage(), e);
+                }
+            }
+            total += applied;
+            
+            // Nothing could be applied from this page; stop rather than spin on it
+            if (applied == 0 || pending.size() < CATCH_UP_PAGE_SIZE) {
+                break;
+            }
+        }
+        if (total > 0) {
+            log.info("Rolled up {} completed bookings into daily analytics", total);
+        }
+    }
+    
+    // Recomputes the rollup rows for [startDate, endDate] from grouped queries over bookings, so a
+    // backfill or repair never loads booking entities. One transaction: the bookings are locked,
+    // then exactly those are counted and flagged, so a booking completing meanwhile is either in
+    // both or left to the incremental path
+    @Transactional
+    public int rebuildRange(LocalDate startDate, LocalDate endDate) {
+        LocalDateTime start = startDate.atStartOfDay();
+        LocalDateTime end = endDate.plusDays(1).atStartOfDay();
+        
+        rollupRepository.deleteByRollupDateBetween(startDate, endDate);
+        List<Long> bookingIds = bookingRepository.lockCompletedPaidIdsBetween(BookingStatus.COMPLETED, start, end);
+        
+        Map<String, BookingDailyRollup> rows = new HashMap<>();
+        for (int from = 0; from < bookingIds.size(); from += REBUILD_CHUNK_SIZE) {
+            List<Long> chunk = bookingIds.subList(from, Math.min(from + REBUILD_CHUNK_SIZE, bookingIds.size()));
+            for (BookingAggregateRow aggregate : bookingRepository.aggregateBookings(chunk)) {
+                addAggregate(rows, aggregate);
+            }
+            bookingRepository.markRolledUp(chunk);
+        }
+        rollupRepository.saveAll(rows.values());
+        
+        log.info("Rebuilt {} daily rollup rows from {} bookings for {} to {}",
+                rows.size(), bookingIds.size(), startDate, endDate);
+        return rows.size();
+    }
+    
+    private void addAggregate(Map<String, BookingDailyRollup> rows, BookingAggregateRow aggregate) {
+        Long therapistId = aggregate.getTherapistId() != null ? aggregate.getTherapistId() : BookingDailyRollup.NONE;
+        Long serviceTypeId = aggregate.getServiceTypeId() != null ? aggregate.getServiceTypeId() : BookingDailyRollup.NONE;
+        String key = aggregate.getDay() + ":" + therapistId + ":" + serviceTypeId;
+        
+        BookingDailyRollup rollup = rows.computeIfAbsent(key, k -> {
+            BookingDailyRollup created = new BookingDailyRollup();
+            created.setRollupDate(aggregate.getDay());
+            created.setTherapistId(therapistId);
+            created.setServiceTypeId(serviceTypeId);
+            return created;
+        });
+        
+        long bookings = aggregate.getBookings() != null ? aggregate.getBookings() : 0L;
+        rollup.setBookingCount(rollup.getBookingCount() + bookings);
+        if (aggregate.getRevenue() != null) {
+            rollup.setRevenue(rollup.getRevenue().add(aggregate.getRevenue()));
+        }
+        if (aggregate.getRating() != null) {
+            rollup.setRatingTotal(rollup.getRatingTotal() + bookings * aggregate.getRating().getScore());
+            rollup.setRatingCount(rollup.getRatingCount() + bookings);
+        }
+    }
+    
+    private boolean applyToRollup(Booking booking) {
+        if (booking == null || booking.getId() == null || !booking.isCompletedAndPaid()) {
+            return false;
+        }
+        if (bookingRepository.claimForRollup(booking.getId()) == 0) {
+            return false;
+        }
+        
+        LocalDate day = rollupDate(booking);
+        Long therapistId = booking.getTherapist() != null && booking.getTherapist().getId() != null
+                ? booking.getTherapist().getId() : BookingDailyRollup.NONE;
+        Long serviceTypeId = booking.getServiceType() != null && booking.getServiceType().getId() != null
+                ? booking.getServiceType().getId() : BookingDailyRollup.NONE;
+        BigDecimal revenue = booking.getTotalAmount() != null ? booking.getTotalAmount() : BigDecimal.ZERO;
+        long rating = booking.getRating() != null ? booking.getRating().getScore() : 0;
+        long ratingCount = booking.getRating() != null ? 1 : 0;
+        
+        rollupRepository.addBooking(day, therapistId, serviceTypeId, revenue, rating, ratingCount);
+        booking.setAnalyticsRolledUp(true);
+        return true;
+    }
+    
+    private LocalDate rollupDate(Booking booking) {
+        if (booking.getCompletedAt() != null) {
+            return booking.getCompletedAt().toLocalDate();
+        }
+        if (booking.getBookingDate() != null) {
+            return booking.getBookingDate().toLocalDate();
+        }
+        return LocalDate.now();
+    }
+}
@@ -0,0 +1,52 @@
+package za.co.rubhub.util;
+
+public final class GeoUtils {
+
+    public static final double EARTH_RADIUS_METERS = 6371008.8;
+
+    // Roughly 5.5km of latitude per cell - small enough to keep cell scans short in a metro
+    public static final double DEFAULT_CELL_SIZE_DEGREES = 0.05;
+
+    private static final double METERS_PER_DEGREE_LAT = 111320.0;
+
+    private GeoUtils() {}
+
+    // Great-circle distance in meters
+    public static double distanceMeters(double lat1, double lng1, double lat2, double lng2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLng = Math.toRadians(lng2 - lng1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
+                * Math.sin(dLng / 2) * Math.sin(dLng / 2);
+        return 2 * EARTH_RADIUS_METERS * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+
+    public static double metersToLatDegrees(double meters) {
+        return meters / METERS_PER_DEGREE_LAT;
+    }
+
+    public static double metersToLngDegrees(double meters, double atLatitude) {
+        double cos = Math.cos(Math.toRadians(atLatitude));
+        // Avoid blowing up near the poles
+        return meters / (METERS_PER_DEGREE_LAT * Math.max(cos, 0.01));
+    }
+
+    public static int cellIndex(double degrees, double cellSize) {
+        return (int) Math.floor(degrees / cellSize);
+    }
+
+    // Packs a (row, col) grid position into a single map key
+    public static long cellKey(int row, int col) {
+        return (((long) row) << 32) | (col & 0xffffffffL);
+    }
+
+    public static long cellKey(double lat, double lng, double cellSize) {
+        return cellKey(cellIndex(lat, cellSize), cellIndex(lng, cellSize));
+    }
+
+    public static boolean isValidCoordinate(Double lat, Double lng) {
+        return lat != null && lng != null
+                && lat >= -90 && lat <= 90
+                && lng >= -180 && lng <= 180;
+    }
+}
@@ -0,0 +1,72 @@
+package za.co.rubhub.util;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.function.Consumer;
+
+/**
+ * Response bodies that write JSON while the rows are still being produced,
+ * for exports and other endpoints whose result should never be held in memory.
+ * Row callbacks cannot throw IOException, so writes inside them are wrapped
+ * and unwrapped again before the container sees them.
+ */
+public final class JsonStreams {
+
+    public static final int FLUSH_ROWS = 500;
+
+    private JsonStreams() {}
+
+    @FunctionalInterface
+    public interface JsonWriter {
+        void write(JsonGenerator generator) throws IOException;
+    }
+
+    @FunctionalInterface
+    public interface JsonAction {
+        void run() throws IOException;
+    }
+
+    public static StreamingResponseBody body(ObjectMapper objectMapper, JsonWriter writer) {
+        return out -> {
+            JsonGenerator generator = objectMapper.getFactory().createGenerator(out);
+            try {
+                writer.write(generator);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            generator.close();
+        };
+    }
+
+    // A JSON array of every row the producer hands to its sink
+    public static <T> StreamingResponseBody array(ObjectMapper objectMapper, Consumer<Consumer<T>> producer) {
+        return body(objectMapper, generator -> {
+            generator.writeStartArray();
+            producer.accept(rows(generator));
+            generator.writeEndArray();
+        });
+    }
+
+    // Writes each row as a JSON value and pushes the output to the client every FLUSH_ROWS rows
+    public static <T> Consumer<T> rows(JsonGenerator generator) {
+        int[] written = {0};
+        return row -> unchecked(() -> {
+            generator.writeObject(row);
+            if (++written[0] % FLUSH_ROWS == 0) {
+                generator.flush();
+            }
+        });
+    }
+
+    public static void unchecked(JsonAction action) {
+        try {
+            action.run();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package za.co.rubhub.util;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Streaming quantile estimate with bounded relative error, in the style of
+ * DDSketch: values are counted in logarithmic buckets, so memory depends on
+ * the spread of the values rather than their number, and two sketches with
+ * the same accuracy merge exactly by adding bucket counts.
+ *
+ * Not thread-safe; feed it from one thread and merge per-thread sketches.
+ */
+public final class QuantileSketch {
+
+    // Values at or below this are counted as zero
+    private static final double MIN_POSITIVE = 1e-9;
+
+    private final double relativeAccuracy;
+    private final double gamma;
+    private final double logGamma;
+    private final TreeMap<Integer, Long> buckets = new TreeMap<>();
+    private long zeroCount;
+    private long count;
+    private double min = Double.NaN;
+    private double max = Double.NaN;
+
+    public QuantileSketch(double relativeAccuracy) {
+        if (relativeAccuracy <= 0 || relativeAccuracy >= 1) {
+            throw new IllegalArgumentException("Relative accuracy must be between 0 and 1");
+        }
+        this.relativeAccuracy = relativeAccuracy;
+        this.gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        this.logGamma = Math.log(gamma);
+    }
+
+    // Negative values are treated as zero; durations here are never meaningfully negative
+    public void add(double value) {
+        if (Double.isNaN(value)) {
+            return;
+        }
+        double v = Math.max(value, 0);
+        if (v <= MIN_POSITIVE) {
+            zeroCount++;
+        } else {
+            buckets.merge((int) Math.ceil(Math.log(v) / logGamma), 1L, Long::sum);
+        }
+        min = count == 0 ? v : Math.min(min, v);
+        max = count == 0 ? v : Math.max(max, v);
+        count++;
+    }
+
+    public void merge(QuantileSketch other) {
+        if (other.relativeAccuracy != relativeAccuracy) {
+            throw new IllegalArgumentException("Cannot merge sketches with different accuracy");
+        }
+        if (other.count == 0) {
+            return;
+        }
+        for (Map.Entry<Integer, Long> bucket : other.buckets.entrySet()) {
+            buckets.merge(bucket.getKey(), bucket.getValue(), Long::sum);
+        }
+        zeroCount += other.zeroCount;
+        min = count == 0 ? other.min : Math.min(min, other.min);
+        max = count == 0 ? other.max : Math.max(max, other.max);
+        count += other.count;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    // The q-quantile (0..1) within the relative accuracy, or null when empty
+    public Double quantile(double q) {
+        if (count == 0) {
+            return null;
+        }
+        if (q <= 0) {
+            return min;
+        }
+        if (q >= 1) {
+            return max;
+        }
+        long rank = (long) Math.floor(q * (count - 1));
+        if (rank < zeroCount) {
+            return 0.0;
+        }
+        long seen = zeroCount;
+        for (Map.Entry<Integer, Long> bucket : buckets.entrySet()) {
+            seen += bucket.getValue();
+            if (seen > rank) {
+                double estimate = 2 * Math.pow(gamma, bucket.getKey()) / (gamma + 1);
+                return Math.max(min, Math.min(max, estimate));
+            }
+        }
+        return max;
+    }
+}
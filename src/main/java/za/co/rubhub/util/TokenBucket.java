@@ -0,0 +1,52 @@
+package za.co.rubhub.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token-bucket rate limiter: permits refill continuously at a fixed rate up to
+ * a burst capacity, and a caller without a permit sleeps until the next one is
+ * due. Thread-safe; waiting callers do not hold the lock.
+ */
+public final class TokenBucket {
+
+    private final double capacity;
+    private final double nanosPerPermit;
+    private double permits;
+    private long refilledAt;
+
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (permitsPerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.capacity = burst;
+        this.nanosPerPermit = TimeUnit.SECONDS.toNanos(1) / permitsPerSecond;
+        this.permits = burst;
+        this.refilledAt = System.nanoTime();
+    }
+
+    public void acquire() throws InterruptedException {
+        while (true) {
+            long waitNanos;
+            synchronized (this) {
+                refill();
+                if (permits >= 1) {
+                    permits -= 1;
+                    return;
+                }
+                waitNanos = (long) Math.ceil((1 - permits) * nanosPerPermit);
+            }
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    public synchronized double availablePermits() {
+        refill();
+        return permits;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        permits = Math.min(capacity, permits + (now - refilledAt) / nanosPerPermit);
+        refilledAt = now;
+    }
+}
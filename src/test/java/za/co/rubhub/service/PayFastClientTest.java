@@ -0,0 +1,139 @@
+package za.co.rubhub.service;
+
+import za.co.rubhub.util.CircuitBreaker;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpEntity;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestClientException;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Runs PayFastClient against a local stub server standing in for PayFast
+class PayFastClientTest {
+
+    private static final String PATH = "/payouts/submit";
+
+    private HttpServer server;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicReference<StubResponse> response = new AtomicReference<>();
+    private ThreadPoolTaskExecutor executor;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void startStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext(PATH, exchange -> {
+            hits.incrementAndGet();
+            StubResponse stub = response.get();
+            byte[] body = stub.body.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(stub.status, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        server.start();
+
+        executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setMaxPoolSize(2);
+        executor.setQueueCapacity(10);
+        executor.initialize();
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    @Test
+    void serverErrorOnSubmitIsNotRetried() {
+        response.set(new StubResponse(503, "{}"));
+        PayFastClient client = client(stubUrl(), 5, 60000);
+
+        assertThatThrownBy(() -> submit(client))
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(HttpServerErrorException.class);
+        assertThat(hits.get()).isEqualTo(1);
+    }
+
+    @Test
+    void failedConnectIsRetried() throws IOException {
+        int closedPort;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            closedPort = socket.getLocalPort();
+        }
+        PayFastClient client = client("http://127.0.0.1:" + closedPort, 5, 60000);
+
+        assertThatThrownBy(() -> submit(client))
+                .isInstanceOf(CompletionException.class)
+                .hasCauseInstanceOf(ResourceAccessException.class);
+        assertThat(meterRegistry.counter("rubhub.payfast.client.retries").count()).isEqualTo(2.0);
+    }
+
+    @Test
+    void unexpectedErrorDuringHalfOpenTrialReopensTheCircuit() throws InterruptedException {
+        PayFastClient client = client(stubUrl(), 1, 20);
+
+        response.set(new StubResponse(503, "{}"));
+        assertThatThrownBy(() -> submit(client)).hasCauseInstanceOf(HttpServerErrorException.class);
+        assertThat(client.circuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        // The trial call gets a body that cannot be read, which is neither a 4xx, a 5xx nor an I/O error
+        Thread.sleep(50);
+        response.set(new StubResponse(200, "{"));
+        assertThatThrownBy(() -> submit(client)).hasCauseInstanceOf(RestClientException.class);
+        assertThat(client.circuitState()).isEqualTo(CircuitBreaker.State.OPEN);
+
+        Thread.sleep(50);
+        response.set(new StubResponse(200, "{\"status\":\"ok\"}"));
+        assertThat(submit(client)).containsEntry("status", "ok");
+        assertThat(client.circuitState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(hits.get()).isEqualTo(3);
+    }
+
+    private PayFastClient client(String baseUrl, int breakerThreshold, long breakerOpenMillis) {
+        return new PayFastClient(new RestTemplateBuilder(), meterRegistry, executor, baseUrl,
+                1000, 100, 500, 2000, 3, 1, 5, breakerThreshold, breakerOpenMillis);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> submit(PayFastClient client) {
+        return client.post(PATH, new HttpEntity<>(Collections.singletonMap("amount", "10.00")), Map.class).join();
+    }
+
+    private String stubUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static final class StubResponse {
+        private final int status;
+        private final String body;
+
+        StubResponse(int status, String body) {
+            this.status = status;
+            this.body = body;
+        }
+    }
+}